@@ -0,0 +1,112 @@
+package org.lndroid.lnd.benchmark;
+
+import org.lndroid.lnd.data.ChannelSet;
+import org.lndroid.lnd.data.Codec;
+import org.lndroid.lnd.data.Data;
+import org.lndroid.lnd.data.WireCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of Codec.decode on top of an already parsed lnd reply,
+// plus the protobuf parse itself as a reference point, and
+// WireCodec doing both in one pass.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecDecodeBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private lnrpc.Rpc.ListChannelsResponse listChannels_;
+    private lnrpc.Rpc.ListPaymentsResponse listPayments_;
+    private lnrpc.Rpc.TransactionDetails transactionDetails_;
+    private lnrpc.Rpc.NodeInfo nodeInfo_;
+
+    private byte[] listChannelsBytes_;
+    private byte[] listPaymentsBytes_;
+    private byte[] transactionDetailsBytes_;
+    private byte[] nodeInfoBytes_;
+
+    @Setup
+    public void setup() {
+        Fixtures f = new Fixtures();
+        listChannels_ = f.listChannels(size);
+        listPayments_ = f.listPayments(size);
+        transactionDetails_ = f.transactionDetails(size);
+        nodeInfo_ = f.nodeInfo(size);
+
+        listChannelsBytes_ = listChannels_.toByteArray();
+        listPaymentsBytes_ = listPayments_.toByteArray();
+        transactionDetailsBytes_ = transactionDetails_.toByteArray();
+        nodeInfoBytes_ = nodeInfo_.toByteArray();
+    }
+
+    @Benchmark
+    public Data.ListChannelsResponse decodeListChannels() {
+        return Codec.decode(listChannels_);
+    }
+
+    @Benchmark
+    public Data.ListPaymentsResponse decodeListPayments() {
+        return Codec.decode(listPayments_);
+    }
+
+    @Benchmark
+    public Data.TransactionDetails decodeTransactionDetails() {
+        return Codec.decode(transactionDetails_);
+    }
+
+    @Benchmark
+    public Data.NodeInfo decodeNodeInfo() {
+        return Codec.decode(nodeInfo_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.ListChannelsResponse parseListChannels() throws Exception {
+        return lnrpc.Rpc.ListChannelsResponse.parseFrom(listChannelsBytes_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.ListPaymentsResponse parseListPayments() throws Exception {
+        return lnrpc.Rpc.ListPaymentsResponse.parseFrom(listPaymentsBytes_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.TransactionDetails parseTransactionDetails() throws Exception {
+        return lnrpc.Rpc.TransactionDetails.parseFrom(transactionDetailsBytes_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.NodeInfo parseNodeInfo() throws Exception {
+        return lnrpc.Rpc.NodeInfo.parseFrom(nodeInfoBytes_);
+    }
+
+    @Benchmark
+    public Data.ListChannelsResponse wireDecodeListChannels() throws Exception {
+        return WireCodec.decodeListChannelsResponse(listChannelsBytes_);
+    }
+
+    @Benchmark
+    public ChannelSet wireDecodeChannelSet() throws Exception {
+        return WireCodec.decodeChannelSet(listChannelsBytes_);
+    }
+
+    @Benchmark
+    public Data.ListPaymentsResponse wireDecodeListPayments() throws Exception {
+        return WireCodec.decodeListPaymentsResponse(listPaymentsBytes_);
+    }
+
+    @Benchmark
+    public Data.TransactionDetails wireDecodeTransactionDetails() throws Exception {
+        return WireCodec.decodeTransactionDetails(transactionDetailsBytes_);
+    }
+}
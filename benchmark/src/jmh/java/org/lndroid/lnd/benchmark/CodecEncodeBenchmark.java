@@ -0,0 +1,88 @@
+package org.lndroid.lnd.benchmark;
+
+import org.lndroid.lnd.data.Codec;
+import org.lndroid.lnd.data.Data;
+import org.lndroid.lnd.data.WireEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of Codec.encode, and of the whole encode half of a call:
+// serialize* is Codec.encode + toByteArray, wireEncode* is WireEncoder
+// used by the hot calls instead. Compare gc.alloc.rate.norm of the two.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecEncodeBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private Data.QueryRoutesRequest queryRoutes_;
+    private Data.EstimateFeeRequest estimateFee_;
+    private Data.PayReqString payReq_;
+    private Data.PaymentHash paymentHash_;
+
+    @Setup
+    public void setup() {
+        Fixtures f = new Fixtures();
+        queryRoutes_ = f.queryRoutesRequest(size);
+        estimateFee_ = f.estimateFeeRequest(size);
+        payReq_ = f.payReqString();
+        paymentHash_ = f.paymentHash();
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.QueryRoutesRequest encodeQueryRoutes() {
+        return Codec.encode(queryRoutes_);
+    }
+
+    @Benchmark
+    public byte[] serializeQueryRoutes() {
+        return Codec.encode(queryRoutes_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodeQueryRoutes() {
+        return WireEncoder.encode(queryRoutes_);
+    }
+
+    @Benchmark
+    public byte[] serializeEstimateFee() {
+        return Codec.encode(estimateFee_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodeEstimateFee() {
+        return WireEncoder.encode(estimateFee_);
+    }
+
+    // the ones below don't depend on size
+
+    @Benchmark
+    public byte[] serializePayReq() {
+        return Codec.encode(payReq_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodePayReq() {
+        return WireEncoder.encode(payReq_);
+    }
+
+    @Benchmark
+    public byte[] serializePaymentHash() {
+        return Codec.encode(paymentHash_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodePaymentHash() {
+        return WireEncoder.encode(paymentHash_);
+    }
+}
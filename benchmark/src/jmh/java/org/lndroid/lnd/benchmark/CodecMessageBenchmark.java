@@ -0,0 +1,219 @@
+package org.lndroid.lnd.benchmark;
+
+import com.google.protobuf.ByteString;
+
+import org.lndroid.lnd.data.Codec;
+import org.lndroid.lnd.data.Data;
+import org.lndroid.lnd.data.WireEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+// Single-message Codec pairs, the ones on the per-payment
+// and per-event paths (invoices, payments, routes, events).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecMessageBenchmark {
+
+    private lnrpc.Rpc.GetInfoResponse getInfo_;
+    private lnrpc.Rpc.Invoice invoice_;
+    private lnrpc.Rpc.PayReq payReq_;
+    private lnrpc.Rpc.SendResponse sendResponse_;
+    private lnrpc.Rpc.QueryRoutesResponse queryRoutesResponse_;
+    private lnrpc.Rpc.ChannelEventUpdate channelEvent_;
+    private lnrpc.Rpc.Transaction transaction_;
+
+    private Data.Invoice dataInvoice_;
+    private Data.SendRequest sendRequest_;
+    private Data.SendToRouteRequest sendToRouteRequest_;
+
+    private WireEncoder.Encoder<Data.SendRequest> sendRequestEncoder_ = WireEncoder.sendRequest();
+    private WireEncoder.Encoder<Data.SendToRouteRequest> sendToRouteRequestEncoder_ =
+            WireEncoder.sendToRouteRequest();
+
+    @Setup
+    public void setup() {
+        Fixtures f = new Fixtures();
+
+        getInfo_ = lnrpc.Rpc.GetInfoResponse.newBuilder()
+                .setIdentityPubkey(f.pubkey())
+                .setAlias("benchmark-node")
+                .setNumActiveChannels(100)
+                .setNumPeers(20)
+                .setBlockHeight(620000)
+                .setBlockHash(f.hex(32))
+                .setSyncedToChain(true)
+                .addUris(f.pubkey() + "@10.0.0.1:9735")
+                .setVersion("0.9.0-beta")
+                .addChains(lnrpc.Rpc.Chain.newBuilder().setChain("bitcoin").setNetwork("testnet"))
+                .setColor("#3399ff")
+                .setSyncedToGraph(true)
+                .build();
+
+        lnrpc.Rpc.HopHint hh = lnrpc.Rpc.HopHint.newBuilder()
+                .setNodeId(f.pubkey())
+                .setChanId(1234567890L)
+                .setFeeBaseMsat(1000)
+                .setCltvExpiryDelta(40)
+                .build();
+        invoice_ = lnrpc.Rpc.Invoice.newBuilder()
+                .setMemo("coffee")
+                .setRPreimage(ByteString.copyFrom(f.bytes(32)))
+                .setRHash(ByteString.copyFrom(f.bytes(32)))
+                .setValue(25000)
+                .setCreationDate(1580000000)
+                .setSettleDate(1580000100)
+                .setPaymentRequest("lntb" + f.hex(150))
+                .setExpiry(3600)
+                .setCltvExpiry(40)
+                .addRouteHints(lnrpc.Rpc.RouteHint.newBuilder().addHopHints(hh))
+                .setAddIndex(1000)
+                .setSettleIndex(900)
+                .setAmtPaidSat(25000)
+                .setAmtPaidMsat(25000000)
+                .setState(lnrpc.Rpc.Invoice.InvoiceState.SETTLED)
+                .putFeatures(9, lnrpc.Rpc.Feature.newBuilder().build())
+                .build();
+
+        payReq_ = lnrpc.Rpc.PayReq.newBuilder()
+                .setDestination(f.pubkey())
+                .setPaymentHash(f.hex(32))
+                .setNumSatoshis(25000)
+                .setTimestamp(1580000000)
+                .setExpiry(3600)
+                .setDescription("coffee")
+                .setCltvExpiry(40)
+                .setPaymentAddr(ByteString.copyFrom(f.bytes(32)))
+                .addRouteHints(lnrpc.Rpc.RouteHint.newBuilder().addHopHints(hh))
+                .putFeatures(9, lnrpc.Rpc.Feature.newBuilder().build())
+                .build();
+
+        lnrpc.Rpc.Route.Builder route = lnrpc.Rpc.Route.newBuilder()
+                .setTotalTimeLock(620100)
+                .setTotalFeesMsat(3000)
+                .setTotalAmtMsat(25003000);
+        for (int i = 0; i < 3; i++) {
+            route.addHops(lnrpc.Rpc.Hop.newBuilder()
+                    .setChanId(1234567890L + i)
+                    .setChanCapacity(f.amount())
+                    .setExpiry(620100 - i * 40)
+                    .setAmtToForwardMsat(25000000 + (2 - i) * 1000)
+                    .setFeeMsat(1000)
+                    .setPubKey(f.pubkey())
+                    .setTlvPayload(true));
+        }
+        sendResponse_ = lnrpc.Rpc.SendResponse.newBuilder()
+                .setPaymentPreimage(ByteString.copyFrom(f.bytes(32)))
+                .setPaymentHash(ByteString.copyFrom(f.bytes(32)))
+                .setPaymentRoute(route)
+                .build();
+        queryRoutesResponse_ = lnrpc.Rpc.QueryRoutesResponse.newBuilder()
+                .addRoutes(route)
+                .setSuccessProb(0.8)
+                .build();
+
+        channelEvent_ = lnrpc.Rpc.ChannelEventUpdate.newBuilder()
+                .setType(lnrpc.Rpc.ChannelEventUpdate.UpdateType.OPEN_CHANNEL)
+                .setOpenChannel(f.channel())
+                .build();
+        transaction_ = f.transaction();
+
+        dataInvoice_ = Codec.decode(invoice_);
+
+        sendRequest_ = new Data.SendRequest();
+        sendRequest_.dest = f.bytes(33);
+        sendRequest_.amtMsat = 25000000;
+        sendRequest_.paymentHash = f.bytes(32);
+        sendRequest_.finalCltvDelta = 40;
+        sendRequest_.feeLimit = new Data.FeeLimit();
+        sendRequest_.feeLimit.fixedMsat = 10000;
+        sendRequest_.destTlv = new HashMap<>();
+        sendRequest_.destTlv.put(5482373484L, f.bytes(32));
+        sendRequest_.features = new ArrayList<>();
+        sendRequest_.features.add(9);
+
+        sendToRouteRequest_ = new Data.SendToRouteRequest();
+        sendToRouteRequest_.paymentHash = f.bytes(32);
+        sendToRouteRequest_.route = Codec.decode(route.build());
+    }
+
+    @Benchmark
+    public Data.GetInfoResponse decodeGetInfo() {
+        return Codec.decode(getInfo_);
+    }
+
+    @Benchmark
+    public Data.Invoice decodeInvoice() {
+        return Codec.decode(invoice_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.Invoice encodeInvoice() {
+        return Codec.encode(dataInvoice_);
+    }
+
+    @Benchmark
+    public Data.PayReq decodePayReq() {
+        return Codec.decode(payReq_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.SendRequest encodeSendRequest() {
+        return Codec.encode(sendRequest_);
+    }
+
+    // what send streams did before WireEncoder
+    @Benchmark
+    public byte[] serializeSendRequest() {
+        return Codec.encode(sendRequest_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodeSendRequest() {
+        return sendRequestEncoder_.encode(sendRequest_);
+    }
+
+    @Benchmark
+    public Data.SendResponse decodeSendResponse() {
+        return Codec.decode(sendResponse_);
+    }
+
+    @Benchmark
+    public lnrpc.Rpc.SendToRouteRequest encodeSendToRouteRequest() {
+        return Codec.encode(sendToRouteRequest_);
+    }
+
+    @Benchmark
+    public byte[] serializeSendToRouteRequest() {
+        return Codec.encode(sendToRouteRequest_).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] wireEncodeSendToRouteRequest() {
+        return sendToRouteRequestEncoder_.encode(sendToRouteRequest_);
+    }
+
+    @Benchmark
+    public Data.QueryRoutesResponse decodeQueryRoutesResponse() {
+        return Codec.decode(queryRoutesResponse_);
+    }
+
+    @Benchmark
+    public Data.ChannelEventUpdate decodeChannelEvent() {
+        return Codec.decode(channelEvent_);
+    }
+
+    @Benchmark
+    public Data.Transaction decodeTransaction() {
+        return Codec.decode(transaction_);
+    }
+}
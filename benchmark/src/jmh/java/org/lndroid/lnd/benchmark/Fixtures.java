@@ -0,0 +1,234 @@
+package org.lndroid.lnd.benchmark;
+
+import com.google.protobuf.ByteString;
+
+import org.lndroid.lnd.data.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+// Synthetic lnd replies and requests, shaped like what a busy
+// wallet gets back from lnd. Generated from a fixed seed so
+// that all runs measure the same bytes.
+final class Fixtures {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Random random_;
+
+    Fixtures() {
+        random_ = new Random(42);
+    }
+
+    String hex(int bytes) {
+        char[] s = new char[bytes * 2];
+        for (int i = 0; i < s.length; i++)
+            s[i] = HEX[random_.nextInt(16)];
+        return new String(s);
+    }
+
+    byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random_.nextBytes(b);
+        return b;
+    }
+
+    String pubkey() {
+        return "02" + hex(32);
+    }
+
+    String channelPoint() {
+        return hex(32) + ":" + random_.nextInt(4);
+    }
+
+    long amount() {
+        return 1000 + random_.nextInt(16000000);
+    }
+
+    lnrpc.Rpc.Channel channel() {
+        lnrpc.Rpc.Channel.Builder b = lnrpc.Rpc.Channel.newBuilder();
+        long capacity = amount();
+        long local = capacity / 2;
+        b.setActive(random_.nextBoolean());
+        b.setRemotePubkey(pubkey());
+        b.setChannelPoint(channelPoint());
+        b.setChanId(random_.nextLong() & Long.MAX_VALUE);
+        b.setCapacity(capacity);
+        b.setLocalBalance(local);
+        b.setRemoteBalance(capacity - local);
+        b.setCommitFee(9050);
+        b.setCommitWeight(724);
+        b.setFeePerKw(12500);
+        b.setTotalSatoshisSent(amount());
+        b.setTotalSatoshisReceived(amount());
+        b.setNumUpdates(random_.nextInt(100000));
+        int htlcs = random_.nextInt(3);
+        for (int i = 0; i < htlcs; i++) {
+            b.addPendingHtlcs(lnrpc.Rpc.HTLC.newBuilder()
+                    .setIncoming(random_.nextBoolean())
+                    .setAmount(amount())
+                    .setHashLock(ByteString.copyFrom(bytes(32)))
+                    .setExpirationHeight(600000 + random_.nextInt(1000)));
+        }
+        b.setCsvDelay(144);
+        b.setPrivate(random_.nextBoolean());
+        b.setInitiator(random_.nextBoolean());
+        b.setChanStatusFlags("ChanStatusDefault");
+        b.setLocalChanReserveSat(capacity / 100);
+        b.setRemoteChanReserveSat(capacity / 100);
+        b.setStaticRemoteKey(true);
+        b.setLifetime(random_.nextInt(1000000));
+        b.setUptime(random_.nextInt(1000000));
+        return b.build();
+    }
+
+    lnrpc.Rpc.ListChannelsResponse listChannels(int n) {
+        lnrpc.Rpc.ListChannelsResponse.Builder b = lnrpc.Rpc.ListChannelsResponse.newBuilder();
+        for (int i = 0; i < n; i++)
+            b.addChannels(channel());
+        return b.build();
+    }
+
+    lnrpc.Rpc.Payment payment() {
+        lnrpc.Rpc.Payment.Builder b = lnrpc.Rpc.Payment.newBuilder();
+        long value = amount();
+        b.setPaymentHash(hex(32));
+        b.setCreationTimeNs(1580000000000000000L + random_.nextInt(Integer.MAX_VALUE));
+        b.setPaymentPreimage(hex(32));
+        b.setValueSat(value);
+        b.setValueMsat(value * 1000);
+        b.setPaymentRequest("lntb" + hex(150));
+        b.setStatus(lnrpc.Rpc.Payment.PaymentStatus.SUCCEEDED);
+        b.setFeeSat(value / 1000);
+        b.setFeeMsat(value);
+        return b.build();
+    }
+
+    lnrpc.Rpc.ListPaymentsResponse listPayments(int n) {
+        lnrpc.Rpc.ListPaymentsResponse.Builder b = lnrpc.Rpc.ListPaymentsResponse.newBuilder();
+        for (int i = 0; i < n; i++)
+            b.addPayments(payment());
+        return b.build();
+    }
+
+    lnrpc.Rpc.Transaction transaction() {
+        lnrpc.Rpc.Transaction.Builder b = lnrpc.Rpc.Transaction.newBuilder();
+        b.setTxHash(hex(32));
+        b.setAmount(amount());
+        b.setNumConfirmations(random_.nextInt(1000));
+        b.setBlockHash(hex(32));
+        b.setBlockHeight(600000 + random_.nextInt(100000));
+        b.setTimeStamp(1580000000 + random_.nextInt(10000000));
+        b.setTotalFees(random_.nextInt(10000));
+        b.addDestAddresses("tb1q" + hex(20));
+        b.addDestAddresses("tb1q" + hex(20));
+        b.setRawTxHex(hex(220));
+        return b.build();
+    }
+
+    lnrpc.Rpc.TransactionDetails transactionDetails(int n) {
+        lnrpc.Rpc.TransactionDetails.Builder b = lnrpc.Rpc.TransactionDetails.newBuilder();
+        for (int i = 0; i < n; i++)
+            b.addTransactions(transaction());
+        return b.build();
+    }
+
+    lnrpc.Rpc.RoutingPolicy policy() {
+        return lnrpc.Rpc.RoutingPolicy.newBuilder()
+                .setTimeLockDelta(40)
+                .setMinHtlc(1000)
+                .setFeeBaseMsat(1000)
+                .setFeeRateMilliMsat(1)
+                .setDisabled(random_.nextInt(10) == 0)
+                .setMaxHtlcMsat(amount() * 1000)
+                .setLastUpdate(1580000000 + random_.nextInt(10000000))
+                .build();
+    }
+
+    lnrpc.Rpc.NodeInfo nodeInfo(int n) {
+        String pubkey = pubkey();
+        lnrpc.Rpc.NodeInfo.Builder b = lnrpc.Rpc.NodeInfo.newBuilder();
+        b.setNode(lnrpc.Rpc.LightningNode.newBuilder()
+                .setPubKey(pubkey)
+                .setAlias("benchmark-node")
+                .setColor("#3399ff")
+                .setLastUpdate(1580000000)
+                .putFeatures(1, lnrpc.Rpc.Feature.newBuilder().build())
+                .putFeatures(5, lnrpc.Rpc.Feature.newBuilder().build())
+                .putFeatures(9, lnrpc.Rpc.Feature.newBuilder().build()));
+        b.setNumChannels(n);
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            long capacity = amount();
+            total += capacity;
+            b.addChannels(lnrpc.Rpc.ChannelEdge.newBuilder()
+                    .setChannelId(random_.nextLong() & Long.MAX_VALUE)
+                    .setChanPoint(channelPoint())
+                    .setNode1Pub(pubkey)
+                    .setNode2Pub(pubkey())
+                    .setCapacity(capacity)
+                    .setNode1Policy(policy())
+                    .setNode2Policy(policy()));
+        }
+        b.setTotalCapacity(total);
+        return b.build();
+    }
+
+    // QueryRoutesRequest has no 'list of results', so size
+    // is expressed through its repeated/map fields: ignored nodes,
+    // route hints (one hop hint each) and custom records
+    Data.QueryRoutesRequest queryRoutesRequest(int n) {
+        Data.QueryRoutesRequest r = new Data.QueryRoutesRequest();
+        r.pubKey = pubkey();
+        r.amtMsat = amount() * 1000;
+        r.finalCltvDelta = 40;
+        r.feeLimit = new Data.FeeLimit();
+        r.feeLimit.fixedMsat = 10000;
+        r.useMissionControl = true;
+        r.cltvLimit = 2016;
+        r.ignoredNodes = new ArrayList<>();
+        r.routeHints = new ArrayList<>();
+        r.destCustomRecords = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            r.ignoredNodes.add(bytes(33));
+
+            Data.HopHint hh = new Data.HopHint();
+            hh.nodeId = pubkey();
+            hh.chanId = random_.nextLong() & Long.MAX_VALUE;
+            hh.feeBaseMsat = 1000;
+            hh.feeProportionalMillionths = 1;
+            hh.cltvExpiryDelta = 40;
+            Data.RouteHint rh = new Data.RouteHint();
+            rh.hopHints = new ArrayList<>();
+            rh.hopHints.add(hh);
+            r.routeHints.add(rh);
+
+            r.destCustomRecords.put(65536L + i, bytes(32));
+        }
+        return r;
+    }
+
+    // a typical bolt11 invoice is a few hundred chars
+    Data.PayReqString payReqString() {
+        Data.PayReqString r = new Data.PayReqString();
+        r.payReq = "lnbc" + amount() + "n1p" + hex(150);
+        return r;
+    }
+
+    Data.PaymentHash paymentHash() {
+        Data.PaymentHash r = new Data.PaymentHash();
+        r.rHash = bytes(32);
+        return r;
+    }
+
+    // n outputs
+    Data.EstimateFeeRequest estimateFeeRequest(int n) {
+        Data.EstimateFeeRequest r = new Data.EstimateFeeRequest();
+        r.addrToAmount = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            r.addrToAmount.put("bc1q" + hex(20), amount());
+        r.targetConf = 6;
+        return r;
+    }
+}
@@ -0,0 +1,414 @@
+package org.lndroid.lnd.codegen;
+
+import com.google.protobuf.Descriptors;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Generates Data-style POJOs and their Codec from the descriptors of
+// protoc-generated outer classes (lnrpc.Rpc, routerrpc.RouterOuterClass
+// etc). For outer class Foo (or FooOuterClass) it writes FooData with a
+// POJO per message, enum values as int constants, and FooCodec with
+// encode(FooData.X) and decode(Foo.X) for every message.
+//
+// Generated code follows the hand-written Codec: public fields, byte[]
+// for bytes, int for enums, null for unset messages, lists and maps.
+// Bytes are copied, or wrapped after <Name>Codec.setWrapBytes(true).
+// Encoders skip default-valued fields, decoders presize collections
+// and read repeated fields by index. Oneof members are boxed, null
+// meaning the member isn't set. Types used across files must be
+// generated in the same run.
+//
+// Usage: CodecGenerator <out dir> <java package> <outer class>...
+public final class CodecGenerator {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char",
+            "class", "const", "continue", "default", "do", "double", "else", "enum",
+            "extends", "final", "finally", "float", "for", "goto", "if", "implements",
+            "import", "instanceof", "int", "interface", "long", "native", "new",
+            "package", "private", "protected", "public", "return", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+            "transient", "try", "void", "volatile", "while", "true", "false", "null"));
+
+    private final String package_;
+    // proto file name -> protoc outer class
+    private final Map<String, Class<?>> outers_ = new LinkedHashMap<>();
+    // proto file name -> generated name prefix
+    private final Map<String, String> names_ = new HashMap<>();
+
+    CodecGenerator(String pkg) {
+        package_ = pkg;
+    }
+
+    void add(Class<?> outer) throws ReflectiveOperationException {
+        Descriptors.FileDescriptor file =
+                (Descriptors.FileDescriptor)outer.getMethod("getDescriptor").invoke(null);
+        String name = outer.getSimpleName();
+        if (name.endsWith("OuterClass"))
+            name = name.substring(0, name.length() - "OuterClass".length());
+        if (names_.containsValue(name))
+            throw new IllegalArgumentException("Duplicate generated name " + name + " of " + outer.getName());
+        outers_.put(file.getName(), outer);
+        names_.put(file.getName(), name);
+    }
+
+    void generate(File outDir) throws ReflectiveOperationException, IOException {
+        File dir = new File(outDir, package_.replace('.', File.separatorChar));
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Failed to create " + dir);
+
+        for (Map.Entry<String, Class<?>> e : outers_.entrySet()) {
+            Descriptors.FileDescriptor file =
+                    (Descriptors.FileDescriptor)e.getValue().getMethod("getDescriptor").invoke(null);
+            String name = names_.get(e.getKey());
+            write(new File(dir, name + "Data.java"), data(file, name));
+            write(new File(dir, name + "Codec.java"), codec(file, name));
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    // ==== names
+
+    // protoc's UnderscoresToCamelCase, so that accessor names match
+    static String camel(String name, boolean capFirst) {
+        StringBuilder sb = new StringBuilder();
+        boolean capNext = capFirst;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                sb.append(capNext ? Character.toUpperCase(c) : c);
+                capNext = false;
+            } else if (c >= 'A' && c <= 'Z') {
+                sb.append(i == 0 && !capFirst ? Character.toLowerCase(c) : c);
+                capNext = false;
+            } else if (c >= '0' && c <= '9') {
+                sb.append(c);
+                capNext = true;
+            } else {
+                capNext = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String fieldName(Descriptors.FieldDescriptor f) {
+        String name = camel(f.getName(), false);
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+
+    private static String accessor(Descriptors.FieldDescriptor f) {
+        return camel(f.getName(), true);
+    }
+
+    // Outer.Parent.Child of a nested type
+    private static String path(Descriptors.Descriptor d) {
+        return d.getContainingType() != null ? path(d.getContainingType()) + "." + d.getName() : d.getName();
+    }
+
+    private static String path(Descriptors.EnumDescriptor d) {
+        return d.getContainingType() != null ? path(d.getContainingType()) + "." + d.getName() : d.getName();
+    }
+
+    private Class<?> outer(Descriptors.FileDescriptor file) {
+        Class<?> outer = outers_.get(file.getName());
+        if (outer == null)
+            throw new IllegalArgumentException(file.getName() + " is used but not generated, add its outer class");
+        return outer;
+    }
+
+    private String protoType(Descriptors.Descriptor d) {
+        return outer(d.getFile()).getCanonicalName() + "." + path(d);
+    }
+
+    private String pojoType(Descriptors.Descriptor d) {
+        outer(d.getFile());
+        return names_.get(d.getFile().getName()) + "Data." + path(d);
+    }
+
+    private static boolean isMap(Descriptors.FieldDescriptor f) {
+        return f.isMapField();
+    }
+
+    private static boolean isOneof(Descriptors.FieldDescriptor f) {
+        return f.getContainingOneof() != null;
+    }
+
+    private static Descriptors.FieldDescriptor mapKey(Descriptors.FieldDescriptor f) {
+        return f.getMessageType().findFieldByNumber(1);
+    }
+
+    private static Descriptors.FieldDescriptor mapValue(Descriptors.FieldDescriptor f) {
+        return f.getMessageType().findFieldByNumber(2);
+    }
+
+    // POJO type of a single value of the field
+    private String valueType(Descriptors.FieldDescriptor f, boolean boxed) {
+        switch (f.getJavaType()) {
+            case INT: return boxed ? "Integer" : "int";
+            case LONG: return boxed ? "Long" : "long";
+            case FLOAT: return boxed ? "Float" : "float";
+            case DOUBLE: return boxed ? "Double" : "double";
+            case BOOLEAN: return boxed ? "Boolean" : "boolean";
+            case STRING: return "String";
+            case BYTE_STRING: return "byte[]";
+            case ENUM: return boxed ? "Integer" : "int";
+            case MESSAGE: return pojoType(f.getMessageType());
+            default: throw new IllegalArgumentException("Unsupported type of " + f.getFullName());
+        }
+    }
+
+    private String fieldType(Descriptors.FieldDescriptor f) {
+        if (isMap(f))
+            return "java.util.Map<" + valueType(mapKey(f), true) + ", " + valueType(mapValue(f), true) + ">";
+        if (f.isRepeated())
+            return "java.util.List<" + valueType(f, true) + ">";
+        return valueType(f, isOneof(f));
+    }
+
+    // ==== Data
+
+    private String data(Descriptors.FileDescriptor file, String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(package_).append(";\n\n");
+        sb.append("// Generated by CodecGenerator from ").append(file.getName()).append(", do not edit.\n");
+        sb.append("public final class ").append(name).append("Data {\n");
+        sb.append("    private ").append(name).append("Data() {\n    }\n");
+        for (Descriptors.EnumDescriptor e : file.getEnumTypes())
+            enumConstants(sb, e, "    ");
+        for (Descriptors.Descriptor d : file.getMessageTypes())
+            pojo(sb, d, "    ");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void enumConstants(StringBuilder sb, Descriptors.EnumDescriptor e, String indent) {
+        sb.append("\n").append(indent).append("public static final class ").append(e.getName()).append(" {\n");
+        sb.append(indent).append("    private ").append(e.getName()).append("() {\n");
+        sb.append(indent).append("    }\n\n");
+        for (Descriptors.EnumValueDescriptor v : e.getValues()) {
+            sb.append(indent).append("    public static final int ").append(v.getName())
+                    .append(" = ").append(v.getNumber()).append(";\n");
+        }
+        sb.append(indent).append("}\n");
+    }
+
+    private void pojo(StringBuilder sb, Descriptors.Descriptor d, String indent) {
+        if (d.getOptions().getMapEntry())
+            return;
+
+        sb.append("\n").append(indent).append("public static final class ").append(d.getName()).append(" {\n");
+        for (Descriptors.FieldDescriptor f : d.getFields()) {
+            sb.append(indent).append("    public ").append(fieldType(f)).append(" ")
+                    .append(fieldName(f)).append(";\n");
+        }
+        for (Descriptors.EnumDescriptor e : d.getEnumTypes())
+            enumConstants(sb, e, indent + "    ");
+        for (Descriptors.Descriptor n : d.getNestedTypes())
+            pojo(sb, n, indent + "    ");
+        sb.append(indent).append("}\n");
+    }
+
+    // ==== Codec
+
+    private String codec(Descriptors.FileDescriptor file, String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(package_).append(";\n\n");
+        sb.append("import com.google.protobuf.ByteString;\n");
+        sb.append("import com.google.protobuf.UnsafeByteOperations;\n\n");
+        sb.append("// Generated by CodecGenerator from ").append(file.getName()).append(", do not edit.\n");
+        sb.append("public final class ").append(name).append("Codec {\n");
+        sb.append("    private ").append(name).append("Codec() {\n    }\n\n");
+        sb.append("    // HashMap capacity that holds n entries without rehashing\n");
+        sb.append("    private static int capacity(int n) {\n");
+        sb.append("        return n < 3 ? n + 1 : (int)(n / 0.75f) + 1;\n");
+        sb.append("    }\n\n");
+        sb.append("    private static volatile boolean wrapBytes_;\n\n");
+        sb.append("    // same as Codec.setWrapBytes, byte fields are wrapped instead of\n");
+        sb.append("    // copied, the arrays must not be modified until the call returns\n");
+        sb.append("    public static void setWrapBytes(boolean wrap) {\n");
+        sb.append("        wrapBytes_ = wrap;\n");
+        sb.append("    }\n\n");
+        sb.append("    private static ByteString bytes(byte[] b) {\n");
+        sb.append("        return wrapBytes_ ? UnsafeByteOperations.unsafeWrap(b) : ByteString.copyFrom(b);\n");
+        sb.append("    }\n");
+        for (Descriptors.Descriptor d : file.getMessageTypes())
+            messageCodec(sb, d);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void messageCodec(StringBuilder sb, Descriptors.Descriptor d) {
+        if (d.getOptions().getMapEntry())
+            return;
+
+        encoder(sb, d);
+        decoder(sb, d);
+        for (Descriptors.Descriptor n : d.getNestedTypes())
+            messageCodec(sb, n);
+    }
+
+    // expression converting POJO value v of the field to protobuf
+    private String toProto(Descriptors.FieldDescriptor f, String v) {
+        switch (f.getJavaType()) {
+            case BYTE_STRING: return "bytes(" + v + ")";
+            case MESSAGE: return "encode(" + v + ")";
+            default: return v;
+        }
+    }
+
+    // expression converting protobuf value v of the field to POJO,
+    // enums are read with the *Value accessors already
+    private String fromProto(Descriptors.FieldDescriptor f, String v) {
+        switch (f.getJavaType()) {
+            case BYTE_STRING: return v + ".toByteArray()";
+            case MESSAGE: return "decode(" + v + ")";
+            default: return v;
+        }
+    }
+
+    private static boolean isObject(Descriptors.FieldDescriptor f) {
+        switch (f.getJavaType()) {
+            case STRING:
+            case BYTE_STRING:
+            case MESSAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String defaultCheck(Descriptors.FieldDescriptor f, String v) {
+        switch (f.getJavaType()) {
+            case BOOLEAN: return v;
+            case STRING: return v + " != null && !" + v + ".isEmpty()";
+            case BYTE_STRING: return v + " != null && " + v + ".length != 0";
+            case MESSAGE: return v + " != null";
+            default: return v + " != 0";
+        }
+    }
+
+    private void encoder(StringBuilder sb, Descriptors.Descriptor d) {
+        String proto = protoType(d);
+        sb.append("\n    public static ").append(proto).append(" encode(").append(pojoType(d)).append(" r) {\n");
+        sb.append("        ").append(proto).append(".Builder b = ").append(proto).append(".newBuilder();\n");
+        for (Descriptors.FieldDescriptor f : d.getFields()) {
+            String v = "r." + fieldName(f);
+            String a = accessor(f);
+            if (isMap(f)) {
+                Descriptors.FieldDescriptor key = mapKey(f);
+                Descriptors.FieldDescriptor value = mapValue(f);
+                String put = value.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM
+                        ? "put" + a + "Value" : "put" + a;
+                sb.append("        if (").append(v).append(" != null) {\n");
+                sb.append("            for (java.util.Map.Entry<").append(valueType(key, true)).append(", ")
+                        .append(valueType(value, true)).append("> e : ").append(v).append(".entrySet()) {\n");
+                if (isObject(value) || key.getJavaType() == Descriptors.FieldDescriptor.JavaType.STRING)
+                    sb.append("                if (e.getKey() != null && e.getValue() != null)\n    ");
+                sb.append("                b.").append(put).append("(e.getKey(), ")
+                        .append(toProto(value, "e.getValue()")).append(");\n");
+                sb.append("            }\n");
+                sb.append("        }\n");
+            } else if (f.isRepeated()) {
+                String add = f.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM
+                        ? "add" + a + "Value" : "add" + a;
+                sb.append("        if (").append(v).append(" != null) {\n");
+                sb.append("            for (").append(valueType(f, true)).append(" v : ").append(v).append(") {\n");
+                sb.append("                if (v != null)\n");
+                sb.append("                    b.").append(add).append("(").append(toProto(f, "v")).append(");\n");
+                sb.append("            }\n");
+                sb.append("        }\n");
+            } else {
+                String set = f.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM
+                        ? "set" + a + "Value" : "set" + a;
+                // a set oneof member is written even if it's default
+                String check = isOneof(f) ? v + " != null" : defaultCheck(f, v);
+                sb.append("        if (").append(check).append(")\n");
+                sb.append("            b.").append(set).append("(").append(toProto(f, v)).append(");\n");
+            }
+        }
+        sb.append("        return b.build();\n");
+        sb.append("    }\n");
+    }
+
+    private void decoder(StringBuilder sb, Descriptors.Descriptor d) {
+        String proto = protoType(d);
+        String pojo = pojoType(d);
+        sb.append("\n    public static ").append(pojo).append(" decode(").append(proto).append(" m) {\n");
+        sb.append("        ").append(pojo).append(" r = new ").append(pojo).append("();\n");
+        for (Descriptors.FieldDescriptor f : d.getFields()) {
+            String v = "r." + fieldName(f);
+            String a = accessor(f);
+            boolean isEnum = f.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM;
+            if (isMap(f)) {
+                Descriptors.FieldDescriptor key = mapKey(f);
+                Descriptors.FieldDescriptor value = mapValue(f);
+                boolean enumValue = value.getJavaType() == Descriptors.FieldDescriptor.JavaType.ENUM;
+                String protoValue = enumValue ? "Integer" : (value.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+                        ? protoType(value.getMessageType())
+                        : (value.getJavaType() == Descriptors.FieldDescriptor.JavaType.BYTE_STRING
+                                ? "ByteString" : valueType(value, true)));
+                sb.append("        ").append(v).append(" = new java.util.HashMap<>(capacity(m.get")
+                        .append(a).append("Count()));\n");
+                sb.append("        for (java.util.Map.Entry<").append(valueType(key, true)).append(", ")
+                        .append(protoValue).append("> e : m.get").append(a).append(enumValue ? "ValueMap" : "Map")
+                        .append("().entrySet())\n");
+                sb.append("            ").append(v).append(".put(e.getKey(), ")
+                        .append(fromProto(value, "e.getValue()")).append(");\n");
+            } else if (f.isRepeated()) {
+                String get = "m.get" + a + (isEnum ? "Value" : "") + "(i)";
+                sb.append("        {\n");
+                sb.append("            int n = m.get").append(a).append("Count();\n");
+                sb.append("            ").append(v).append(" = new java.util.ArrayList<>(n);\n");
+                sb.append("            for (int i = 0; i < n; i++)\n");
+                sb.append("                ").append(v).append(".add(").append(fromProto(f, get)).append(");\n");
+                sb.append("        }\n");
+            } else {
+                String get = "m.get" + a + (isEnum ? "Value" : "") + "()";
+                if (isOneof(f)) {
+                    Descriptors.OneofDescriptor o = f.getContainingOneof();
+                    String oneof = camel(o.getName(), true);
+                    sb.append("        if (m.get").append(oneof).append("Case() == ").append(proto).append(".")
+                            .append(oneof).append("Case.").append(f.getName().toUpperCase()).append(")\n    ");
+                } else if (f.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                    sb.append("        if (m.has").append(a).append("())\n    ");
+                }
+                sb.append("        ").append(v).append(" = ").append(fromProto(f, get)).append(";\n");
+            }
+        }
+        sb.append("        return r;\n");
+        sb.append("    }\n");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: CodecGenerator <out dir> <java package> <outer class>...");
+            System.exit(1);
+        }
+
+        CodecGenerator g = new CodecGenerator(args[1]);
+        for (int i = 2; i < args.length; i++)
+            g.add(Class.forName(args[i]));
+        g.generate(new File(args[0]));
+    }
+}
@@ -0,0 +1,192 @@
+package org.lndroid.lnd.daemon;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-process stand-in for lnd, answers every call with canned
+// protobuf bytes after a configurable delay. Plug it in through
+// LightningDaemon.Init.transport to load-test the wrapper stack
+// on a plain JVM, without the Go daemon and without a device.
+//
+// Methods without a canned reply get an empty message, which
+// parses to the default instance of any response type.
+// Server-streaming methods (subscribe*, openChannel, closeChannel)
+// repeat their reply every streamInterval ms, streamCount times
+// (0 - until the process exits), and then send EOF.
+// Bidirectional streams reply to every sent message with the
+// canned reply of the stream method, or echo the request if
+// no reply is set.
+public class FakeLightningTransport implements ILightningTransport {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private Map<String, byte[]> replies_ = new ConcurrentHashMap<>();
+    private volatile long minLatencyMs_;
+    private volatile long maxLatencyMs_;
+    private volatile double errorRate_;
+    private volatile long streamIntervalMs_ = 1000;
+    private volatile int streamCount_ = 1;
+
+    private final Random random_ = new Random();
+    private final AtomicInteger calls_ = new AtomicInteger();
+    private final ScheduledExecutorService executor_;
+
+    public FakeLightningTransport() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public FakeLightningTransport(int threads) {
+        executor_ = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger count_ = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FakeLightningTransport-" + count_.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // canned reply for a method, bytes of a serialized
+    // response message
+    public FakeLightningTransport setReply(String method, byte[] reply) {
+        replies_.put(method, reply);
+        return this;
+    }
+
+    public FakeLightningTransport setReply(String method, com.google.protobuf.Message reply) {
+        return setReply(method, reply.toByteArray());
+    }
+
+    // each reply is delayed by a uniformly distributed
+    // value in [minMs, maxMs]
+    public FakeLightningTransport setLatency(long minMs, long maxMs) {
+        minLatencyMs_ = minMs;
+        maxLatencyMs_ = Math.max(minMs, maxMs);
+        return this;
+    }
+
+    // share of calls and stream messages failing with an error, 0..1
+    public FakeLightningTransport setErrorRate(double rate) {
+        errorRate_ = rate;
+        return this;
+    }
+
+    public FakeLightningTransport setStreamCadence(long intervalMs, int count) {
+        streamIntervalMs_ = intervalMs;
+        streamCount_ = count;
+        return this;
+    }
+
+    // number of calls and stream messages served so far
+    public int callCount() {
+        return calls_.get();
+    }
+
+    public void shutdown() {
+        executor_.shutdownNow();
+    }
+
+    private long latency() {
+        long spread = maxLatencyMs_ - minLatencyMs_;
+        if (spread <= 0)
+            return minLatencyMs_;
+        return minLatencyMs_ + (long)(random_.nextDouble() * (spread + 1));
+    }
+
+    private boolean fail() {
+        return errorRate_ > 0 && random_.nextDouble() < errorRate_;
+    }
+
+    private byte[] reply(String method, byte[] def) {
+        byte[] r = replies_.get(method);
+        return r != null ? r : def;
+    }
+
+    private void reply(final String method, final byte[] bytes, final Callback cb, long delay) {
+        executor_.schedule(new Runnable() {
+            @Override
+            public void run() {
+                calls_.incrementAndGet();
+                if (fail())
+                    cb.onError(new LightningException(-1, "Fake error in " + method));
+                else
+                    cb.onResponse(bytes);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void start(String args, final Callback unlockReadyCb, final Callback rpcReadyCb) throws Exception {
+        executor_.schedule(new Runnable() {
+            @Override
+            public void run() {
+                unlockReadyCb.onResponse(EMPTY);
+                rpcReadyCb.onResponse(EMPTY);
+            }
+        }, latency(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void call(final String method, byte[] data, final Callback cb) throws Exception {
+        final byte[] bytes = reply(method, EMPTY);
+        if (!LightningDaemon.isServerStream(method)) {
+            reply(method, bytes, cb, latency());
+            return;
+        }
+
+        executor_.schedule(new Runnable() {
+            private int sent_;
+
+            @Override
+            public void run() {
+                calls_.incrementAndGet();
+                if (fail()) {
+                    cb.onError(new LightningException(-1, "Fake error in " + method));
+                    return;
+                }
+
+                cb.onResponse(bytes);
+                sent_++;
+                if (streamCount_ > 0 && sent_ >= streamCount_)
+                    cb.onError(new LightningException(-1, "EOF"));
+                else
+                    executor_.schedule(this, streamIntervalMs_, TimeUnit.MILLISECONDS);
+            }
+        }, latency(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public SendStream openStream(final String method, final Callback cb) throws Exception {
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        return new SendStream() {
+            @Override
+            public void send(byte[] bytes) throws Exception {
+                if (stopped.get())
+                    throw new LightningException(-1, "Stream stopped");
+                reply(method, reply(method, bytes), cb, latency());
+            }
+
+            @Override
+            public void stop() throws Exception {
+                if (!stopped.compareAndSet(false, true))
+                    return;
+                executor_.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        cb.onError(new LightningException(-1, "EOF"));
+                    }
+                    // after replies to everything sent before stop
+                }, maxLatencyMs_ + 1, TimeUnit.MILLISECONDS);
+            }
+        };
+    }
+}
@@ -0,0 +1,181 @@
+package org.lndroid.lnd.daemon;
+
+import com.google.protobuf.ByteString;
+
+import org.lndroid.lnd.data.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// In-process cache of graph data: nodes by pubkey, channel edges
+// by chanId, and recent queryRoutes replies by request. Entries
+// expire after ttl, and once older than half of ttl the caller
+// is asked to refresh them in background while the cached value
+// is still served. Maps are LRU bounded by maxSize.
+// Cached objects are shared by all callers and must not be modified.
+// Thread-safe.
+class GraphCache {
+
+    private static class Entry<T> {
+        T value;
+        long time;
+        boolean refreshing;
+        // node with channels
+        boolean full;
+
+        Entry(T value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private int maxSize_;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            maxSize_ = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize_;
+        }
+    }
+
+    private static final int MAX_ROUTES = 64;
+
+    private long ttlMs_;
+    private long routesTtlMs_;
+    private LruMap<String, Entry<Data.NodeInfo>> nodes_;
+    private LruMap<Long, Entry<Data.ChannelEdge>> edges_;
+    private LruMap<ByteString, Entry<Data.QueryRoutesResponse>> routes_;
+
+    GraphCache(int maxSize, long ttlMs, long routesTtlMs) {
+        ttlMs_ = ttlMs;
+        routesTtlMs_ = routesTtlMs;
+        nodes_ = new LruMap<>(maxSize);
+        edges_ = new LruMap<>(maxSize);
+        routes_ = new LruMap<>(MAX_ROUTES);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private <K, T> T get(Map<K, Entry<T>> map, K key, long ttl) {
+        Entry<T> e = map.get(key);
+        if (e == null)
+            return null;
+        if (now() - e.time > ttl) {
+            map.remove(key);
+            return null;
+        }
+        return e.value;
+    }
+
+    // node with channels also serves requests without channels
+    synchronized Data.NodeInfo getNode(Data.NodeInfoRequest r) {
+        Data.NodeInfo n = get(nodes_, r.pubKey, ttlMs_);
+        if (n != null && r.includeChannels && !nodes_.get(r.pubKey).full)
+            return null;
+        return n;
+    }
+
+    // request to refresh the node in background with, null if
+    // it's fresh or already refreshing. A node with channels is
+    // refreshed with channels, otherwise putNode would keep it.
+    // The caller must finish with putNode or refreshFailed.
+    synchronized Data.NodeInfoRequest startRefresh(Data.NodeInfoRequest r) {
+        Entry<Data.NodeInfo> e = nodes_.get(r.pubKey);
+        if (e == null || e.refreshing || now() - e.time < ttlMs_ / 2)
+            return null;
+        e.refreshing = true;
+
+        Data.NodeInfoRequest req = new Data.NodeInfoRequest();
+        req.pubKey = r.pubKey;
+        req.includeChannels = e.full;
+        return req;
+    }
+
+    // the next request may start a refresh again
+    synchronized void refreshFailed(Data.NodeInfoRequest r) {
+        Entry<Data.NodeInfo> e = nodes_.get(r.pubKey);
+        if (e != null)
+            e.refreshing = false;
+    }
+
+    synchronized void putNode(Data.NodeInfoRequest r, Data.NodeInfo n) {
+        long now = now();
+        Entry<Data.NodeInfo> e = nodes_.get(r.pubKey);
+        // don't replace a fresh node with channels by one without
+        if (!r.includeChannels && e != null && e.full && now - e.time <= ttlMs_) {
+            e.refreshing = false;
+            return;
+        }
+
+        e = new Entry<>(n, now);
+        e.full = r.includeChannels;
+        nodes_.put(r.pubKey, e);
+        if (r.includeChannels && n.channels != null) {
+            for (Data.ChannelEdge c : n.channels)
+                edges_.put(c.channelId, new Entry<>(c, now));
+        }
+    }
+
+    synchronized Data.ChannelEdge getEdge(long chanId) {
+        return get(edges_, chanId, ttlMs_);
+    }
+
+    synchronized Data.QueryRoutesResponse getRoutes(ByteString req) {
+        if (routesTtlMs_ <= 0)
+            return null;
+        return get(routes_, req, routesTtlMs_);
+    }
+
+    synchronized void putRoutes(ByteString req, Data.QueryRoutesResponse r) {
+        if (routesTtlMs_ > 0)
+            routes_.put(req, new Entry<>(r, now()));
+    }
+
+    private void evictNode(String pubkey) {
+        if (pubkey == null)
+            return;
+
+        Entry<Data.NodeInfo> e = nodes_.remove(pubkey);
+        if (e != null && e.full && e.value.channels != null) {
+            for (Data.ChannelEdge c : e.value.channels)
+                edges_.remove(c.channelId);
+        }
+    }
+
+    private void evictEdge(long chanId) {
+        Entry<Data.ChannelEdge> e = edges_.remove(chanId);
+        if (e != null) {
+            evictNode(e.value.node1Pubkey);
+            evictNode(e.value.node2Pubkey);
+        }
+    }
+
+    synchronized void onChannelEvent(Data.ChannelEventUpdate u) {
+        // our channels changed, so do the routes
+        routes_.clear();
+
+        if (u.openChannel != null) {
+            evictNode(u.openChannel.remotePubkey);
+            evictEdge(u.openChannel.chanId);
+        }
+        if (u.closedChannel != null) {
+            evictNode(u.closedChannel.remotePubkey);
+            evictEdge(u.closedChannel.chanId);
+        }
+    }
+
+    synchronized void clear() {
+        nodes_.clear();
+        edges_.clear();
+        routes_.clear();
+    }
+}
@@ -0,0 +1,12 @@
+package org.lndroid.lnd.daemon;
+
+import java.util.List;
+
+// Stream callback that accepts coalesced replies, see
+// LightningDaemon.ClientOptions.batchWindowMs. Replies that
+// arrived within a batch window are passed to onResponses in
+// order, errors are still delivered one by one with onError.
+public interface ILightningBatchCallback<ResponseType> extends ILightningCallback<ResponseType> {
+    // the list is reused by the client, copy it to keep the replies
+    void onResponses(List<ResponseType> r);
+}
@@ -1,5 +1,6 @@
 package org.lndroid.lnd.daemon;
 
+import org.lndroid.lnd.data.ChannelSet;
 import org.lndroid.lnd.data.Data;
 
 public interface ILightningClient {
@@ -20,16 +21,17 @@ public interface ILightningClient {
     void connectPeer(Data.ConnectPeerRequest r, ILightningCallback<Data.ConnectPeerResponse> cb);
     void disconnectPeer(lnrpc.Rpc.DisconnectPeerRequest r, ILightningCallback<lnrpc.Rpc.DisconnectPeerResponse> cb);
     void listPeers(lnrpc.Rpc.ListPeersRequest r, ILightningCallback<lnrpc.Rpc.ListPeersResponse> cb);
-    void subscribePeerEventsStream(lnrpc.Rpc.PeerEventSubscription r, ILightningCallback<lnrpc.Rpc.PeerEvent> cb);
+    ILightningSubscription subscribePeerEventsStream(lnrpc.Rpc.PeerEventSubscription r, ILightningCallback<lnrpc.Rpc.PeerEvent> cb);
 
     void listChannels(Data.ListChannelsRequest r, ILightningCallback<Data.ListChannelsResponse> cb);
+    void listChannelSet(Data.ListChannelsRequest r, ILightningCallback<ChannelSet> cb);
     void openChannelStream(Data.OpenChannelRequest r, ILightningCallback<Data.OpenStatusUpdate> cb);
     void openChannel(Data.OpenChannelRequest r, ILightningCallback<Data.ChannelPoint> cb);
     void closeChannelStream(Data.CloseChannelRequest r, ILightningCallback<Data.CloseStatusUpdate> cb);
     void pendingChannels(lnrpc.Rpc.PendingChannelsRequest r, ILightningCallback<lnrpc.Rpc.PendingChannelsResponse> cb);
     void closedChannels(lnrpc.Rpc.ClosedChannelsRequest r, ILightningCallback<lnrpc.Rpc.ClosedChannelsResponse> cb);
 
-    void subscribeTransactionsStream(Data.GetTransactionsRequest r, ILightningCallback<Data.Transaction> cb);
+    ILightningSubscription subscribeTransactionsStream(Data.GetTransactionsRequest r, ILightningCallback<Data.Transaction> cb);
     void getTransactions(Data.GetTransactionsRequest r, ILightningCallback<Data.TransactionDetails> cb);
     void estimateFee(Data.EstimateFeeRequest r, ILightningCallback<Data.EstimateFeeResponse> cb);
     void sendCoins(Data.SendCoinsRequest r, ILightningCallback<Data.SendCoinsResponse> cb);
@@ -45,10 +47,14 @@ public interface ILightningClient {
     // send single payment
     void sendPayment(Data.SendRequest r, ILightningCallback<Data.SendResponse> cb);
     void listPayments(Data.ListPaymentsRequest r, ILightningCallback<Data.ListPaymentsResponse> cb);
+    // chunks of a page of payments, the stream ends after the chunk with 'last' set,
+    // chunks after the first are decoded on a daemon thread once the previous one was
+    // delivered, cancel the subscription to drop the rest of the page
+    ILightningSubscription listPaymentsPagedStream(Data.ListPaymentsPageRequest r, ILightningCallback<Data.ListPaymentsChunk> cb);
     void deleteAllPayments(Data.DeleteAllPaymentsRequest r, ILightningCallback<Data.DeleteAllPaymentsResponse> cb);
 //    void registerBlockEpochNtfnStream(Data.BlockEpoch r, ILightningCallback<Data.BlockEpoch> cb);
-    void subscribeInvoicesStream(Data.InvoiceSubscription r, ILightningCallback<Data.Invoice> cb);
-    void subscribeChannelEventsStream(Data.ChannelEventSubscription r, ILightningCallback<Data.ChannelEventUpdate> cb);
+    ILightningSubscription subscribeInvoicesStream(Data.InvoiceSubscription r, ILightningCallback<Data.Invoice> cb);
+    ILightningSubscription subscribeChannelEventsStream(Data.ChannelEventSubscription r, ILightningCallback<Data.ChannelEventUpdate> cb);
     void getNodeInfo(Data.NodeInfoRequest r, ILightningCallback<Data.NodeInfo> cb);
 
     void queryRoutes(Data.QueryRoutesRequest r, ILightningCallback<Data.QueryRoutesResponse> cb);
@@ -57,7 +63,7 @@ public interface ILightningClient {
             ILightningCallback<Data.SendResponse> cb);
     void sendToRoute(Data.SendToRouteRequest r, ILightningCallback<Data.SendResponse> cb);
 
-    void subscribeChannelBackupsStream(Data.ChannelBackupSubscription r, ILightningCallback<Data.ChanBackupSnapshot> cb);
+    ILightningSubscription subscribeChannelBackupsStream(Data.ChannelBackupSubscription r, ILightningCallback<Data.ChanBackupSnapshot> cb);
     void exportAllChannelBackups(Data.ChanBackupExportRequest r, ILightningCallback<Data.ChanBackupSnapshot> cb);
 
     void signMessage(lnrpc.Rpc.SignMessageRequest r, ILightningCallback<lnrpc.Rpc.SignMessageResponse> cb);
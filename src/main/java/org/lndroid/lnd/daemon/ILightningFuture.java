@@ -0,0 +1,32 @@
+package org.lndroid.lnd.daemon;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Future returned by LightningDaemon's *Future methods.
+// Besides blocking get(), results can be consumed with callbacks
+// executed on the thread that completes the future (usually
+// a daemon thread, so callbacks should be quick), and futures
+// can be chained without parking a thread per call.
+public interface ILightningFuture<ResponseType> extends Future<ResponseType> {
+
+    interface Continuation<ResponseType, NextType> {
+        // start the next call, return null to complete
+        // the chained future with a null result
+        ILightningFuture<NextType> onResponse(ResponseType r) throws LightningException;
+    }
+
+    // cb is called once the future completes, immediately
+    // if it's already complete, never if it's cancelled,
+    // futures from then() and allOf() fail with -5 then
+    ILightningFuture<ResponseType> addCallback(ILightningCallback<ResponseType> cb);
+
+    // when this future completes, start the next call,
+    // errors are propagated to the returned future, cancelling
+    // it cancels the whole chain
+    <NextType> ILightningFuture<NextType> then(Continuation<ResponseType, NextType> c);
+
+    // like get(timeout, unit), but cancels the future on timeout,
+    // so that callbacks and the late reply are released
+    ResponseType getOrCancel(long timeout, TimeUnit unit) throws LightningException;
+}
@@ -0,0 +1,13 @@
+package org.lndroid.lnd.daemon;
+
+// Handle of a paged reply: the first chunk is delivered when
+// the reply arrives, each next one when the consumer asks for
+// it, so that a big page isn't decoded ahead of the consumer.
+public interface ILightningPager {
+    // decode and deliver the next chunk on a daemon thread, or as
+    // soon as the reply arrives, no-op after the last one, returns
+    // right away so it may be called on the UI thread
+    void next();
+    // no chunks are delivered after this, safe to call more than once
+    void cancel();
+}
@@ -3,8 +3,17 @@ package org.lndroid.lnd.daemon;
 public interface ILightningStream<RequestType, ResponseType> {
     // set the reply callback
     void setRecvCallback(ILightningCallback<ResponseType> cb);
-    // send request
+    // send request, if maxInFlight requests are active
+    // it is queued and sent when replies arrive
     void send(RequestType r) throws LightningException;
+    // send request if the in-flight window has room,
+    // returns false and drops the request otherwise
+    boolean trySend(RequestType r) throws LightningException;
+    // like send, the future is resolved with r when it
+    // leaves the queue and is passed to lnd
+    ILightningFuture<RequestType> sendAsync(RequestType r) throws LightningException;
+    // max number of requests in flight, 0 - no limit
+    void setMaxInFlight(int max);
     // call after all requests were sent,
     // to signal that no more requests will come
     void done() throws LightningException;
@@ -20,4 +29,6 @@ public interface ILightningStream<RequestType, ResponseType> {
     int replyCount();
     // number of requests in flight
     int activeCount();
+    // number of requests queued locally
+    int queuedCount();
 }
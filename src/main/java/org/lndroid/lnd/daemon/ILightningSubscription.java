@@ -0,0 +1,10 @@
+package org.lndroid.lnd.daemon;
+
+// Handle of a receive-only (server-streaming) subscription.
+public interface ILightningSubscription {
+    // stop delivering events, no callbacks are made after this,
+    // safe to call more than once
+    void cancel();
+    // false after cancel or when the subscription got an error
+    boolean isValid();
+}
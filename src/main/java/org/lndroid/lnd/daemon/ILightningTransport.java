@@ -0,0 +1,29 @@
+package org.lndroid.lnd.daemon;
+
+// Byte-level link between LightningDaemon and lnd. Requests
+// and replies are serialized protobuf messages, methods are
+// named after lnd's rpc methods (lowerCamelCase, as in Lndmobile).
+// The default transport talks to the embedded lnd through Lndmobile,
+// FakeLightningTransport can be plugged in through
+// LightningDaemon.Init.transport to run without lnd.
+public interface ILightningTransport {
+
+    interface Callback {
+        void onError(Exception e);
+        void onResponse(byte[] bytes);
+    }
+
+    interface SendStream {
+        void send(byte[] bytes) throws Exception;
+        void stop() throws Exception;
+    }
+
+    void start(String args, Callback unlockReadyCb, Callback rpcReadyCb) throws Exception;
+
+    // unary and server-streaming calls, server-streaming methods
+    // call cb.onResponse for every message
+    void call(String method, byte[] data, Callback cb) throws Exception;
+
+    // bidirectional streams
+    SendStream openStream(String method, Callback cb) throws Exception;
+}
@@ -0,0 +1,360 @@
+package org.lndroid.lnd.daemon;
+
+import android.util.Log;
+
+import org.lndroid.lnd.data.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+// Invoice subscription that survives errors: after onError it
+// resubscribes with exponential backoff, passing the last seen
+// add/settle indices so that lnd replays what was missed, and
+// drops the replayed invoices that were already delivered.
+// Every added invoice and every settlement is delivered once.
+//
+// The delivered state is described by a Checkpoint, which is
+// passed to onCheckpoint after each delivered invoice. Persist
+// it and pass it to the constructor on the next start to resume
+// without a full listInvoices scan. If the app dies between
+// onInvoice and persisting the checkpoint, that invoice is
+// delivered again on the next start.
+//
+// lnd replays nothing for a zero index, so while either index is
+// zero (nothing added or nothing settled yet) every subscription is
+// preceded by a listInvoices scan, which delivers what was missed
+// and learns the current indices.
+//
+// Invoices are delivered in lnd's order: the added backlog by add
+// index, then settled backlog by settle index, then new events.
+// Updates of other states (accepted, canceled) are not replayed
+// by lnd and are passed through as they come.
+// Listener is called on daemon threads, one call at a time.
+public class InvoiceFeed {
+
+    private static final String TAG = "InvoiceFeed";
+
+    // invoices per listInvoices call of the scan
+    private static final int SCAN_PAGE = 1000;
+
+    public static class Options {
+        public long initialBackoffMs = 1000;
+        public long maxBackoffMs = 60000;
+    }
+
+    public static class Checkpoint {
+        // highest delivered add index
+        public long addIndex;
+        // all settlements up to this index were delivered
+        public long settleIndex;
+        // settlements above settleIndex that were delivered
+        // as part of the added backlog, null if none
+        public List<Long> settledAhead;
+
+        public Checkpoint() {
+        }
+
+        public Checkpoint(long addIndex, long settleIndex) {
+            this.addIndex = addIndex;
+            this.settleIndex = settleIndex;
+        }
+    }
+
+    public interface Listener {
+        void onInvoice(Data.Invoice invoice);
+        // persist to resume from here on the next start
+        void onCheckpoint(Checkpoint cp);
+        // subscription failed, will resubscribe after delayMs
+        void onRetry(int code, String message, long delayMs);
+    }
+
+    private Options options_;
+    private Listener listener_;
+
+    // guarded by this
+    private long addIndex_;
+    private long settleIndex_;
+    private TreeSet<Long> settledAhead_ = new TreeSet<>();
+    private ILightningSubscription subscription_;
+    private TimerWheel.Timeout retry_;
+    // bumped on every subscription to ignore stale callbacks
+    private int generation_;
+    private boolean started_;
+    private long backoffMs_;
+    // no checkpoint, the first scan only learns the indices
+    private boolean fromNow_;
+
+    public InvoiceFeed(Checkpoint cp, Listener listener) {
+        this(cp, new Options(), listener);
+    }
+
+    // cp may be null to only get invoices added and settled
+    // after start, the indices are then learned by a scan
+    public InvoiceFeed(Checkpoint cp, Options options, Listener listener) {
+        options_ = options;
+        listener_ = listener;
+        fromNow_ = cp == null;
+        if (cp != null) {
+            addIndex_ = cp.addIndex;
+            settleIndex_ = cp.settleIndex;
+            if (cp.settledAhead != null) {
+                for (Long i : cp.settledAhead) {
+                    if (i > settleIndex_)
+                        settledAhead_.add(i);
+                }
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (started_)
+            return;
+        started_ = true;
+        backoffMs_ = options_.initialBackoffMs;
+        subscribe();
+    }
+
+    public void stop() {
+        ILightningSubscription s;
+        synchronized (this) {
+            if (!started_)
+                return;
+            started_ = false;
+            generation_++;
+            if (retry_ != null) {
+                retry_.cancel();
+                retry_ = null;
+            }
+            s = subscription_;
+            subscription_ = null;
+        }
+        if (s != null)
+            s.cancel();
+    }
+
+    public synchronized boolean isStarted() {
+        return started_;
+    }
+
+    public synchronized Checkpoint checkpoint() {
+        Checkpoint cp = new Checkpoint(addIndex_, settleIndex_);
+        if (!settledAhead_.isEmpty())
+            cp.settledAhead = new ArrayList<>(settledAhead_);
+        return cp;
+    }
+
+    // invoices found by the scan
+    private static class Scan {
+        long maxAddIndex;
+        long maxSettleIndex;
+        // not delivered yet, in add index order
+        List<Data.Invoice> added = new ArrayList<>();
+        // settled after delivered as added
+        List<Data.Invoice> settled = new ArrayList<>();
+    }
+
+    private static boolean isSettled(Data.Invoice invoice) {
+        return invoice.state == Data.INVOICE_STATE_SETTLED && invoice.settleIndex > 0;
+    }
+
+    // guarded by this
+    private void subscribe() {
+        retry_ = null;
+        final int generation = ++generation_;
+
+        if (addIndex_ == 0 || settleIndex_ == 0)
+            scan(generation, 0, new Scan());
+        else
+            subscribe(generation);
+    }
+
+    // guarded by this
+    private void scan(final int generation, long offset, final Scan scan) {
+        Data.ListInvoiceRequest r = new Data.ListInvoiceRequest();
+        r.indexOffset = offset;
+        r.numMaxInvoices = SCAN_PAGE;
+        LightningDaemon.listInvoicesMT(r, new ILightningCallbackMT() {
+            @Override
+            public void onError(int code, String message) {
+                onSubscriptionError(generation, code, message);
+            }
+
+            @Override
+            public void onResponse(Object o) {
+                onScanPage(generation, scan, (Data.ListInvoiceResponse)o);
+            }
+        });
+    }
+
+    private synchronized void onScanPage(int generation, Scan scan, Data.ListInvoiceResponse r) {
+        if (generation != generation_)
+            return;
+
+        List<Data.Invoice> invoices = r.invoices != null ? r.invoices : Collections.<Data.Invoice>emptyList();
+        for (Data.Invoice invoice : invoices) {
+            scan.maxAddIndex = Math.max(scan.maxAddIndex, invoice.addIndex);
+            if (isSettled(invoice))
+                scan.maxSettleIndex = Math.max(scan.maxSettleIndex, invoice.settleIndex);
+            if (fromNow_)
+                continue;
+
+            if (invoice.addIndex > addIndex_)
+                scan.added.add(invoice);
+            else if (isSettled(invoice) && invoice.settleIndex > settleIndex_
+                    && !settledAhead_.contains(invoice.settleIndex))
+                scan.settled.add(invoice);
+        }
+
+        if (invoices.size() >= SCAN_PAGE) {
+            scan(generation, r.lastIndexOffset, scan);
+            return;
+        }
+
+        fromNow_ = false;
+
+        // added backlog by add index, as lnd would replay it
+        for (Data.Invoice invoice : scan.added) {
+            addIndex_ = invoice.addIndex;
+            if (isSettled(invoice) && invoice.settleIndex > settleIndex_)
+                settledAhead_.add(invoice.settleIndex);
+            deliver(invoice);
+        }
+
+        // then settled backlog by settle index
+        Collections.sort(scan.settled, new Comparator<Data.Invoice>() {
+            @Override
+            public int compare(Data.Invoice a, Data.Invoice b) {
+                return a.settleIndex < b.settleIndex ? -1 : (a.settleIndex == b.settleIndex ? 0 : 1);
+            }
+        });
+        for (Data.Invoice invoice : scan.settled) {
+            settleIndex_ = invoice.settleIndex;
+            while (!settledAhead_.isEmpty() && settledAhead_.first() < settleIndex_)
+                settledAhead_.pollFirst();
+            deliver(invoice);
+        }
+
+        // everything up to the last indices is delivered, zero
+        // means lnd has nothing of that kind yet
+        addIndex_ = Math.max(addIndex_, scan.maxAddIndex);
+        if (scan.maxSettleIndex > settleIndex_) {
+            settleIndex_ = scan.maxSettleIndex;
+            settledAhead_.headSet(settleIndex_, true).clear();
+        }
+
+        subscribe(generation);
+    }
+
+    // guarded by this
+    private void deliver(Data.Invoice invoice) {
+        listener_.onInvoice(invoice);
+        listener_.onCheckpoint(checkpoint());
+    }
+
+    // guarded by this
+    private void subscribe(final int generation) {
+        Data.InvoiceSubscription r = new Data.InvoiceSubscription();
+        r.addIndex = addIndex_;
+        r.settleIndex = settleIndex_;
+
+        // the callback might be called right away, on
+        // this thread, so it checks generation_ under
+        // the lock which we're holding here
+        ILightningSubscription s = LightningDaemon.subscribeInvoicesMT(r, new ILightningCallbackMT() {
+            @Override
+            public void onError(int code, String message) {
+                onSubscriptionError(generation, code, message);
+            }
+
+            @Override
+            public void onResponse(Object o) {
+                onSubscriptionInvoice(generation, (Data.Invoice)o);
+            }
+        });
+
+        if (generation == generation_)
+            subscription_ = s;
+    }
+
+    private synchronized void onSubscriptionError(int generation, int code, String message) {
+        if (generation != generation_)
+            return;
+
+        subscription_ = null;
+        generation_++;
+
+        final long delay = backoffMs_;
+        backoffMs_ = Math.min(backoffMs_ * 2, options_.maxBackoffMs);
+        Log.w(TAG, "subscription error " + code + " " + message + ", retry in " + delay + "ms");
+
+        // stop() or a restart bumps the generation
+        final int retryGeneration = generation_;
+        retry_ = LightningDaemon.timerWheel().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (InvoiceFeed.this) {
+                    if (started_ && generation_ == retryGeneration)
+                        subscribe();
+                }
+            }
+        }, delay);
+
+        listener_.onRetry(code, message, delay);
+    }
+
+    private synchronized void onSubscriptionInvoice(int generation, Data.Invoice invoice) {
+        if (generation != generation_)
+            return;
+
+        // subscription works
+        backoffMs_ = options_.initialBackoffMs;
+
+        if (accept(invoice))
+            deliver(invoice);
+    }
+
+    // guarded by this, updates indices, false if invoice was delivered already.
+    // Zero index means there was no backlog of that kind: the scan before
+    // subscribing found nothing added or settled.
+    private boolean accept(Data.Invoice invoice) {
+        final boolean settled = invoice.state == Data.INVOICE_STATE_SETTLED;
+
+        if (invoice.addIndex > addIndex_
+                && (addIndex_ != 0 || invoice.state == Data.INVOICE_STATE_OPEN)) {
+            // added backlog or a new invoice, both ordered by add index
+            addIndex_ = invoice.addIndex;
+            if (settled) {
+                if (settleIndex_ == 0) {
+                    // no settled backlog, later ones have higher indices
+                    settleIndex_ = invoice.settleIndex;
+                } else if (invoice.settleIndex > settleIndex_) {
+                    // the backlog has invoices in their current state, this
+                    // settlement will be replayed by the settled backlog
+                    settledAhead_.add(invoice.settleIndex);
+                }
+            }
+            return true;
+        }
+
+        if (settled) {
+            // settled backlog or a new settlement, both ordered by settle index
+            if (invoice.settleIndex <= settleIndex_)
+                return false;
+            settleIndex_ = invoice.settleIndex;
+            // ones below weren't replayed, forget them
+            while (!settledAhead_.isEmpty() && settledAhead_.first() < settleIndex_)
+                settledAhead_.pollFirst();
+            return !settledAhead_.remove(settleIndex_);
+        }
+
+        // replayed addition
+        if (invoice.state == Data.INVOICE_STATE_OPEN)
+            return false;
+
+        // accepted or canceled, never replayed
+        return true;
+    }
+}
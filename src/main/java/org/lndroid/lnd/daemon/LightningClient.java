@@ -4,10 +4,16 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
+import org.lndroid.lnd.data.ChannelSet;
 import org.lndroid.lnd.data.Data;
 
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LightningClient implements ILightningClient {
 
@@ -23,6 +29,17 @@ public class LightningClient implements ILightningClient {
         public static class RequestReplyStream<RequestType, ResponseType>
                 implements ILightningStream<RequestType, ResponseType> {
 
+            private static class Pending<RequestType> {
+                RequestType request;
+                // null for plain send
+                LightningFuture<RequestType> future;
+
+                Pending(RequestType r, LightningFuture<RequestType> f) {
+                    request = r;
+                    future = f;
+                }
+            }
+
             private Dispatcher parent_;
             private int id_;
             private ILightningCallback<ResponseType> callback_;
@@ -32,21 +49,41 @@ public class LightningClient implements ILightningClient {
             private boolean stream_;
             private boolean done_;
             private boolean error_;
-
-            RequestReplyStream(Dispatcher parent, int id) {
+            // no more replies expected
+            private boolean finished_;
+            // replies coalesced for ILightningBatchCallback
+            private List<ResponseType> batch_;
+            // server stream of a subscription, no sendStream_
+            private ILightningSubscription subscription_;
+            // 0 - no limit
+            private int maxInFlight_;
+            // sends beyond maxInFlight_
+            private ArrayDeque<Pending<RequestType>> queue_ = new ArrayDeque<>();
+            // null if metrics are off
+            private LightningMetrics.Rpc metrics_;
+
+            RequestReplyStream(Dispatcher parent, String label) {
                 parent_ = parent;
-                id_ = id;
-                parent_.streams_.put(id_, this);
+                id_ = parent_.streams_.add(this);
+                metrics_ = LightningMetrics.rpc(label);
             }
 
             int id() {
                 return id_;
             }
 
+            void finish() {
+                finished_ = true;
+            }
+
             void setSendStream(ILightningSendStream<RequestType> ss) {
                 sendStream_ = ss;
             }
 
+            void setSubscription(ILightningSubscription sub) {
+                subscription_ = sub;
+            }
+
             void setRecvCallback(ILightningCallback<ResponseType> cb, boolean stream) {
                 callback_ = cb;
                 stream_ = stream;
@@ -67,15 +104,46 @@ public class LightningClient implements ILightningClient {
                     replyCount_++;
 
                 // callback
-                if (code != 0)
+                if (code != 0) {
+                    failQueue(code, (String)obj);
                     callback_.onError(code, (String)obj);
-                else
+                } else {
                     callback_.onResponse((ResponseType)obj);
+                    drain();
+                }
+
+                checkDone();
+            }
 
+            @SuppressWarnings("unchecked")
+            void batchCallback(Object obj) {
+                if (batch_ == null)
+                    batch_ = new ArrayList<>();
+                batch_.add((ResponseType)obj);
+            }
+
+            boolean hasBatch() {
+                return batch_ != null && !batch_.isEmpty();
+            }
+
+            @SuppressWarnings("unchecked")
+            void flushBatch() {
+                if (!hasBatch())
+                    return;
+
+                replyCount_ += batch_.size();
+                ((ILightningBatchCallback<ResponseType>)callback_).onResponses(batch_);
+                batch_.clear();
+                drain();
+
+                checkDone();
+            }
+
+            private void checkDone() {
                 // stop if done and not stopped yet,
 		        // activeCount might be less than zero if we're
 		        // in 'reverse-stream' (like ChannelAcceptor)
-                if (done_ && activeCount() <= 0 && isValid() ) {
+                if (done_ && activeCount() <= 0 && queue_.isEmpty() && isValid() ) {
                     try {
                         cancel();
                     } catch (LightningException e) {
@@ -85,13 +153,88 @@ public class LightningClient implements ILightningClient {
                 }
             }
 
+            private boolean hasRoom() {
+                return maxInFlight_ <= 0
+                        || (queue_.isEmpty() && activeCount() < maxInFlight_);
+            }
+
+            private void sendNow(RequestType r) throws LightningException {
+                sendStream_.send(r);
+                requestCount_++;
+            }
+
+            // send queued requests while the window has room
+            private void drain() {
+                while (!queue_.isEmpty() && isValid()
+                        && (maxInFlight_ <= 0 || activeCount() < maxInFlight_)) {
+                    Pending<RequestType> p = queue_.poll();
+                    if (p.future != null && p.future.isCancelled())
+                        continue;
+
+                    try {
+                        sendNow(p.request);
+                    } catch (LightningException e) {
+                        // stream is broken, same as error reply
+                        error_ = true;
+                        if (p.future != null)
+                            p.future.setError(e.errorCode(), e.errorMessage());
+                        failQueue(e.errorCode(), e.errorMessage());
+                        callback_.onError(e.errorCode(), e.errorMessage());
+                        return;
+                    }
+                    if (p.future != null)
+                        p.future.set(p.request);
+                }
+            }
+
+            private void failQueue(int code, String message) {
+                Pending<RequestType> p;
+                while ((p = queue_.poll()) != null) {
+                    if (p.future != null)
+                        p.future.setError(code, message);
+                }
+            }
+
             // send request.
             @Override
             public void send(RequestType r) throws LightningException {
                 if (!isValid())
                     throw new LightningException(-1, "Stream invalid");
-                sendStream_.send(r);
-                requestCount_++;
+                if (hasRoom())
+                    sendNow(r);
+                else
+                    queue_.offer(new Pending<RequestType>(r, null));
+            }
+
+            @Override
+            public boolean trySend(RequestType r) throws LightningException {
+                if (!isValid())
+                    throw new LightningException(-1, "Stream invalid");
+                if (!hasRoom())
+                    return false;
+                sendNow(r);
+                return true;
+            }
+
+            @Override
+            public ILightningFuture<RequestType> sendAsync(RequestType r) throws LightningException {
+                if (!isValid())
+                    throw new LightningException(-1, "Stream invalid");
+
+                LightningFuture<RequestType> f = new LightningFuture<>();
+                if (hasRoom()) {
+                    sendNow(r);
+                    f.set(r);
+                } else {
+                    queue_.offer(new Pending<>(r, f));
+                }
+                return f;
+            }
+
+            @Override
+            public void setMaxInFlight(int max) {
+                maxInFlight_ = max;
+                drain();
             }
 
             // call after all requests were sent,
@@ -103,8 +246,8 @@ public class LightningClient implements ILightningClient {
 
                 // mark as done
                 done_ = true;
-                // no in-flight requests? stop immediately
-                if (activeCount() <= 0)
+                // no in-flight or queued requests? stop immediately
+                if (activeCount() <= 0 && queue_.isEmpty())
                     cancel();
             }
 
@@ -113,6 +256,16 @@ public class LightningClient implements ILightningClient {
             public void cancel() throws LightningException {
                 if (!isValid())
                     throw new LightningException(-1, "Stream invalid");
+
+                if (sendStream_ == null) {
+                    // subscription, no EOF will come after cancel
+                    subscription_.cancel();
+                    subscription_ = null;
+                    parent_.streams_.remove(id_);
+                    return;
+                }
+
+                failQueue(-5, "Cancelled");
                 try {
                     sendStream_.stop();
                 } catch (LightningException e) {
@@ -133,7 +286,7 @@ public class LightningClient implements ILightningClient {
             // this will return 'false'
             @Override
             public boolean isValid () {
-                return !error_ && sendStream_ != null && callback_ != null;
+                return !error_ && (sendStream_ != null || subscription_ != null) && callback_ != null;
             }
 
             // number of sends
@@ -153,13 +306,103 @@ public class LightningClient implements ILightningClient {
             public int activeCount() {
                 return requestCount_ - replyCount_;
             }
+
+            // number of requests queued locally
+            @Override
+            public int queuedCount() {
+                return queue_.size();
+            }
         }
 
-        private HashMap<Integer, RequestReplyStream> streams_ = new HashMap<>();
-        private int nextId_ = 1;
+        // ids are recycled, and double as Message.what,
+        // id 0 is never issued and is used for batches
+        private static final int WHAT_BATCH = 0;
+
+        private SlotRegistry<RequestReplyStream> streams_ = new SlotRegistry<>();
+
+        private int batchWindowMs_;
+        private int batchMaxCount_;
+        // replies queued by daemon threads
+        private ConcurrentLinkedQueue<Message> batch_ = new ConcurrentLinkedQueue<>();
+        private AtomicInteger batchSize_ = new AtomicInteger();
+        private AtomicBoolean batchScheduled_ = new AtomicBoolean();
+        // streams having coalesced replies, reused
+        private List<RequestReplyStream> batchStreams_ = new ArrayList<>();
+
+        Dispatcher() {
+        }
+
+        Dispatcher(int batchWindowMs, int batchMaxCount) {
+            batchWindowMs_ = batchWindowMs;
+            batchMaxCount_ = batchMaxCount;
+        }
+
+        // called on daemon threads
+        // arg2 of a queued reply, in us, Message.getWhen
+        // only has ms precision
+        private static int dispatchStamp() {
+            return LightningMetrics.isEnabled() ? (int)(System.nanoTime() / 1000) : 0;
+        }
+
+        void deliver(int what, int code, Object obj) {
+            int stamp = dispatchStamp();
+            if (batchWindowMs_ <= 0) {
+                sendMessage(obtainMessage(what, code, stamp, obj));
+                return;
+            }
+
+            batch_.offer(Message.obtain(this, what, code, stamp, obj));
+            int size = batchSize_.incrementAndGet();
+            if (batchMaxCount_ > 0 && size == batchMaxCount_) {
+                // drain now, the delayed one will find an empty queue
+                batchScheduled_.set(true);
+                sendEmptyMessage(WHAT_BATCH);
+            } else if (batchScheduled_.compareAndSet(false, true)) {
+                sendEmptyMessageDelayed(WHAT_BATCH, batchWindowMs_);
+            }
+        }
+
+        private void handleBatch() {
+            // reset before draining, so that replies queued
+            // after this point schedule the next batch
+            batchScheduled_.set(false);
+
+            Message msg;
+            while ((msg = batch_.poll()) != null) {
+                batchSize_.decrementAndGet();
+                RequestReplyStream s = streams_.get(msg.what);
+                if (s != null && s.callback_ != null && msg.arg1 == 0
+                        && s.stream_ && s.callback_ instanceof ILightningBatchCallback) {
+                    if (!s.hasBatch())
+                        batchStreams_.add(s);
+                    s.batchCallback(msg.obj);
+                } else {
+                    // keep the order of replies and errors
+                    if (s != null)
+                        s.flushBatch();
+                    handleReply(msg);
+                }
+                msg.recycle();
+            }
+
+            for (int i = 0; i < batchStreams_.size(); i++) {
+                RequestReplyStream s = batchStreams_.get(i);
+                s.flushBatch();
+                if (s.error_ || s.finished_)
+                    streams_.remove(s.id());
+            }
+            batchStreams_.clear();
+        }
 
         @Override
         public void handleMessage(Message msg) {
+            if (msg.what == WHAT_BATCH)
+                handleBatch();
+            else
+                handleReply(msg);
+        }
+
+        private void handleReply(Message msg) {
             RequestReplyStream s = streams_.get(msg.what);
             if (s == null) {
                 Log.e(TAG, "Unknown message "+msg.what);
@@ -171,47 +414,61 @@ public class LightningClient implements ILightningClient {
                 return;
             }
 
+            // no stamp if metrics were off, int overflow
+            // keeps the difference right across a wrap
+            if (s.metrics_ != null && msg.arg2 != 0)
+                s.metrics_.dispatch.record(((int)(System.nanoTime() / 1000) - msg.arg2) * 1000L);
+
             s.recvCallback(msg.arg1, msg.obj);
 
             // remove stream if it was rpc
             // or when it's got an error (which includes when 'stop' was called)
-            if (!s.stream_ || s.error_) {
+            if (!s.stream_ || s.error_ || s.finished_) {
                 streams_.remove(msg.what);
             }
         }
 
         <RequestType, ResponseType> RequestReplyStream<RequestType, ResponseType>
-        createStream() {
-            return new RequestReplyStream<>(this, nextId_++);
+        createStream(String label) {
+            return new RequestReplyStream<>(this, label);
         }
 
-        <ResponseType> int createCallback(ILightningCallback<ResponseType> callback) {
-            RequestReplyStream<Object, ResponseType> s = createStream();
+        <ResponseType> int createCallback(String label, ILightningCallback<ResponseType> callback) {
+            RequestReplyStream<Object, ResponseType> s = createStream(label);
             s.setRecvCallback(callback, false);
             return s.id();
         }
 
-        <ResponseType> int createRecvStream(ILightningCallback<ResponseType> callback) {
-            RequestReplyStream<Object, ResponseType> s = createStream();
+        <ResponseType> int createRecvStream(String label, ILightningCallback<ResponseType> callback) {
+            RequestReplyStream<Object, ResponseType> s = createStream(label);
             s.setRecvCallback(callback, true);
             return s.id();
         }
 
+        <ResponseType> RequestReplyStream<Object, ResponseType> createSubscription(
+                String label, ILightningCallback<ResponseType> callback) {
+            RequestReplyStream<Object, ResponseType> s = createStream(label);
+            s.setRecvCallback(callback, true);
+            return s;
+        }
+
         void onDestroy() {
-            for(int i: streams_.keySet()) {
-                RequestReplyStream s = streams_.get(i);
+            for(int i = 0; i < streams_.capacity(); i++) {
+                RequestReplyStream s = streams_.valueAt(i);
                 if (s == null || !s.isValid())
                     continue;
 
                 try {
                     s.cancel();;
                 } catch (LightningException e) {
-                    Log.e(TAG, "send stream stop error: "+e.getMessage());
+                    Log.e(TAG, "stream stop error: "+e.getMessage());
                 }
             }
 
             // ensure
             streams_.clear();
+            removeMessages(WHAT_BATCH);
+            batch_.clear();
         }
     }
 
@@ -222,11 +479,36 @@ public class LightningClient implements ILightningClient {
     // block GC from freeing it (bcs essentially
     // our client is owned by to-be-destroyed object, like
     // an Activity that was closed)
+    // must be used on the client's thread
+    private static class Subscription implements ILightningSubscription {
+        private Dispatcher.RequestReplyStream<?, ?> stream_;
+
+        Subscription(Dispatcher.RequestReplyStream<?, ?> s) {
+            stream_ = s;
+        }
+
+        @Override
+        public void cancel() {
+            if (!stream_.isValid())
+                return;
+            try {
+                stream_.cancel();
+            } catch (LightningException e) {
+                // subscriptions don't throw
+            }
+        }
+
+        @Override
+        public boolean isValid() {
+            return stream_.isValid();
+        }
+    }
+
     private static class MTCallback implements ILightningCallbackMT {
-        private WeakReference<Handler> handler_;
+        private WeakReference<Dispatcher> handler_;
         private int what_;
 
-        MTCallback(Handler handler, int what){
+        MTCallback(Dispatcher handler, int what){
             handler_ = new WeakReference<>(handler);
             what_ = what;
         }
@@ -236,26 +518,42 @@ public class LightningClient implements ILightningClient {
             // Obtain a strong reference to Handler, to
             // avoid GC atomically clearing the weak one
             // in between a check and access
-            Handler handler = handler_.get();
+            Dispatcher handler = handler_.get();
             if (handler != null)
-                handler.sendMessage(handler.obtainMessage(what_, code, 0, message));
+                handler.deliver(what_, code, message);
         }
 
         @Override
         public void onResponse(Object o) {
             // see notes above
-            Handler handler = handler_.get();
+            Dispatcher handler = handler_.get();
             if (handler != null)
-                handler.sendMessage(handler.obtainMessage(what_, o));
+                handler.deliver(what_, 0, o);
         }
     }
 
-    private Dispatcher dispatcher_ = new Dispatcher();
+    private Dispatcher dispatcher_;
+    private int maxInFlight_;
+    private long callTimeoutMs_;
 
     LightningClient() {
+        dispatcher_ = new Dispatcher();
         Log.i(TAG, "created on thread "+Thread.currentThread().getId());
     }
 
+    LightningClient(LightningDaemon.ClientOptions options) {
+        dispatcher_ = new Dispatcher(options.batchWindowMs, options.batchMaxCount);
+        maxInFlight_ = options.maxInFlight;
+        callTimeoutMs_ = options.callTimeoutMs;
+        Log.i(TAG, "created on thread "+Thread.currentThread().getId()
+                +" batch window "+options.batchWindowMs+" max "+options.batchMaxCount);
+    }
+
+    // callback of a unary call, with the client's deadline
+    private ILightningCallbackMT callback(int what) {
+        return LightningDaemon.withDeadline(new MTCallback(dispatcher_, what), callTimeoutMs_);
+    }
+
     @Override
     public void onDestroy() {
         dispatcher_.onDestroy();
@@ -264,165 +562,174 @@ public class LightningClient implements ILightningClient {
     @Override
     public void unlockWallet(Data.UnlockWalletRequest r,
                              ILightningCallback<Data.UnlockWalletResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.unlockWalletMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("unlockWallet", cb);
+        LightningDaemon.unlockWalletMT(r, callback(what));
     }
 
     @Override
     public void initWallet(Data.InitWalletRequest r,
                            ILightningCallback<Data.InitWalletResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.initWalletMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("initWallet", cb);
+        LightningDaemon.initWalletMT(r, callback(what));
     }
 
     @Override
     public void genSeed(Data.GenSeedRequest r,
                         ILightningCallback<Data.GenSeedResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.genSeedMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("genSeed", cb);
+        LightningDaemon.genSeedMT(r, callback(what));
     }
 
     @Override
     public void newAddress(Data.NewAddressRequest r,
                            ILightningCallback<Data.NewAddressResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.newAddressMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("newAddress", cb);
+        LightningDaemon.newAddressMT(r, callback(what));
     }
 
     @Override
     public void getInfo(Data.GetInfoRequest r,
                         ILightningCallback<Data.GetInfoResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.getInfoMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("getInfo", cb);
+        LightningDaemon.getInfoMT(r, callback(what));
     }
 
     @Override
     public void walletBalance(Data.WalletBalanceRequest r,
                               ILightningCallback<Data.WalletBalanceResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.walletBalanceMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("walletBalance", cb);
+        LightningDaemon.walletBalanceMT(r, callback(what));
     }
 
     @Override
     public void channelBalance(Data.ChannelBalanceRequest r,
                                ILightningCallback<Data.ChannelBalanceResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.channelBalanceMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("channelBalance", cb);
+        LightningDaemon.channelBalanceMT(r, callback(what));
     }
 
     @Override
     public void connectPeer(Data.ConnectPeerRequest r,
                             ILightningCallback<Data.ConnectPeerResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.connectPeerMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("connectPeer", cb);
+        LightningDaemon.connectPeerMT(r, callback(what));
     }
 
     @Override
     public void disconnectPeer(lnrpc.Rpc.DisconnectPeerRequest r, ILightningCallback<lnrpc.Rpc.DisconnectPeerResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.disconnectPeerMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("disconnectPeer", cb);
+        LightningDaemon.disconnectPeerMT(r, callback(what));
     }
 
     @Override
     public void listPeers(lnrpc.Rpc.ListPeersRequest r, ILightningCallback<lnrpc.Rpc.ListPeersResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.listPeersMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("listPeers", cb);
+        LightningDaemon.listPeersMT(r, callback(what));
     }
 
     @Override
-    public void subscribePeerEventsStream(lnrpc.Rpc.PeerEventSubscription r, ILightningCallback<lnrpc.Rpc.PeerEvent> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
-        LightningDaemon.subscribePeerEventsMT(r, new MTCallback(dispatcher_, what));
+    public ILightningSubscription subscribePeerEventsStream(lnrpc.Rpc.PeerEventSubscription r, ILightningCallback<lnrpc.Rpc.PeerEvent> cb) {
+        Dispatcher.RequestReplyStream<Object, lnrpc.Rpc.PeerEvent> s = dispatcher_.createSubscription("subscribePeerEvents", cb);
+        s.setSubscription(LightningDaemon.subscribePeerEventsMT(r, new MTCallback(dispatcher_, s.id())));
+        return new Subscription(s);
     }
 
     @Override
     public void listChannels(Data.ListChannelsRequest r,
                              ILightningCallback<Data.ListChannelsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.listChannelsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("listChannels", cb);
+        LightningDaemon.listChannelsMT(r, callback(what));
+    }
+
+    @Override
+    public void listChannelSet(Data.ListChannelsRequest r,
+                               ILightningCallback<ChannelSet> cb) {
+        final int what = dispatcher_.createCallback("listChannels", cb);
+        LightningDaemon.listChannelSetMT(r, callback(what));
     }
 
     @Override
     public void pendingChannels(lnrpc.Rpc.PendingChannelsRequest r,
                                 ILightningCallback<lnrpc.Rpc.PendingChannelsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.pendingChannelsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("pendingChannels", cb);
+        LightningDaemon.pendingChannelsMT(r, callback(what));
     }
 
     @Override
     public void closedChannels(lnrpc.Rpc.ClosedChannelsRequest r,
                                ILightningCallback<lnrpc.Rpc.ClosedChannelsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.closedChannelsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("closedChannels", cb);
+        LightningDaemon.closedChannelsMT(r, callback(what));
     }
 
     @Override
     public void addInvoice(Data.Invoice r,
                            ILightningCallback<Data.AddInvoiceResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.addInvoiceMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("addInvoice", cb);
+        LightningDaemon.addInvoiceMT(r, callback(what));
     }
 
     @Override
-    public void subscribeTransactionsStream(Data.GetTransactionsRequest r,
+    public ILightningSubscription subscribeTransactionsStream(Data.GetTransactionsRequest r,
                                             ILightningCallback<Data.Transaction> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
-        LightningDaemon.subscribeTransactionsMT(r, new MTCallback(dispatcher_, what));
+        Dispatcher.RequestReplyStream<Object, Data.Transaction> s = dispatcher_.createSubscription("subscribeTransactions", cb);
+        s.setSubscription(LightningDaemon.subscribeTransactionsMT(r, new MTCallback(dispatcher_, s.id())));
+        return new Subscription(s);
     }
 
     @Override
     public void getTransactions(Data.GetTransactionsRequest r,
                                 ILightningCallback<Data.TransactionDetails> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.getTransactionsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("getTransactions", cb);
+        LightningDaemon.getTransactionsMT(r, callback(what));
     }
 
     @Override
     public void openChannelStream(Data.OpenChannelRequest r,
                                   ILightningCallback<Data.OpenStatusUpdate> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
+        final int what = dispatcher_.createRecvStream("openChannel", cb);
         LightningDaemon.openChannelMT(r, new MTCallback(dispatcher_, what));
     }
 
     @Override
     public void openChannel(Data.OpenChannelRequest r,
                             ILightningCallback<Data.ChannelPoint> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.openChannelSyncMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("openChannelSync", cb);
+        LightningDaemon.openChannelSyncMT(r, callback(what));
     }
 
     @Override
     public void closeChannelStream(Data.CloseChannelRequest r,
                                    ILightningCallback<Data.CloseStatusUpdate> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
+        final int what = dispatcher_.createRecvStream("closeChannel", cb);
         LightningDaemon.closeChannelMT(r, new MTCallback(dispatcher_, what));
     }
 
     @Override
     public void estimateFee(Data.EstimateFeeRequest r,
                             ILightningCallback<Data.EstimateFeeResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.estimateFeeMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("estimateFee", cb);
+        LightningDaemon.estimateFeeMT(r, callback(what));
     }
 
     @Override
     public void sendCoins(Data.SendCoinsRequest r,
                           ILightningCallback<Data.SendCoinsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.sendCoinsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("sendCoins", cb);
+        LightningDaemon.sendCoinsMT(r, callback(what));
     }
 
     @Override
     public void sendMany(Data.SendManyRequest r,
                          ILightningCallback<Data.SendManyResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.sendManyMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("sendMany", cb);
+        LightningDaemon.sendManyMT(r, callback(what));
     }
 
     @Override
     public void listUnspent(lnrpc.Rpc.ListUnspentRequest r, ILightningCallback<lnrpc.Rpc.ListUnspentResponse> cb) {
-     final int what = dispatcher_.createCallback(cb);
-     LightningDaemon.listUnspentMT(r, new MTCallback(dispatcher_, what));
+     final int what = dispatcher_.createCallback("listUnspent", cb);
+     LightningDaemon.listUnspentMT(r, callback(what));
     }
 
     @Override
@@ -432,10 +739,11 @@ public class LightningClient implements ILightningClient {
         // call MT w/ MTCallback(what)
         // set send stream
         // return bi-stream
-        Dispatcher.RequestReplyStream<Data.SendRequest, Data.SendResponse> stream = dispatcher_.createStream();
+        Dispatcher.RequestReplyStream<Data.SendRequest, Data.SendResponse> stream = dispatcher_.createStream("sendPayment");
         ILightningSendStream<Data.SendRequest> ss = LightningDaemon.sendPaymentMT(
                 new MTCallback(dispatcher_, stream.id()));
         stream.setSendStream(ss);
+        stream.setMaxInFlight(maxInFlight_);
         return stream;
     }
 
@@ -451,78 +759,166 @@ public class LightningClient implements ILightningClient {
     @Override
     public void sendPayment(Data.SendRequest r,
                             ILightningCallback<Data.SendResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.sendPaymentMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("sendPaymentSync", cb);
+        LightningDaemon.sendPaymentMT(r, callback(what));
     }
 
 /*    @Override
     public void registerBlockEpochNtfnStream(Data.BlockEpoch r,
                                              ILightningCallback<Data.BlockEpoch> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
+        final int what = dispatcher_.createRecvStream("registerBlockEpochNtfn", cb);
         LightningDaemon.registerBlockEpochNtfnMT(r, new MTCallback(dispatcher_, what));
     }
 
  */
 
     @Override
-    public void subscribeInvoicesStream(Data.InvoiceSubscription r, ILightningCallback<Data.Invoice> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
-        LightningDaemon.subscribeInvoicesMT(r, new MTCallback(dispatcher_, what));
+    public ILightningSubscription subscribeInvoicesStream(Data.InvoiceSubscription r, ILightningCallback<Data.Invoice> cb) {
+        Dispatcher.RequestReplyStream<Object, Data.Invoice> s = dispatcher_.createSubscription("subscribeInvoices", cb);
+        s.setSubscription(LightningDaemon.subscribeInvoicesMT(r, new MTCallback(dispatcher_, s.id())));
+        return new Subscription(s);
     }
 
     @Override
     public void decodePayReq(Data.PayReqString r,
                              ILightningCallback<Data.PayReq> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.decodePayReqMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("decodePayReq", cb);
+        LightningDaemon.decodePayReqMT(r, callback(what));
     }
 
     @Override
     public void listPayments(Data.ListPaymentsRequest r,
                              ILightningCallback<Data.ListPaymentsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.listPaymentsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("listPayments", cb);
+        LightningDaemon.listPaymentsMT(r, callback(what));
+    }
+
+    // pager that can be used before the daemon returns the real one,
+    // next() and cancel() made before that are applied when it's set
+    private static class PagerRef implements ILightningPager, ILightningSubscription {
+        // guarded by this
+        private ILightningPager pager_;
+        private int demand_;
+        private boolean cancelled_;
+
+        void set(ILightningPager pager) {
+            int demand;
+            boolean cancelled;
+            synchronized (this) {
+                pager_ = pager;
+                demand = demand_;
+                demand_ = 0;
+                cancelled = cancelled_;
+            }
+            if (cancelled) {
+                pager.cancel();
+                return;
+            }
+            for (int i = 0; i < demand; i++)
+                pager.next();
+        }
+
+        @Override
+        public void next() {
+            ILightningPager pager;
+            synchronized (this) {
+                if (pager_ == null) {
+                    demand_++;
+                    return;
+                }
+                pager = pager_;
+            }
+            pager.next();
+        }
+
+        @Override
+        public void cancel() {
+            ILightningPager pager;
+            synchronized (this) {
+                cancelled_ = true;
+                pager = pager_;
+            }
+            if (pager != null)
+                pager.cancel();
+        }
+
+        @Override
+        public synchronized boolean isValid() {
+            return !cancelled_;
+        }
+    }
+
+    @Override
+    public ILightningSubscription listPaymentsPagedStream(Data.ListPaymentsPageRequest r,
+                                                          final ILightningCallback<Data.ListPaymentsChunk> cb) {
+        final Dispatcher.RequestReplyStream<Object, Data.ListPaymentsChunk> stream = dispatcher_.createStream("listPayments");
+        final PagerRef pager = new PagerRef();
+        stream.setRecvCallback(new ILightningCallback<Data.ListPaymentsChunk>() {
+            @Override
+            public void onResponse(Data.ListPaymentsChunk c) {
+                // drop the stream after the last chunk, the
+                // handle is no longer valid
+                if (c.last) {
+                    stream.finish();
+                    stream.setSubscription(null);
+                }
+                cb.onResponse(c);
+                // the next chunk is decoded once this one is consumed
+                if (!c.last)
+                    pager.next();
+            }
+
+            @Override
+            public void onError(int code, String error) {
+                cb.onError(code, error);
+            }
+        }, true);
+        stream.setSubscription(pager);
+        pager.set(LightningDaemon.listPaymentsPagedMT(r, new MTCallback(dispatcher_, stream.id())));
+        return new Subscription(stream);
     }
 
     @Override
     public void deleteAllPayments(Data.DeleteAllPaymentsRequest r,
                                   ILightningCallback<Data.DeleteAllPaymentsResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.deleteAllPaymentsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("deleteAllPayments", cb);
+        LightningDaemon.deleteAllPaymentsMT(r, callback(what));
     }
 
     @Override
-    public void subscribeChannelEventsStream(Data.ChannelEventSubscription r, ILightningCallback<Data.ChannelEventUpdate> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
-        LightningDaemon.subscribeChannelEventsMT(r, new MTCallback(dispatcher_, what));
+    public ILightningSubscription subscribeChannelEventsStream(Data.ChannelEventSubscription r, ILightningCallback<Data.ChannelEventUpdate> cb) {
+        Dispatcher.RequestReplyStream<Object, Data.ChannelEventUpdate> s = dispatcher_.createSubscription("subscribeChannelEvents", cb);
+        s.setSubscription(LightningDaemon.subscribeChannelEventsMT(r, new MTCallback(dispatcher_, s.id())));
+        return new Subscription(s);
     }
 
 
     @Override
     public ILightningCallbackMT createDaemonCallback(ILightningCallback<Object> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
+        final int what = dispatcher_.createRecvStream(null, cb);
         return new MTCallback(dispatcher_, what);
     }
 
     @Override
     public void getNodeInfo(Data.NodeInfoRequest r,
                                   ILightningCallback<Data.NodeInfo> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.getNodeInfoMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("getNodeInfo", cb);
+        LightningDaemon.getNodeInfoMT(r, callback(what));
     }
 
     @Override
     public void queryRoutes(Data.QueryRoutesRequest r, ILightningCallback<Data.QueryRoutesResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.queryRoutesMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("queryRoutes", cb);
+        LightningDaemon.queryRoutesMT(r, callback(what));
     }
 
     @Override
     public ILightningStream<Data.SendToRouteRequest, Data.SendResponse> sendToRouteStream() {
-        Dispatcher.RequestReplyStream<Data.SendToRouteRequest, Data.SendResponse> stream = dispatcher_.createStream();
+        Dispatcher.RequestReplyStream<Data.SendToRouteRequest, Data.SendResponse> stream = dispatcher_.createStream("sendToRoute");
         ILightningSendStream<Data.SendToRouteRequest> ss = LightningDaemon.sendToRouteMT(
                 new MTCallback(dispatcher_, stream.id()));
         stream.setSendStream(ss);
+        stream.setMaxInFlight(maxInFlight_);
         return stream;
     }
 
@@ -536,32 +932,33 @@ public class LightningClient implements ILightningClient {
 
     @Override
     public void sendToRoute(Data.SendToRouteRequest r, ILightningCallback<Data.SendResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.sendToRouteMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("sendToRouteSync", cb);
+        LightningDaemon.sendToRouteMT(r, callback(what));
     }
 
     @Override
-    public void subscribeChannelBackupsStream(Data.ChannelBackupSubscription r, ILightningCallback<Data.ChanBackupSnapshot> cb) {
-        final int what = dispatcher_.createRecvStream(cb);
-        LightningDaemon.subscribeChannelBackupsMT(r, new MTCallback(dispatcher_, what));
+    public ILightningSubscription subscribeChannelBackupsStream(Data.ChannelBackupSubscription r, ILightningCallback<Data.ChanBackupSnapshot> cb) {
+        Dispatcher.RequestReplyStream<Object, Data.ChanBackupSnapshot> s = dispatcher_.createSubscription("subscribeChannelBackups", cb);
+        s.setSubscription(LightningDaemon.subscribeChannelBackupsMT(r, new MTCallback(dispatcher_, s.id())));
+        return new Subscription(s);
     }
 
     @Override
     public void exportAllChannelBackups(Data.ChanBackupExportRequest r, ILightningCallback<Data.ChanBackupSnapshot> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.exportAllChannelBackupsMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("exportAllChannelBackups", cb);
+        LightningDaemon.exportAllChannelBackupsMT(r, callback(what));
     }
 
     @Override
     public void signMessage(lnrpc.Rpc.SignMessageRequest r, ILightningCallback<lnrpc.Rpc.SignMessageResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.signMessageMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("signMessage", cb);
+        LightningDaemon.signMessageMT(r, callback(what));
     }
 
     @Override
     public void verifyMessage(lnrpc.Rpc.VerifyMessageRequest r, ILightningCallback<lnrpc.Rpc.VerifyMessageResponse> cb) {
-        final int what = dispatcher_.createCallback(cb);
-        LightningDaemon.verifyMessageMT(r, new MTCallback(dispatcher_, what));
+        final int what = dispatcher_.createCallback("verifyMessage", cb);
+        LightningDaemon.verifyMessageMT(r, callback(what));
     }
 
 }
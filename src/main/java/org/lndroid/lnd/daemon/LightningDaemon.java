@@ -4,17 +4,30 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
+
+import org.lndroid.lnd.data.ChannelSet;
 import org.lndroid.lnd.data.Data;
 import org.lndroid.lnd.data.Codec;
+import org.lndroid.lnd.data.WireCodec;
+import org.lndroid.lnd.data.WireEncoder;
 
-import lndmobile.Lndmobile;
 import lnrpc.Rpc;
 
 public final class LightningDaemon {
@@ -31,6 +44,46 @@ public final class LightningDaemon {
         public String banDuration;
         public String tlsCertPath;
         public String tlsKeyPath;
+        // null - talk to lnd embedded with Lndmobile
+        public ILightningTransport transport;
+        // null - default LightningLogPolicy
+        public LightningLogPolicy logPolicy;
+        // max number of nodes (and edges) cached for getNodeInfo,
+        // 0 - no graph cache
+        public int graphCacheSize;
+        public long graphCacheTtlMs = 60000;
+        // queryRoutes replies are cached for a short time
+        // and dropped on any channel event, 0 - not cached
+        public long routesCacheTtlMs = 5000;
+        // identical read-only calls (getInfo, listChannels etc)
+        // made while one is in flight share its reply, replies
+        // are then shared by the callers and must not be modified
+        public boolean coalesceReads;
+        // successful replies of coalesced calls are reused
+        // for this long, 0 - only while in flight
+        public long coalesceTtlMs;
+        // subscribers of the same stream with the same request
+        // share one lnd subscription and decoded events, the
+        // subscription is kept after the last one leaves and
+        // reused by the next one
+        public boolean shareSubscriptions = true;
+        // collect LightningMetrics
+        public boolean metrics;
+        // deadline of unary calls, the caller gets error -4
+        // when it expires, 0 - no deadline
+        public long callTimeoutMs;
+        // per-method deadlines by lnd method name, override
+        // callTimeoutMs, 0 - no deadline for the method
+        public Map<String, Long> callTimeouts;
+        // byte fields of requests are wrapped instead of copied, and
+        // replies are parsed with ByteStrings aliasing the reply, which
+        // saves a copy of every byte field both ways. Byte arrays passed
+        // in requests must not be modified until the call returns.
+        public boolean wrapBytes;
+        // payments and invoices of listPayments, listInvoices and
+        // lookupInvoice replies and of invoice subscriptions are put
+        // here, null - not stored. The caller opens and closes it.
+        public LightningStore store;
     }
 
     private static final String TAG = "LightningDaemon";
@@ -40,36 +93,167 @@ public final class LightningDaemon {
     private static AtomicBoolean unlocked_ = new AtomicBoolean(false);
     private static AtomicBoolean unlockReady_ = new AtomicBoolean(false);
     private static AtomicBoolean rpcReady_ = new AtomicBoolean(false);
+    private static volatile ILightningTransport transport_;
+    private static volatile LightningLogPolicy logPolicy_ = new LightningLogPolicy();
+    private static volatile GraphCache graphCache_;
+    private static final SingleFlight singleFlight_ = new SingleFlight();
+    private static final SubscriptionHub subscriptionHub_ = new SubscriptionHub();
+    private static TimerWheel timerWheel_;
+    private static ExecutorService worker_;
+    private static volatile long callTimeoutMs_;
+    private static volatile Map<String, Long> callTimeouts_ = new HashMap<>();
+    private static volatile boolean aliasReplies_;
+    private static volatile LightningStore store_;
+
+    // shared by call deadlines and resubscribe delays
+    static synchronized TimerWheel timerWheel() {
+        if (timerWheel_ == null)
+            timerWheel_ = new TimerWheel(10, 512);
+        return timerWheel_;
+    }
+
+    // work asked for on client threads, like decoding the next
+    // chunk of a page, so that it's not done on the UI thread
+    static synchronized ExecutorService worker() {
+        if (worker_ == null) {
+            worker_ = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "LightningDaemonWorker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return worker_;
+    }
+
+    private static ILightningTransport transport() {
+        if (transport_ == null) {
+            synchronized (LightningDaemon.class) {
+                if (transport_ == null)
+                    transport_ = new LndmobileTransport();
+            }
+        }
+        return transport_;
+    }
 
-    static class FutureCallback<Response>  extends FutureTask<Response> implements ILightningCallbackMT {
+    // cancelling the future (also on getOrCancel timeout)
+    // cancels the lnd call, the late reply isn't parsed
+    static class FutureCallback<Response> extends LightningFuture<Response> implements CallOwner {
 
         private static final String TAG = "LightningFuture";
 
-        FutureCallback() {
-            // dumb noop callable
-            super(new Callable<Response>(){
-                @Override
-                public Response call() throws Exception {
-                    return null;
-                }
-            });
+        private volatile LndmobileCallback call_;
+
+        @Override
+        public void attach(LndmobileCallback cb) {
+            call_ = cb;
+            if (isCancelled())
+                cb.cancel();
+        }
+
+        @Override
+        protected void onCancel() {
+            LndmobileCallback call = call_;
+            if (call != null)
+                call.cancel();
         }
 
         @Override
         public void onError(int code, String message) {
 
-            Log.i(TAG, "error "+Thread.currentThread().getId());
-            setException(new LightningException(code, message));
+            if (logPolicy_.logCalls(null))
+                Log.i(TAG, "error "+Thread.currentThread().getId());
+            super.onError(code, message);
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            if (logPolicy_.logCalls(null))
+                Log.i(TAG, "response "+Thread.currentThread().getId());
+            super.onResponse(o);
+        }
+    }
+
+    // first of the reply and the deadline wins, the
+    // reference to cb is dropped once it's called, the
+    // lnd call is cancelled on timeout
+    private static class DeadlineCallback implements ILightningCallbackMT, Runnable, CallOwner {
+        private final AtomicBoolean finished_ = new AtomicBoolean();
+        private volatile ILightningCallbackMT cb_;
+        private volatile LndmobileCallback call_;
+        private TimerWheel.Timeout timeout_;
+
+        DeadlineCallback(ILightningCallbackMT cb) {
+            cb_ = cb;
+        }
+
+        void start(long timeoutMs) {
+            timeout_ = timerWheel().newTimeout(this, timeoutMs);
+        }
+
+        @Override
+        public void attach(LndmobileCallback cb) {
+            call_ = cb;
+            // timed out before the call was made
+            if (finished_.get())
+                cb.cancel();
+        }
+
+        private ILightningCallbackMT finish() {
+            if (!finished_.compareAndSet(false, true))
+                return null;
+            ILightningCallbackMT cb = cb_;
+            cb_ = null;
+            return cb;
+        }
+
+        @Override
+        public void run() {
+            ILightningCallbackMT cb = finish();
+            if (cb != null) {
+                // the late reply is dropped before parsing
+                LndmobileCallback call = call_;
+                if (call != null)
+                    call.cancel();
+                cb.onError(-4, "Timeout");
+            }
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            ILightningCallbackMT cb = finish();
+            if (cb != null) {
+                timeout_.cancel();
+                cb.onError(code, message);
+            }
         }
 
         @Override
-        @SuppressWarnings("unchecked")
         public void onResponse(Object o) {
-            Log.i(TAG, "response "+Thread.currentThread().getId());
-            set((Response) o);
+            ILightningCallbackMT cb = finish();
+            if (cb != null) {
+                timeout_.cancel();
+                cb.onResponse(o);
+            }
         }
     }
 
+    // Per-call deadline for *MT methods of unary calls: cb gets error
+    // -4 (Timeout) unless the reply arrives within timeoutMs, the call
+    // is cancelled and a late reply is dropped before parsing (calls
+    // shared by SingleFlight are not cancelled). Returns cb if
+    // timeoutMs is 0.
+    public static ILightningCallbackMT withDeadline(ILightningCallbackMT cb, long timeoutMs) {
+        if (timeoutMs <= 0)
+            return cb;
+
+        DeadlineCallback d = new DeadlineCallback(cb);
+        d.start(timeoutMs);
+        return d;
+    }
+
     private static void writeConf(String dir) throws LightningException {
         new File(dir).mkdirs();
 
@@ -146,11 +330,32 @@ public final class LightningDaemon {
             }
         }
 
+        if (init.logPolicy != null)
+            logPolicy_ = init.logPolicy.copy();
+
+        singleFlight_.setEnabled(init.coalesceReads);
+        singleFlight_.setTtl(init.coalesceTtlMs);
+        subscriptionHub_.setEnabled(init.shareSubscriptions);
+        callTimeoutMs_ = init.callTimeoutMs;
+        if (init.callTimeouts != null)
+            callTimeouts_ = new HashMap<>(init.callTimeouts);
+        LightningMetrics.setEnabled(init.metrics);
+        Codec.setWrapBytes(init.wrapBytes);
+        aliasReplies_ = init.wrapBytes;
+        store_ = init.store;
+
+        if (init.graphCacheSize > 0)
+            graphCache_ = new GraphCache(init.graphCacheSize, init.graphCacheTtlMs, init.routesCacheTtlMs);
+
         Log.i(TAG, "start command " + cmd + " thread " + Thread.currentThread().getId());
 
-        writeConf(init.dir);
+        // custom transports don't run lnd, no need for its conf
+        if (init.transport != null)
+            transport_ = init.transport;
+        else
+            writeConf(init.dir);
 
-        Lndmobile.start(cmd, new lndmobile.Callback() {
+        ILightningTransport.Callback unlockReadyTcb = new ILightningTransport.Callback() {
             @Override
             public void onError(Exception e) {
                 Log.e(TAG, "unlock ready error " + e.getMessage()
@@ -169,7 +374,8 @@ public final class LightningDaemon {
                 unlockReady_.set(true);
                 unlockReadyCb.onResponse(null);
             }
-        }, new lndmobile.Callback() {
+        };
+        ILightningTransport.Callback rpcReadyTcb = new ILightningTransport.Callback() {
             @Override
             public void onError(Exception e) {
                 Log.e(TAG, "rpc ready error " + e.getMessage()
@@ -186,9 +392,19 @@ public final class LightningDaemon {
             @Override
             public void onResponse(byte[] bytes) {
                 rpcReady_.set(true);
+                if (graphCache_ != null)
+                    subscribeGraphCache(graphCache_);
                 rpcReadyCb.onResponse(null);
             }
-        });
+        };
+
+        try {
+            transport().start(cmd, unlockReadyTcb, rpcReadyTcb);
+        } catch (LightningException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LightningException(-1, e.getMessage());
+        }
 
         Log.i(TAG, "start initiated");
         started_.set(true);
@@ -226,69 +442,495 @@ public final class LightningDaemon {
  */
     }
 
+    // can be changed at runtime, i.e. to debug a single method,
+    // the policy is copied, set it again after changing it
+    public static void setLogPolicy(LightningLogPolicy policy) {
+        logPolicy_ = policy != null ? policy.copy() : new LightningLogPolicy();
+    }
+
+    public static class ClientOptions {
+        // replies arriving within this window are delivered
+        // to the client's thread with a single Looper message,
+        // 0 - deliver every reply separately
+        public int batchWindowMs;
+        // deliver the batch early when this many replies are
+        // queued, 0 - no limit
+        public int batchMaxCount;
+        // default in-flight window of payment streams,
+        // 0 - no limit
+        public int maxInFlight;
+        // deadline of the client's unary calls, on top of
+        // Init.callTimeoutMs, 0 - no deadline
+        public long callTimeoutMs;
+    }
+
     public static ILightningClient createClient() {
         return new LightningClient();
     }
 
-    static class LndmobileCallback<ResponseType extends com.google.protobuf.Message>
-            implements lndmobile.Callback, lndmobile.RecvStream {
+    public static ILightningClient createClient(ClientOptions options) {
+        return new LightningClient(options);
+    }
+
+    // times Codec.decode of a reply on the thread that got it
+    private static final class DecodeTimer {
+        LightningMetrics.Rpc metrics;
+        long start;
+    }
+
+    private static final ThreadLocal<DecodeTimer> decodeTimer_ = new ThreadLocal<DecodeTimer>() {
+        @Override
+        protected DecodeTimer initialValue() {
+            return new DecodeTimer();
+        }
+    };
+
+    // wraps Codec.decode of a reply in LndmobileCallback's
+    // mtcb to record metrics.decode, returns data
+    private static <T> T decoded(T data) {
+        if (!LightningMetrics.isEnabled())
+            return data;
+        DecodeTimer timer = decodeTimer_.get();
+        if (timer.metrics != null) {
+            timer.metrics.decode.record(System.nanoTime() - timer.start);
+            timer.metrics = null;
+        }
+        return data;
+    }
+
+    static class LndmobileCallback implements ILightningTransport.Callback {
+
+        private static final byte[] EMPTY = new byte[0];
 
         private String label_;
-        private com.google.protobuf.Parser<ResponseType> parser_;
+        // one of these is set
+        private com.google.protobuf.Parser<? extends com.google.protobuf.Message> parser_;
+        private WireCodec.Parser<?> wireParser_;
         private ILightningCallbackMT mtcb_;
-
-        LndmobileCallback(String label, com.google.protobuf.Parser<ResponseType> parser, ILightningCallbackMT mtcb) {
+        // null if metrics are off
+        private LightningMetrics.Rpc metrics_;
+        // 0 - no round-trip to measure
+        private volatile long start_;
+        // cancelled or got an error
+        private volatile boolean done_;
+        private volatile boolean cancelled_;
+        // server streams without subscribers
+        private volatile boolean muted_;
+        // set if the call has a deadline, the first of
+        // reply and timeout to flip it is delivered
+        private AtomicBoolean finished_;
+        private TimerWheel.Timeout timeout_;
+
+        LndmobileCallback(String label,
+                          com.google.protobuf.Parser<? extends com.google.protobuf.Message> parser,
+                          ILightningCallbackMT mtcb) {
             label_ = label;
             parser_ = parser;
             mtcb_ = mtcb;
         }
 
+        LndmobileCallback(String label, WireCodec.Parser<?> parser, ILightningCallbackMT mtcb) {
+            label_ = label;
+            wireParser_ = parser;
+            mtcb_ = mtcb;
+        }
+
+        void setMetrics(LightningMetrics.Rpc metrics, long start) {
+            metrics_ = metrics;
+            start_ = start;
+        }
+
+        private void replied() {
+            // server streams have many replies, only the
+            // first one ends the round-trip
+            long start = start_;
+            if (start != 0) {
+                start_ = 0;
+                metrics_.roundTrip.record(System.nanoTime() - start);
+                metrics_.inFlight.decrementAndGet();
+            }
+        }
+
+        void cancel() {
+            if (cancelled_)
+                return;
+            cancelled_ = true;
+            done_ = true;
+            if (metrics_ != null)
+                replied();
+        }
+
+        void setMuted(boolean muted) {
+            muted_ = muted;
+        }
+
+        // unary calls only, before the call is made
+        void setDeadline(long timeoutMs) {
+            finished_ = new AtomicBoolean();
+            timeout_ = timerWheel().newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    expire();
+                }
+            }, timeoutMs);
+        }
+
+        // false if the call has timed out already
+        private boolean finish() {
+            if (finished_ == null)
+                return true;
+            if (!finished_.compareAndSet(false, true))
+                return false;
+            timeout_.cancel();
+            return true;
+        }
+
+        private void expire() {
+            // cancelled by the caller's deadline or future
+            if (cancelled_ || !finished_.compareAndSet(false, true))
+                return;
+
+            // the late reply is dropped before parsing
+            cancelled_ = true;
+            done_ = true;
+            Log.e(TAG, "called " + label_ + " timeout");
+            if (metrics_ != null) {
+                replied();
+                metrics_.error(-4);
+            }
+            mtcb_.onError(-4, "Timeout");
+        }
+
+        boolean isDone() {
+            return done_;
+        }
+
         @Override
         public void onError(Exception e){
+            if (cancelled_ || !finish())
+                return;
+            done_ = true;
+
             Log.e(TAG, "called " + label_ + " error " + e.getMessage()
                     +" thread "+Thread.currentThread().getId());
-            try {
-                throw e;
-            } catch (LightningException le) {
-                mtcb_.onError(le.errorCode(), le.errorMessage());
-            } catch (Exception ee) {
-                mtcb_.onError(-1, ee.getMessage());
+            int code = -1;
+            String message = e.getMessage();
+            if (e instanceof LightningException) {
+                code = ((LightningException)e).errorCode();
+                message = ((LightningException)e).errorMessage();
+            }
+
+            if (metrics_ != null) {
+                replied();
+                metrics_.error(code);
             }
+            mtcb_.onError(code, message);
         }
 
         @Override
         public void onResponse(byte[] bytes){
-            Log.i(TAG, "called " + label_ + " ok"+" thread "+Thread.currentThread().getId());
+            // lnd keeps streaming after cancel, drop before parsing
+            if (cancelled_ || muted_ || !finish())
+                return;
+
+            LightningLogPolicy policy = logPolicy_;
+            if (policy.logCalls(label_))
+                Log.i(TAG, "called " + label_ + " ok"+" thread "+Thread.currentThread().getId());
 
+            LightningMetrics.Rpc metrics = metrics_;
+            if (metrics != null)
+                replied();
+
+            Object resp;
             try {
-                ResponseType resp = parser_.parseFrom(bytes != null ? bytes : new byte[0]);
-                Log.i(TAG, "resp " + label_ + " "+resp);
-                mtcb_.onResponse(resp);
+                if (bytes == null)
+                    bytes = EMPTY;
+
+                long t = metrics != null ? System.nanoTime() : 0;
+                if (wireParser_ != null) {
+                    // decoded straight into Data, nothing to format
+                    resp = wireParser_.parse(bytes);
+                    if (policy.logPayloads(label_))
+                        Log.i(TAG, "resp " + label_ + " " + bytes.length + " bytes");
+                } else {
+                    if (aliasReplies_) {
+                        // replies aren't modified after this, it's safe
+                        // for ByteStrings of the message to point into it
+                        CodedInputStream in = UnsafeByteOperations.unsafeWrap(bytes).newCodedInput();
+                        in.enableAliasing(true);
+                        resp = parser_.parseFrom(in);
+                    } else {
+                        resp = parser_.parseFrom(bytes);
+                    }
+                    if (policy.logPayloads(label_))
+                        Log.i(TAG, "resp " + label_ + " "+policy.format((com.google.protobuf.Message)resp));
+                }
+                if (metrics != null) {
+                    metrics.parse.record(System.nanoTime() - t);
+                    metrics.replyBytes.record(bytes.length);
+                }
             } catch (Exception e) {
                 Log.e(TAG, "bad reply from " + label_ + ": " + e.getMessage());
+                if (metrics != null)
+                    metrics.error(-2);
                 mtcb_.onError(-2, e.getMessage());
+                return;
+            }
+
+            if (metrics == null) {
+                mtcb_.onResponse(resp);
+                return;
+            }
+
+            // the decoding wrapper calls decoded() right after
+            // Codec.decode, before the hand-off to the client
+            DecodeTimer timer = decodeTimer_.get();
+            timer.metrics = metrics;
+            timer.start = System.nanoTime();
+            try {
+                mtcb_.onResponse(resp);
+            } finally {
+                timer.metrics = null;
             }
+            metrics.replies.incrementAndGet();
         }
     }
 
-    private interface CallImpl {
-        void onCall(byte[] data, LndmobileCallback cb);
+    // Lndmobile can't cancel server streams, lnd keeps
+    // sending and replies are dropped by the callback
+    private static class Subscription implements SubscriptionHub.Upstream {
+        private LndmobileCallback cb_;
+
+        Subscription(LndmobileCallback cb) {
+            cb_ = cb;
+        }
+
+        @Override
+        public void setMuted(boolean muted) {
+            cb_.setMuted(muted);
+        }
+
+        @Override
+        public void cancel() {
+            cb_.cancel();
+        }
+
+        @Override
+        public boolean isValid() {
+            return !cb_.isDone();
+        }
+    }
+
+    // puts payments and invoices of a reply into Init.store, a
+    // failed put is logged and doesn't fail the call
+    private static void store(Object o) {
+        LightningStore store = store_;
+        if (store == null || o == null)
+            return;
+
+        List<Data.Payment> payments = null;
+        List<Data.Invoice> invoices = null;
+        if (o instanceof Data.Invoice)
+            invoices = Collections.singletonList((Data.Invoice)o);
+        else if (o instanceof Data.ListInvoiceResponse)
+            invoices = ((Data.ListInvoiceResponse)o).invoices;
+        else if (o instanceof Data.ListPaymentsResponse)
+            payments = ((Data.ListPaymentsResponse)o).payments;
+        else if (o instanceof Data.ListPaymentsChunk)
+            payments = ((Data.ListPaymentsChunk)o).payments;
+
+        try {
+            if (payments != null) {
+                for (Data.Payment p : payments)
+                    store.putPayment(p);
+            }
+            if (invoices != null) {
+                for (Data.Invoice i : invoices)
+                    store.putInvoice(i);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "store put failed: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "store put failed: " + e.getMessage());
+        }
+    }
+
+    // stores replies before passing them to cb, keeps
+    // cb the owner of the call
+    private static class StoreCallback implements ILightningCallbackMT, CallOwner {
+        private ILightningCallbackMT cb_;
+
+        StoreCallback(ILightningCallbackMT cb) {
+            cb_ = cb;
+        }
+
+        @Override
+        public void attach(LndmobileCallback cb) {
+            LightningDaemon.attach(cb_, cb);
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            cb_.onError(code, message);
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            store(o);
+            cb_.onResponse(o);
+        }
+    }
+
+    private static ILightningCallbackMT storing(ILightningCallbackMT cb) {
+        return store_ != null ? new StoreCallback(cb) : cb;
+    }
+
+    // Deadline or future of an *MT call, given the callback of the
+    // lnd call to cancel it, so that a late reply isn't even parsed
+    interface CallOwner {
+        void attach(LndmobileCallback cb);
+    }
+
+    private static void attach(ILightningCallbackMT owner, LndmobileCallback cb) {
+        if (owner instanceof CallOwner)
+            ((CallOwner)owner).attach(cb);
     }
 
     private static <ResponseType extends com.google.protobuf.Message>
-    void callMT(
+    LndmobileCallback callMT(
             final String label, com.google.protobuf.Message req,
             final com.google.protobuf.Parser<ResponseType> parser,
-            final ILightningCallbackMT mtcb,
-            CallImpl impl) {
+            final ILightningCallbackMT mtcb) {
+        return callMT(label, req, parser, mtcb, mtcb);
+    }
 
-        // don't log req for these!
-        if ("unlockWallet".equals(label) || "genSeed".equals(label) || "initWallet".equals(label))
+    // owner is the caller's callback that mtcb wraps, if owner
+    // is a CallOwner its deadline or cancel cancels the call
+    private static <ResponseType extends com.google.protobuf.Message>
+    LndmobileCallback callMT(
+            final String label, com.google.protobuf.Message req,
+            final com.google.protobuf.Parser<ResponseType> parser,
+            ILightningCallbackMT owner,
+            final ILightningCallbackMT mtcb) {
+
+        // policy never logs req of unlockWallet etc
+        LightningLogPolicy policy = logPolicy_;
+        if (policy.logPayloads(label))
+            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId()+" req "+policy.format(req));
+        else if (policy.logCalls(label))
             Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId());
-        else
-            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId()+" req "+req);
 
-        impl.onCall(req.toByteArray(), new LndmobileCallback<ResponseType>(label, parser, mtcb));
+        LndmobileCallback cb = new LndmobileCallback(label, parser, mtcb);
+        attach(owner, cb);
+        call(label, req, cb);
+        return cb;
+    }
+
+    // req is encoded already, see WireEncoder
+    private static <ResponseType extends com.google.protobuf.Message>
+    void callMT(
+            final String label, byte[] req,
+            final com.google.protobuf.Parser<ResponseType> parser,
+            final ILightningCallbackMT mtcb) {
+        callMT(label, req, parser, mtcb, mtcb);
+    }
+
+    private static <ResponseType extends com.google.protobuf.Message>
+    void callMT(
+            final String label, byte[] req,
+            final com.google.protobuf.Parser<ResponseType> parser,
+            ILightningCallbackMT owner,
+            final ILightningCallbackMT mtcb) {
+
+        LightningLogPolicy policy = logPolicy_;
+        if (policy.logPayloads(label))
+            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId()+" req "+req.length+" bytes");
+        else if (policy.logCalls(label))
+            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId());
+
+        LndmobileCallback cb = new LndmobileCallback(label, parser, mtcb);
+        attach(owner, cb);
+        call(label, req, cb);
+    }
+
+    // replies are decoded straight into Data objects by parser,
+    // mtcb gets the Data object
+    private static void callMT(
+            final String label, com.google.protobuf.Message req,
+            final WireCodec.Parser<?> parser,
+            final ILightningCallbackMT mtcb) {
+
+        LightningLogPolicy policy = logPolicy_;
+        if (policy.logPayloads(label))
+            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId()+" req "+policy.format(req));
+        else if (policy.logCalls(label))
+            Log.i(TAG, "calling " + label+" thread "+Thread.currentThread().getId());
+
+        LndmobileCallback cb = new LndmobileCallback(label, parser, mtcb);
+        attach(mtcb, cb);
+        call(label, req, cb);
+    }
+
+    // lnd methods that reply with a stream of messages
+    static boolean isServerStream(String method) {
+        return method.startsWith("subscribe")
+                || "openChannel".equals(method)
+                || "closeChannel".equals(method)
+                || "registerBlockEpochNtfn".equals(method);
+    }
+
+    private static long callTimeout(String label) {
+        Long timeout = callTimeouts_.get(label);
+        return timeout != null ? timeout : callTimeoutMs_;
+    }
+
+    private static void setDeadline(String label, LndmobileCallback cb) {
+        if (!isServerStream(label)) {
+            long timeout = callTimeout(label);
+            if (timeout > 0)
+                cb.setDeadline(timeout);
+        }
+    }
+
+    private static void call(String label, com.google.protobuf.Message req, LndmobileCallback cb) {
+        setDeadline(label, cb);
+
+        try {
+            LightningMetrics.Rpc metrics = LightningMetrics.rpc(label);
+            if (metrics == null) {
+                transport().call(label, req.toByteArray(), cb);
+                return;
+            }
+
+            long t = System.nanoTime();
+            byte[] data = req.toByteArray();
+            long start = System.nanoTime();
+            metrics.encode.record(start - t);
+            metrics.requestBytes.record(data.length);
+            metrics.calls.incrementAndGet();
+            metrics.inFlight.incrementAndGet();
+            cb.setMetrics(metrics, start);
+            transport().call(label, data, cb);
+        } catch (Exception e) {
+            cb.onError(e);
+        }
+    }
+
+    private static void call(String label, byte[] req, LndmobileCallback cb) {
+        setDeadline(label, cb);
+
+        try {
+            LightningMetrics.Rpc metrics = LightningMetrics.rpc(label);
+            if (metrics != null) {
+                metrics.requestBytes.record(req.length);
+                metrics.calls.incrementAndGet();
+                metrics.inFlight.incrementAndGet();
+                cb.setMetrics(metrics, System.nanoTime());
+            }
+            transport().call(label, req, cb);
+        } catch (Exception e) {
+            cb.onError(e);
+        }
     }
 
     interface FutureCallImpl<RequestType, ResponseType> {
@@ -296,7 +938,7 @@ public final class LightningDaemon {
     }
 
     private static <ResponseType, RequestType>
-    Future<ResponseType> callFuture(RequestType r, FutureCallImpl<RequestType, ResponseType> impl) {
+    ILightningFuture<ResponseType> callFuture(RequestType r, FutureCallImpl<RequestType, ResponseType> impl) {
         FutureCallback<ResponseType> cb = new FutureCallback<>();
         impl.onCall(r, cb);
         return cb;
@@ -306,6 +948,10 @@ public final class LightningDaemon {
         Future<ResponseType> onCall(RequestType r);
     }
 
+    // Parks the caller on the future, no locks are held while waiting, so
+    // many callers may block at once, e.g. on lightweight threads. If the
+    // caller is interrupted the future is cancelled and the interrupt
+    // status is restored. *Sync(r, timeout, unit) variants use getOrCancel.
     private static <RequestType, ResponseType>
     ResponseType callSync(RequestType r, SyncCallImpl<RequestType, ResponseType> impl) throws LightningException {
 
@@ -313,12 +959,16 @@ public final class LightningDaemon {
         try {
             return f.get();
         } catch (ExecutionException e) {
-            LightningException le = (LightningException)e.getCause();
-            if (le != null)
-                throw le;
+            if (e.getCause() instanceof LightningException)
+                throw (LightningException)e.getCause();
             else
-                throw new LightningException(-3, "Unknown execution error");
+                throw new LightningException(-3, "Unknown execution error: " + e.getCause());
+        } catch (CancellationException e) {
+            throw new LightningException(-5, "Cancelled");
         } catch (InterruptedException e) {
+            // release the callback, the late reply is dropped
+            f.cancel(false);
+            Thread.currentThread().interrupt();
             throw new LightningException(-2, "Interrupted");
         }
     }
@@ -329,7 +979,7 @@ public final class LightningDaemon {
 
         lnrpc.Rpc.UnlockWalletRequest req = Codec.encode(r);
 
-        callMT("unlockWallet", req, lnrpc.Rpc.UnlockWalletResponse.parser(), new ILightningCallbackMT() {
+        callMT("unlockWallet", req, lnrpc.Rpc.UnlockWalletResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 if (message.contains("wallet not found"))
@@ -346,18 +996,13 @@ public final class LightningDaemon {
             @Override
             public void onResponse(Object o) {
                 unlocked_.set(true);
-                mtcb.onResponse(Codec.decode((lnrpc.Rpc.UnlockWalletResponse)o));
+                mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.UnlockWalletResponse)o)));
             }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.unlockWallet(data, cb);
-            }
         });
     }
 
-    public static Future<Data.UnlockWalletResponse> unlockWalletFuture(Data.UnlockWalletRequest r) {
+    public static ILightningFuture<Data.UnlockWalletResponse> unlockWalletFuture(Data.UnlockWalletRequest r) {
         return callFuture(r, new FutureCallImpl<Data.UnlockWalletRequest, Data.UnlockWalletResponse> () {
             @Override
             public void onCall(Data.UnlockWalletRequest r, FutureCallback<Data.UnlockWalletResponse> cb) {
@@ -376,30 +1021,29 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.UnlockWalletResponse unlockWalletSync(Data.UnlockWalletRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return unlockWalletFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // GenSeed
     public static void genSeedMT(Data.GenSeedRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.GenSeedRequest req = Codec.encode(r);
 
-        callMT("genSeed", req, lnrpc.Rpc.GenSeedResponse.parser(), new ILightningCallbackMT() {
+        callMT("genSeed", req, lnrpc.Rpc.GenSeedResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.GenSeedResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.GenSeedResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.genSeed(data, cb);
-            }
         });
     }
 
-    public static Future<Data.GenSeedResponse> genSeedFuture(Data.GenSeedRequest r) {
+    public static ILightningFuture<Data.GenSeedResponse> genSeedFuture(Data.GenSeedRequest r) {
         return callFuture(r, new FutureCallImpl<Data.GenSeedRequest, Data.GenSeedResponse> () {
             @Override
             public void onCall(Data.GenSeedRequest r, FutureCallback<Data.GenSeedResponse> cb) {
@@ -418,13 +1062,17 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.GenSeedResponse genSeedSync(Data.GenSeedRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return genSeedFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // InitWallet
     public static void initWalletMT(Data.InitWalletRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.InitWalletRequest req = Codec.encode(r);
 
-        callMT("initWallet", req, lnrpc.Rpc.InitWalletResponse.parser(), new ILightningCallbackMT() {
+        callMT("initWallet", req, lnrpc.Rpc.InitWalletResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
@@ -433,18 +1081,13 @@ public final class LightningDaemon {
             @Override
             public void onResponse(Object o) {
                 unlocked_.set(true);
-                mtcb.onResponse(Codec.decode((lnrpc.Rpc.InitWalletResponse)o));
+                mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.InitWalletResponse)o)));
             }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.initWallet(data, cb);
-            }
         });
     }
 
-    public static Future<Data.InitWalletResponse> initWalletFuture(Data.InitWalletRequest r) {
+    public static ILightningFuture<Data.InitWalletResponse> initWalletFuture(Data.InitWalletRequest r) {
         return callFuture(r, new FutureCallImpl<Data.InitWalletRequest, Data.InitWalletResponse> () {
             @Override
             public void onCall(Data.InitWalletRequest r, FutureCallback<Data.InitWalletResponse> cb) {
@@ -463,30 +1106,29 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.InitWalletResponse initWalletSync(Data.InitWalletRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return initWalletFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // NewAddress
     public static void newAddressMT(Data.NewAddressRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.NewAddressRequest req = Codec.encode(r);
 
-        callMT("newAddress", req, lnrpc.Rpc.NewAddressResponse.parser(), new ILightningCallbackMT() {
+        callMT("newAddress", req, lnrpc.Rpc.NewAddressResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.NewAddressResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.NewAddressResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.newAddress(data, cb);
-            }
         });
     }
 
-    public static Future<Data.NewAddressResponse> newAddressFuture(Data.NewAddressRequest r) {
+    public static ILightningFuture<Data.NewAddressResponse> newAddressFuture(Data.NewAddressRequest r) {
         return callFuture(r, new FutureCallImpl<Data.NewAddressRequest, Data.NewAddressResponse> () {
             @Override
             public void onCall(Data.NewAddressRequest r, FutureCallback<Data.NewAddressResponse> cb) {
@@ -505,30 +1147,35 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.NewAddressResponse newAddressSync(Data.NewAddressRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return newAddressFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // GetInfo
     public static void getInfoMT(Data.GetInfoRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.GetInfoRequest req = Codec.encode(r);
 
-        callMT("getInfo", req, lnrpc.Rpc.GetInfoResponse.parser(), new ILightningCallbackMT() {
+        // identical calls in flight share the reply, cb is mtcb
+        // if not shared, so that its deadline or cancel cancels the call
+        final ILightningCallbackMT cb = singleFlight_.join("getInfo", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("getInfo", req, lnrpc.Rpc.GetInfoResponse.parser(), cb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                cb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.GetInfoResponse)o)); }
+            public void onResponse(Object o) { cb.onResponse(decoded(Codec.decode((lnrpc.Rpc.GetInfoResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.getInfo(data, cb);
-            }
         });
     }
 
-    public static Future<Data.GetInfoResponse> getInfoFuture(Data.GetInfoRequest r) {
+    public static ILightningFuture<Data.GetInfoResponse> getInfoFuture(Data.GetInfoRequest r) {
         return callFuture(r, new FutureCallImpl<Data.GetInfoRequest, Data.GetInfoResponse> () {
             @Override
             public void onCall(Data.GetInfoRequest r, FutureCallback<Data.GetInfoResponse> cb) {
@@ -547,30 +1194,33 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.GetInfoResponse getInfoSync(Data.GetInfoRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return getInfoFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // WalletBalance
     public static void walletBalanceMT(Data.WalletBalanceRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.WalletBalanceRequest req = Codec.encode(r);
 
-        callMT("walletBalance", req, lnrpc.Rpc.WalletBalanceResponse.parser(), new ILightningCallbackMT() {
+        final ILightningCallbackMT cb = singleFlight_.join("walletBalance", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("walletBalance", req, lnrpc.Rpc.WalletBalanceResponse.parser(), cb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                cb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.WalletBalanceResponse)o)); }
+            public void onResponse(Object o) { cb.onResponse(decoded(Codec.decode((lnrpc.Rpc.WalletBalanceResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.walletBalance(data, cb);
-            }
         });
     }
 
-    public static Future<Data.WalletBalanceResponse> walletBalanceFuture(Data.WalletBalanceRequest r) {
+    public static ILightningFuture<Data.WalletBalanceResponse> walletBalanceFuture(Data.WalletBalanceRequest r) {
         return callFuture(r, new FutureCallImpl<Data.WalletBalanceRequest, Data.WalletBalanceResponse> () {
             @Override
             public void onCall(Data.WalletBalanceRequest r, FutureCallback<Data.WalletBalanceResponse> cb) {
@@ -589,30 +1239,33 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.WalletBalanceResponse walletBalanceSync(Data.WalletBalanceRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return walletBalanceFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // ChannelBalance
     public static void channelBalanceMT(Data.ChannelBalanceRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.ChannelBalanceRequest req = Codec.encode(r);
 
-        callMT("channelBalance", req, lnrpc.Rpc.ChannelBalanceResponse.parser(), new ILightningCallbackMT() {
+        final ILightningCallbackMT cb = singleFlight_.join("channelBalance", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("channelBalance", req, lnrpc.Rpc.ChannelBalanceResponse.parser(), cb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                cb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ChannelBalanceResponse)o)); }
+            public void onResponse(Object o) { cb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ChannelBalanceResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.channelBalance(data, cb);
-            }
         });
     }
 
-    public static Future<Data.ChannelBalanceResponse> channelBalanceFuture(Data.ChannelBalanceRequest r) {
+    public static ILightningFuture<Data.ChannelBalanceResponse> channelBalanceFuture(Data.ChannelBalanceRequest r) {
         return callFuture(r, new FutureCallImpl<Data.ChannelBalanceRequest, Data.ChannelBalanceResponse> () {
             @Override
             public void onCall(Data.ChannelBalanceRequest r, FutureCallback<Data.ChannelBalanceResponse> cb) {
@@ -631,30 +1284,29 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.ChannelBalanceResponse channelBalanceSync(Data.ChannelBalanceRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return channelBalanceFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // ConnectPeer
     public static void connectPeerMT(Data.ConnectPeerRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.ConnectPeerRequest req = Codec.encode(r);
 
-        callMT("connectPeer", req, lnrpc.Rpc.ConnectPeerResponse.parser(), new ILightningCallbackMT() {
+        callMT("connectPeer", req, lnrpc.Rpc.ConnectPeerResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ConnectPeerResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ConnectPeerResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.connectPeer(data, cb);
-            }
         });
     }
 
-    public static Future<Data.ConnectPeerResponse> connectPeerFuture(Data.ConnectPeerRequest r) {
+    public static ILightningFuture<Data.ConnectPeerResponse> connectPeerFuture(Data.ConnectPeerRequest r) {
         return callFuture(r, new FutureCallImpl<Data.ConnectPeerRequest, Data.ConnectPeerResponse> () {
             @Override
             public void onCall(Data.ConnectPeerRequest r, FutureCallback<Data.ConnectPeerResponse> cb) {
@@ -673,19 +1325,18 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.ConnectPeerResponse connectPeerSync(Data.ConnectPeerRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return connectPeerFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // DisconnectPeer
     public static void disconnectPeerMT(lnrpc.Rpc.DisconnectPeerRequest r, final ILightningCallbackMT mtcb) {
 
-        callMT("disconnectPeer", r, lnrpc.Rpc.DisconnectPeerResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.disconnectPeer(data, cb);
-            }
-        });
+        callMT("disconnectPeer", r, lnrpc.Rpc.DisconnectPeerResponse.parser(), mtcb);
     }
 
-    public static Future<lnrpc.Rpc.DisconnectPeerResponse> disconnectPeerFuture(lnrpc.Rpc.DisconnectPeerRequest r) {
+    public static ILightningFuture<lnrpc.Rpc.DisconnectPeerResponse> disconnectPeerFuture(lnrpc.Rpc.DisconnectPeerRequest r) {
         return callFuture(r, new FutureCallImpl<lnrpc.Rpc.DisconnectPeerRequest, lnrpc.Rpc.DisconnectPeerResponse> () {
             @Override
             public void onCall(lnrpc.Rpc.DisconnectPeerRequest r, FutureCallback<lnrpc.Rpc.DisconnectPeerResponse> cb) {
@@ -704,19 +1355,22 @@ public final class LightningDaemon {
         });
     }
 
+    public static lnrpc.Rpc.DisconnectPeerResponse disconnectPeerSync(lnrpc.Rpc.DisconnectPeerRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return disconnectPeerFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // ListPeers
     public static void listPeersMT(lnrpc.Rpc.ListPeersRequest r, final ILightningCallbackMT mtcb) {
 
-        callMT("listPeers", r, lnrpc.Rpc.ListPeersResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.listPeers(data, cb);
-            }
-        });
+        final ILightningCallbackMT cb = singleFlight_.join("listPeers", r, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("listPeers", r, lnrpc.Rpc.ListPeersResponse.parser(), cb);
     }
 
-    public static Future<lnrpc.Rpc.ListPeersResponse> listPeersFuture(lnrpc.Rpc.ListPeersRequest r) {
+    public static ILightningFuture<lnrpc.Rpc.ListPeersResponse> listPeersFuture(lnrpc.Rpc.ListPeersRequest r) {
         return callFuture(r, new FutureCallImpl<lnrpc.Rpc.ListPeersRequest, Rpc.ListPeersResponse> () {
             @Override
             public void onCall(lnrpc.Rpc.ListPeersRequest r, FutureCallback<lnrpc.Rpc.ListPeersResponse> cb) {
@@ -735,73 +1389,111 @@ public final class LightningDaemon {
         });
     }
 
+    public static lnrpc.Rpc.ListPeersResponse listPeersSync(lnrpc.Rpc.ListPeersRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listPeersFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SubscribePeerEvents
-    public static void subscribePeerEventsMT(lnrpc.Rpc.PeerEventSubscription r, final ILightningCallbackMT mtcb) {
+    public static ILightningSubscription subscribePeerEventsMT(lnrpc.Rpc.PeerEventSubscription r, final ILightningCallbackMT mtcb) {
 
-        callMT("subscribePeerEvents", r, lnrpc.Rpc.PeerEvent.parser(), mtcb, new CallImpl() {
+        final lnrpc.Rpc.PeerEventSubscription req = r;
+        return subscriptionHub_.join("subscribePeerEvents", req, mtcb, new SubscriptionHub.Opener() {
             @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.subscribePeerEvents(data, cb);
+            public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+                return subscribePeerEvents(req, cb);
             }
         });
     }
 
+    private static SubscriptionHub.Upstream subscribePeerEvents(lnrpc.Rpc.PeerEventSubscription req, final ILightningCallbackMT mtcb) {
+        return new Subscription(callMT("subscribePeerEvents", req, lnrpc.Rpc.PeerEvent.parser(), mtcb));
+    }
+
     // ======================
     // ListChannels
     public static void listChannelsMT(Data.ListChannelsRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.ListChannelsRequest req = Codec.encode(r);
 
-        callMT("listChannels", req, lnrpc.Rpc.ListChannelsResponse.parser(), new ILightningCallbackMT() {
+        final ILightningCallbackMT cb = singleFlight_.join("listChannels", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("listChannels", req, WireCodec.LIST_CHANNELS_RESPONSE, cb);
+    }
+
+    public static ILightningFuture<Data.ListChannelsResponse> listChannelsFuture(Data.ListChannelsRequest r) {
+        return callFuture(r, new FutureCallImpl<Data.ListChannelsRequest, Data.ListChannelsResponse> () {
             @Override
-            public void onError(int code, String message) {
-                mtcb.onError(code, message);
+            public void onCall(Data.ListChannelsRequest r, FutureCallback<Data.ListChannelsResponse > cb) {
+                listChannelsMT(r, cb);
             }
+        });
+    }
+
+    public static Data.ListChannelsResponse listChannelsSync(Data.ListChannelsRequest r) throws LightningException {
+
+        return callSync(r, new SyncCallImpl<Data.ListChannelsRequest, Data.ListChannelsResponse> () {
+            @Override
+            public Future<Data.ListChannelsResponse> onCall(Data.ListChannelsRequest r) {
+                return listChannelsFuture(r);
+            }
+        });
+    }
+
+    public static Data.ListChannelsResponse listChannelsSync(Data.ListChannelsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listChannelsFuture(r).getOrCancel(timeout, unit);
+    }
+
+    // ListChannels reply as a columnar ChannelSet, for frequent
+    // refreshes of many channels
+    public static void listChannelSetMT(Data.ListChannelsRequest r, final ILightningCallbackMT mtcb) {
+
+        lnrpc.Rpc.ListChannelsRequest req = Codec.encode(r);
 
-            @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ListChannelsResponse)o)); }
+        final ILightningCallbackMT cb = singleFlight_.join("listChannelSet", req, mtcb);
+        if (cb == null)
+            return;
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.listChannels(data, cb);
-            }
-        });
+        callMT("listChannels", req, WireCodec.CHANNEL_SET, cb);
     }
 
-    public static Future<Data.ListChannelsResponse> listChannelsFuture(Data.ListChannelsRequest r) {
-        return callFuture(r, new FutureCallImpl<Data.ListChannelsRequest, Data.ListChannelsResponse> () {
+    public static ILightningFuture<ChannelSet> listChannelSetFuture(Data.ListChannelsRequest r) {
+        return callFuture(r, new FutureCallImpl<Data.ListChannelsRequest, ChannelSet> () {
             @Override
-            public void onCall(Data.ListChannelsRequest r, FutureCallback<Data.ListChannelsResponse > cb) {
-                listChannelsMT(r, cb);
+            public void onCall(Data.ListChannelsRequest r, FutureCallback<ChannelSet> cb) {
+                listChannelSetMT(r, cb);
             }
         });
     }
 
-    public static Data.ListChannelsResponse listChannelsSync(Data.ListChannelsRequest r) throws LightningException {
+    public static ChannelSet listChannelSetSync(Data.ListChannelsRequest r) throws LightningException {
 
-        return callSync(r, new SyncCallImpl<Data.ListChannelsRequest, Data.ListChannelsResponse> () {
+        return callSync(r, new SyncCallImpl<Data.ListChannelsRequest, ChannelSet> () {
             @Override
-            public Future<Data.ListChannelsResponse> onCall(Data.ListChannelsRequest r) {
-                return listChannelsFuture(r);
+            public Future<ChannelSet> onCall(Data.ListChannelsRequest r) {
+                return listChannelSetFuture(r);
             }
         });
     }
 
+    public static ChannelSet listChannelSetSync(Data.ListChannelsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listChannelSetFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // PendingChannels
     public static void pendingChannelsMT(lnrpc.Rpc.PendingChannelsRequest r, final ILightningCallbackMT mtcb) {
 
-        callMT("pendingChannels", r, lnrpc.Rpc.PendingChannelsResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.pendingChannels(data, cb);
-            }
-        });
+        final ILightningCallbackMT cb = singleFlight_.join("pendingChannels", r, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("pendingChannels", r, lnrpc.Rpc.PendingChannelsResponse.parser(), cb);
     }
 
-    public static Future<lnrpc.Rpc.PendingChannelsResponse> pendingChannelsFuture(lnrpc.Rpc.PendingChannelsRequest r) {
+    public static ILightningFuture<lnrpc.Rpc.PendingChannelsResponse> pendingChannelsFuture(lnrpc.Rpc.PendingChannelsRequest r) {
         return callFuture(r, new FutureCallImpl<lnrpc.Rpc.PendingChannelsRequest, lnrpc.Rpc.PendingChannelsResponse> () {
             @Override
             public void onCall(lnrpc.Rpc.PendingChannelsRequest r, FutureCallback<lnrpc.Rpc.PendingChannelsResponse> cb) {
@@ -820,18 +1512,21 @@ public final class LightningDaemon {
         });
     }
 
+    public static lnrpc.Rpc.PendingChannelsResponse pendingChannelsSync(lnrpc.Rpc.PendingChannelsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return pendingChannelsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // ClosedChannels
     public static void closedChannelsMT(lnrpc.Rpc.ClosedChannelsRequest r, final ILightningCallbackMT mtcb) {
 
-        callMT("closedChannels", r, lnrpc.Rpc.ClosedChannelsResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.closedChannels(data, cb);
-            }
-        });
+        final ILightningCallbackMT cb = singleFlight_.join("closedChannels", r, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("closedChannels", r, lnrpc.Rpc.ClosedChannelsResponse.parser(), cb);
     }
-    public static Future<lnrpc.Rpc.ClosedChannelsResponse> closedChannelsFuture(lnrpc.Rpc.ClosedChannelsRequest r) {
+    public static ILightningFuture<lnrpc.Rpc.ClosedChannelsResponse> closedChannelsFuture(lnrpc.Rpc.ClosedChannelsRequest r) {
         return callFuture(r, new FutureCallImpl<lnrpc.Rpc.ClosedChannelsRequest, lnrpc.Rpc.ClosedChannelsResponse> () {
             @Override
             public void onCall(lnrpc.Rpc.ClosedChannelsRequest r, FutureCallback<lnrpc.Rpc.ClosedChannelsResponse> cb) {
@@ -849,6 +1544,10 @@ public final class LightningDaemon {
         });
     }
 
+    public static lnrpc.Rpc.ClosedChannelsResponse closedChannelsSync(lnrpc.Rpc.ClosedChannelsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return closedChannelsFuture(r).getOrCancel(timeout, unit);
+    }
+
 
     // ======================
     // AddInvoice
@@ -856,24 +1555,19 @@ public final class LightningDaemon {
 
         lnrpc.Rpc.Invoice req = Codec.encode(r);
 
-        callMT("addInvoice", req, lnrpc.Rpc.AddInvoiceResponse.parser(), new ILightningCallbackMT() {
+        callMT("addInvoice", req, lnrpc.Rpc.AddInvoiceResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.AddInvoiceResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.AddInvoiceResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.addInvoice(data, cb);
-            }
         });
     }
 
-    public static Future<Data.AddInvoiceResponse> addInvoiceFuture(Data.Invoice r) {
+    public static ILightningFuture<Data.AddInvoiceResponse> addInvoiceFuture(Data.Invoice r) {
         return callFuture(r, new FutureCallImpl<Data.Invoice, Data.AddInvoiceResponse>() {
             @Override
             public void onCall(Data.Invoice r, FutureCallback<Data.AddInvoiceResponse> cb) {
@@ -892,27 +1586,34 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.AddInvoiceResponse addInvoiceSync(Data.Invoice r, long timeout, TimeUnit unit) throws LightningException {
+        return addInvoiceFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SubscribeTransactions
-    public static void subscribeTransactionsMT(Data.GetTransactionsRequest r, final ILightningCallbackMT mtcb) {
+    public static ILightningSubscription subscribeTransactionsMT(Data.GetTransactionsRequest r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.GetTransactionsRequest req = Codec.encode(r);
+        final lnrpc.Rpc.GetTransactionsRequest req = Codec.encode(r);
+        return subscriptionHub_.join("subscribeTransactions", req, mtcb, new SubscriptionHub.Opener() {
+            @Override
+            public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+                return subscribeTransactions(req, cb);
+            }
+        });
+    }
 
-        callMT("subscribeTransactions", req, lnrpc.Rpc.Transaction.parser(), new ILightningCallbackMT() {
+    private static SubscriptionHub.Upstream subscribeTransactions(lnrpc.Rpc.GetTransactionsRequest req, final ILightningCallbackMT mtcb) {
+        return new Subscription(callMT("subscribeTransactions", req, lnrpc.Rpc.Transaction.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.Transaction)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.Transaction)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.subscribeTransactions(data, cb);
-            }
-        });
+        }));
     }
 
     // ======================
@@ -921,23 +1622,13 @@ public final class LightningDaemon {
 
         lnrpc.Rpc.GetTransactionsRequest req = Codec.encode(r);
 
-        callMT("getTransactions", req, lnrpc.Rpc.TransactionDetails.parser(), new ILightningCallbackMT() {
-            @Override
-            public void onError(int code, String message) {
-                mtcb.onError(code, message);
-            }
-
-            @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.TransactionDetails)o)); }
+        final ILightningCallbackMT cb = singleFlight_.join("getTransactions", req, mtcb);
+        if (cb == null)
+            return;
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.getTransactions(data, cb);
-            }
-        });
+        callMT("getTransactions", req, WireCodec.TRANSACTION_DETAILS, cb);
     }
-    public static Future<Data.TransactionDetails> getTransactionsFuture(Data.GetTransactionsRequest r) {
+    public static ILightningFuture<Data.TransactionDetails> getTransactionsFuture(Data.GetTransactionsRequest r) {
         return callFuture(r, new FutureCallImpl<Data.GetTransactionsRequest, Data.TransactionDetails>() {
             @Override
             public void onCall(Data.GetTransactionsRequest r, FutureCallback<Data.TransactionDetails> cb) {
@@ -955,18 +1646,21 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.TransactionDetails getTransactionsSync(Data.GetTransactionsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return getTransactionsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // GetTransactions
     public static void listUnspentMT(lnrpc.Rpc.ListUnspentRequest r, final ILightningCallbackMT mtcb) {
 
-        callMT("listUnspent", r, lnrpc.Rpc.ListUnspentResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.listUnspent(data, cb);
-            }
-        });
+        final ILightningCallbackMT cb = singleFlight_.join("listUnspent", r, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("listUnspent", r, lnrpc.Rpc.ListUnspentResponse.parser(), cb);
     }
-    public static Future<lnrpc.Rpc.ListUnspentResponse> listUnspentFuture(lnrpc.Rpc.ListUnspentRequest r) {
+    public static ILightningFuture<lnrpc.Rpc.ListUnspentResponse> listUnspentFuture(lnrpc.Rpc.ListUnspentRequest r) {
         return callFuture(r, new FutureCallImpl<lnrpc.Rpc.ListUnspentRequest, lnrpc.Rpc.ListUnspentResponse>() {
             @Override
             public void onCall(lnrpc.Rpc.ListUnspentRequest r, FutureCallback<lnrpc.Rpc.ListUnspentResponse> cb) {
@@ -984,6 +1678,10 @@ public final class LightningDaemon {
         });
     }
 
+    public static lnrpc.Rpc.ListUnspentResponse listUnspentSync(lnrpc.Rpc.ListUnspentRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listUnspentFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // OpenChannel
     public static void openChannelMT(Data.OpenChannelRequest r, final ILightningCallbackMT mtcb) {
@@ -997,36 +1695,26 @@ public final class LightningDaemon {
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.OpenStatusUpdate)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.OpenStatusUpdate)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.openChannel(data, cb);
-            }
         });
     }
     public static void openChannelSyncMT(Data.OpenChannelRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.OpenChannelRequest req = Codec.encode(r);
 
-        callMT("openChannelSync", req, lnrpc.Rpc.ChannelPoint.parser(), new ILightningCallbackMT() {
+        callMT("openChannelSync", req, lnrpc.Rpc.ChannelPoint.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ChannelPoint)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ChannelPoint)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.openChannelSync(data, cb);
-            }
         });
     }
-    public static Future<Data.ChannelPoint> openChannelFuture(Data.OpenChannelRequest r) {
+    public static ILightningFuture<Data.ChannelPoint> openChannelFuture(Data.OpenChannelRequest r) {
         return callFuture(r, new FutureCallImpl<Data.OpenChannelRequest, Data.ChannelPoint>() {
             @Override
             public void onCall(Data.OpenChannelRequest r, FutureCallback<Data.ChannelPoint> cb) {
@@ -1044,26 +1732,25 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.ChannelPoint openChannelSync(Data.OpenChannelRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return openChannelFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // CloseChannel
     public static void closeChannelMT(Data.CloseChannelRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.CloseChannelRequest req = Codec.encode(r);
 
-        callMT("openChannel", req, lnrpc.Rpc.ClosedChannelUpdate.parser(), new ILightningCallbackMT() {
+        callMT("closeChannel", req, lnrpc.Rpc.ClosedChannelUpdate.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.CloseStatusUpdate)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.CloseStatusUpdate)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.closeChannel(data, cb);
-            }
         });
     }
 
@@ -1071,25 +1758,24 @@ public final class LightningDaemon {
     // EstimateFee
     public static void estimateFeeMT(Data.EstimateFeeRequest r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.EstimateFeeRequest req = Codec.encode(r);
+        byte[] req = WireEncoder.encode(r);
 
-        callMT("estimateFee", req, lnrpc.Rpc.EstimateFeeResponse.parser(), new ILightningCallbackMT() {
+        final ILightningCallbackMT cb = singleFlight_.join("estimateFee", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("estimateFee", req, lnrpc.Rpc.EstimateFeeResponse.parser(), cb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                cb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.EstimateFeeResponse)o)); }
+            public void onResponse(Object o) { cb.onResponse(decoded(Codec.decode((lnrpc.Rpc.EstimateFeeResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.estimateFee(data, cb);
-            }
         });
     }
-    public static Future<Data.EstimateFeeResponse> estimateFeeFuture(Data.EstimateFeeRequest r) {
+    public static ILightningFuture<Data.EstimateFeeResponse> estimateFeeFuture(Data.EstimateFeeRequest r) {
         return callFuture(r, new FutureCallImpl<Data.EstimateFeeRequest, Data.EstimateFeeResponse>() {
             @Override
             public void onCall(Data.EstimateFeeRequest r, FutureCallback<Data.EstimateFeeResponse> cb) {
@@ -1107,29 +1793,28 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.EstimateFeeResponse estimateFeeSync(Data.EstimateFeeRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return estimateFeeFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SendCoins
     public static void sendCoinsMT(Data.SendCoinsRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.SendCoinsRequest req = Codec.encode(r);
 
-        callMT("sendCoins", req, lnrpc.Rpc.SendCoinsResponse.parser(), new ILightningCallbackMT() {
+        callMT("sendCoins", req, lnrpc.Rpc.SendCoinsResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendCoinsResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendCoinsResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.sendCoins(data, cb);
-            }
         });
     }
-    public static Future<Data.SendCoinsResponse> sendCoinsFuture(Data.SendCoinsRequest r) {
+    public static ILightningFuture<Data.SendCoinsResponse> sendCoinsFuture(Data.SendCoinsRequest r) {
         return callFuture(r, new FutureCallImpl<Data.SendCoinsRequest, Data.SendCoinsResponse>() {
             @Override
             public void onCall(Data.SendCoinsRequest r, FutureCallback<Data.SendCoinsResponse> cb) {
@@ -1147,29 +1832,28 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.SendCoinsResponse sendCoinsSync(Data.SendCoinsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return sendCoinsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SendMany
     public static void sendManyMT(Data.SendManyRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.SendManyRequest req = Codec.encode(r);
 
-        callMT("sendMany", req, lnrpc.Rpc.SendManyResponse.parser(), new ILightningCallbackMT() {
+        callMT("sendMany", req, lnrpc.Rpc.SendManyResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendManyResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendManyResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.sendMany(data, cb);
-            }
         });
     }
-    public static Future<Data.SendManyResponse> sendManyFuture(Data.SendManyRequest r) {
+    public static ILightningFuture<Data.SendManyResponse> sendManyFuture(Data.SendManyRequest r) {
         return callFuture(r, new FutureCallImpl<Data.SendManyRequest, Data.SendManyResponse>() {
             @Override
             public void onCall(Data.SendManyRequest r, FutureCallback<Data.SendManyResponse> cb) {
@@ -1187,33 +1871,42 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.SendManyResponse sendManySync(Data.SendManyRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return sendManyFuture(r).getOrCancel(timeout, unit);
+    }
+
 
     // ======================
     // SendPayment
     private static class SendStream<RequestType> implements ILightningSendStream<RequestType> {
 
-        private lndmobile.SendStream stream_;
+        private ILightningTransport.SendStream stream_;
+        // fixed per stream, keeps state between sends
+        private WireEncoder.Encoder<RequestType> encoder_;
+        // null if metrics are off
+        private LightningMetrics.Rpc metrics_;
 
-        SendStream(lndmobile.SendStream s){
+        SendStream(ILightningTransport.SendStream s, WireEncoder.Encoder<RequestType> encoder,
+                   LightningMetrics.Rpc metrics){
             assert s != null;
             stream_ = s;
+            encoder_ = encoder;
+            metrics_ = metrics;
         }
 
+        // synchronized for the encoder
         @Override
-        public void send(RequestType r) throws LightningException {
+        public synchronized void send(RequestType r) throws LightningException {
             assert stream_ != null;
 
             try {
-//                Log.i(TAG, "sending class "+r.getClass()+" sendRequest.class "+Data.SendRequest.class+" object "+r);
-                // yeah, I know, this is bullshit
-                if (r.getClass() == Data.SendRequest.class) {
-                    stream_.send(Codec.encode((Data.SendRequest) r).toByteArray());
-                } else if (r.getClass() == Data.SendToRouteRequest.class) {
-                        stream_.send(Codec.encode((Data.SendToRouteRequest) r).toByteArray());
-                } else {
-                    Log.e(TAG, "sending unknown class "+r);
-                    throw new LightningException(-1, "Unknown request type");
+                long t = metrics_ != null ? System.nanoTime() : 0;
+                byte[] data = encoder_.encode(r);
+                if (metrics_ != null) {
+                    metrics_.encode.record(System.nanoTime() - t);
+                    metrics_.requestBytes.record(data.length);
                 }
+                stream_.send(data);
             } catch (LightningException e) {
                 Log.e(TAG, "send lightning error "+e);
                 throw e;
@@ -1234,22 +1927,27 @@ public final class LightningDaemon {
             }
         }
     }
-    private interface SendImpl<RequestType> {
-        lndmobile.SendStream onCall(LndmobileCallback cb) throws Exception;
-    }
 
     private static <RequestType, ResponseType extends com.google.protobuf.Message>
     ILightningSendStream<RequestType> callStreamMT(
             final String label,
+            WireEncoder.Encoder<RequestType> encoder,
             final com.google.protobuf.Parser<ResponseType> parser,
-            final ILightningCallbackMT mtcb,
-            SendImpl impl) {
+            final ILightningCallbackMT mtcb) {
 
-        Log.i(TAG, "calling streaming " + label+" thread "+Thread.currentThread().getId());
+        if (logPolicy_.logCalls(label))
+            Log.i(TAG, "calling streaming " + label+" thread "+Thread.currentThread().getId());
 
         try {
-            return new SendStream<RequestType>(
-                    impl.onCall(new LndmobileCallback<ResponseType>(label, parser, mtcb)));
+            // no round-trip for bidirectional streams, replies
+            // are matched to requests by the caller
+            LightningMetrics.Rpc metrics = LightningMetrics.rpc(label);
+            LndmobileCallback cb = new LndmobileCallback(label, parser, mtcb);
+            if (metrics != null) {
+                metrics.calls.incrementAndGet();
+                cb.setMetrics(metrics, 0);
+            }
+            return new SendStream<>(transport().openStream(label, cb), encoder, metrics);
         } catch (LightningException e) {
             mtcb.onError(e.errorCode(), e.errorMessage());
         } catch (Exception e) {
@@ -1259,20 +1957,15 @@ public final class LightningDaemon {
     }
     public static ILightningSendStream<Data.SendRequest> sendPaymentMT(final ILightningCallbackMT mtcb) {
 
-        return callStreamMT("sendPayment", lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
+        return callStreamMT("sendPayment", WireEncoder.sendRequest(), lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendResponse)o))); }
 
-        }, new SendImpl() {
-            @Override
-            public lndmobile.SendStream onCall(LndmobileCallback cb) throws Exception {
-                return Lndmobile.sendPayment(cb);
-            }
         });
     }
 
@@ -1282,23 +1975,18 @@ public final class LightningDaemon {
 
         lnrpc.Rpc.SendRequest req = Codec.encode(r);
 
-        callMT("sendPaymentSync", req, lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
+        callMT("sendPaymentSync", req, lnrpc.Rpc.SendResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.sendPaymentSync(data, cb);
-            }
         });
     }
-    public static Future<Data.SendResponse> sendPaymentFuture(Data.SendRequest r) {
+    public static ILightningFuture<Data.SendResponse> sendPaymentFuture(Data.SendRequest r) {
         return callFuture(r, new FutureCallImpl<Data.SendRequest, Data.SendResponse>() {
             @Override
             public void onCall(Data.SendRequest r, FutureCallback<Data.SendResponse> cb) {
@@ -1316,29 +2004,32 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.SendResponse sendPaymentSync(Data.SendRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return sendPaymentFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // LookupInvoice
     public static void lookupInvoiceMT(Data.PaymentHash r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.PaymentHash req = Codec.encode(r);
+        byte[] req = WireEncoder.encode(r);
 
-        callMT("lookupInvoice", req, lnrpc.Rpc.Invoice.parser(), new ILightningCallbackMT() {
+        callMT("lookupInvoice", req, lnrpc.Rpc.Invoice.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.Invoice)o)); }
-
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.lookupInvoice(data, cb);
+            public void onResponse(Object o) {
+                Data.Invoice i = decoded(Codec.decode((lnrpc.Rpc.Invoice)o));
+                store(i);
+                mtcb.onResponse(i);
             }
+
         });
     }
-    public static Future<Data.Invoice> lookupInvoiceFuture(Data.PaymentHash r) {
+    public static ILightningFuture<Data.Invoice> lookupInvoiceFuture(Data.PaymentHash r) {
         return callFuture(r, new FutureCallImpl<Data.PaymentHash, Data.Invoice>() {
             @Override
             public void onCall(Data.PaymentHash r, FutureCallback<Data.Invoice> cb) {
@@ -1356,29 +2047,196 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.Invoice lookupInvoiceSync(Data.PaymentHash r, long timeout, TimeUnit unit) throws LightningException {
+        return lookupInvoiceFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
-    // ListPayments
-    public static void listPaymentsMT(Data.ListPaymentsRequest r, final ILightningCallbackMT mtcb) {
+    // ListInvoices
+    public static void listInvoicesMT(Data.ListInvoiceRequest r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.ListPaymentsRequest req = Codec.encode(r);
+        lnrpc.Rpc.ListInvoiceRequest req = Codec.encode(r);
 
-        callMT("listPayments", req, lnrpc.Rpc.ListPaymentsResponse.parser(), new ILightningCallbackMT() {
+        callMT("listInvoices", req, lnrpc.Rpc.ListInvoiceResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ListPaymentsResponse)o)); }
+            public void onResponse(Object o) {
+                Data.ListInvoiceResponse r = decoded(Codec.decode((lnrpc.Rpc.ListInvoiceResponse)o));
+                store(r);
+                mtcb.onResponse(r);
+            }
+
+        });
+    }
+    public static ILightningFuture<Data.ListInvoiceResponse> listInvoicesFuture(Data.ListInvoiceRequest r) {
+        return callFuture(r, new FutureCallImpl<Data.ListInvoiceRequest, Data.ListInvoiceResponse>() {
+            @Override
+            public void onCall(Data.ListInvoiceRequest r, FutureCallback<Data.ListInvoiceResponse> cb) {
+                listInvoicesMT(r, cb);
+            }
+        });
+    }
+    public static Data.ListInvoiceResponse listInvoicesSync(Data.ListInvoiceRequest r) throws LightningException {
 
-        }, new CallImpl() {
+        return callSync(r, new SyncCallImpl<Data.ListInvoiceRequest, Data.ListInvoiceResponse> () {
             @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.listPayments(data, cb);
+            public Future<Data.ListInvoiceResponse> onCall(Data.ListInvoiceRequest r) {
+                return listInvoicesFuture(r);
             }
         });
     }
-    public static Future<Data.ListPaymentsResponse> listPaymentsFuture(Data.ListPaymentsRequest r) {
+
+    public static Data.ListInvoiceResponse listInvoicesSync(Data.ListInvoiceRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listInvoicesFuture(r).getOrCancel(timeout, unit);
+    }
+
+    // ======================
+    // ListPayments
+    public static void listPaymentsMT(Data.ListPaymentsRequest r, final ILightningCallbackMT mtcb) {
+
+        lnrpc.Rpc.ListPaymentsRequest req = Codec.encode(r);
+
+        final ILightningCallbackMT cb = singleFlight_.join("listPayments", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("listPayments", req, WireCodec.LIST_PAYMENTS_RESPONSE, storing(cb));
+    }
+    // stream of Data.ListPaymentsChunk, see Data.ListPaymentsPageRequest,
+    private static class PaymentsPager implements ILightningPager, ILightningCallbackMT {
+        private Data.ListPaymentsPageRequest r_;
+        private ILightningCallbackMT mtcb_;
+        // guarded by this
+        private WireCodec.PaymentsIndex index_;
+        private int from_;
+        private int count_;
+        private int chunkSize_;
+        private int done_;
+        // chunks asked for and not delivered yet
+        private int demand_ = 1;
+        private boolean delivering_;
+        private boolean cancelled_;
+
+        PaymentsPager(Data.ListPaymentsPageRequest r, ILightningCallbackMT mtcb) {
+            r_ = r;
+            mtcb_ = mtcb;
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            synchronized (this) {
+                if (cancelled_)
+                    return;
+                cancelled_ = true;
+            }
+            mtcb_.onError(code, message);
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            WireCodec.PaymentsIndex index = (WireCodec.PaymentsIndex)o;
+            synchronized (this) {
+                int total = index.size();
+                from_ = Math.min(Math.max(r_.offset, 0), total);
+                count_ = total - from_;
+                if (r_.maxPayments > 0)
+                    count_ = Math.min(count_, r_.maxPayments);
+                chunkSize_ = r_.chunkSize > 0 ? r_.chunkSize : 100;
+                index_ = index;
+            }
+            deliver();
+        }
+
+        @Override
+        public void next() {
+            synchronized (this) {
+                if (cancelled_)
+                    return;
+                demand_++;
+            }
+            worker().execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled_ = true;
+            // let the reply go
+            index_ = null;
+        }
+
+        // one thread delivers at a time, next() called
+        // during delivery is served by the loop
+        private void deliver() {
+            while (true) {
+                WireCodec.PaymentsIndex index;
+                int done;
+                int size;
+                synchronized (this) {
+                    // an empty page has one empty chunk
+                    if (delivering_ || cancelled_ || index_ == null || demand_ == 0
+                            || (done_ >= count_ && done_ > 0))
+                        return;
+                    delivering_ = true;
+                    demand_--;
+                    index = index_;
+                    done = done_;
+                    size = Math.min(chunkSize_, count_ - done_);
+                }
+
+                int total = index.size();
+                Data.ListPaymentsChunk chunk = new Data.ListPaymentsChunk();
+                chunk.payments = new ArrayList<>(size);
+                chunk.index = done;
+                chunk.totalPayments = total;
+                try {
+                    for (int i = 0; i < size; i++) {
+                        int pos = from_ + done + i;
+                        chunk.payments.add(WireCodec.decodePayment(index, r_.reversed ? total - 1 - pos : pos));
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "bad reply from listPayments: " + e.getMessage());
+                    cancel();
+                    mtcb_.onError(-2, e.getMessage());
+                    return;
+                }
+
+                synchronized (this) {
+                    done_ = done + Math.max(size, 1);
+                    chunk.last = done_ >= count_;
+                    if (chunk.last)
+                        index_ = null;
+                }
+                mtcb_.onResponse(chunk);
+                synchronized (this) {
+                    delivering_ = false;
+                }
+            }
+        }
+    }
+
+    // the whole reply is only indexed, payments of the page are
+    // decoded chunkSize at a time: the first chunk when the reply
+    // arrives, the next ones on the worker thread when asked for
+    // with pager.next()
+    public static ILightningPager listPaymentsPagedMT(final Data.ListPaymentsPageRequest r, final ILightningCallbackMT mtcb) {
+
+        lnrpc.Rpc.ListPaymentsRequest req = Codec.encode(r);
+
+        PaymentsPager pager = new PaymentsPager(r, storing(mtcb));
+        callMT("listPayments", req, WireCodec.LIST_PAYMENTS_INDEX, pager);
+        return pager;
+    }
+
+    public static ILightningFuture<Data.ListPaymentsResponse> listPaymentsFuture(Data.ListPaymentsRequest r) {
         return callFuture(r, new FutureCallImpl<Data.ListPaymentsRequest, Data.ListPaymentsResponse>() {
             @Override
             public void onCall(Data.ListPaymentsRequest r, FutureCallback<Data.ListPaymentsResponse> cb) {
@@ -1396,29 +2254,28 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.ListPaymentsResponse listPaymentsSync(Data.ListPaymentsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return listPaymentsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // DeleteAllPayments
     public static void deleteAllPaymentsMT(Data.DeleteAllPaymentsRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.DeleteAllPaymentsRequest req = Codec.encode(r);
 
-        callMT("deleteAllPayments", req, lnrpc.Rpc.DeleteAllPaymentsResponse.parser(), new ILightningCallbackMT() {
+        callMT("deleteAllPayments", req, lnrpc.Rpc.DeleteAllPaymentsResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.DeleteAllPaymentsResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.DeleteAllPaymentsResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.deleteAllPayments(data, cb);
-            }
         });
     }
-    public static Future<Data.DeleteAllPaymentsResponse> deleteAllPaymentsFuture(Data.DeleteAllPaymentsRequest r) {
+    public static ILightningFuture<Data.DeleteAllPaymentsResponse> deleteAllPaymentsFuture(Data.DeleteAllPaymentsRequest r) {
         return callFuture(r, new FutureCallImpl<Data.DeleteAllPaymentsRequest, Data.DeleteAllPaymentsResponse>() {
             @Override
             public void onCall(Data.DeleteAllPaymentsRequest r, FutureCallback<Data.DeleteAllPaymentsResponse> cb) {
@@ -1436,28 +2293,32 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.DeleteAllPaymentsResponse deleteAllPaymentsSync(Data.DeleteAllPaymentsRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return deleteAllPaymentsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // DecodePayReq
     public static void decodePayReqMT(Data.PayReqString r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.PayReqString req = Codec.encode(r);
-        callMT("decodePayReq", req, lnrpc.Rpc.PayReq.parser(), new ILightningCallbackMT() {
+        byte[] req = WireEncoder.encode(r);
+
+        final ILightningCallbackMT cb = singleFlight_.join("decodePayReq", req, mtcb);
+        if (cb == null)
+            return;
+
+        callMT("decodePayReq", req, lnrpc.Rpc.PayReq.parser(), cb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                cb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.PayReq)o)); }
+            public void onResponse(Object o) { cb.onResponse(decoded(Codec.decode((lnrpc.Rpc.PayReq)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.decodePayReq(data, cb);
-            }
         });
     }
-    public static Future<Data.PayReq> decodePayReqFuture(Data.PayReqString r) {
+    public static ILightningFuture<Data.PayReq> decodePayReqFuture(Data.PayReqString r) {
         return callFuture(r, new FutureCallImpl<Data.PayReqString, Data.PayReq>() {
             @Override
             public void onCall(Data.PayReqString r, FutureCallback<Data.PayReq> cb) {
@@ -1475,6 +2336,10 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.PayReq decodePayReqSync(Data.PayReqString r, long timeout, TimeUnit unit) throws LightningException {
+        return decodePayReqFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // RegisterBlockEpochNtfn
 /*    public static void registerBlockEpochNtfnMT(Data.BlockEpoch r, final ILightningCallbackMT mtcb) {
@@ -1487,82 +2352,149 @@ public final class LightningDaemon {
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((chainrpc.Chainnotifier.BlockEpoch)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((chainrpc.Chainnotifier.BlockEpoch)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.registerBlockEpochNtfn(data, cb);
-            }
         });
     }
 */
     // ======================
     // SubscribeInvoices
-    public static void subscribeInvoicesMT(Data.InvoiceSubscription r, final ILightningCallbackMT mtcb) {
+    public static ILightningSubscription subscribeInvoicesMT(Data.InvoiceSubscription r, final ILightningCallbackMT mtcb) {
 
-        lnrpc.Rpc.InvoiceSubscription req = Codec.encode(r);
-        callMT("subscribeInvoices", req, lnrpc.Rpc.Invoice.parser(), new ILightningCallbackMT() {
+        final lnrpc.Rpc.InvoiceSubscription req = Codec.encode(r);
+        // lnd replays invoices after the indices to each
+        // subscriber, such subscriptions aren't shared
+        if (r.addIndex != 0 || r.settleIndex != 0)
+            return subscribeInvoices(req, mtcb);
+
+        return subscriptionHub_.join("subscribeInvoices", req, mtcb, new SubscriptionHub.Opener() {
             @Override
-            public void onError(int code, String message) {
-                mtcb.onError(code, message);
+            public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+                return subscribeInvoices(req, cb);
             }
+        });
+    }
 
+    private static SubscriptionHub.Upstream subscribeInvoices(lnrpc.Rpc.InvoiceSubscription req, final ILightningCallbackMT mtcb) {
+        return new Subscription(callMT("subscribeInvoices", req, lnrpc.Rpc.Invoice.parser(), new ILightningCallbackMT() {
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.Invoice)o)); }
+            public void onError(int code, String message) {
+                mtcb.onError(code, message);
+            }
 
-        }, new CallImpl() {
             @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.subscribeInvoices(data, cb);
+            public void onResponse(Object o) {
+                Data.Invoice i = decoded(Codec.decode((lnrpc.Rpc.Invoice)o));
+                store(i);
+                mtcb.onResponse(i);
             }
-        });
+
+        }));
     }
 
     // ======================
     // SubscribeChannelEvents
-    public static void subscribeChannelEventsMT(Data.ChannelEventSubscription r, final ILightningCallbackMT mtcb) {
+    public static ILightningSubscription subscribeChannelEventsMT(Data.ChannelEventSubscription r, final ILightningCallbackMT mtcb) {
+
+        final lnrpc.Rpc.ChannelEventSubscription req = Codec.encode(r);
+        return subscriptionHub_.join("subscribeChannelEvents", req, mtcb, new SubscriptionHub.Opener() {
+            @Override
+            public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+                return subscribeChannelEvents(req, cb);
+            }
+        });
+    }
 
-        lnrpc.Rpc.ChannelEventSubscription req = Codec.encode(r);
-        callMT("subscribeChannelEvents", req, lnrpc.Rpc.ChannelEventUpdate.parser(), new ILightningCallbackMT() {
+    private static SubscriptionHub.Upstream subscribeChannelEvents(lnrpc.Rpc.ChannelEventSubscription req, final ILightningCallbackMT mtcb) {
+        return new Subscription(callMT("subscribeChannelEvents", req, lnrpc.Rpc.ChannelEventUpdate.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ChannelEventUpdate)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ChannelEventUpdate)o))); }
+
+        }));
+    }
+
+    // ======================
+    // Graph cache
+
+    // keeps the graph cache consistent with our channels
+    private static void subscribeGraphCache(final GraphCache cache) {
+        subscribeChannelEventsMT(new Data.ChannelEventSubscription(), new ILightningCallbackMT() {
+            @Override
+            public void onError(int code, String message) {
+                // we might have missed events
+                cache.clear();
+                Log.e(TAG, "graph cache subscription error "+code+" "+message);
+                timerWheel().newTimeout(new Runnable() {
+                    @Override
+                    public void run() {
+                        subscribeGraphCache(cache);
+                    }
+                }, 5000);
+            }
 
-        }, new CallImpl() {
             @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.subscribeChannelEvents(data, cb);
+            public void onResponse(Object o) {
+                cache.onChannelEvent((Data.ChannelEventUpdate)o);
             }
         });
     }
 
+    // null if graph cache is off or edge is not cached
+    public static Data.ChannelEdge getCachedChannelEdge(long chanId) {
+        GraphCache cache = graphCache_;
+        return cache != null ? cache.getEdge(chanId) : null;
+    }
+
     // ======================
     // GetNodeInfo
     public static void getNodeInfoMT(Data.NodeInfoRequest r, final ILightningCallbackMT mtcb) {
 
+        final GraphCache cache = graphCache_;
+        if (cache != null) {
+            Data.NodeInfo n = cache.getNode(r);
+            if (n != null) {
+                // refresh ahead of expiry
+                Data.NodeInfoRequest refresh = cache.startRefresh(r);
+                if (refresh != null)
+                    fetchNodeInfo(refresh, cache, null);
+                mtcb.onResponse(n);
+                return;
+            }
+        }
+
+        fetchNodeInfo(r, cache, mtcb);
+    }
+
+    private static void fetchNodeInfo(final Data.NodeInfoRequest r, final GraphCache cache,
+                                      final ILightningCallbackMT mtcb) {
+
         lnrpc.Rpc.NodeInfoRequest req = Codec.encode(r);
-        callMT("getNodeInfo", req, lnrpc.Rpc.NodeInfo.parser(), new ILightningCallbackMT() {
+        callMT("getNodeInfo", req, lnrpc.Rpc.NodeInfo.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
-                mtcb.onError(code, message);
+                if (mtcb != null)
+                    mtcb.onError(code, message);
+                else if (cache != null)
+                    cache.refreshFailed(r);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.NodeInfo)o)); }
-
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.getNodeInfo(data, cb);
+            public void onResponse(Object o) {
+                Data.NodeInfo n = decoded(Codec.decode((lnrpc.Rpc.NodeInfo)o));
+                if (cache != null)
+                    cache.putNode(r, n);
+                if (mtcb != null)
+                    mtcb.onResponse(n);
             }
+
         });
     }
-    public static Future<Data.NodeInfo> getNodeInfoFuture(Data.NodeInfoRequest r) {
+    public static ILightningFuture<Data.NodeInfo> getNodeInfoFuture(Data.NodeInfoRequest r) {
         return callFuture(r, new FutureCallImpl<Data.NodeInfoRequest, Data.NodeInfo>() {
             @Override
             public void onCall(Data.NodeInfoRequest r, FutureCallback<Data.NodeInfo> cb) {
@@ -1580,28 +2512,49 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.NodeInfo getNodeInfoSync(Data.NodeInfoRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return getNodeInfoFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // QueryRoutes
     public static void queryRoutesMT(Data.QueryRoutesRequest r, final ILightningCallbackMT mtcb) {
+        queryRoutesMT(r, true, mtcb);
+    }
+
+    // useCache=false skips the cached reply, i.e. when retrying a payment
+    // after a failure, the fresh reply replaces the cached one
+    public static void queryRoutesMT(Data.QueryRoutesRequest r, boolean useCache, final ILightningCallbackMT mtcb) {
+
+        byte[] req = WireEncoder.encode(r);
+
+        final GraphCache cache = graphCache_;
+        final com.google.protobuf.ByteString key = cache != null ? UnsafeByteOperations.unsafeWrap(req) : null;
+        if (cache != null && useCache) {
+            Data.QueryRoutesResponse routes = cache.getRoutes(key);
+            if (routes != null) {
+                mtcb.onResponse(routes);
+                return;
+            }
+        }
 
-        lnrpc.Rpc.QueryRoutesRequest req = Codec.encode(r);
-        callMT("queryRoutes", req, lnrpc.Rpc.QueryRoutesResponse.parser(), new ILightningCallbackMT() {
+        callMT("queryRoutes", req, lnrpc.Rpc.QueryRoutesResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.QueryRoutesResponse)o)); }
-
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.queryRoutes(data, cb);
+            public void onResponse(Object o) {
+                Data.QueryRoutesResponse routes = decoded(Codec.decode((lnrpc.Rpc.QueryRoutesResponse)o));
+                if (cache != null)
+                    cache.putRoutes(key, routes);
+                mtcb.onResponse(routes);
             }
+
         });
     }
-    public static Future<Data.QueryRoutesResponse> queryRoutesFuture(Data.QueryRoutesRequest r) {
+    public static ILightningFuture<Data.QueryRoutesResponse> queryRoutesFuture(Data.QueryRoutesRequest r) {
         return callFuture(r, new FutureCallImpl<Data.QueryRoutesRequest, Data.QueryRoutesResponse>
                 () {
             @Override
@@ -1620,46 +2573,40 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.QueryRoutesResponse queryRoutesSync(Data.QueryRoutesRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return queryRoutesFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SendToRoute
     public static ILightningSendStream<Data.SendToRouteRequest> sendToRouteMT(final ILightningCallbackMT mtcb) {
 
-        return callStreamMT("sendToRoute", lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
+        return callStreamMT("sendToRoute", WireEncoder.sendToRouteRequest(), lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendResponse)o))); }
 
-        }, new SendImpl() {
-            @Override
-            public lndmobile.SendStream onCall(LndmobileCallback cb) throws Exception {
-                return Lndmobile.sendToRoute(cb);
-            }
         });
     }
     public static void sendToRouteMT(Data.SendToRouteRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.SendToRouteRequest req = Codec.encode(r);
-        callMT("sendToRouteSync", req, lnrpc.Rpc.SendResponse.parser(), new ILightningCallbackMT() {
+        callMT("sendToRouteSync", req, lnrpc.Rpc.SendResponse.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.SendResponse)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.SendResponse)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.sendToRouteSync(data, cb);
-            }
         });
     }
-    public static Future<Data.SendResponse> sendToRouteFuture(Data.SendToRouteRequest r) {
+    public static ILightningFuture<Data.SendResponse> sendToRouteFuture(Data.SendToRouteRequest r) {
         return callFuture(r, new FutureCallImpl<Data.SendToRouteRequest, Data.SendResponse>() {
             @Override
             public void onCall(Data.SendToRouteRequest r, FutureCallback<Data.SendResponse> cb) {
@@ -1677,26 +2624,34 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.SendResponse sendToRouteSync(Data.SendToRouteRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return sendToRouteFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SubscribeChannelBackups
-    public static void subscribeChannelBackupsMT(Data.ChannelBackupSubscription r, final ILightningCallbackMT mtcb) {
+    public static ILightningSubscription subscribeChannelBackupsMT(Data.ChannelBackupSubscription r, final ILightningCallbackMT mtcb) {
+
+        final lnrpc.Rpc.ChannelBackupSubscription req = Codec.encode(r);
+        return subscriptionHub_.join("subscribeChannelBackups", req, mtcb, new SubscriptionHub.Opener() {
+            @Override
+            public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+                return subscribeChannelBackups(req, cb);
+            }
+        });
+    }
 
-        lnrpc.Rpc.ChannelBackupSubscription req = Codec.encode(r);
-        callMT("subscribeChannelBackups", req, lnrpc.Rpc.ChanBackupSnapshot.parser(), new ILightningCallbackMT() {
+    private static SubscriptionHub.Upstream subscribeChannelBackups(lnrpc.Rpc.ChannelBackupSubscription req, final ILightningCallbackMT mtcb) {
+        return new Subscription(callMT("subscribeChannelBackups", req, lnrpc.Rpc.ChanBackupSnapshot.parser(), new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ChanBackupSnapshot)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ChanBackupSnapshot)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.subscribeChannelBackups(data, cb);
-            }
-        });
+        }));
     }
 
     // ======================
@@ -1704,23 +2659,18 @@ public final class LightningDaemon {
     public static void exportAllChannelBackupsMT(Data.ChanBackupExportRequest r, final ILightningCallbackMT mtcb) {
 
         lnrpc.Rpc.ChanBackupExportRequest req = Codec.encode(r);
-        callMT("exportAllChannelBackups", req, lnrpc.Rpc.ChanBackupSnapshot.parser(), new ILightningCallbackMT() {
+        callMT("exportAllChannelBackups", req, lnrpc.Rpc.ChanBackupSnapshot.parser(), mtcb, new ILightningCallbackMT() {
             @Override
             public void onError(int code, String message) {
                 mtcb.onError(code, message);
             }
 
             @Override
-            public void onResponse(Object o) { mtcb.onResponse(Codec.decode((lnrpc.Rpc.ChanBackupSnapshot)o)); }
+            public void onResponse(Object o) { mtcb.onResponse(decoded(Codec.decode((lnrpc.Rpc.ChanBackupSnapshot)o))); }
 
-        }, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.exportAllChannelBackups(data, cb);
-            }
         });
     }
-    public static Future<Data.ChanBackupSnapshot> exportAllChannelBackupsFuture(Data.ChanBackupExportRequest r) {
+    public static ILightningFuture<Data.ChanBackupSnapshot> exportAllChannelBackupsFuture(Data.ChanBackupExportRequest r) {
         return callFuture(r, new FutureCallImpl<Data.ChanBackupExportRequest, Data.ChanBackupSnapshot> () {
             @Override
             public void onCall(Data.ChanBackupExportRequest r, FutureCallback<Data.ChanBackupSnapshot> cb) {
@@ -1738,18 +2688,17 @@ public final class LightningDaemon {
         });
     }
 
+    public static Data.ChanBackupSnapshot exportAllChannelBackupsSync(Data.ChanBackupExportRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return exportAllChannelBackupsFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // SignMessage
     public static void signMessageMT(Rpc.SignMessageRequest req, final ILightningCallbackMT mtcb) {
 
-        callMT("signMessage", req, Rpc.SignMessageResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.signMessage(data, cb);
-            }
-        });
+        callMT("signMessage", req, Rpc.SignMessageResponse.parser(), mtcb);
     }
-    public static Future<Rpc.SignMessageResponse> signMessageFuture(Rpc.SignMessageRequest r) {
+    public static ILightningFuture<Rpc.SignMessageResponse> signMessageFuture(Rpc.SignMessageRequest r) {
         return callFuture(r, new FutureCallImpl<Rpc.SignMessageRequest, Rpc.SignMessageResponse> () {
             @Override
             public void onCall(Rpc.SignMessageRequest r, FutureCallback<Rpc.SignMessageResponse> cb) {
@@ -1767,18 +2716,17 @@ public final class LightningDaemon {
         });
     }
 
+    public static Rpc.SignMessageResponse signMessageSync(Rpc.SignMessageRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return signMessageFuture(r).getOrCancel(timeout, unit);
+    }
+
     // ======================
     // VerifyMessage
     public static void verifyMessageMT(Rpc.VerifyMessageRequest req, final ILightningCallbackMT mtcb) {
 
-        callMT("verifyMessage", req, Rpc.VerifyMessageResponse.parser(), mtcb, new CallImpl() {
-            @Override
-            public void onCall(byte[] data, LndmobileCallback cb) {
-                Lndmobile.verifyMessage(data, cb);
-            }
-        });
+        callMT("verifyMessage", req, Rpc.VerifyMessageResponse.parser(), mtcb);
     }
-    public static Future<Rpc.VerifyMessageResponse> verifyMessageFuture(Rpc.VerifyMessageRequest r) {
+    public static ILightningFuture<Rpc.VerifyMessageResponse> verifyMessageFuture(Rpc.VerifyMessageRequest r) {
         return callFuture(r, new FutureCallImpl<Rpc.VerifyMessageRequest, Rpc.VerifyMessageResponse> () {
             @Override
             public void onCall(Rpc.VerifyMessageRequest r, FutureCallback<Rpc.VerifyMessageResponse> cb) {
@@ -1796,4 +2744,8 @@ public final class LightningDaemon {
         });
     }
 
+    public static Rpc.VerifyMessageResponse verifyMessageSync(Rpc.VerifyMessageRequest r, long timeout, TimeUnit unit) throws LightningException {
+        return verifyMessageFuture(r).getOrCancel(timeout, unit);
+    }
+
 }
\ No newline at end of file
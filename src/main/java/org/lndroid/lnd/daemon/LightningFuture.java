@@ -0,0 +1,317 @@
+package org.lndroid.lnd.daemon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// ILightningFuture completed by the daemon through ILightningCallbackMT.
+public class LightningFuture<ResponseType> implements ILightningFuture<ResponseType>, ILightningCallbackMT {
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final CountDownLatch latch_ = new CountDownLatch(1);
+    private volatile int state_ = PENDING;
+    private ResponseType result_;
+    private LightningException error_;
+    // guarded by this
+    private List<ILightningCallback<ResponseType>> callbacks_;
+
+    // callback of a future chained to this one, which
+    // is told when this one is cancelled
+    private static abstract class Dependent<ResponseType> implements ILightningCallback<ResponseType> {
+        abstract void onCancelled();
+    }
+
+    // true if the future was completed by this call
+    @SuppressWarnings("unchecked")
+    private boolean complete(int state, ResponseType r, LightningException e) {
+        List<ILightningCallback<ResponseType>> callbacks;
+        synchronized (this) {
+            if (state_ != PENDING)
+                return false;
+
+            result_ = r;
+            error_ = e;
+            state_ = state;
+            callbacks = callbacks_;
+            callbacks_ = null;
+        }
+        latch_.countDown();
+
+        if (state == CANCELLED) {
+            onCancel();
+            // user callbacks are dropped, but futures that
+            // depend on this one must complete
+            if (callbacks != null) {
+                for (ILightningCallback<ResponseType> cb : callbacks) {
+                    if (cb instanceof Dependent)
+                        ((Dependent<ResponseType>)cb).onCancelled();
+                }
+            }
+            return true;
+        }
+
+        if (callbacks != null) {
+            for (ILightningCallback<ResponseType> cb : callbacks)
+                notify(cb);
+        }
+        return true;
+    }
+
+    private void notify(ILightningCallback<ResponseType> cb) {
+        if (state_ == DONE)
+            cb.onResponse(result_);
+        else if (state_ == FAILED)
+            cb.onError(error_.errorCode(), error_.errorMessage());
+    }
+
+    // called once if the future was cancelled
+    protected void onCancel() {
+    }
+
+    protected boolean set(ResponseType r) {
+        return complete(DONE, r, null);
+    }
+
+    protected boolean setError(int code, String message) {
+        return complete(FAILED, null, new LightningException(code, message));
+    }
+
+    @Override
+    public void onError(int code, String message) {
+        setError(code, message);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onResponse(Object o) {
+        set((ResponseType) o);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(CANCELLED, null, null);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state_ == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state_ != PENDING;
+    }
+
+    private ResponseType report() throws ExecutionException {
+        if (state_ == CANCELLED)
+            throw new CancellationException();
+        if (state_ == FAILED)
+            throw new ExecutionException(error_);
+        return result_;
+    }
+
+    @Override
+    public ResponseType get() throws InterruptedException, ExecutionException {
+        latch_.await();
+        return report();
+    }
+
+    @Override
+    public ResponseType get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch_.await(timeout, unit))
+            throw new TimeoutException();
+        return report();
+    }
+
+    @Override
+    public ResponseType getOrCancel(long timeout, TimeUnit unit) throws LightningException {
+        try {
+            if (!latch_.await(timeout, unit)) {
+                cancel(false);
+                // might have completed in between
+                if (state_ == CANCELLED)
+                    throw new LightningException(-4, "Timeout");
+            }
+            return report();
+        } catch (ExecutionException e) {
+            throw error_;
+        } catch (CancellationException e) {
+            throw new LightningException(-5, "Cancelled");
+        } catch (InterruptedException e) {
+            cancel(false);
+            Thread.currentThread().interrupt();
+            throw new LightningException(-2, "Interrupted");
+        }
+    }
+
+    @Override
+    public ILightningFuture<ResponseType> addCallback(ILightningCallback<ResponseType> cb) {
+        synchronized (this) {
+            if (state_ == PENDING) {
+                if (callbacks_ == null)
+                    callbacks_ = new ArrayList<>(1);
+                callbacks_.add(cb);
+                return this;
+            }
+        }
+        notify(cb);
+        return this;
+    }
+
+    private static class Chain<ResponseType, NextType> extends LightningFuture<NextType> {
+
+        private Continuation<ResponseType, NextType> continuation_;
+        // the future of the current step
+        private volatile ILightningFuture<?> stage_;
+
+        Chain(ILightningFuture<ResponseType> first, Continuation<ResponseType, NextType> c) {
+            continuation_ = c;
+            stage_ = first;
+        }
+
+        @Override
+        protected void onCancel() {
+            ILightningFuture<?> stage = stage_;
+            if (stage != null)
+                stage.cancel(false);
+        }
+
+        void next(ResponseType r) {
+            ILightningFuture<NextType> next;
+            try {
+                next = continuation_.onResponse(r);
+            } catch (LightningException e) {
+                setError(e.errorCode(), e.errorMessage());
+                return;
+            } catch (RuntimeException e) {
+                setError(-1, e.getMessage());
+                return;
+            }
+
+            if (next == null) {
+                set(null);
+                return;
+            }
+
+            stage_ = next;
+            if (isCancelled()) {
+                next.cancel(false);
+                return;
+            }
+
+            next.addCallback(new Dependent<NextType>() {
+                @Override
+                public void onResponse(NextType r) {
+                    set(r);
+                }
+
+                @Override
+                public void onError(int code, String error) {
+                    setError(code, error);
+                }
+
+                @Override
+                void onCancelled() {
+                    setError(-5, "Cancelled");
+                }
+            });
+        }
+    }
+
+    @Override
+    public <NextType> ILightningFuture<NextType> then(Continuation<ResponseType, NextType> c) {
+        final Chain<ResponseType, NextType> chain = new Chain<>(this, c);
+        addCallback(new Dependent<ResponseType>() {
+            @Override
+            public void onResponse(ResponseType r) {
+                chain.next(r);
+            }
+
+            @Override
+            public void onError(int code, String error) {
+                chain.setError(code, error);
+            }
+
+            @Override
+            void onCancelled() {
+                chain.setError(-5, "Cancelled");
+            }
+        });
+        return chain;
+    }
+
+    private static class All extends LightningFuture<List<Object>> {
+
+        private ILightningFuture<?>[] futures_;
+        private Object[] results_;
+        private int pending_;
+
+        All(ILightningFuture<?>[] futures) {
+            futures_ = futures;
+            results_ = new Object[futures.length];
+            pending_ = futures.length;
+        }
+
+        <T> void watch(ILightningFuture<T> f, final int index) {
+            f.addCallback(new Dependent<T>() {
+                @Override
+                public void onResponse(T r) {
+                    boolean last;
+                    synchronized (All.this) {
+                        results_[index] = r;
+                        last = --pending_ == 0;
+                    }
+                    if (last) {
+                        List<Object> results = new ArrayList<>(results_.length);
+                        for (Object o : results_)
+                            results.add(o);
+                        set(results);
+                    }
+                }
+
+                @Override
+                public void onError(int code, String error) {
+                    // the rest is of no use anymore
+                    if (setError(code, error))
+                        cancelAll();
+                }
+
+                @Override
+                void onCancelled() {
+                    onError(-5, "Cancelled");
+                }
+            });
+        }
+
+        void cancelAll() {
+            for (ILightningFuture<?> f : futures_)
+                f.cancel(false);
+        }
+
+        @Override
+        protected void onCancel() {
+            cancelAll();
+        }
+    }
+
+    // completes with the list of results in the order of
+    // futures, or with the first error, in which case
+    // the rest of futures is cancelled
+    public static ILightningFuture<List<Object>> allOf(ILightningFuture<?>... futures) {
+        All all = new All(futures);
+        if (futures.length == 0)
+            all.set(new ArrayList<Object>());
+        for (int i = 0; i < futures.length; i++)
+            all.watch(futures[i], i);
+        return all;
+    }
+}
@@ -0,0 +1,134 @@
+package org.lndroid.lnd.daemon;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.TextFormat;
+
+// Controls what LightningDaemon writes to logcat. Errors are
+// always logged, calls and payloads depend on the level, which
+// can be overridden per method (lnd method name, like 'listChannels').
+// Payloads are only formatted if the level of the method allows it,
+// so with LEVEL_NONE or LEVEL_CALLS nothing is built for the log.
+// Payloads of unlockWallet, genSeed and initWallet are never logged.
+// LightningDaemon uses a copy of the policy it's given, so changes
+// made later take effect only when the policy is set again.
+public class LightningLogPolicy {
+
+    // errors only
+    public static final int LEVEL_NONE = 0;
+    // method names and threads
+    public static final int LEVEL_CALLS = 1;
+    // plus request and response messages
+    public static final int LEVEL_PAYLOADS = 2;
+
+    public int level = LEVEL_CALLS;
+    // payloads are cut at this many chars, 0 - no limit
+    public int maxPayloadLength = 1024;
+    // method name => level
+    public Map<String, Integer> methodLevels = new HashMap<>();
+
+    public LightningLogPolicy() {
+    }
+
+    public LightningLogPolicy(int level) {
+        this.level = level;
+    }
+
+    public LightningLogPolicy setMethodLevel(String method, int level) {
+        methodLevels.put(method, level);
+        return this;
+    }
+
+    // read by logging threads without locks, never modified
+    LightningLogPolicy copy() {
+        LightningLogPolicy p = new LightningLogPolicy(level);
+        p.maxPayloadLength = maxPayloadLength;
+        if (methodLevels == null || methodLevels.isEmpty())
+            p.methodLevels = Collections.emptyMap();
+        else
+            p.methodLevels = Collections.unmodifiableMap(new HashMap<>(methodLevels));
+        return p;
+    }
+
+    private static boolean isSecret(String method) {
+        return "unlockWallet".equals(method)
+                || "genSeed".equals(method)
+                || "initWallet".equals(method);
+    }
+
+    int level(String method) {
+        if (method != null && !methodLevels.isEmpty()) {
+            Integer l = methodLevels.get(method);
+            if (l != null)
+                return l;
+        }
+        return level;
+    }
+
+    boolean logCalls(String method) {
+        return level(method) >= LEVEL_CALLS;
+    }
+
+    boolean logPayloads(String method) {
+        return level(method) >= LEVEL_PAYLOADS && !isSecret(method);
+    }
+
+    private static class LimitReachedException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // stops TextFormat once the limit is reached, so that huge
+    // messages aren't formatted in full only to be cut
+    private static class LimitedAppendable implements Appendable {
+        private StringBuilder sb_ = new StringBuilder();
+        private int limit_;
+
+        LimitedAppendable(int limit) {
+            limit_ = limit;
+        }
+
+        private void check() throws LimitReachedException {
+            if (limit_ > 0 && sb_.length() >= limit_) {
+                sb_.setLength(limit_);
+                throw new LimitReachedException();
+            }
+        }
+
+        @Override
+        public Appendable append(CharSequence s) throws IOException {
+            sb_.append(s);
+            check();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence s, int start, int end) throws IOException {
+            sb_.append(s, start, end);
+            check();
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            sb_.append(c);
+            check();
+            return this;
+        }
+    }
+
+    String format(MessageOrBuilder m) {
+        LimitedAppendable out = new LimitedAppendable(maxPayloadLength);
+        try {
+            TextFormat.print(m, out);
+        } catch (LimitReachedException e) {
+            out.sb_.append("...");
+        } catch (IOException e) {
+            // StringBuilder doesn't throw
+        }
+        return out.sb_.toString();
+    }
+}
@@ -0,0 +1,274 @@
+package org.lndroid.lnd.daemon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Per-RPC metrics, keyed by lnd method name (the label of callMT).
+// Turned on with LightningDaemon.Init.metrics, when off the call
+// path only does a volatile read.
+//
+// Timings, in ns:
+// - encode: serialization of the request message
+// - roundTrip: from handing the request to lnd to the first reply
+// - parse: protobuf parse of a reply (for WireCodec replies, parse and decode)
+// - decode: Codec.decode of a reply into Data (not recorded for WireCodec
+//   replies and replies passed on as protobuf)
+// - dispatch: wait in the LightningClient's Looper queue, including
+//   the batch window (us precision)
+// Sizes, in bytes: requestBytes, replyBytes.
+public final class LightningMetrics {
+
+    // Log-linear histogram: values are grouped by power of 2,
+    // each power split into 2^SUB_BITS buckets, so that
+    // recorded values are accurate within ~12%.
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int MAGNITUDES = 64 - SUB_BITS;
+
+        private final AtomicLongArray buckets_ = new AtomicLongArray((MAGNITUDES + 1) * SUB_COUNT);
+        private final AtomicLong sum_ = new AtomicLong();
+        private final AtomicLong max_ = new AtomicLong();
+
+        private static int bucket(long v) {
+            if (v < SUB_COUNT)
+                return (int)v;
+            int magnitude = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS + 1;
+            int sub = (int)(v >>> (magnitude - 1)) & (SUB_COUNT - 1);
+            return magnitude * SUB_COUNT + sub;
+        }
+
+        // lowest value of the bucket
+        private static long value(int bucket) {
+            int magnitude = bucket / SUB_COUNT;
+            long sub = bucket % SUB_COUNT;
+            if (magnitude == 0)
+                return sub;
+            return (SUB_COUNT + sub) << (magnitude - 1);
+        }
+
+        void record(long v) {
+            if (v < 0)
+                v = 0;
+            buckets_.incrementAndGet(bucket(v));
+            sum_.addAndGet(v);
+            long max;
+            while (v > (max = max_.get()) && !max_.compareAndSet(max, v)) {
+            }
+        }
+
+        HistogramSnapshot snapshot() {
+            HistogramSnapshot s = new HistogramSnapshot();
+            long[] counts = new long[buckets_.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets_.get(i);
+                total += counts[i];
+            }
+
+            s.count = total;
+            s.max = max_.get();
+            s.mean = total > 0 ? sum_.get() / total : 0;
+            s.p50 = percentile(counts, total, 0.50);
+            s.p90 = percentile(counts, total, 0.90);
+            s.p99 = percentile(counts, total, 0.99);
+            s.p999 = percentile(counts, total, 0.999);
+            return s;
+        }
+
+        private long percentile(long[] counts, long total, double p) {
+            if (total == 0)
+                return 0;
+            long rank = (long)Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(value(i), max_.get());
+            }
+            return max_.get();
+        }
+    }
+
+    // live metrics of a method
+    static final class Rpc {
+        final String label;
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong replies = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final ConcurrentHashMap<Integer, AtomicLong> errorCodes = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Histogram encode = new Histogram();
+        final Histogram roundTrip = new Histogram();
+        final Histogram parse = new Histogram();
+        final Histogram decode = new Histogram();
+        final Histogram dispatch = new Histogram();
+        final Histogram requestBytes = new Histogram();
+        final Histogram replyBytes = new Histogram();
+
+        Rpc(String label) {
+            this.label = label;
+        }
+
+        void error(int code) {
+            errors.incrementAndGet();
+            AtomicLong c = errorCodes.get(code);
+            if (c == null) {
+                AtomicLong n = new AtomicLong();
+                c = errorCodes.putIfAbsent(code, n);
+                if (c == null)
+                    c = n;
+            }
+            c.incrementAndGet();
+        }
+
+        RpcSnapshot snapshot() {
+            RpcSnapshot s = new RpcSnapshot();
+            s.label = label;
+            s.calls = calls.get();
+            s.replies = replies.get();
+            s.errors = errors.get();
+            s.errorCodes = new HashMap<>();
+            for (Map.Entry<Integer, AtomicLong> e : errorCodes.entrySet())
+                s.errorCodes.put(e.getKey(), e.getValue().get());
+            s.inFlight = inFlight.get();
+            s.encode = encode.snapshot();
+            s.roundTrip = roundTrip.snapshot();
+            s.parse = parse.snapshot();
+            s.decode = decode.snapshot();
+            s.dispatch = dispatch.snapshot();
+            s.requestBytes = requestBytes.snapshot();
+            s.replyBytes = replyBytes.snapshot();
+            return s;
+        }
+    }
+
+    public static final class HistogramSnapshot {
+        public long count;
+        public long mean;
+        public long p50;
+        public long p90;
+        public long p99;
+        public long p999;
+        public long max;
+    }
+
+    public static final class RpcSnapshot {
+        public String label;
+        public long calls;
+        // non-error replies, server streams have many per call
+        public long replies;
+        public long errors;
+        public Map<Integer, Long> errorCodes;
+        public int inFlight;
+        public HistogramSnapshot encode;
+        public HistogramSnapshot roundTrip;
+        public HistogramSnapshot parse;
+        public HistogramSnapshot decode;
+        public HistogramSnapshot dispatch;
+        public HistogramSnapshot requestBytes;
+        public HistogramSnapshot replyBytes;
+    }
+
+    private static volatile boolean enabled_;
+    private static final ConcurrentHashMap<String, Rpc> rpcs_ = new ConcurrentHashMap<>();
+
+    private LightningMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        enabled_ = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled_;
+    }
+
+    // null if metrics are off
+    static Rpc rpc(String label) {
+        if (!enabled_ || label == null)
+            return null;
+
+        Rpc r = rpcs_.get(label);
+        if (r == null) {
+            Rpc n = new Rpc(label);
+            r = rpcs_.putIfAbsent(label, n);
+            if (r == null)
+                r = n;
+        }
+        return r;
+    }
+
+    public static List<RpcSnapshot> snapshot() {
+        List<RpcSnapshot> r = new ArrayList<>(rpcs_.size());
+        for (Rpc rpc : rpcs_.values())
+            r.add(rpc.snapshot());
+        return r;
+    }
+
+    public static void reset() {
+        rpcs_.clear();
+    }
+
+    private static void json(StringBuilder sb, String name, HistogramSnapshot h) {
+        sb.append('"').append(name).append("\":{")
+                .append("\"count\":").append(h.count)
+                .append(",\"mean\":").append(h.mean)
+                .append(",\"p50\":").append(h.p50)
+                .append(",\"p90\":").append(h.p90)
+                .append(",\"p99\":").append(h.p99)
+                .append(",\"p999\":").append(h.p999)
+                .append(",\"max\":").append(h.max)
+                .append('}');
+    }
+
+    // labels are lnd method names, no escaping needed
+    public static String toJson(List<RpcSnapshot> snapshot) {
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (int i = 0; i < snapshot.size(); i++) {
+            RpcSnapshot s = snapshot.get(i);
+            if (i > 0)
+                sb.append(',');
+            sb.append('"').append(s.label).append("\":{")
+                    .append("\"calls\":").append(s.calls)
+                    .append(",\"replies\":").append(s.replies)
+                    .append(",\"errors\":").append(s.errors)
+                    .append(",\"errorCodes\":{");
+            boolean first = true;
+            for (Map.Entry<Integer, Long> e : s.errorCodes.entrySet()) {
+                if (!first)
+                    sb.append(',');
+                first = false;
+                sb.append('"').append(e.getKey()).append("\":").append(e.getValue());
+            }
+            sb.append("},\"inFlight\":").append(s.inFlight).append(',');
+            json(sb, "encodeNs", s.encode);
+            sb.append(',');
+            json(sb, "roundTripNs", s.roundTrip);
+            sb.append(',');
+            json(sb, "parseNs", s.parse);
+            sb.append(',');
+            json(sb, "decodeNs", s.decode);
+            sb.append(',');
+            json(sb, "dispatchNs", s.dispatch);
+            sb.append(',');
+            json(sb, "requestBytes", s.requestBytes);
+            sb.append(',');
+            json(sb, "replyBytes", s.replyBytes);
+            sb.append('}');
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public static String toJson() {
+        return toJson(snapshot());
+    }
+}
@@ -0,0 +1,564 @@
+package org.lndroid.lnd.daemon;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import org.lndroid.lnd.data.Codec;
+import org.lndroid.lnd.data.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// On-device store of payments and invoices, to answer history
+// queries without listPayments/listInvoices round trips.
+// Set it as LightningDaemon.Init.store to have the daemon put the
+// payments and invoices of listPayments (also paged), listInvoices
+// and lookupInvoice replies and of invoice subscriptions (so also
+// InvoiceFeed events), or put them by hand. A put of an unchanged
+// object is a no-op, a changed one (new status or state) replaces it.
+//
+// Objects are appended to a log file, each index maps a key to log
+// offsets of records (see StoreIndex), stale versions are skipped
+// at query time. Indexes:
+// - payments: paymentHash, creationTime, status, destination
+// - invoices: rHash, creationDate, settleDate, state
+// - superseded: offset of a stale version to the offset of the
+//   next one, so queries skip stale versions without reading them
+// Payments and invoices without a hash are rejected, bad hex
+// arguments throw IllegalArgumentException.
+// Data.Payment has no destination, pass it to putPayment (e.g.
+// from decodePayReq), a later put without it keeps the known one.
+//
+// Log record: int length, int crc32 of body, then body of byte type,
+// byte hash length, hash, byte destination length, destination,
+// protobuf of the object. A torn record at the end is dropped on
+// open, index entries of records after the flushed indexes are
+// restored from the log.
+// Route hints and htlcs of invoices are stored, paths of
+// payments are not part of Data.Payment and aren't.
+// Thread-safe.
+public class LightningStore {
+
+    private static final int TYPE_PAYMENT = 1;
+    private static final int TYPE_INVOICE = 2;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+    private static final String LOG = "store.log";
+    // smaller mem tables aren't written by sync, they're
+    // restored from the log on open
+    private static final int MIN_FLUSH_ENTRIES = StoreIndex.FLUSH_ENTRIES / 8;
+    // unless that would replay more of the log than this
+    private static final long MAX_REPLAY = 4 * 1024 * 1024;
+
+    private static final class Record {
+        long offset;
+        int type;
+        byte[] hash;
+        byte[] dest;
+        byte[] payload;
+    }
+
+    private File dir_;
+    private RandomAccessFile file_;
+    private FileChannel log_;
+    private long logSize_;
+    private boolean dirty_;
+
+    private StoreIndex payHash_;
+    private StoreIndex payTime_;
+    private StoreIndex payStatus_;
+    private StoreIndex payDest_;
+    private StoreIndex invHash_;
+    private StoreIndex invCreated_;
+    private StoreIndex invSettled_;
+    private StoreIndex invState_;
+    private StoreIndex superseded_;
+    private StoreIndex[] indexes_;
+
+    private LightningStore(File dir) {
+        dir_ = dir;
+    }
+
+    // creates the store in dir if it doesn't exist
+    public static LightningStore open(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Failed to create " + dir);
+
+        LightningStore s = new LightningStore(dir);
+        try {
+            s.load();
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        return s;
+    }
+
+    private void load() throws IOException {
+        file_ = new RandomAccessFile(new File(dir_, LOG), "rw");
+        log_ = file_.getChannel();
+        logSize_ = log_.size();
+
+        openIndexes();
+
+        // cut a torn record, and the records after the
+        // flushed indexes go back to their mem tables
+        long from = logSize_;
+        for (StoreIndex i : indexes_)
+            from = Math.min(from, i.logEnd());
+
+        long end = scan(from);
+        if (end < logSize_) {
+            log_.truncate(end);
+            logSize_ = end;
+        }
+
+        // log lost records that indexes had, rebuild them
+        for (StoreIndex i : indexes_) {
+            if (i.logEnd() > logSize_) {
+                for (StoreIndex j : indexes_)
+                    j.clear();
+                openIndexes();
+                scan(0);
+                break;
+            }
+        }
+    }
+
+    private void openIndexes() throws IOException {
+        payHash_ = new StoreIndex(dir_, "pay_hash");
+        payTime_ = new StoreIndex(dir_, "pay_time");
+        payStatus_ = new StoreIndex(dir_, "pay_status");
+        payDest_ = new StoreIndex(dir_, "pay_dest");
+        invHash_ = new StoreIndex(dir_, "inv_hash");
+        invCreated_ = new StoreIndex(dir_, "inv_created");
+        invSettled_ = new StoreIndex(dir_, "inv_settled");
+        invState_ = new StoreIndex(dir_, "inv_state");
+        superseded_ = new StoreIndex(dir_, "superseded");
+        indexes_ = new StoreIndex[]{payHash_, payTime_, payStatus_, payDest_,
+                invHash_, invCreated_, invSettled_, invState_, superseded_};
+    }
+
+    // indexes records starting at offset, returns
+    // the end of the last valid record
+    private long scan(long offset) throws IOException {
+        while (offset < logSize_) {
+            Record r = read(offset, true);
+            if (r == null)
+                break;
+            // the version it replaced, if that entry isn't on disk
+            Record prev = null;
+            if (offset >= superseded_.logEnd() && hashIndex(r.type) != null)
+                prev = latest(r.type, hashIndex(r.type), r.hash, offset);
+            index(r, prev, true);
+            offset = next(r);
+        }
+        return offset;
+    }
+
+    private static long next(Record r) {
+        return r.offset + RECORD_HEADER + bodySize(r.hash, r.dest, r.payload);
+    }
+
+    private static int bodySize(byte[] hash, byte[] dest, byte[] payload) {
+        return 3 + hash.length + dest.length + payload.length;
+    }
+
+    public synchronized void close() {
+        try {
+            if (log_ != null && indexes_ != null)
+                sync();
+            if (file_ != null)
+                file_.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+        log_ = null;
+        file_ = null;
+    }
+
+    // makes puts durable and writes bigger in-memory indexes to disk
+    public synchronized void sync() throws IOException {
+        if (dirty_) {
+            log_.force(false);
+            dirty_ = false;
+        }
+        for (StoreIndex i : indexes_) {
+            if (i.memSize() >= MIN_FLUSH_ENTRIES || logSize_ - i.logEnd() > MAX_REPLAY)
+                i.flush(logSize_);
+        }
+    }
+
+    // ==== puts
+
+    // returns false if the same payment is stored already
+    public boolean putPayment(Data.Payment p) throws IOException {
+        return putPayment(p, null);
+    }
+
+    // destination is a hex pubkey, null if unknown
+    public synchronized boolean putPayment(Data.Payment p, String destination) throws IOException {
+        byte[] hash = fromHex(p.paymentHash);
+        byte[] dest = destination != null ? fromHex(destination) : null;
+        if (dest == null) {
+            Record prev = latest(TYPE_PAYMENT, payHash_, hash);
+            dest = prev != null ? prev.dest : new byte[0];
+        }
+        return put(TYPE_PAYMENT, hash, dest, Codec.encode(p).toByteArray());
+    }
+
+    public synchronized int putPayments(List<Data.Payment> payments) throws IOException {
+        int n = 0;
+        for (Data.Payment p : payments) {
+            if (putPayment(p, null))
+                n++;
+        }
+        return n;
+    }
+
+    // returns false if the same invoice is stored already
+    public synchronized boolean putInvoice(Data.Invoice i) throws IOException {
+        byte[] hash = i.rHash != null ? i.rHash : new byte[0];
+        return put(TYPE_INVOICE, hash, new byte[0], Codec.encode(i).toByteArray());
+    }
+
+    public synchronized int putInvoices(List<Data.Invoice> invoices) throws IOException {
+        int n = 0;
+        for (Data.Invoice i : invoices) {
+            if (putInvoice(i))
+                n++;
+        }
+        return n;
+    }
+
+    private boolean put(int type, byte[] hash, byte[] dest, byte[] payload) throws IOException {
+        if (log_ == null)
+            throw new IOException("Store is closed");
+        if (hash.length == 0 || hash.length > 255 || dest.length > 255)
+            throw new IOException("Bad hash or destination");
+
+        Record prev = latest(type, hashIndex(type), hash);
+        if (prev != null && Arrays.equals(prev.dest, dest) && Arrays.equals(prev.payload, payload))
+            return false;
+
+        int size = bodySize(hash, dest, payload);
+        ByteBuffer b = ByteBuffer.allocate(RECORD_HEADER + size);
+        b.putInt(size);
+        b.putInt(0);
+        b.put((byte)type);
+        b.put((byte)hash.length);
+        b.put(hash);
+        b.put((byte)dest.length);
+        b.put(dest);
+        b.put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), RECORD_HEADER, size);
+        b.putInt(4, (int)crc.getValue());
+        b.flip();
+
+        long offset = logSize_;
+        while (b.hasRemaining())
+            log_.write(b, offset + b.position());
+        logSize_ += b.limit();
+        dirty_ = true;
+
+        Record r = new Record();
+        r.offset = offset;
+        r.type = type;
+        r.hash = hash;
+        r.dest = dest;
+        r.payload = payload;
+        index(r, prev, false);
+
+        for (StoreIndex i : indexes_) {
+            if (i.memSize() >= StoreIndex.FLUSH_ENTRIES) {
+                sync();
+                break;
+            }
+        }
+        return true;
+    }
+
+    // ==== indexing
+
+    // first 8 bytes, big-endian, zero padded
+    private static long prefix(byte[] b, int from) {
+        long k = 0;
+        for (int i = 0; i < 8; i++) {
+            k <<= 8;
+            if (from + i < b.length)
+                k |= b[from + i] & 0xFF;
+        }
+        return k;
+    }
+
+    private static long hashKey(byte[] hash) {
+        return prefix(hash, 0);
+    }
+
+    // skip the 02/03 prefix of compressed pubkey
+    private static long destKey(byte[] dest) {
+        return prefix(dest, 1);
+    }
+
+    private static void add(StoreIndex i, long key, long offset, boolean recovery) {
+        // on recovery only the entries that didn't make it to disk
+        if (!recovery || offset >= i.logEnd())
+            i.add(key, offset);
+    }
+
+    // null for unknown types
+    private StoreIndex hashIndex(int type) {
+        if (type == TYPE_PAYMENT)
+            return payHash_;
+        if (type == TYPE_INVOICE)
+            return invHash_;
+        return null;
+    }
+
+    // prev is the version r replaces, null if none
+    private void index(Record r, Record prev, boolean recovery) throws IOException {
+        if (prev != null)
+            add(superseded_, prev.offset, r.offset, recovery);
+
+        if (r.type == TYPE_PAYMENT) {
+            Data.Payment p = decodePayment(r);
+            add(payHash_, hashKey(r.hash), r.offset, recovery);
+            add(payTime_, p.creationTime, r.offset, recovery);
+            add(payStatus_, p.status, r.offset, recovery);
+            if (r.dest.length > 0)
+                add(payDest_, destKey(r.dest), r.offset, recovery);
+        } else if (r.type == TYPE_INVOICE) {
+            Data.Invoice i = decodeInvoice(r);
+            add(invHash_, hashKey(r.hash), r.offset, recovery);
+            add(invCreated_, i.creationDate, r.offset, recovery);
+            if (i.settleDate != 0)
+                add(invSettled_, i.settleDate, r.offset, recovery);
+            add(invState_, i.state, r.offset, recovery);
+        }
+    }
+
+    // latest version of the object with this hash, null if none
+    private Record latest(int type, StoreIndex index, byte[] hash) throws IOException {
+        return latest(type, index, hash, Long.MAX_VALUE);
+    }
+
+    // latest version before the offset
+    private Record latest(int type, StoreIndex index, byte[] hash, long before) throws IOException {
+        if (hash.length == 0)
+            return null;
+
+        long[] offsets = index.range(hashKey(hash), hashKey(hash));
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            if (offsets[i] >= before)
+                continue;
+            Record r = read(offsets[i], false);
+            if (r.type == type && Arrays.equals(r.hash, hash))
+                return r;
+        }
+        return null;
+    }
+
+    private boolean isStale(long offset) {
+        return superseded_.contains(offset);
+    }
+
+    // null if record is torn and recovery is true
+    private Record read(long offset, boolean recovery) throws IOException {
+        if (offset + RECORD_HEADER > logSize_) {
+            if (recovery)
+                return null;
+            throw new IOException("Bad log offset " + offset);
+        }
+
+        ByteBuffer h = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(h, offset);
+        int size = h.getInt(0);
+        int crc = h.getInt(4);
+        if (size < 3 || size > MAX_RECORD || offset + RECORD_HEADER + size > logSize_) {
+            if (recovery)
+                return null;
+            throw new IOException("Bad log record at " + offset);
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(size);
+        readFully(b, offset + RECORD_HEADER);
+        byte[] body = b.array();
+        if (recovery) {
+            CRC32 c = new CRC32();
+            c.update(body, 0, size);
+            if ((int)c.getValue() != crc)
+                return null;
+        }
+
+        Record r = new Record();
+        r.offset = offset;
+        try {
+            int pos = 0;
+            r.type = body[pos++];
+            r.hash = Arrays.copyOfRange(body, pos + 1, pos + 1 + (body[pos] & 0xFF));
+            pos += 1 + r.hash.length;
+            r.dest = Arrays.copyOfRange(body, pos + 1, pos + 1 + (body[pos] & 0xFF));
+            pos += 1 + r.dest.length;
+            if (pos > size)
+                throw new IOException("Bad log record at " + offset);
+            r.payload = Arrays.copyOfRange(body, pos, size);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            if (recovery)
+                return null;
+            throw new IOException("Bad log record at " + offset);
+        }
+        return r;
+    }
+
+    private void readFully(ByteBuffer b, long offset) throws IOException {
+        while (b.hasRemaining()) {
+            if (log_.read(b, offset + b.position()) < 0)
+                throw new IOException("Unexpected end of log");
+        }
+    }
+
+    private static Data.Payment decodePayment(Record r) throws IOException {
+        try {
+            return Codec.decode(lnrpc.Rpc.Payment.parseFrom(r.payload));
+        } catch (InvalidProtocolBufferException e) {
+            throw new IOException("Bad payment at " + r.offset);
+        }
+    }
+
+    private static Data.Invoice decodeInvoice(Record r) throws IOException {
+        try {
+            return Codec.decode(lnrpc.Rpc.Invoice.parseFrom(r.payload));
+        } catch (InvalidProtocolBufferException e) {
+            throw new IOException("Bad invoice at " + r.offset);
+        }
+    }
+
+    // ==== queries
+
+    // latest versions of records at offsets, in the offsets order
+    // or reversed, at most limit if limit > 0
+    private List<Record> collect(long[] offsets, int limit, boolean reversed) throws IOException {
+        List<Record> r = new ArrayList<>();
+        for (int i = 0; i < offsets.length && (limit <= 0 || r.size() < limit); i++) {
+            long offset = offsets[reversed ? offsets.length - 1 - i : i];
+            if (!isStale(offset))
+                r.add(read(offset, false));
+        }
+        return r;
+    }
+
+    private static List<Data.Payment> payments(List<Record> records) throws IOException {
+        List<Data.Payment> r = new ArrayList<>(records.size());
+        for (Record rec : records)
+            r.add(decodePayment(rec));
+        return r;
+    }
+
+    private static List<Data.Invoice> invoices(List<Record> records) throws IOException {
+        List<Data.Invoice> r = new ArrayList<>(records.size());
+        for (Record rec : records)
+            r.add(decodeInvoice(rec));
+        return r;
+    }
+
+    // null if not found
+    public synchronized Data.Payment getPayment(String paymentHash) throws IOException {
+        Record r = latest(TYPE_PAYMENT, payHash_, fromHex(paymentHash));
+        return r != null ? decodePayment(r) : null;
+    }
+
+    // null if unknown
+    public synchronized String getPaymentDestination(String paymentHash) throws IOException {
+        Record r = latest(TYPE_PAYMENT, payHash_, fromHex(paymentHash));
+        return r != null && r.dest.length > 0 ? toHex(r.dest) : null;
+    }
+
+    // null if not found
+    public synchronized Data.Invoice getInvoice(byte[] rHash) throws IOException {
+        Record r = latest(TYPE_INVOICE, invHash_, rHash);
+        return r != null ? decodeInvoice(r) : null;
+    }
+
+    // from <= creationTime <= to, ordered by creationTime
+    public synchronized List<Data.Payment> listPaymentsByTime(
+            long from, long to, int limit, boolean reversed) throws IOException {
+        return payments(collect(payTime_.range(from, to), limit, reversed));
+    }
+
+    // ordered by the time they were stored
+    public synchronized List<Data.Payment> listPaymentsByStatus(
+            int status, int limit, boolean reversed) throws IOException {
+        return payments(collect(payStatus_.range(status, status), limit, reversed));
+    }
+
+    // ordered by the time they were stored
+    public synchronized List<Data.Payment> listPaymentsByDestination(
+            String destination, int limit, boolean reversed) throws IOException {
+        byte[] dest = fromHex(destination);
+        long key = destKey(dest);
+        long[] offsets = payDest_.range(key, key);
+        List<Data.Payment> r = new ArrayList<>();
+        for (int i = 0; i < offsets.length && (limit <= 0 || r.size() < limit); i++) {
+            long offset = offsets[reversed ? offsets.length - 1 - i : i];
+            if (isStale(offset))
+                continue;
+            Record rec = read(offset, false);
+            if (Arrays.equals(rec.dest, dest))
+                r.add(decodePayment(rec));
+        }
+        return r;
+    }
+
+    // from <= creationDate <= to, ordered by creationDate
+    public synchronized List<Data.Invoice> listInvoicesByCreationDate(
+            long from, long to, int limit, boolean reversed) throws IOException {
+        return invoices(collect(invCreated_.range(from, to), limit, reversed));
+    }
+
+    // from <= settleDate <= to, ordered by settleDate
+    public synchronized List<Data.Invoice> listInvoicesBySettleDate(
+            long from, long to, int limit, boolean reversed) throws IOException {
+        return invoices(collect(invSettled_.range(from, to), limit, reversed));
+    }
+
+    // ordered by the time they were stored
+    public synchronized List<Data.Invoice> listInvoicesByState(
+            int state, int limit, boolean reversed) throws IOException {
+        return invoices(collect(invState_.range(state, state), limit, reversed));
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static String toHex(byte[] b) {
+        char[] c = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            c[i * 2] = HEX[(b[i] >> 4) & 0xF];
+            c[i * 2 + 1] = HEX[b[i] & 0xF];
+        }
+        return new String(c);
+    }
+
+    private static byte[] fromHex(String s) {
+        if (s == null)
+            return new byte[0];
+        if ((s.length() & 1) != 0)
+            throw new IllegalArgumentException("Bad hex " + s);
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            int hi = Character.digit(s.charAt(i * 2), 16);
+            int lo = Character.digit(s.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0)
+                throw new IllegalArgumentException("Bad hex " + s);
+            b[i] = (byte)((hi << 4) | lo);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,108 @@
+package org.lndroid.lnd.daemon;
+
+import lndmobile.Lndmobile;
+
+// Default transport, calls lnd embedded through Lndmobile.
+class LndmobileTransport implements ILightningTransport {
+
+    private static class CallbackAdapter implements lndmobile.Callback, lndmobile.RecvStream {
+
+        private Callback cb_;
+
+        CallbackAdapter(Callback cb) {
+            cb_ = cb;
+        }
+
+        @Override
+        public void onError(Exception e) {
+            cb_.onError(e);
+        }
+
+        @Override
+        public void onResponse(byte[] bytes) {
+            cb_.onResponse(bytes);
+        }
+    }
+
+    private static class SendStreamAdapter implements SendStream {
+
+        private lndmobile.SendStream stream_;
+
+        SendStreamAdapter(lndmobile.SendStream s) {
+            stream_ = s;
+        }
+
+        @Override
+        public void send(byte[] bytes) throws Exception {
+            stream_.send(bytes);
+        }
+
+        @Override
+        public void stop() throws Exception {
+            stream_.stop();
+        }
+    }
+
+    @Override
+    public void start(String args, Callback unlockReadyCb, Callback rpcReadyCb) throws Exception {
+        Lndmobile.start(args, new CallbackAdapter(unlockReadyCb), new CallbackAdapter(rpcReadyCb));
+    }
+
+    @Override
+    public void call(String method, byte[] data, Callback cb) throws Exception {
+        CallbackAdapter a = new CallbackAdapter(cb);
+        switch (method) {
+            case "unlockWallet": Lndmobile.unlockWallet(data, a); break;
+            case "genSeed": Lndmobile.genSeed(data, a); break;
+            case "initWallet": Lndmobile.initWallet(data, a); break;
+            case "newAddress": Lndmobile.newAddress(data, a); break;
+            case "getInfo": Lndmobile.getInfo(data, a); break;
+            case "walletBalance": Lndmobile.walletBalance(data, a); break;
+            case "channelBalance": Lndmobile.channelBalance(data, a); break;
+            case "connectPeer": Lndmobile.connectPeer(data, a); break;
+            case "disconnectPeer": Lndmobile.disconnectPeer(data, a); break;
+            case "listPeers": Lndmobile.listPeers(data, a); break;
+            case "subscribePeerEvents": Lndmobile.subscribePeerEvents(data, a); break;
+            case "listChannels": Lndmobile.listChannels(data, a); break;
+            case "pendingChannels": Lndmobile.pendingChannels(data, a); break;
+            case "closedChannels": Lndmobile.closedChannels(data, a); break;
+            case "addInvoice": Lndmobile.addInvoice(data, a); break;
+            case "subscribeTransactions": Lndmobile.subscribeTransactions(data, a); break;
+            case "getTransactions": Lndmobile.getTransactions(data, a); break;
+            case "listUnspent": Lndmobile.listUnspent(data, a); break;
+            case "openChannel": Lndmobile.openChannel(data, a); break;
+            case "openChannelSync": Lndmobile.openChannelSync(data, a); break;
+            case "closeChannel": Lndmobile.closeChannel(data, a); break;
+            case "estimateFee": Lndmobile.estimateFee(data, a); break;
+            case "sendCoins": Lndmobile.sendCoins(data, a); break;
+            case "sendMany": Lndmobile.sendMany(data, a); break;
+            case "sendPaymentSync": Lndmobile.sendPaymentSync(data, a); break;
+            case "lookupInvoice": Lndmobile.lookupInvoice(data, a); break;
+            case "listPayments": Lndmobile.listPayments(data, a); break;
+            case "deleteAllPayments": Lndmobile.deleteAllPayments(data, a); break;
+            case "decodePayReq": Lndmobile.decodePayReq(data, a); break;
+            case "subscribeInvoices": Lndmobile.subscribeInvoices(data, a); break;
+            case "subscribeChannelEvents": Lndmobile.subscribeChannelEvents(data, a); break;
+            case "getNodeInfo": Lndmobile.getNodeInfo(data, a); break;
+            case "queryRoutes": Lndmobile.queryRoutes(data, a); break;
+            case "sendToRouteSync": Lndmobile.sendToRouteSync(data, a); break;
+            case "subscribeChannelBackups": Lndmobile.subscribeChannelBackups(data, a); break;
+            case "exportAllChannelBackups": Lndmobile.exportAllChannelBackups(data, a); break;
+            case "signMessage": Lndmobile.signMessage(data, a); break;
+            case "verifyMessage": Lndmobile.verifyMessage(data, a); break;
+            default:
+                throw new LightningException(-1, "Unknown method "+method);
+        }
+    }
+
+    @Override
+    public SendStream openStream(String method, Callback cb) throws Exception {
+        CallbackAdapter a = new CallbackAdapter(cb);
+        switch (method) {
+            case "sendPayment": return new SendStreamAdapter(Lndmobile.sendPayment(a));
+            case "sendToRoute": return new SendStreamAdapter(Lndmobile.sendToRoute(a));
+            default:
+                throw new LightningException(-1, "Unknown stream method "+method);
+        }
+    }
+}
@@ -0,0 +1,666 @@
+package org.lndroid.lnd.daemon;
+
+import android.util.Log;
+
+import org.lndroid.lnd.data.Data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Pays a batch of invoices: payment requests are decoded and routes
+// are queried concurrently (at most maxConcurrentQueries at a time),
+// and payments are pipelined over a single sendToRoute stream (at
+// most maxInFlight at a time). A failed payment is retried with the
+// next route, or with a new route query which bypasses the routes
+// cache and ignores the failed nodes, up to maxAttempts. Failures
+// reported by the destination (unknown payment hash, incorrect
+// payment details etc) aren't retried.
+// Replies are matched to payments by payment hash, so invoices with
+// the same hash in a batch fail with 'Duplicate payment hash'.
+// Payments already sent to lnd are never reported as failed unless
+// lnd says so: after cancel the stream is kept open until their
+// replies arrive, and if the stream breaks they're reported with
+// inFlight set, their outcome is unknown and should be checked by
+// payment hash.
+// Listener is called on daemon threads.
+public class PaymentBatchExecutor {
+
+    private static final String TAG = "PaymentBatchExecutor";
+
+    public static class Options {
+        public int maxConcurrentQueries = 8;
+        public int maxInFlight = 16;
+        // route attempts per payment
+        public int maxAttempts = 3;
+        // null - lnd's default fee limit
+        public Data.FeeLimit feeLimit;
+        // blocks added to invoice's cltv expiry, protects
+        // from a block arriving while payment is in flight
+        public int cltvPadding = 3;
+    }
+
+    public static class Item {
+        public String paymentRequest;
+        // amount to pay for invoices without amount, 0 - use invoice amount
+        public long amtMsat;
+
+        public Item() {
+        }
+
+        public Item(String paymentRequest) {
+            this.paymentRequest = paymentRequest;
+        }
+    }
+
+    public static class Result {
+        // index in the batch
+        public int index;
+        public String paymentRequest;
+        public boolean succeeded;
+        // sent, but the stream broke before the reply, the
+        // payment may still settle
+        public boolean inFlight;
+        // 0 on success
+        public int errorCode;
+        public String error;
+        public byte[] paymentHash;
+        public byte[] paymentPreimage;
+        public Data.Route route;
+        public long amtMsat;
+        public long feesMsat;
+        public int attempts;
+        // from the first route query to the result
+        public long latencyMs;
+    }
+
+    public static class Report {
+        public List<Result> results;
+        public int succeeded;
+        public int failed;
+        // outcome unknown, see Result.inFlight
+        public int inFlight;
+        // totals over succeeded payments
+        public long totalAmtMsat;
+        public long totalFeesMsat;
+        public long elapsedMs;
+        public double paymentsPerSecond;
+        public long latencyP50Ms;
+        public long latencyP90Ms;
+        public long latencyMaxMs;
+        public int totalAttempts;
+    }
+
+    public interface Listener {
+        void onResult(Result r);
+        void onDone(Report r);
+    }
+
+    private Options options_;
+
+    public PaymentBatchExecutor() {
+        this(new Options());
+    }
+
+    public PaymentBatchExecutor(Options options) {
+        options_ = options;
+    }
+
+    // listener may be null, cancelling the future fails payments
+    // that weren't sent yet, the listener still gets the results
+    // of the sent ones
+    public ILightningFuture<Report> execute(List<Item> items, Listener listener) {
+        Run run = new Run(options_, items, listener);
+        run.start();
+        return run.future_;
+    }
+
+    private static class Job {
+        Result result = new Result();
+        long amtMsat;
+        Data.PayReq payReq;
+        String hash;
+        List<Data.Route> routes;
+        int route;
+        // nodes that failed our previous attempts
+        List<byte[]> ignoredNodes;
+        long startMs;
+    }
+
+    private static class Run {
+        private Options options_;
+        private Listener listener_;
+        private long start_;
+        private Result[] results_;
+        private int remaining_;
+
+        // guarded by this
+        private ArrayDeque<Job> queryQueue_ = new ArrayDeque<>();
+        private ArrayDeque<Job> sendQueue_ = new ArrayDeque<>();
+        private HashMap<String, Job> inFlight_ = new HashMap<>();
+        private HashMap<String, Job> hashes_ = new HashMap<>();
+        private int queries_;
+        private boolean stopped_;
+        private int stopCode_;
+        private String stopMessage_;
+        private boolean pumping_;
+        private boolean pumpAgain_;
+
+        private ILightningSendStream<Data.SendToRouteRequest> stream_;
+
+        private LightningFuture<Report> future_ = new LightningFuture<Report>() {
+            @Override
+            protected void onCancel() {
+                fail(-5, "Cancelled", false);
+            }
+        };
+
+        Run(Options options, List<Item> items, Listener listener) {
+            options_ = options;
+            listener_ = listener;
+            results_ = new Result[items.size()];
+            remaining_ = items.size();
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                Job job = new Job();
+                job.result.index = i;
+                job.result.paymentRequest = item.paymentRequest;
+                job.amtMsat = item.amtMsat;
+                queryQueue_.add(job);
+            }
+        }
+
+        void start() {
+            start_ = System.currentTimeMillis();
+            if (remaining_ == 0) {
+                finish();
+                return;
+            }
+
+            ILightningSendStream<Data.SendToRouteRequest> stream =
+                    LightningDaemon.sendToRouteMT(new ILightningCallbackMT() {
+                @Override
+                public void onError(int code, String message) {
+                    onStreamError(code, message);
+                }
+
+                @Override
+                public void onResponse(Object o) {
+                    onSendResponse((Data.SendResponse)o);
+                }
+            });
+
+            synchronized (this) {
+                if (stopped_)
+                    return;
+                stream_ = stream;
+            }
+            if (stream == null) {
+                // error already reported to onStreamError
+                return;
+            }
+            pump();
+        }
+
+        // starts queries and sends allowed by the limits, only one
+        // thread pumps at a time, others ask it to go again
+        private void pump() {
+            synchronized (this) {
+                if (pumping_) {
+                    pumpAgain_ = true;
+                    return;
+                }
+                pumping_ = true;
+            }
+
+            while (true) {
+                List<Job> queries = new ArrayList<>();
+                List<Job> sends = new ArrayList<>();
+                synchronized (this) {
+                    pumpAgain_ = false;
+                    if (!stopped_) {
+                        while (queries_ < options_.maxConcurrentQueries && !queryQueue_.isEmpty()) {
+                            Job job = queryQueue_.poll();
+                            if (job.startMs == 0)
+                                job.startMs = System.currentTimeMillis();
+                            queries.add(job);
+                            queries_++;
+                        }
+                        while ((options_.maxInFlight <= 0 || inFlight_.size() < options_.maxInFlight)
+                                && !sendQueue_.isEmpty()) {
+                            Job job = sendQueue_.poll();
+                            inFlight_.put(job.hash, job);
+                            sends.add(job);
+                        }
+                    }
+
+                    if (queries.isEmpty() && sends.isEmpty()) {
+                        pumping_ = false;
+                        return;
+                    }
+                }
+
+                for (Job job : queries)
+                    query(job);
+                for (Job job : sends)
+                    send(job);
+            }
+        }
+
+        private void query(final Job job) {
+            if (job.payReq != null) {
+                queryRoutes(job);
+                return;
+            }
+
+            Data.PayReqString r = new Data.PayReqString();
+            r.payReq = job.result.paymentRequest;
+            LightningDaemon.decodePayReqMT(r, new ILightningCallbackMT() {
+                @Override
+                public void onError(int code, String message) {
+                    onQueryError(job, code, message);
+                }
+
+                @Override
+                public void onResponse(Object o) {
+                    onPayReq(job, (Data.PayReq)o);
+                }
+            });
+        }
+
+        private void onPayReq(Job job, Data.PayReq payReq) {
+            String error = null;
+            synchronized (this) {
+                job.payReq = payReq;
+                job.hash = payReq.paymentHash;
+                if (job.amtMsat == 0)
+                    job.amtMsat = payReq.numSatoshis * 1000;
+
+                if (job.hash == null || job.hash.isEmpty())
+                    error = "No payment hash";
+                else if (job.amtMsat <= 0)
+                    error = "Amount required";
+                else if (hashes_.containsKey(job.hash))
+                    error = "Duplicate payment hash";
+                else
+                    hashes_.put(job.hash, job);
+            }
+
+            if (error != null)
+                onQueryError(job, -1, error);
+            else
+                queryRoutes(job);
+        }
+
+        private void queryRoutes(final Job job) {
+            Data.QueryRoutesRequest r = new Data.QueryRoutesRequest();
+            r.pubKey = job.payReq.destination;
+            r.amtMsat = job.amtMsat;
+            r.finalCltvDelta = (int)job.payReq.cltvExpiry + options_.cltvPadding;
+            r.feeLimit = options_.feeLimit;
+            r.routeHints = job.payReq.routeHints;
+            r.destFeatures = job.payReq.features;
+            r.useMissionControl = true;
+            r.ignoredNodes = job.ignoredNodes;
+
+            // cached reply would return the failed routes again
+            boolean useCache = job.result.attempts == 0;
+            LightningDaemon.queryRoutesMT(r, useCache, new ILightningCallbackMT() {
+                @Override
+                public void onError(int code, String message) {
+                    onQueryError(job, code, message);
+                }
+
+                @Override
+                public void onResponse(Object o) {
+                    onRoutes(job, (Data.QueryRoutesResponse)o);
+                }
+            });
+        }
+
+        private void onRoutes(Job job, Data.QueryRoutesResponse r) {
+            if (r.routes == null || r.routes.isEmpty()) {
+                onQueryError(job, -1, "No route");
+                return;
+            }
+
+            int code = 0;
+            String message = null;
+            synchronized (this) {
+                queries_--;
+                job.routes = r.routes;
+                job.route = 0;
+                if (stopped_) {
+                    code = stopCode_;
+                    message = stopMessage_;
+                } else {
+                    sendQueue_.add(job);
+                }
+            }
+            if (code != 0)
+                complete(job, code, message);
+            pump();
+        }
+
+        private void onQueryError(Job job, int code, String message) {
+            synchronized (this) {
+                queries_--;
+            }
+            complete(job, code, message);
+            pump();
+        }
+
+        private void send(Job job) {
+            ILightningSendStream<Data.SendToRouteRequest> stream;
+            int code = 0;
+            String message = null;
+            synchronized (this) {
+                stream = stream_;
+                // stopped after the job was taken by pump
+                if (stopped_) {
+                    inFlight_.remove(job.hash);
+                    code = stopCode_;
+                    message = stopMessage_;
+                }
+            }
+            if (code != 0) {
+                complete(job, code, message);
+                return;
+            }
+
+            Data.SendToRouteRequest r = new Data.SendToRouteRequest();
+            r.paymentHash = fromHex(job.hash);
+            r.route = route(job);
+            job.result.attempts++;
+
+            try {
+                if (stream == null)
+                    throw new LightningException(-1, "Stream closed");
+                stream.send(r);
+            } catch (LightningException e) {
+                synchronized (this) {
+                    inFlight_.remove(job.hash);
+                }
+                complete(job, e.errorCode(), e.errorMessage());
+            }
+        }
+
+        // routes may be shared by the graph cache, the one
+        // with mpp record is a copy
+        private Data.Route route(Job job) {
+            Data.Route route = job.routes.get(job.route);
+            if (job.payReq.paymentAddr == null || job.payReq.paymentAddr.length == 0
+                    || route.hops == null || route.hops.isEmpty())
+                return route;
+
+            Data.Hop last = route.hops.get(route.hops.size() - 1);
+            Data.Hop hop = new Data.Hop();
+            hop.chanId = last.chanId;
+            hop.chanCapacity = last.chanCapacity;
+            hop.expiry = last.expiry;
+            hop.amtToForwardMsat = last.amtToForwardMsat;
+            hop.feeMsat = last.feeMsat;
+            hop.pubKey = last.pubKey;
+            hop.tlvPayload = true;
+            hop.tlv = last.tlv;
+            hop.mppRecord = new Data.MPPRecord();
+            hop.mppRecord.paymentAddr = job.payReq.paymentAddr;
+            hop.mppRecord.totalAmtMsat = job.amtMsat;
+
+            Data.Route r = new Data.Route();
+            r.totalTimeLock = route.totalTimeLock;
+            r.totalFeesMsat = route.totalFeesMsat;
+            r.totalAmtMsat = route.totalAmtMsat;
+            r.hops = new ArrayList<>(route.hops);
+            r.hops.set(r.hops.size() - 1, hop);
+            return r;
+        }
+
+        private void onSendResponse(Data.SendResponse r) {
+            String hash = toHex(r.paymentHash);
+            boolean retry = false;
+            Job job;
+            synchronized (this) {
+                job = inFlight_.remove(hash);
+                if (job != null && r.paymentError != null && !r.paymentError.isEmpty()) {
+                    Data.Route route = job.routes.get(job.route);
+                    int source = failureSource(r.paymentError);
+                    if (!stopped_ && job.result.attempts < options_.maxAttempts
+                            && !isPermanent(r.paymentError, source, route)) {
+                        retry = true;
+                        byte[] node = failedNode(source, route);
+                        if (node != null) {
+                            if (job.ignoredNodes == null)
+                                job.ignoredNodes = new ArrayList<>();
+                            job.ignoredNodes.add(node);
+                        }
+                        job.route++;
+                        if (job.route < job.routes.size()) {
+                            sendQueue_.addFirst(job);
+                        } else {
+                            // new query will avoid the failed nodes
+                            job.routes = null;
+                            queryQueue_.addFirst(job);
+                        }
+                    }
+                }
+            }
+
+            if (job == null) {
+                Log.w(TAG, "reply for unknown payment " + hash);
+                return;
+            }
+
+            if (retry) {
+                Log.i(TAG, "payment " + job.result.index + " failed: " + r.paymentError + ", retrying");
+            } else if (r.paymentError != null && !r.paymentError.isEmpty()) {
+                complete(job, -1, r.paymentError);
+            } else {
+                job.result.paymentPreimage = r.paymentPreimage;
+                job.result.route = r.paymentRoute != null ? r.paymentRoute : job.routes.get(job.route);
+                job.result.feesMsat = job.result.route.totalFeesMsat;
+                complete(job, 0, null);
+            }
+            pump();
+        }
+
+        private void onStreamError(int code, String message) {
+            synchronized (this) {
+                // EOF after we stopped the stream
+                if (stopped_)
+                    return;
+                stream_ = null;
+            }
+            Log.e(TAG, "stream error " + code + " " + message);
+            fail(code, message, true);
+        }
+
+        // fails payments that weren't sent, sent ones complete with
+        // their replies, or as in flight if the stream is closed
+        private void fail(int code, String message, boolean streamClosed) {
+            List<Job> jobs = new ArrayList<>();
+            List<Job> sent = new ArrayList<>();
+            synchronized (this) {
+                if (stopped_)
+                    return;
+                stopped_ = true;
+                stopCode_ = code;
+                stopMessage_ = message;
+                jobs.addAll(queryQueue_);
+                jobs.addAll(sendQueue_);
+                queryQueue_.clear();
+                sendQueue_.clear();
+                if (streamClosed) {
+                    sent.addAll(inFlight_.values());
+                    inFlight_.clear();
+                }
+            }
+
+            // payments being queried will complete
+            // in onQueryError/onRoutes
+            for (Job job : jobs)
+                complete(job, code, message);
+            for (Job job : sent)
+                complete(job, code, message, true);
+        }
+
+        private void complete(Job job, int code, String message) {
+            complete(job, code, message, false);
+        }
+
+        private void complete(Job job, int code, String message, boolean inFlight) {
+            Result r = job.result;
+            boolean last;
+            synchronized (this) {
+                if (results_[r.index] != null)
+                    return;
+
+                r.succeeded = code == 0;
+                r.inFlight = inFlight;
+                r.errorCode = code;
+                r.error = message;
+                r.paymentHash = job.hash != null ? fromHex(job.hash) : null;
+                r.amtMsat = job.amtMsat;
+                r.latencyMs = System.currentTimeMillis() - (job.startMs != 0 ? job.startMs : start_);
+                results_[r.index] = r;
+                last = --remaining_ == 0;
+            }
+
+            if (listener_ != null)
+                listener_.onResult(r);
+            if (last)
+                finish();
+        }
+
+        private void finish() {
+            ILightningSendStream<Data.SendToRouteRequest> stream;
+            synchronized (this) {
+                stopped_ = true;
+                stream = stream_;
+                stream_ = null;
+            }
+
+            if (stream != null) {
+                try {
+                    stream.stop();
+                } catch (LightningException e) {
+                    Log.e(TAG, "stream stop error " + e.getMessage());
+                }
+            }
+
+            Report report = report();
+            if (listener_ != null)
+                listener_.onDone(report);
+            future_.set(report);
+        }
+
+        private Report report() {
+            Report report = new Report();
+            report.results = Arrays.asList(results_);
+            report.elapsedMs = System.currentTimeMillis() - start_;
+
+            long[] latencies = new long[results_.length];
+            for (int i = 0; i < results_.length; i++) {
+                Result r = results_[i];
+                latencies[i] = r.latencyMs;
+                report.totalAttempts += r.attempts;
+                if (r.succeeded) {
+                    report.succeeded++;
+                    report.totalAmtMsat += r.amtMsat;
+                    report.totalFeesMsat += r.feesMsat;
+                } else if (r.inFlight) {
+                    report.inFlight++;
+                } else {
+                    report.failed++;
+                }
+            }
+
+            if (latencies.length > 0) {
+                Arrays.sort(latencies);
+                report.latencyP50Ms = latencies[(latencies.length - 1) / 2];
+                report.latencyP90Ms = latencies[(latencies.length - 1) * 9 / 10];
+                report.latencyMaxMs = latencies[latencies.length - 1];
+            }
+            if (report.elapsedMs > 0)
+                report.paymentsPerSecond = report.succeeded * 1000.0 / report.elapsedMs;
+            return report;
+        }
+    }
+
+    // lnd reports the failure as 'Message(details)@index[: extra]',
+    // where index is the position of the failing node on the route,
+    // 0 - our node, -1 if not reported
+    static int failureSource(String error) {
+        int at = error.indexOf('@');
+        if (at < 0)
+            return -1;
+        int index = 0;
+        int i = at + 1;
+        for (; i < error.length() && i < at + 10; i++) {
+            int d = Character.digit(error.charAt(i), 10);
+            if (d < 0)
+                break;
+            index = index * 10 + d;
+        }
+        return i > at + 1 ? index : -1;
+    }
+
+    private static final String[] PERMANENT_ERRORS = {
+            "IncorrectOrUnknownPaymentDetails",
+            "UnknownPaymentHash",
+            "IncorrectPaymentAmount",
+            "FinalIncorrectCltvExpiry",
+            "FinalIncorrectHtlcAmount",
+            "invoice is already paid",
+            "payment is in transition",
+    };
+
+    // failures reported by the destination won't go
+    // away if we take a different route
+    static boolean isPermanent(String error, int source, Data.Route route) {
+        if (route.hops != null && source > 0 && source == route.hops.size())
+            return true;
+        for (String e : PERMANENT_ERRORS) {
+            if (error.contains(e))
+                return true;
+        }
+        return false;
+    }
+
+    // the channel from the failing node to the next hop has failed,
+    // so the next hop is ignored unless it's the destination, then the
+    // node before it is, null if there is no node to ignore
+    static byte[] failedNode(int source, Data.Route route) {
+        if (route.hops == null || source < 0 || source >= route.hops.size())
+            return null;
+        int last = route.hops.size() - 1;
+        int index = source < last ? source : source - 1;
+        if (index < 0)
+            return null;
+        String pubkey = route.hops.get(index).pubKey;
+        return pubkey != null && !pubkey.isEmpty() ? fromHex(pubkey) : null;
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static String toHex(byte[] b) {
+        if (b == null)
+            return "";
+        char[] c = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            c[i * 2] = HEX[(b[i] >> 4) & 0xF];
+            c[i * 2 + 1] = HEX[b[i] & 0xF];
+        }
+        return new String(c);
+    }
+
+    static byte[] fromHex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++)
+            b[i] = (byte)((Character.digit(s.charAt(i * 2), 16) << 4)
+                    | Character.digit(s.charAt(i * 2 + 1), 16));
+        return b;
+    }
+}
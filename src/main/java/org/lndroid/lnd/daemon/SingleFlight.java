@@ -0,0 +1,159 @@
+package org.lndroid.lnd.daemon;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+// Coalesces identical read-only calls: a call made while the same
+// method with the same request is in flight doesn't reach lnd,
+// its callback gets the result of the in-flight call. Optionally,
+// successful results are reused for ttl ms. Results are shared
+// by all callers and must not be modified. Thread-safe.
+class SingleFlight {
+
+    private static final int SWEEP_SIZE = 64;
+
+    private static class Key {
+        private String label_;
+        private ByteString req_;
+        private int hash_;
+
+        Key(String label, ByteString req) {
+            label_ = label;
+            req_ = req;
+            hash_ = label.hashCode() * 31 + req.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash_;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return hash_ == k.hash_ && label_.equals(k.label_) && req_.equals(k.req_);
+        }
+    }
+
+    private class Flight implements ILightningCallbackMT {
+        private Key key_;
+        // guarded by SingleFlight.this
+        private List<ILightningCallbackMT> callbacks_ = new ArrayList<>(2);
+        private boolean done_;
+        private Object result_;
+        private long time_;
+
+        Flight(Key key, ILightningCallbackMT cb) {
+            key_ = key;
+            callbacks_.add(cb);
+        }
+
+        private List<ILightningCallbackMT> finish(Object result) {
+            synchronized (SingleFlight.this) {
+                List<ILightningCallbackMT> callbacks = callbacks_;
+                callbacks_ = null;
+                if (result != null && ttlMs_ > 0) {
+                    done_ = true;
+                    result_ = result;
+                    time_ = now();
+                } else if (flights_.get(key_) == this) {
+                    flights_.remove(key_);
+                }
+                return callbacks;
+            }
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            for (ILightningCallbackMT cb : finish(null))
+                cb.onError(code, message);
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            for (ILightningCallbackMT cb : finish(o))
+                cb.onResponse(o);
+        }
+
+        boolean expired(long now) {
+            return done_ && now - time_ > ttlMs_;
+        }
+    }
+
+    private HashMap<Key, Flight> flights_ = new HashMap<>();
+    private volatile boolean enabled_;
+    private volatile long ttlMs_;
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    void setEnabled(boolean enabled) {
+        enabled_ = enabled;
+    }
+
+    void setTtl(long ttlMs) {
+        ttlMs_ = ttlMs;
+    }
+
+    // returns the callback to make the call with, or null if
+    // cb was attached to an in-flight call or was answered
+    // with a recent result
+    ILightningCallbackMT join(String label, com.google.protobuf.Message req, ILightningCallbackMT cb) {
+        if (!enabled_)
+            return cb;
+
+        return join(new Key(label, req.toByteString()), cb);
+    }
+
+    // req is the encoded request, it must not be modified after this
+    ILightningCallbackMT join(String label, byte[] req, ILightningCallbackMT cb) {
+        if (!enabled_)
+            return cb;
+
+        return join(new Key(label, UnsafeByteOperations.unsafeWrap(req)), cb);
+    }
+
+    private ILightningCallbackMT join(Key key, ILightningCallbackMT cb) {
+        Object result = null;
+        synchronized (this) {
+            long now = now();
+            Flight f = flights_.get(key);
+            if (f != null && f.expired(now)) {
+                flights_.remove(key);
+                f = null;
+            }
+
+            if (f != null) {
+                if (!f.done_) {
+                    f.callbacks_.add(cb);
+                    return null;
+                }
+                result = f.result_;
+            } else {
+                if (flights_.size() >= SWEEP_SIZE)
+                    sweep(now);
+                f = new Flight(key, cb);
+                flights_.put(key, f);
+                return f;
+            }
+        }
+
+        cb.onResponse(result);
+        return null;
+    }
+
+    private void sweep(long now) {
+        for (Iterator<Flight> i = flights_.values().iterator(); i.hasNext(); ) {
+            if (i.next().expired(now))
+                i.remove();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.lndroid.lnd.daemon;
+
+// Id => object registry backed by a slot array with a free list,
+// add/get/remove don't allocate (except when growing) and don't box.
+// Ids are positive ints made of a per-slot generation (high bits)
+// and slot index + 1 (low bits), so that a freed slot can be reused
+// while lookups with the stale id of its previous owner fail.
+// Id 0 is never issued. Not thread-safe, owned by a Dispatcher.
+class SlotRegistry<T> {
+
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    // keep ids positive
+    private static final int GEN_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    private Object[] values_;
+    private int[] gens_;
+    // next free slot, -1 - end of list
+    private int[] nextFree_;
+    private int freeHead_ = -1;
+    private int used_;
+    private int size_;
+
+    SlotRegistry() {
+        this(16);
+    }
+
+    SlotRegistry(int capacity) {
+        values_ = new Object[capacity];
+        gens_ = new int[capacity];
+        nextFree_ = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = Math.min(values_.length * 2, SLOT_MASK);
+        if (capacity == values_.length)
+            throw new IllegalStateException("Too many streams");
+
+        Object[] values = new Object[capacity];
+        System.arraycopy(values_, 0, values, 0, used_);
+        values_ = values;
+
+        int[] gens = new int[capacity];
+        System.arraycopy(gens_, 0, gens, 0, used_);
+        gens_ = gens;
+
+        int[] nextFree = new int[capacity];
+        System.arraycopy(nextFree_, 0, nextFree, 0, used_);
+        nextFree_ = nextFree;
+    }
+
+    private int slot(int id) {
+        int slot = (id & SLOT_MASK) - 1;
+        if (id <= 0 || slot >= used_ || values_[slot] == null
+                || gens_[slot] != (id >>> SLOT_BITS))
+            return -1;
+        return slot;
+    }
+
+    int add(T value) {
+        int slot;
+        if (freeHead_ >= 0) {
+            slot = freeHead_;
+            freeHead_ = nextFree_[slot];
+        } else {
+            if (used_ == values_.length)
+                grow();
+            slot = used_++;
+        }
+
+        values_[slot] = value;
+        size_++;
+        return (gens_[slot] << SLOT_BITS) | (slot + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        int slot = slot(id);
+        return slot < 0 ? null : (T)values_[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    T remove(int id) {
+        int slot = slot(id);
+        if (slot < 0)
+            return null;
+
+        T value = (T)values_[slot];
+        values_[slot] = null;
+        gens_[slot] = (gens_[slot] + 1) & GEN_MASK;
+        nextFree_[slot] = freeHead_;
+        freeHead_ = slot;
+        size_--;
+        return value;
+    }
+
+    int size() {
+        return size_;
+    }
+
+    // iteration: for (int i = 0; i < capacity(); i++) valueAt(i),
+    // values may be null
+    int capacity() {
+        return used_;
+    }
+
+    @SuppressWarnings("unchecked")
+    T valueAt(int slot) {
+        return (T)values_[slot];
+    }
+
+    void clear() {
+        for (int i = 0; i < used_; i++) {
+            if (values_[i] != null)
+                remove((gens_[i] << SLOT_BITS) | (i + 1));
+        }
+    }
+}
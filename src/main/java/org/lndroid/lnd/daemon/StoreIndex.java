@@ -0,0 +1,373 @@
+package org.lndroid.lnd.daemon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+// Multimap of long key to log offset, ordered by key and offset.
+// Recent entries are kept in memory, and are flushed into immutable
+// sorted runs, which are memory-mapped and binary searched. Runs are
+// merged by size tiers: once MERGE_RUNS newest runs are of similar
+// size they're merged into one of the next tier, so an entry is
+// rewritten log(n) times and there are a few runs per tier.
+//
+// Run file: header of 4 longs (magic, covered log end, first and last
+// flush sequence), then entries of 2 longs (key, offset). A run is
+// written to a temp file and renamed, a merged run covers the sequences
+// of its inputs so that inputs left by a crash are dropped on open.
+// A run without entries only records the covered log end.
+// Not thread-safe.
+final class StoreIndex {
+
+    private static final long MAGIC = 0x4c4e44494458_0001L;
+    private static final int HEADER_LONGS = 4;
+    private static final String SUFFIX = ".run";
+    static final int FLUSH_ENTRIES = 4096;
+    // runs merged at once, and the size ratio of tiers
+    static final int MERGE_RUNS = 4;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    private static final class Entry implements Comparable<Entry> {
+        final long key;
+        final long offset;
+
+        Entry(long key, long offset) {
+            this.key = key;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Entry e) {
+            if (key != e.key)
+                return key < e.key ? -1 : 1;
+            return offset < e.offset ? -1 : (offset == e.offset ? 0 : 1);
+        }
+    }
+
+    private static final class Run {
+        File file;
+        long logEnd;
+        long firstSeq;
+        long lastSeq;
+        // entries only, header skipped
+        LongBuffer entries;
+
+        int size() {
+            return entries.limit() / 2;
+        }
+
+        long key(int i) {
+            return entries.get(i * 2);
+        }
+
+        long offset(int i) {
+            return entries.get(i * 2 + 1);
+        }
+
+        // first entry with key >= k
+        int lowerBound(long k) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (key(mid) < k)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final File dir_;
+    private final String name_;
+    private final List<Run> runs_ = new ArrayList<>();
+    private final TreeSet<Entry> mem_ = new TreeSet<>();
+    private long nextSeq_;
+    // log offset up to which entries are in runs
+    private long logEnd_;
+
+    StoreIndex(File dir, String name) throws IOException {
+        dir_ = dir;
+        name_ = name;
+        load();
+    }
+
+    String name() {
+        return name_;
+    }
+
+    // entries of records before this offset are on disk,
+    // the rest is in memory
+    long logEnd() {
+        return logEnd_;
+    }
+
+    int memSize() {
+        return mem_.size();
+    }
+
+    int runCount() {
+        return runs_.size();
+    }
+
+    void add(long key, long offset) {
+        mem_.add(new Entry(key, offset));
+    }
+
+    // true if there's an entry with this key
+    boolean contains(long key) {
+        for (Run run : runs_) {
+            int i = run.lowerBound(key);
+            if (i < run.size() && run.key(i) == key)
+                return true;
+        }
+        Entry e = mem_.ceiling(new Entry(key, Long.MIN_VALUE));
+        return e != null && e.key == key;
+    }
+
+    // offsets of entries with fromKey <= key <= toKey, by key and offset
+    long[] range(long fromKey, long toKey) {
+        ArrayList<Entry> r = new ArrayList<>();
+        for (Run run : runs_) {
+            for (int i = run.lowerBound(fromKey); i < run.size(); i++) {
+                long k = run.key(i);
+                if (k > toKey)
+                    break;
+                r.add(new Entry(k, run.offset(i)));
+            }
+        }
+        for (Entry e : mem_.subSet(new Entry(fromKey, Long.MIN_VALUE), true,
+                new Entry(toKey, Long.MAX_VALUE), true))
+            r.add(e);
+
+        // runs and mem cover different log ranges, so no duplicates
+        if (runs_.size() > 1 || (!runs_.isEmpty() && !mem_.isEmpty()))
+            Collections.sort(r);
+
+        long[] offsets = new long[r.size()];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = r.get(i).offset;
+        return offsets;
+    }
+
+    // writes in-memory entries into a new run, logEnd is the
+    // end of the log they were taken from
+    void flush(long logEnd) throws IOException {
+        if (logEnd <= logEnd_ && mem_.isEmpty())
+            return;
+
+        long seq = nextSeq_++;
+        Run run = write(mem_.iterator(), logEnd, seq, seq);
+        runs_.add(run);
+        mem_.clear();
+        logEnd_ = logEnd;
+
+        mergeTiers();
+    }
+
+    // tier k holds runs of FLUSH_ENTRIES * MERGE_RUNS^k entries and up
+    private static int tier(int size) {
+        int t = 0;
+        for (long s = (long)FLUSH_ENTRIES * MERGE_RUNS; s <= size; s *= MERGE_RUNS)
+            t++;
+        return t;
+    }
+
+    // merges the newest runs while MERGE_RUNS of them
+    // are in the tier of the newest one or below
+    private void mergeTiers() throws IOException {
+        while (runs_.size() >= MERGE_RUNS) {
+            int last = runs_.size() - 1;
+            int t = tier(runs_.get(last).size());
+            int from = last;
+            while (from > 0 && tier(runs_.get(from - 1).size()) <= t)
+                from--;
+            if (last - from + 1 < MERGE_RUNS)
+                return;
+            merge(from, runs_.size());
+        }
+    }
+
+    // merges runs [from, to), their seqs are contiguous
+    private void merge(int from, int to) throws IOException {
+        final List<Run> inputs = new ArrayList<>(runs_.subList(from, to));
+        final int[] pos = new int[inputs.size()];
+
+        // k-way merge, runs are few
+        Iterator<Entry> it = new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                for (int i = 0; i < pos.length; i++) {
+                    if (pos[i] < inputs.get(i).size())
+                        return true;
+                }
+                return false;
+            }
+
+            @Override
+            public Entry next() {
+                int best = -1;
+                long bestKey = 0;
+                long bestOffset = 0;
+                for (int i = 0; i < pos.length; i++) {
+                    Run run = inputs.get(i);
+                    if (pos[i] >= run.size())
+                        continue;
+                    long k = run.key(pos[i]);
+                    long o = run.offset(pos[i]);
+                    if (best < 0 || k < bestKey || (k == bestKey && o < bestOffset)) {
+                        best = i;
+                        bestKey = k;
+                        bestOffset = o;
+                    }
+                }
+                pos[best]++;
+                return new Entry(bestKey, bestOffset);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        Run first = inputs.get(0);
+        Run last = inputs.get(inputs.size() - 1);
+        Run merged = write(it, last.logEnd, first.firstSeq, last.lastSeq);
+
+        runs_.subList(from, to).clear();
+        runs_.add(from, merged);
+        for (Run run : inputs)
+            run.file.delete();
+    }
+
+    // entries are streamed to the file, not built in memory
+    private Run write(Iterator<Entry> it, long logEnd,
+                      long firstSeq, long lastSeq) throws IOException {
+        File file = new File(dir_, name_ + "." + firstSeq + "-" + lastSeq + SUFFIX);
+        File tmp = new File(dir_, file.getName() + ".tmp");
+        FileOutputStream os = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, WRITE_BUFFER));
+            out.writeLong(MAGIC);
+            out.writeLong(logEnd);
+            out.writeLong(firstSeq);
+            out.writeLong(lastSeq);
+            while (it.hasNext()) {
+                Entry e = it.next();
+                out.writeLong(e.key);
+                out.writeLong(e.offset);
+            }
+            out.flush();
+            os.getFD().sync();
+        } finally {
+            os.close();
+        }
+        if (!tmp.renameTo(file))
+            throw new IOException("Failed to rename " + tmp);
+
+        return map(file);
+    }
+
+    private static Run map(File file) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = f.getChannel();
+            long size = ch.size();
+            if (size < HEADER_LONGS * 8 || (size % 16) != 0)
+                throw new IOException("Bad index run size " + file);
+
+            // mapping stays valid after the channel is closed
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            LongBuffer lb = m.asLongBuffer();
+            if (lb.get(0) != MAGIC)
+                throw new IOException("Bad index run " + file);
+
+            Run run = new Run();
+            run.file = file;
+            run.logEnd = lb.get(1);
+            run.firstSeq = lb.get(2);
+            run.lastSeq = lb.get(3);
+            lb.position(HEADER_LONGS);
+            run.entries = lb.slice();
+            return run;
+        } finally {
+            f.close();
+        }
+    }
+
+    private void load() throws IOException {
+        String prefix = name_ + ".";
+        File[] files = dir_.listFiles();
+        List<Run> runs = new ArrayList<>();
+        if (files != null) {
+            for (File f : files) {
+                String n = f.getName();
+                if (!n.startsWith(prefix))
+                    continue;
+                if (n.endsWith(".tmp")) {
+                    f.delete();
+                } else if (n.endsWith(SUFFIX)) {
+                    try {
+                        runs.add(map(f));
+                    } catch (IOException e) {
+                        // torn write can't happen thanks to
+                        // rename, but let's not fail on junk
+                        f.delete();
+                    }
+                }
+            }
+        }
+
+        // drop runs covered by a merged run that was
+        // written before its inputs were deleted
+        for (Run run : runs) {
+            boolean covered = false;
+            for (Run other : runs) {
+                if (other != run && other.firstSeq <= run.firstSeq && run.lastSeq <= other.lastSeq
+                        && (other.lastSeq - other.firstSeq) > (run.lastSeq - run.firstSeq)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (covered)
+                run.file.delete();
+            else
+                runs_.add(run);
+        }
+
+        Collections.sort(runs_, new Comparator<Run>() {
+            @Override
+            public int compare(Run a, Run b) {
+                return a.firstSeq < b.firstSeq ? -1 : (a.firstSeq == b.firstSeq ? 0 : 1);
+            }
+        });
+
+        for (Run run : runs_) {
+            nextSeq_ = Math.max(nextSeq_, run.lastSeq + 1);
+            logEnd_ = Math.max(logEnd_, run.logEnd);
+        }
+    }
+
+    // forget everything, deletes the runs
+    void clear() {
+        for (Run run : runs_)
+            run.file.delete();
+        runs_.clear();
+        mem_.clear();
+        logEnd_ = 0;
+    }
+}
@@ -0,0 +1,176 @@
+package org.lndroid.lnd.daemon;
+
+import com.google.protobuf.ByteString;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Shares server streams: subscribers of the same method with the
+// same request are served by one daemon-side subscription, every
+// event is decoded once and passed to all of them. Lndmobile can't
+// cancel server streams, so when the last subscriber leaves the
+// stream is kept and muted (events are dropped before parsing), and
+// the next subscriber with the same request is attached to it
+// instead of opening another lnd stream. An error ends the stream
+// for all subscribers. Events are shared by all subscribers and
+// must not be modified. Thread-safe.
+class SubscriptionHub {
+
+    interface Opener {
+        Upstream open(ILightningCallbackMT cb);
+    }
+
+    // daemon-side subscription
+    interface Upstream extends ILightningSubscription {
+        // drop events while nobody listens
+        void setMuted(boolean muted);
+    }
+
+    private static class Key {
+        private String label_;
+        private ByteString req_;
+        private int hash_;
+
+        Key(String label, ByteString req) {
+            label_ = label;
+            req_ = req;
+            hash_ = label.hashCode() * 31 + req.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash_;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return hash_ == k.hash_ && label_.equals(k.label_) && req_.equals(k.req_);
+        }
+    }
+
+    private class Member implements ILightningSubscription {
+        private Topic topic_;
+        private ILightningCallbackMT cb_;
+        private volatile boolean cancelled_;
+
+        Member(Topic topic, ILightningCallbackMT cb) {
+            topic_ = topic;
+            cb_ = cb;
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled_)
+                return;
+            cancelled_ = true;
+            topic_.leave(this);
+        }
+
+        @Override
+        public boolean isValid() {
+            return !cancelled_ && !topic_.closed_;
+        }
+    }
+
+    private class Topic implements ILightningCallbackMT {
+        private Key key_;
+        private CopyOnWriteArrayList<Member> members_ = new CopyOnWriteArrayList<>();
+        // guarded by SubscriptionHub.this
+        private Upstream upstream_;
+        private volatile boolean closed_;
+
+        Topic(Key key) {
+            key_ = key;
+        }
+
+        void setUpstream(Upstream upstream) {
+            synchronized (SubscriptionHub.this) {
+                upstream_ = upstream;
+                // everyone left while it was opened
+                if (members_.isEmpty())
+                    upstream.setMuted(true);
+            }
+        }
+
+        // guarded by SubscriptionHub.this
+        void join(Member m) {
+            members_.add(m);
+            if (members_.size() == 1 && upstream_ != null)
+                upstream_.setMuted(false);
+        }
+
+        void leave(Member m) {
+            synchronized (SubscriptionHub.this) {
+                members_.remove(m);
+                if (members_.isEmpty() && upstream_ != null)
+                    upstream_.setMuted(true);
+            }
+        }
+
+        // guarded by SubscriptionHub.this
+        private void close() {
+            closed_ = true;
+            if (topics_.get(key_) == this)
+                topics_.remove(key_);
+        }
+
+        @Override
+        public void onError(int code, String message) {
+            synchronized (SubscriptionHub.this) {
+                if (closed_)
+                    return;
+                close();
+            }
+            for (Member m : members_) {
+                if (!m.cancelled_)
+                    m.cb_.onError(code, message);
+            }
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            for (Member m : members_) {
+                if (!m.cancelled_)
+                    m.cb_.onResponse(o);
+            }
+        }
+    }
+
+    private HashMap<Key, Topic> topics_ = new HashMap<>();
+    private volatile boolean enabled_ = true;
+
+    void setEnabled(boolean enabled) {
+        enabled_ = enabled;
+    }
+
+    // a closed topic is replaced by a new one, a muted
+    // topic is unmuted and reused
+    ILightningSubscription join(String label, com.google.protobuf.Message req,
+                                ILightningCallbackMT cb, Opener opener) {
+        if (!enabled_)
+            return opener.open(cb);
+
+        Key key = new Key(label, req.toByteString());
+        Topic topic;
+        Member member;
+        boolean open = false;
+        synchronized (this) {
+            topic = topics_.get(key);
+            if (topic == null) {
+                topic = new Topic(key);
+                topics_.put(key, topic);
+                open = true;
+            }
+            member = new Member(topic, cb);
+            topic.join(member);
+        }
+
+        // outside the lock, opener might call back right away
+        if (open)
+            topic.setUpstream(opener.open(topic));
+        return member;
+    }
+}
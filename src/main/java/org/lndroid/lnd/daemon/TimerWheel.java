@@ -0,0 +1,157 @@
+package org.lndroid.lnd.daemon;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Hashed timer wheel for call deadlines and retry delays: one
+// thread serves all timeouts, scheduling and cancelling are O(1)
+// and lock-free for the caller. Timeouts fire on the wheel's
+// thread with tick precision, tasks should be quick. The thread
+// is a daemon thread started on the first timeout.
+final class TimerWheel {
+
+    private static final String TAG = "TimerWheel";
+
+    static final class Timeout {
+        private final Runnable task_;
+        private final long deadline_;
+        // full turns of the wheel left
+        private long rounds_;
+        private volatile boolean cancelled_;
+        // bucket list, touched by the wheel thread only
+        private Timeout next_;
+
+        Timeout(Runnable task, long deadline) {
+            task_ = task;
+            deadline_ = deadline;
+        }
+
+        // the task won't run if it hasn't yet, the
+        // entry is dropped from its bucket lazily
+        void cancel() {
+            cancelled_ = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled_;
+        }
+    }
+
+    private final long tickMs_;
+    private final Timeout[] buckets_;
+    private final int mask_;
+    private final ConcurrentLinkedQueue<Timeout> pending_ = new ConcurrentLinkedQueue<>();
+    private Thread thread_;
+    private long start_;
+    // wheel thread only
+    private long tick_;
+
+    // wheelSize is rounded up to a power of 2
+    TimerWheel(long tickMs, int wheelSize) {
+        int size = 1;
+        while (size < wheelSize)
+            size <<= 1;
+        tickMs_ = tickMs;
+        buckets_ = new Timeout[size];
+        mask_ = size - 1;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    Timeout newTimeout(Runnable task, long delayMs) {
+        start();
+        Timeout t = new Timeout(task, now() + Math.max(delayMs, 0));
+        pending_.offer(t);
+        return t;
+    }
+
+    private synchronized void start() {
+        if (thread_ != null)
+            return;
+
+        start_ = now();
+        thread_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "LightningTimerWheel");
+        thread_.setDaemon(true);
+        thread_.start();
+    }
+
+    private void loop() {
+        while (true) {
+            long deadline = start_ + (tick_ + 1) * tickMs_;
+            long sleep = deadline - now();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // daemon thread, keep going
+                }
+                continue;
+            }
+
+            transfer();
+            expire(buckets_[(int)(tick_ & mask_)]);
+            tick_++;
+        }
+    }
+
+    // moves new timeouts to their buckets
+    private void transfer() {
+        Timeout t;
+        while ((t = pending_.poll()) != null) {
+            if (t.cancelled_)
+                continue;
+
+            // bucket of tick N is expired at the end of it,
+            // at start_ + (N + 1) * tickMs_
+            long ticks = (t.deadline_ - start_ + tickMs_ - 1) / tickMs_ - 1;
+            // already due ones fire on this tick
+            ticks = Math.max(ticks, tick_);
+            t.rounds_ = (ticks - tick_) / buckets_.length;
+            int index = (int)(ticks & mask_);
+            t.next_ = buckets_[index];
+            buckets_[index] = t;
+        }
+    }
+
+    private void expire(Timeout head) {
+        int index = (int)(tick_ & mask_);
+        Timeout prev = null;
+        Timeout t = head;
+        while (t != null) {
+            Timeout next = t.next_;
+            boolean remove;
+            if (t.cancelled_) {
+                remove = true;
+            } else if (t.rounds_ > 0) {
+                t.rounds_--;
+                remove = false;
+            } else {
+                remove = true;
+                try {
+                    t.task_.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "timeout task failed: " + e);
+                }
+            }
+
+            if (remove) {
+                if (prev == null)
+                    buckets_[index] = next;
+                else
+                    prev.next_ = next;
+                t.next_ = null;
+            } else {
+                prev = t;
+            }
+            t = next;
+        }
+    }
+}
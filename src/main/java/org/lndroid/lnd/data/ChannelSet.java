@@ -0,0 +1,510 @@
+package org.lndroid.lnd.data;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+// Columnar ListChannelsResponse: channel fields are stored in
+// parallel arrays indexed by channel, pubkeys are packed as
+// 33 raw bytes each, strings and hash locks are kept as bytes
+// and converted on access, pending HTLCs of all channels are
+// flattened into their own columns. Decoding a reply costs a few
+// array allocations instead of objects per channel.
+// Use channel(i) or cursor() for flyweight views, toData(i) for
+// a Data.Channel. Decoded by WireCodec.decodeChannelSet.
+// Columns must not be modified, the set is safe to share.
+public final class ChannelSet {
+
+    public static final int PUBKEY_SIZE = 33;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int FLAG_ACTIVE = 1;
+    static final int FLAG_PRIVATE = 1 << 1;
+    static final int FLAG_INITIATOR = 1 << 2;
+    static final int FLAG_STATIC_REMOTE_KEY = 1 << 3;
+    // remote_pubkey isn't a 33-byte hex key, it's kept in text
+    static final int FLAG_RAW_PUBKEY = 1 << 4;
+
+    int size;
+
+    long[] chanId;
+    long[] capacity;
+    long[] localBalance;
+    long[] remoteBalance;
+    long[] commitFee;
+    long[] commitWeight;
+    long[] feePerKw;
+    long[] unsettledBalance;
+    long[] totalSatoshisSent;
+    long[] totalSatoshisReceived;
+    long[] numUpdates;
+    long[] localChanReserveSat;
+    long[] remoteChanReserveSat;
+    long[] lifetime;
+    long[] uptime;
+    int[] csvDelay;
+    byte[] flags;
+    byte[] pubkeys;
+    // allocated on the first raw pubkey
+    int[] rawPubkeyOffset;
+    int[] rawPubkeyLength;
+
+    // channelPoint, chanStatusFlags and hash locks
+    byte[] text;
+    int textSize;
+    int[] channelPointOffset;
+    int[] channelPointLength;
+    int[] statusFlagsOffset;
+    int[] statusFlagsLength;
+
+    // htlcs of channel i are htlcStart[i] .. htlcStart[i + 1] - 1
+    int[] htlcStart;
+    int htlcCount;
+    long[] htlcAmount;
+    int[] htlcExpirationHeight;
+    boolean[] htlcIncoming;
+    int[] htlcHashLockOffset;
+    int[] htlcHashLockLength;
+
+    ChannelSet(int size) {
+        this.size = size;
+        chanId = new long[size];
+        capacity = new long[size];
+        localBalance = new long[size];
+        remoteBalance = new long[size];
+        commitFee = new long[size];
+        commitWeight = new long[size];
+        feePerKw = new long[size];
+        unsettledBalance = new long[size];
+        totalSatoshisSent = new long[size];
+        totalSatoshisReceived = new long[size];
+        numUpdates = new long[size];
+        localChanReserveSat = new long[size];
+        remoteChanReserveSat = new long[size];
+        lifetime = new long[size];
+        uptime = new long[size];
+        csvDelay = new int[size];
+        flags = new byte[size];
+        pubkeys = new byte[size * PUBKEY_SIZE];
+        // channel point is 64 hex chars, ':' and index, flags are short
+        text = new byte[size * 96];
+        channelPointOffset = new int[size];
+        channelPointLength = new int[size];
+        statusFlagsOffset = new int[size];
+        statusFlagsLength = new int[size];
+        htlcStart = new int[size + 1];
+        htlcAmount = new long[0];
+        htlcExpirationHeight = new int[0];
+        htlcIncoming = new boolean[0];
+        htlcHashLockOffset = new int[0];
+        htlcHashLockLength = new int[0];
+    }
+
+    // returns the offset of the reserved bytes in text
+    int reserveText(int length) {
+        if (textSize + length > text.length) {
+            byte[] t = new byte[Math.max(text.length * 2, textSize + length)];
+            System.arraycopy(text, 0, t, 0, textSize);
+            text = t;
+        }
+        int offset = textSize;
+        textSize += length;
+        return offset;
+    }
+
+    void setRawPubkey(int i, int offset, int length) {
+        if (rawPubkeyOffset == null) {
+            rawPubkeyOffset = new int[size];
+            rawPubkeyLength = new int[size];
+        }
+        rawPubkeyOffset[i] = offset;
+        rawPubkeyLength[i] = length;
+    }
+
+    // returns the index of the new htlc
+    int addHtlc() {
+        if (htlcCount == htlcAmount.length) {
+            int capacity = Math.max(16, htlcCount * 2);
+            long[] amount = new long[capacity];
+            int[] height = new int[capacity];
+            boolean[] incoming = new boolean[capacity];
+            int[] hashOffset = new int[capacity];
+            int[] hashLength = new int[capacity];
+            System.arraycopy(htlcAmount, 0, amount, 0, htlcCount);
+            System.arraycopy(htlcExpirationHeight, 0, height, 0, htlcCount);
+            System.arraycopy(htlcIncoming, 0, incoming, 0, htlcCount);
+            System.arraycopy(htlcHashLockOffset, 0, hashOffset, 0, htlcCount);
+            System.arraycopy(htlcHashLockLength, 0, hashLength, 0, htlcCount);
+            htlcAmount = amount;
+            htlcExpirationHeight = height;
+            htlcIncoming = incoming;
+            htlcHashLockOffset = hashOffset;
+            htlcHashLockLength = hashLength;
+        }
+        return htlcCount++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // index of the channel, -1 if not found
+    public int indexOf(long chanId) {
+        for (int i = 0; i < size; i++) {
+            if (this.chanId[i] == chanId)
+                return i;
+        }
+        return -1;
+    }
+
+    // ==== columns, length is size()
+
+    public long[] chanIdColumn() {
+        return chanId;
+    }
+
+    public long[] capacityColumn() {
+        return capacity;
+    }
+
+    public long[] localBalanceColumn() {
+        return localBalance;
+    }
+
+    public long[] remoteBalanceColumn() {
+        return remoteBalance;
+    }
+
+    public long[] commitFeeColumn() {
+        return commitFee;
+    }
+
+    public long[] feePerKwColumn() {
+        return feePerKw;
+    }
+
+    public long[] unsettledBalanceColumn() {
+        return unsettledBalance;
+    }
+
+    // ==== fields of channel i
+
+    private boolean flag(int i, int flag) {
+        return (flags[i] & flag) != 0;
+    }
+
+    public boolean active(int i) {
+        return flag(i, FLAG_ACTIVE);
+    }
+
+    public boolean isPrivate(int i) {
+        return flag(i, FLAG_PRIVATE);
+    }
+
+    public boolean initiator(int i) {
+        return flag(i, FLAG_INITIATOR);
+    }
+
+    public boolean staticRemoteKey(int i) {
+        return flag(i, FLAG_STATIC_REMOTE_KEY);
+    }
+
+    public long chanId(int i) {
+        return chanId[i];
+    }
+
+    public long capacity(int i) {
+        return capacity[i];
+    }
+
+    public long localBalance(int i) {
+        return localBalance[i];
+    }
+
+    public long remoteBalance(int i) {
+        return remoteBalance[i];
+    }
+
+    public long commitFee(int i) {
+        return commitFee[i];
+    }
+
+    public long commitWeight(int i) {
+        return commitWeight[i];
+    }
+
+    public long feePerKw(int i) {
+        return feePerKw[i];
+    }
+
+    public long unsettledBalance(int i) {
+        return unsettledBalance[i];
+    }
+
+    public long totalSatoshisSent(int i) {
+        return totalSatoshisSent[i];
+    }
+
+    public long totalSatoshisReceived(int i) {
+        return totalSatoshisReceived[i];
+    }
+
+    public long numUpdates(int i) {
+        return numUpdates[i];
+    }
+
+    public int csvDelay(int i) {
+        return csvDelay[i];
+    }
+
+    public long localChanReserveSat(int i) {
+        return localChanReserveSat[i];
+    }
+
+    public long remoteChanReserveSat(int i) {
+        return remoteChanReserveSat[i];
+    }
+
+    public long lifetime(int i) {
+        return lifetime[i];
+    }
+
+    public long uptime(int i) {
+        return uptime[i];
+    }
+
+    // copies the raw pubkey to dst at offset, false if it isn't a hex key
+    public boolean remotePubkey(int i, byte[] dst, int offset) {
+        if (flag(i, FLAG_RAW_PUBKEY))
+            return false;
+        System.arraycopy(pubkeys, i * PUBKEY_SIZE, dst, offset, PUBKEY_SIZE);
+        return true;
+    }
+
+    // compares with a raw 33-byte pubkey without allocations
+    public boolean remotePubkeyEquals(int i, byte[] pubkey) {
+        if (flag(i, FLAG_RAW_PUBKEY) || pubkey.length != PUBKEY_SIZE)
+            return false;
+        int base = i * PUBKEY_SIZE;
+        for (int j = 0; j < PUBKEY_SIZE; j++) {
+            if (pubkeys[base + j] != pubkey[j])
+                return false;
+        }
+        return true;
+    }
+
+    // hex, as in Data.Channel
+    public String remotePubkey(int i) {
+        if (flag(i, FLAG_RAW_PUBKEY)) {
+            if (rawPubkeyOffset == null)
+                return "";
+            return InternPool.intern(text, rawPubkeyOffset[i], rawPubkeyLength[i]);
+        }
+        // a pooled key doesn't allocate
+        return InternPool.internHex(pubkeys, i * PUBKEY_SIZE, PUBKEY_SIZE);
+    }
+
+    public String channelPoint(int i) {
+        return InternPool.intern(text, channelPointOffset[i], channelPointLength[i]);
+    }
+
+    public String chanStatusFlags(int i) {
+        return new String(text, statusFlagsOffset[i], statusFlagsLength[i], UTF8);
+    }
+
+    public int pendingHtlcCount(int i) {
+        return htlcStart[i + 1] - htlcStart[i];
+    }
+
+    // j-th pending htlc of channel i
+    public Data.HTLC pendingHtlc(int i, int j) {
+        int h = htlcStart[i] + j;
+        Data.HTLC r = new Data.HTLC();
+        r.incoming = htlcIncoming[h];
+        r.amount = htlcAmount[h];
+        r.hashLock = new byte[htlcHashLockLength[h]];
+        System.arraycopy(text, htlcHashLockOffset[h], r.hashLock, 0, r.hashLock.length);
+        r.expirationHeight = htlcExpirationHeight[h];
+        return r;
+    }
+
+    // same as WireCodec's Data.Channel of the reply
+    public Data.Channel toData(int i) {
+        Data.Channel r = new Data.Channel();
+        r.active = active(i);
+        r.remotePubkey = remotePubkey(i);
+        r.channelPoint = channelPoint(i);
+        r.chanId = chanId[i];
+        r.capacity = capacity[i];
+        r.localBalance = localBalance[i];
+        r.remoteBalance = remoteBalance[i];
+        r.commitFee = commitFee[i];
+        r.commitWeight = commitWeight[i];
+        r.feePerKw = feePerKw[i];
+        r.unsettledBalance = unsettledBalance[i];
+        r.totalSatoshisSent = totalSatoshisSent[i];
+        r.totalSatoshisReceived = totalSatoshisReceived[i];
+        r.numUpdates = numUpdates[i];
+        int n = pendingHtlcCount(i);
+        r.pendingHtlcs = new ArrayList<>(n);
+        for (int j = 0; j < n; j++)
+            r.pendingHtlcs.add(pendingHtlc(i, j));
+        r.csvDelay = csvDelay[i];
+        r.isPrivate = isPrivate(i);
+        r.initiator = initiator(i);
+        r.chanStatusFlags = chanStatusFlags(i);
+        r.localChanReserveSat = localChanReserveSat[i];
+        r.remoteChanReserveSat = remoteChanReserveSat[i];
+        r.staticRemoteKey = staticRemoteKey(i);
+        r.lifetime = lifetime[i];
+        r.uptime = uptime[i];
+        return r;
+    }
+
+    public Data.ListChannelsResponse toData() {
+        Data.ListChannelsResponse r = new Data.ListChannelsResponse();
+        r.channels = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            r.channels.add(toData(i));
+        return r;
+    }
+
+    // view of channel i
+    public Channel channel(int i) {
+        return new Channel(this).moveTo(i);
+    }
+
+    // view to be moved over channels with moveTo
+    public Channel cursor() {
+        return new Channel(this);
+    }
+
+    // Flyweight view of a channel in the set
+    public static final class Channel {
+        private final ChannelSet set_;
+        private int i_ = -1;
+
+        Channel(ChannelSet set) {
+            set_ = set;
+        }
+
+        public Channel moveTo(int i) {
+            if (i < 0 || i >= set_.size)
+                throw new IndexOutOfBoundsException("Channel " + i + " of " + set_.size);
+            i_ = i;
+            return this;
+        }
+
+        public int index() {
+            return i_;
+        }
+
+        public boolean active() {
+            return set_.active(i_);
+        }
+
+        public boolean isPrivate() {
+            return set_.isPrivate(i_);
+        }
+
+        public boolean initiator() {
+            return set_.initiator(i_);
+        }
+
+        public boolean staticRemoteKey() {
+            return set_.staticRemoteKey(i_);
+        }
+
+        public long chanId() {
+            return set_.chanId[i_];
+        }
+
+        public long capacity() {
+            return set_.capacity[i_];
+        }
+
+        public long localBalance() {
+            return set_.localBalance[i_];
+        }
+
+        public long remoteBalance() {
+            return set_.remoteBalance[i_];
+        }
+
+        public long commitFee() {
+            return set_.commitFee[i_];
+        }
+
+        public long commitWeight() {
+            return set_.commitWeight[i_];
+        }
+
+        public long feePerKw() {
+            return set_.feePerKw[i_];
+        }
+
+        public long unsettledBalance() {
+            return set_.unsettledBalance[i_];
+        }
+
+        public long totalSatoshisSent() {
+            return set_.totalSatoshisSent[i_];
+        }
+
+        public long totalSatoshisReceived() {
+            return set_.totalSatoshisReceived[i_];
+        }
+
+        public long numUpdates() {
+            return set_.numUpdates[i_];
+        }
+
+        public int csvDelay() {
+            return set_.csvDelay[i_];
+        }
+
+        public long localChanReserveSat() {
+            return set_.localChanReserveSat[i_];
+        }
+
+        public long remoteChanReserveSat() {
+            return set_.remoteChanReserveSat[i_];
+        }
+
+        public long lifetime() {
+            return set_.lifetime[i_];
+        }
+
+        public long uptime() {
+            return set_.uptime[i_];
+        }
+
+        public boolean remotePubkeyEquals(byte[] pubkey) {
+            return set_.remotePubkeyEquals(i_, pubkey);
+        }
+
+        public String remotePubkey() {
+            return set_.remotePubkey(i_);
+        }
+
+        public String channelPoint() {
+            return set_.channelPoint(i_);
+        }
+
+        public String chanStatusFlags() {
+            return set_.chanStatusFlags(i_);
+        }
+
+        public int pendingHtlcCount() {
+            return set_.pendingHtlcCount(i_);
+        }
+
+        public Data.HTLC pendingHtlc(int j) {
+            return set_.pendingHtlc(i_, j);
+        }
+
+        public Data.Channel toData() {
+            return set_.toData(i_);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.lndroid.lnd.data;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -10,10 +11,24 @@ import java.util.Map;
 import lnrpc.Rpc;
 
 public final class Codec {
+
+    private static volatile boolean wrapBytes_;
+
+    // byte fields of Data requests are wrapped into ByteStrings instead
+    // of being copied, the arrays must not be modified until the call
+    // returns
+    public static void setWrapBytes(boolean wrap) {
+        wrapBytes_ = wrap;
+    }
+
+    private static ByteString bytes(byte[] b) {
+        return wrapBytes_ ? UnsafeByteOperations.unsafeWrap(b) : ByteString.copyFrom(b);
+    }
+
     public static lnrpc.Rpc.UnlockWalletRequest encode(Data.UnlockWalletRequest r) {
         lnrpc.Rpc.UnlockWalletRequest.Builder b = lnrpc.Rpc.UnlockWalletRequest.newBuilder();
         if (r.walletPassword != null)
-            b.setWalletPassword(ByteString.copyFrom(r.walletPassword));
+            b.setWalletPassword(bytes(r.walletPassword));
         b.setRecoveryWindow(0);
 
         return b.build();
@@ -27,9 +42,9 @@ public final class Codec {
     public static lnrpc.Rpc.GenSeedRequest encode(Data.GenSeedRequest r) {
         lnrpc.Rpc.GenSeedRequest.Builder b = lnrpc.Rpc.GenSeedRequest.newBuilder();
         if (r.aezeedPassphrase != null)
-            b.setAezeedPassphrase(ByteString.copyFrom(r.aezeedPassphrase));
+            b.setAezeedPassphrase(bytes(r.aezeedPassphrase));
         if (r.seedEntropy != null)
-            b.setSeedEntropy(ByteString.copyFrom(r.seedEntropy));
+            b.setSeedEntropy(bytes(r.seedEntropy));
         return b.build();
     }
 
@@ -39,7 +54,7 @@ public final class Codec {
         // copy results
         Data.GenSeedResponse r = new Data.GenSeedResponse();
         r.encipheredSeed = resp.getEncipheredSeed().toByteArray();
-        r.cipherSeedMnemonic = new ArrayList<>();
+        r.cipherSeedMnemonic = new ArrayList<>(resp.getCipherSeedMnemonicCount());
         for (int i = 0; i < resp.getCipherSeedMnemonicCount(); i++)
             r.cipherSeedMnemonic.add(resp.getCipherSeedMnemonic(i));
 
@@ -50,9 +65,9 @@ public final class Codec {
 
         lnrpc.Rpc.InitWalletRequest.Builder b = lnrpc.Rpc.InitWalletRequest.newBuilder();
         if (r.walletPassword != null)
-            b.setWalletPassword(ByteString.copyFrom(r.walletPassword));
+            b.setWalletPassword(bytes(r.walletPassword));
         if (r.aezeedPassphrase != null)
-            b.setAezeedPassphrase(ByteString.copyFrom(r.aezeedPassphrase));
+            b.setAezeedPassphrase(bytes(r.aezeedPassphrase));
         if (r.cipherSeedMnemonic != null) {
             for (String m : r.cipherSeedMnemonic)
                 b.addCipherSeedMnemonic(m);
@@ -69,7 +84,7 @@ public final class Codec {
 
     public static lnrpc.Rpc.NewAddressRequest encode(Data.NewAddressRequest r) {
         lnrpc.Rpc.NewAddressRequest.Builder b = lnrpc.Rpc.NewAddressRequest.newBuilder();
-        b.setType(Rpc.AddressType.forNumber(r.type));
+        b.setTypeValue(r.type);
         return b.build();
     }
 
@@ -91,7 +106,7 @@ public final class Codec {
 
         // copy results
         Data.GetInfoResponse r = new Data.GetInfoResponse();
-        r.identityPubkey = resp.getIdentityPubkey();
+        r.identityPubkey = InternPool.intern(resp.getIdentityPubkeyBytes());
         r.alias = resp.getAlias();
         r.numPendingChannels = resp.getNumPendingChannels();
         r.numActiveChannels = resp.getNumActiveChannels();
@@ -99,13 +114,13 @@ public final class Codec {
         r.blockHeight = resp.getBlockHeight();
         r.blockHash = resp.getBlockHash();
         r.syncedToChain = resp.getSyncedToChain();
-        r.uris = new ArrayList<>();
+        r.uris = new ArrayList<>(resp.getUrisCount());
         for (String uri : resp.getUrisList())
             r.uris.add(uri);
         r.bestHeaderTimestamp = resp.getBestHeaderTimestamp();
         r.version = resp.getVersion();
         r.numInactiveChannels = resp.getNumInactiveChannels();
-        r.chains = new ArrayList<>();
+        r.chains = new ArrayList<>(resp.getChainsCount());
         for (lnrpc.Rpc.Chain pbc : resp.getChainsList()) {
             Data.Chain c = new Data.Chain();
             c.chain = pbc.getChain();
@@ -208,8 +223,8 @@ public final class Codec {
         Data.Channel r = new Data.Channel();
 
         r.active = resp.getActive();
-        r.remotePubkey = resp.getRemotePubkey();
-        r.channelPoint = resp.getChannelPoint();
+        r.remotePubkey = InternPool.intern(resp.getRemotePubkeyBytes());
+        r.channelPoint = InternPool.intern(resp.getChannelPointBytes());
         r.chanId = resp.getChanId();
         r.capacity = resp.getCapacity();
         r.localBalance = resp.getLocalBalance();
@@ -221,7 +236,7 @@ public final class Codec {
         r.totalSatoshisSent = resp.getTotalSatoshisSent();
         r.totalSatoshisReceived = resp.getTotalSatoshisReceived();
         r.numUpdates = resp.getNumUpdates();
-        r.pendingHtlcs = new ArrayList<>();
+        r.pendingHtlcs = new ArrayList<>(resp.getPendingHtlcsCount());
         for (lnrpc.Rpc.HTLC pbHtlc : resp.getPendingHtlcsList())
             r.pendingHtlcs.add(decode(pbHtlc));
         r.csvDelay = resp.getCsvDelay();
@@ -241,7 +256,7 @@ public final class Codec {
         assert resp != null;
 
         Data.ListChannelsResponse r = new Data.ListChannelsResponse();
-        r.channels = new ArrayList<>();
+        r.channels = new ArrayList<>(resp.getChannelsCount());
         for (lnrpc.Rpc.Channel pbc : resp.getChannelsList())
             r.channels.add(decode(pbc));
 
@@ -275,7 +290,7 @@ public final class Codec {
         b.setAcceptTime(r.acceptTime);
         b.setResolveTime(r.resolveTime);
         b.setExpiryHeight(r.expiryHeight);
-        b.setState(lnrpc.Rpc.InvoiceHTLCState.forNumber(r.state));
+        b.setStateValue(r.state);
         return b.build();
     }
 
@@ -284,16 +299,16 @@ public final class Codec {
         if (r.memo != null)
             b.setMemo(r.memo);
         if (r.rPreimage != null)
-            b.setRPreimage(ByteString.copyFrom(r.rPreimage));
+            b.setRPreimage(bytes(r.rPreimage));
         if (r.rHash != null)
-            b.setRHash(ByteString.copyFrom(r.rHash));
+            b.setRHash(bytes(r.rHash));
         b.setValue(r.value);
         b.setCreationDate(r.creationDate);
         b.setSettleDate(r.settleDate);
         if (r.paymentRequest != null)
             b.setPaymentRequest(r.paymentRequest);
         if (r.descriptionHash != null)
-            b.setDescriptionHash(ByteString.copyFrom(r.descriptionHash));
+            b.setDescriptionHash(bytes(r.descriptionHash));
         b.setExpiry(r.expiry);
         if (r.fallbackAddr != null)
             b.setFallbackAddr(r.fallbackAddr);
@@ -308,7 +323,8 @@ public final class Codec {
         b.setSettleIndex(r.settleIndex);
         b.setAmtPaidSat(r.amtPaidSat);
         b.setAmtPaidMsat(r.amtPaidMsat);
-        b.setState(lnrpc.Rpc.Invoice.InvoiceState.forNumber(r.state));
+        b.setStateValue(r.state);
+        b.setIsKeysend(r.isKeysend);
         if (r.htlcs != null) {
             for (Data.InvoiceHTLC htlc : r.htlcs) {
                 b.addHtlcs(encode(htlc));
@@ -349,7 +365,7 @@ public final class Codec {
         r.blockHeight = resp.getBlockHeight();
         r.timeStamp = resp.getTimeStamp();
         r.totalFees = resp.getTotalFees();
-        r.destAddresses = new ArrayList<>();
+        r.destAddresses = new ArrayList<>(resp.getDestAddressesCount());
         for (String da : resp.getDestAddressesList())
             r.destAddresses.add(da);
         r.rawTxHex = resp.getRawTxHex();
@@ -360,7 +376,7 @@ public final class Codec {
         assert resp != null;
 
         Data.TransactionDetails r = new Data.TransactionDetails();
-        r.transactions = new ArrayList<>();
+        r.transactions = new ArrayList<>(resp.getTransactionsCount());
         for (lnrpc.Rpc.Transaction t : resp.getTransactionsList())
             r.transactions.add(decode(t));
 
@@ -371,7 +387,7 @@ public final class Codec {
         lnrpc.Rpc.OpenChannelRequest.Builder b = lnrpc.Rpc.OpenChannelRequest.newBuilder();
 
         if (r.nodePubkey != null)
-            b.setNodePubkey(ByteString.copyFrom(r.nodePubkey));
+            b.setNodePubkey(bytes(r.nodePubkey));
         if (r.nodePubkeyString != null)
             b.setNodePubkeyString(r.nodePubkeyString);
         b.setLocalFundingAmount(r.localFundingAmount);
@@ -391,7 +407,7 @@ public final class Codec {
         lnrpc.Rpc.ChannelPoint.Builder b = lnrpc.Rpc.ChannelPoint.newBuilder();
 
         if (r.fundingTxidBytes != null)
-            b.setFundingTxidBytes(ByteString.copyFrom(r.fundingTxidBytes));
+            b.setFundingTxidBytes(bytes(r.fundingTxidBytes));
         if (r.fundingTxidStr != null)
             b.setFundingTxidStr(r.fundingTxidStr);
         b.setOutputIndex(r.outputIndex);
@@ -540,10 +556,10 @@ public final class Codec {
     public static lnrpc.Rpc.SendRequest encode(Data.SendRequest r) {
         lnrpc.Rpc.SendRequest.Builder b = lnrpc.Rpc.SendRequest.newBuilder();
         if (r.dest != null)
-            b.setDest(ByteString.copyFrom(r.dest));
+            b.setDest(bytes(r.dest));
         b.setAmtMsat(r.amtMsat);
         if (r.paymentHash != null)
-            b.setPaymentHash(ByteString.copyFrom(r.paymentHash));
+            b.setPaymentHash(bytes(r.paymentHash));
         if (r.paymentRequest != null)
             b.setPaymentRequest(r.paymentRequest);
         b.setFinalCltvDelta(r.finalCltvDelta);
@@ -554,7 +570,7 @@ public final class Codec {
         if (r.destTlv != null) {
             for (Map.Entry<Long, byte[]> e : r.destTlv.entrySet()) {
                 if (e.getValue() != null)
-                    b.putDestCustomRecords(e.getKey(), ByteString.copyFrom(e.getValue()));
+                    b.putDestCustomRecords(e.getKey(), bytes(e.getValue()));
                 else
                     b.putDestCustomRecords(e.getKey(), null); // FIXME god knows if it works
             }
@@ -570,7 +586,7 @@ public final class Codec {
 
     public static lnrpc.Rpc.MPPRecord encode(Data.MPPRecord r) {
         lnrpc.Rpc.MPPRecord.Builder b = lnrpc.Rpc.MPPRecord.newBuilder();
-        b.setPaymentAddr(ByteString.copyFrom(r.paymentAddr));
+        b.setPaymentAddr(bytes(r.paymentAddr));
         b.setTotalAmtMsat(r.totalAmtMsat);
         return b.build();
     }
@@ -602,7 +618,7 @@ public final class Codec {
         if (r.tlv != null) {
             for (Map.Entry<Long, byte[]> e : r.tlv.entrySet()) {
                 if (e.getValue() != null)
-                    b.putCustomRecords(e.getKey(), ByteString.copyFrom(e.getValue()));
+                    b.putCustomRecords(e.getKey(), bytes(e.getValue()));
                 else
                     b.putCustomRecords(e.getKey(), null); // FIXME god knows if it works
             }
@@ -620,13 +636,13 @@ public final class Codec {
         r.expiry = resp.getExpiry();
         r.amtToForwardMsat = resp.getAmtToForwardMsat();
         r.feeMsat = resp.getFeeMsat();
-        r.pubKey = resp.getPubKey();
+        r.pubKey = InternPool.intern(resp.getPubKeyBytes());
         r.tlvPayload = resp.getTlvPayload();
         if (resp.hasMppRecord())
             r.mppRecord = decode(resp.getMppRecord());
 
         if (resp.getCustomRecordsCount() > 0) {
-            r.tlv = new HashMap<>();
+            r.tlv = new HashMap<>(resp.getCustomRecordsCount() * 4 / 3 + 1);
             for (Map.Entry<Long, ByteString> e : resp.getCustomRecordsMap().entrySet()) {
                 r.tlv.put(e.getKey(), e.getValue().toByteArray());
             }
@@ -654,7 +670,7 @@ public final class Codec {
 
         Data.Route r = new Data.Route();
         r.totalTimeLock = resp.getTotalTimeLock();
-        r.hops = new ArrayList<>();
+        r.hops = new ArrayList<>(resp.getHopsCount());
         for (lnrpc.Rpc.Hop h : resp.getHopsList())
             r.hops.add(decode(h));
         r.totalFeesMsat = resp.getTotalFeesMsat();
@@ -676,7 +692,7 @@ public final class Codec {
     public static lnrpc.Rpc.PaymentHash encode(Data.PaymentHash r) {
         lnrpc.Rpc.PaymentHash.Builder b = lnrpc.Rpc.PaymentHash.newBuilder();
         if (r.rHash != null)
-            b.setRHash(ByteString.copyFrom(r.rHash));
+            b.setRHash(bytes(r.rHash));
         return b.build();
     }
 
@@ -684,7 +700,7 @@ public final class Codec {
         assert resp != null;
 
         Data.HopHint r = new Data.HopHint();
-        r.nodeId = resp.getNodeId();
+        r.nodeId = InternPool.intern(resp.getNodeIdBytes());
         r.chanId = resp.getChanId();
         r.feeBaseMsat = resp.getFeeBaseMsat();
         r.feeProportionalMillionths = resp.getFeeProportionalMillionths();
@@ -696,7 +712,7 @@ public final class Codec {
         assert resp != null;
 
         Data.RouteHint r = new Data.RouteHint();
-        r.hopHints = new ArrayList<>();
+        r.hopHints = new ArrayList<>(resp.getHopHintsCount());
         for (lnrpc.Rpc.HopHint hh : resp.getHopHintsList())
             r.hopHints.add(decode(hh));
         return r;
@@ -713,9 +729,9 @@ public final class Codec {
         r.acceptTime = resp.getAcceptTime();
         r.resolveTime = resp.getResolveTime();
         r.expiryHeight = resp.getExpiryHeight();
-        r.state = resp.getState().getNumber();
+        r.state = resp.getStateValue();
         if (resp.getCustomRecordsCount() > 0)
-            r.tlv = new HashMap<>();
+            r.tlv = new HashMap<>(resp.getCustomRecordsCount() * 4 / 3 + 1);
         for (Map.Entry<Long, ByteString> e : resp.getCustomRecordsMap().entrySet()) {
             r.tlv.put(e.getKey(), e.getValue().toByteArray());
         }
@@ -737,7 +753,7 @@ public final class Codec {
         r.expiry = resp.getExpiry();
         r.fallbackAddr = resp.getFallbackAddr();
         r.cltvExpiry = resp.getCltvExpiry();
-        r.routeHints = new ArrayList<>();
+        r.routeHints = new ArrayList<>(resp.getRouteHintsCount());
         for (lnrpc.Rpc.RouteHint rh : resp.getRouteHintsList())
             r.routeHints.add(decode(rh));
         r.isPrivate = resp.getPrivate();
@@ -745,14 +761,14 @@ public final class Codec {
         r.settleIndex = resp.getSettleIndex();
         r.amtPaidSat = resp.getAmtPaidSat();
         r.amtPaidMsat = resp.getAmtPaidMsat();
-        r.state = resp.getState().getNumber();
+        r.state = resp.getStateValue();
         r.isKeysend = resp.getIsKeysend();
 
-        r.htlcs = new ArrayList<>();
+        r.htlcs = new ArrayList<>(resp.getHtlcsCount());
         for (lnrpc.Rpc.InvoiceHTLC htlc : resp.getHtlcsList())
             r.htlcs.add(decode(htlc));
 
-        r.features = new ArrayList<>();
+        r.features = new ArrayList<>(resp.getFeaturesCount());
         for (Map.Entry<Integer, lnrpc.Rpc.Feature> e : resp.getFeaturesMap().entrySet())
             r.features.add(e.getKey());
 
@@ -777,6 +793,29 @@ public final class Codec {
         return b.build();
     }
 
+    public static lnrpc.Rpc.ListPaymentsRequest encode(Data.ListPaymentsPageRequest r) {
+        lnrpc.Rpc.ListPaymentsRequest.Builder b = lnrpc.Rpc.ListPaymentsRequest.newBuilder();
+        b.setIncludeIncomplete(r.includeIncomplete);
+        return b.build();
+    }
+
+    public static lnrpc.Rpc.Payment encode(Data.Payment r) {
+        lnrpc.Rpc.Payment.Builder b = lnrpc.Rpc.Payment.newBuilder();
+        if (r.paymentHash != null)
+            b.setPaymentHash(r.paymentHash);
+        b.setCreationTimeNs(r.creationTime * 1000);
+        if (r.paymentPreimage != null)
+            b.setPaymentPreimage(r.paymentPreimage);
+        b.setValueSat(r.valueSat);
+        b.setValueMsat(r.valueMsat);
+        if (r.paymentRequest != null)
+            b.setPaymentRequest(r.paymentRequest);
+        b.setStatusValue(r.status);
+        b.setFeeSat(r.feeSat);
+        b.setFeeMsat(r.feeMsat);
+        return b.build();
+    }
+
     public static Data.Payment decode(lnrpc.Rpc.Payment resp) {
         assert resp != null;
 
@@ -787,7 +826,7 @@ public final class Codec {
         r.valueSat = resp.getValueSat();
         r.valueMsat = resp.getValueMsat();
         r.paymentRequest = resp.getPaymentRequest();
-        r.status = resp.getStatus().getNumber();
+        r.status = resp.getStatusValue();
         r.feeSat = resp.getFeeSat();
         r.feeMsat = resp.getFeeMsat();
 
@@ -797,7 +836,7 @@ public final class Codec {
     public static Data.ListPaymentsResponse decode(lnrpc.Rpc.ListPaymentsResponse resp) {
         assert resp != null;
         Data.ListPaymentsResponse r = new Data.ListPaymentsResponse();
-        r.payments = new ArrayList<>();
+        r.payments = new ArrayList<>(resp.getPaymentsCount());
         for (lnrpc.Rpc.Payment p : resp.getPaymentsList())
             r.payments.add(decode(p));
 
@@ -814,7 +853,7 @@ public final class Codec {
     public static Data.PayReq decode(lnrpc.Rpc.PayReq resp) {
         assert resp != null;
         Data.PayReq r = new Data.PayReq();
-        r.destination = resp.getDestination();
+        r.destination = InternPool.intern(resp.getDestinationBytes());
         r.paymentHash = resp.getPaymentHash();
         r.numSatoshis = resp.getNumSatoshis();
         r.timestamp = resp.getTimestamp();
@@ -824,11 +863,11 @@ public final class Codec {
         r.fallbackAddr = resp.getFallbackAddr();
         r.cltvExpiry = resp.getCltvExpiry();
         r.paymentAddr = resp.getPaymentAddr().toByteArray();
-        r.routeHints = new ArrayList<>();
+        r.routeHints = new ArrayList<>(resp.getRouteHintsCount());
         for (lnrpc.Rpc.RouteHint rh : resp.getRouteHintsList())
             r.routeHints.add(decode(rh));
 
-        r.features = new ArrayList<>();
+        r.features = new ArrayList<>(resp.getFeaturesCount());
         for (Map.Entry<Integer, lnrpc.Rpc.Feature> e : resp.getFeaturesMap().entrySet())
             r.features.add(e.getKey());
 
@@ -838,7 +877,7 @@ public final class Codec {
     public static chainrpc.Chainnotifier.BlockEpoch encode(Data.BlockEpoch r) {
         chainrpc.Chainnotifier.BlockEpoch.Builder b = chainrpc.Chainnotifier.BlockEpoch.newBuilder();
         if (r.hash != null)
-            b.setHash(ByteString.copyFrom(r.hash));
+            b.setHash(bytes(r.hash));
         b.setHeight(r.height);
         return b.build();
     }
@@ -851,6 +890,26 @@ public final class Codec {
         return r;
     }
 
+    public static lnrpc.Rpc.ListInvoiceRequest encode(Data.ListInvoiceRequest r) {
+        lnrpc.Rpc.ListInvoiceRequest.Builder b = lnrpc.Rpc.ListInvoiceRequest.newBuilder();
+        b.setPendingOnly(r.pendingOnly);
+        b.setIndexOffset(r.indexOffset);
+        b.setNumMaxInvoices(r.numMaxInvoices);
+        b.setReversed(r.reversed);
+        return b.build();
+    }
+
+    public static Data.ListInvoiceResponse decode(lnrpc.Rpc.ListInvoiceResponse resp) {
+        assert resp != null;
+        Data.ListInvoiceResponse r = new Data.ListInvoiceResponse();
+        r.invoices = new ArrayList<>(resp.getInvoicesCount());
+        for (int i = 0; i < resp.getInvoicesCount(); i++)
+            r.invoices.add(decode(resp.getInvoices(i)));
+        r.lastIndexOffset = resp.getLastIndexOffset();
+        r.firstIndexOffset = resp.getFirstIndexOffset();
+        return r;
+    }
+
     public static lnrpc.Rpc.InvoiceSubscription encode(Data.InvoiceSubscription r) {
         lnrpc.Rpc.InvoiceSubscription.Builder b = lnrpc.Rpc.InvoiceSubscription.newBuilder();
         if (r.addIndex > 0)
@@ -868,11 +927,11 @@ public final class Codec {
     public static Data.ChannelCloseSummary decode(lnrpc.Rpc.ChannelCloseSummary resp) {
         assert resp != null;
         Data.ChannelCloseSummary r = new Data.ChannelCloseSummary();
-        r.channelPoint = resp.getChannelPoint();
+        r.channelPoint = InternPool.intern(resp.getChannelPointBytes());
         r.chanId = resp.getChanId();
         r.chainHash = resp.getChainHash();
         r.closingTxHash = resp.getClosingTxHash();
-        r.remotePubkey = resp.getRemotePubkey();
+        r.remotePubkey = InternPool.intern(resp.getRemotePubkeyBytes());
         r.capacity = resp.getCapacity();
         r.closeHeight = resp.getCloseHeight();
         r.settledBalance = resp.getSettledBalance();
@@ -915,8 +974,8 @@ public final class Codec {
         r.alias = resp.getAlias();
         r.color = resp.getColor();
         r.lastUpdate = resp.getLastUpdate();
-        r.pubKey = resp.getPubKey();
-        r.features = new ArrayList<>();
+        r.pubKey = InternPool.intern(resp.getPubKeyBytes());
+        r.features = new ArrayList<>(resp.getFeaturesCount());
         r.features.addAll(resp.getFeaturesMap().keySet());
         return r;
     }
@@ -939,11 +998,11 @@ public final class Codec {
         Data.ChannelEdge r = new Data.ChannelEdge();
         r.capacity = resp.getCapacity();
         r.channelId = resp.getChannelId();
-        r.chanPoint = resp.getChanPoint();
+        r.chanPoint = InternPool.intern(resp.getChanPointBytes());
         r.node1Policy = decode(resp.getNode1Policy());
         r.node2Policy = decode(resp.getNode2Policy());
-        r.node1Pubkey = resp.getNode1Pub();
-        r.node2Pubkey = resp.getNode2Pub();
+        r.node1Pubkey = InternPool.intern(resp.getNode1PubBytes());
+        r.node2Pubkey = InternPool.intern(resp.getNode2PubBytes());
         return r;
     }
 
@@ -954,7 +1013,7 @@ public final class Codec {
         r.totalCapacity = resp.getTotalCapacity();
         r.node = decode(resp.getNode());
 
-        r.channels = new ArrayList<>();
+        r.channels = new ArrayList<>(resp.getChannelsCount());
         for (lnrpc.Rpc.ChannelEdge ce : resp.getChannelsList()) {
             r.channels.add(decode(ce));
         }
@@ -972,7 +1031,7 @@ public final class Codec {
         }
         if (r.ignoredNodes != null) {
             for (byte[] in : r.ignoredNodes)
-                b.addIgnoredNodes(ByteString.copyFrom(in));
+                b.addIgnoredNodes(bytes(in));
         }
         if (r.sourcePubKey != null)
             b.setSourcePubKey(r.sourcePubKey);
@@ -981,12 +1040,12 @@ public final class Codec {
         b.setCltvLimit(r.cltvLimit);
         b.setOutgoingChanId(r.outgoingChanId);
         if (r.lastHopPubkey != null)
-            b.setLastHopPubkey(ByteString.copyFrom(r.lastHopPubkey));
+            b.setLastHopPubkey(bytes(r.lastHopPubkey));
 
         if (r.destCustomRecords != null) {
             for (Map.Entry<Long, byte[]> e : r.destCustomRecords.entrySet()) {
                 if (e.getValue() != null)
-                    b.putDestCustomRecords(e.getKey(), ByteString.copyFrom(e.getValue()));
+                    b.putDestCustomRecords(e.getKey(), bytes(e.getValue()));
                 else
                     b.putDestCustomRecords(e.getKey(), null); // FIXME god knows if it works
             }
@@ -1010,7 +1069,7 @@ public final class Codec {
         assert resp != null;
 
         Data.QueryRoutesResponse r = new Data.QueryRoutesResponse();
-        r.routes = new ArrayList<>();
+        r.routes = new ArrayList<>(resp.getRoutesCount());
         for(lnrpc.Rpc.Route route: resp.getRoutesList())
             r.routes.add(decode(route));
         r.successProb = resp.getSuccessProb();
@@ -1019,7 +1078,7 @@ public final class Codec {
 
     public static lnrpc.Rpc.SendToRouteRequest encode(Data.SendToRouteRequest r) {
         lnrpc.Rpc.SendToRouteRequest.Builder b = lnrpc.Rpc.SendToRouteRequest.newBuilder();
-        b.setPaymentHash(ByteString.copyFrom(r.paymentHash));
+        b.setPaymentHash(bytes(r.paymentHash));
         b.setRoute(encode(r.route));
         return b.build ();
     }
@@ -1037,7 +1096,7 @@ public final class Codec {
     public static lnrpc.Rpc.ChannelBackup encode(Data.ChannelBackup r) {
         lnrpc.Rpc.ChannelBackup.Builder b = lnrpc.Rpc.ChannelBackup.newBuilder();
         b.setChanPoint(encode(r.chanPoint));
-        b.setChanBackup(ByteString.copyFrom(r.chanBackup));
+        b.setChanBackup(bytes(r.chanBackup));
         return b.build ();
     }
     public static Data.ChannelBackup decode(lnrpc.Rpc.ChannelBackup resp) {
@@ -1060,7 +1119,7 @@ public final class Codec {
         assert resp != null;
 
         Data.ChannelBackups r = new Data.ChannelBackups();
-        r.chanBackups = new ArrayList<>();
+        r.chanBackups = new ArrayList<>(resp.getChanBackupsCount());
         for(lnrpc.Rpc.ChannelBackup cb: resp.getChanBackupsList())
             r.chanBackups.add(decode(cb));
         return r;
@@ -1068,7 +1127,7 @@ public final class Codec {
 
     public static lnrpc.Rpc.MultiChanBackup encode(Data.MultiChanBackup r) {
         lnrpc.Rpc.MultiChanBackup.Builder b = lnrpc.Rpc.MultiChanBackup.newBuilder();
-        b.setMultiChanBackup(ByteString.copyFrom(r.multiChanBackup));
+        b.setMultiChanBackup(bytes(r.multiChanBackup));
         if (r.chanPoints != null) {
             for(Data.ChannelPoint cp: r.chanPoints)
                 b.addChanPoints(encode(cp));
@@ -1079,7 +1138,7 @@ public final class Codec {
         assert resp != null;
 
         Data.MultiChanBackup r = new Data.MultiChanBackup();
-        r.chanPoints = new ArrayList<>();
+        r.chanPoints = new ArrayList<>(resp.getChanPointsCount());
         for (lnrpc.Rpc.ChannelPoint cp: resp.getChanPointsList())
             r.chanPoints.add(decode(cp));
         r.multiChanBackup = resp.getMultiChanBackup().toByteArray();
@@ -822,6 +822,38 @@ public final class Data
         public byte[] rHash;
     }
 
+    // ====================
+    // ListInvoices
+    public static final class ListInvoiceRequest {
+        /// If set, only unsettled invoices will be returned in the response.
+        public boolean pendingOnly;
+
+        /**
+         The index of an invoice that will be used as either the start or end of a
+         query to determine which invoices should be returned in the response.
+         */
+        public long indexOffset;
+
+        /// The max number of invoices to return in the response to this query.
+        public long numMaxInvoices;
+
+        /**
+         If set, the invoices returned will result from seeking backwards from the
+         specified index offset. This can be used to paginate backwards.
+         */
+        public boolean reversed;
+    }
+    public static final class ListInvoiceResponse {
+        /// A list of invoices from the time slice of the time series specified in the request.
+        public List<Invoice> invoices;
+
+        /// The index of the last item in the set of returned invoices.
+        public long lastIndexOffset;
+
+        /// The index of the first item in the set of returned invoices.
+        public long firstIndexOffset;
+    }
+
     // =======================
     // ListPayments
     public static final class ListPaymentsRequest {
@@ -869,6 +901,40 @@ public final class Data
         public List<Payment> payments;
     }
 
+    // listPayments in pages, delivered in chunks. lnd returns all
+    // payments at once, so paging is done on our side, but only
+    // payments of the page are decoded, chunkSize at a time.
+    public static final class ListPaymentsPageRequest {
+        /// See ListPaymentsRequest
+        public boolean includeIncomplete;
+
+        /// Number of payments to skip, oldest first, or newest first if reversed
+        public int offset;
+
+        /// Max number of payments in the page, 0 - all after offset
+        public int maxPayments;
+
+        /// Newest payments first
+        public boolean reversed;
+
+        /// Number of payments per chunk, 0 - default (100)
+        public int chunkSize;
+    }
+    public static final class ListPaymentsChunk {
+        /// Payments of this chunk, in the order of the page
+        public List<Payment> payments;
+
+        /// Position of the first payment of this chunk
+        /// (counting from the offset of the request)
+        public int index;
+
+        /// Total number of payments known to lnd
+        public int totalPayments;
+
+        /// This is the last chunk of the page
+        public boolean last;
+    }
+
     public static final class PayReqString {
         public String payReq;
     }
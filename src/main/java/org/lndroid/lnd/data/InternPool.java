@@ -0,0 +1,174 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.ByteString;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+
+// Canonical instances of strings that repeat across replies: node
+// pubkeys and channel points. Decoders look the value up by its
+// wire bytes, and on a hit return the pooled String instead of
+// allocating a new one, so polling listChannels etc doesn't churn
+// the young generation, and equal values from different replies
+// are usually the same instance.
+//
+// The pool is a 2-way set-associative table of weak references: a
+// colliding value replaces one of its two slots and unused values are collected, so it
+// never grows. Because of that identity is a fast path only, compare
+// with a == b || a.equals(b). Thread-safe, lock-free.
+public final class InternPool {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // power of 2, pairs of slots
+    private static final int SLOTS = 8192;
+    // pubkey is 66 hex chars, channel point is 64 hex chars + ":index"
+    static final int MAX_LENGTH = 80;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final WeakReference<String>[] slots_ = new WeakReference[SLOTS];
+
+    private InternPool() {
+    }
+
+    // first of the two slots the value may be in
+    private static int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & (SLOTS - 2);
+    }
+
+    private static String get(int index) {
+        WeakReference<String> ref = slots_[index];
+        return ref != null ? ref.get() : null;
+    }
+
+    // puts s into an empty slot of the pair, or replaces
+    // the one picked by the hash
+    private static String store(int index, int hash, String s) {
+        if (get(index) != null && (get(index + 1) == null || (hash & (1 << 20)) != 0))
+            index++;
+        slots_[index] = new WeakReference<>(s);
+        return s;
+    }
+
+    public static String intern(String s) {
+        if (s == null || s.isEmpty() || s.length() > MAX_LENGTH)
+            return s;
+
+        int hash = s.hashCode();
+        int index = slot(hash);
+        for (int i = index; i < index + 2; i++) {
+            String p = get(i);
+            if (s.equals(p))
+                return p;
+        }
+        return store(index, hash, s);
+    }
+
+    // ascii bytes of the value, others aren't pooled
+    static String intern(byte[] buf, int offset, int length) {
+        if (length == 0)
+            return "";
+        if (length > MAX_LENGTH)
+            return new String(buf, offset, length, UTF8);
+
+        // same as String.hashCode for ascii
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buf[offset + i];
+            if (b < 0)
+                return new String(buf, offset, length, UTF8);
+            hash = 31 * hash + b;
+        }
+
+        int index = slot(hash);
+        for (int i = index; i < index + 2; i++) {
+            String p = get(i);
+            if (p != null && p.length() == length && equals(p, buf, offset))
+                return p;
+        }
+        return store(index, hash, new String(buf, offset, length, UTF8));
+    }
+
+    private static boolean equals(String s, byte[] buf, int offset) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != buf[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean equals(String s, ByteString bytes) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != bytes.byteAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean equalsHex(String s, byte[] raw, int offset) {
+        for (int i = 0; i < s.length(); i += 2) {
+            byte b = raw[offset + i / 2];
+            if (s.charAt(i) != HEX[(b >> 4) & 0xF] || s.charAt(i + 1) != HEX[b & 0xF])
+                return false;
+        }
+        return true;
+    }
+
+    // lowercase hex of the raw bytes, encoded only on a miss
+    static String internHex(byte[] raw, int offset, int length) {
+        if (length == 0)
+            return "";
+        if (length * 2 > MAX_LENGTH)
+            return hex(raw, offset, length);
+
+        // String.hashCode of the hex
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = raw[offset + i];
+            hash = 31 * (31 * hash + HEX[(b >> 4) & 0xF]) + HEX[b & 0xF];
+        }
+
+        int index = slot(hash);
+        for (int i = index; i < index + 2; i++) {
+            String p = get(i);
+            if (p != null && p.length() == length * 2 && equalsHex(p, raw, offset))
+                return p;
+        }
+        return store(index, hash, hex(raw, offset, length));
+    }
+
+    private static String hex(byte[] raw, int offset, int length) {
+        char[] c = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            byte b = raw[offset + i];
+            c[i * 2] = HEX[(b >> 4) & 0xF];
+            c[i * 2 + 1] = HEX[b & 0xF];
+        }
+        return new String(c);
+    }
+
+    static String intern(ByteString bytes) {
+        int length = bytes.size();
+        if (length == 0)
+            return "";
+        if (length > MAX_LENGTH)
+            return bytes.toStringUtf8();
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.byteAt(i);
+            if (b < 0)
+                return bytes.toStringUtf8();
+            hash = 31 * hash + b;
+        }
+
+        int index = slot(hash);
+        for (int i = index; i < index + 2; i++) {
+            String p = get(i);
+            if (p != null && p.length() == length && equals(p, bytes))
+                return p;
+        }
+        return store(index, hash, bytes.toStringUtf8());
+    }
+}
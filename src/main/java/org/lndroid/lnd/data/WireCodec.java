@@ -0,0 +1,451 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import java.util.ArrayList;
+
+import lnrpc.Rpc;
+
+// Decodes lnd replies straight from the wire into Data objects,
+// without building the lnrpc.Rpc message tree first, used for
+// large replies. Results are the same as Codec.decode(parser.parseFrom(bytes)).
+public final class WireCodec {
+
+    public interface Parser<T> {
+        T parse(byte[] bytes) throws InvalidProtocolBufferException;
+    }
+
+    private static final ThreadLocal<WireReader> reader_ = new ThreadLocal<WireReader>() {
+        @Override
+        protected WireReader initialValue() {
+            return new WireReader();
+        }
+    };
+
+    private static WireReader reader(byte[] bytes) {
+        return reader_.get().reset(bytes);
+    }
+
+    private static void release(WireReader r) {
+        // don't keep the reply referenced by the thread
+        r.reset(null);
+    }
+
+    private static Data.HTLC decodeHTLC(WireReader in) throws InvalidProtocolBufferException {
+        Data.HTLC r = new Data.HTLC();
+        r.hashLock = new byte[0];
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.HTLC.INCOMING_FIELD_NUMBER: r.incoming = in.readBool(); break;
+                case Rpc.HTLC.AMOUNT_FIELD_NUMBER: r.amount = in.readVarint64(); break;
+                case Rpc.HTLC.HASH_LOCK_FIELD_NUMBER: r.hashLock = in.readBytes(); break;
+                case Rpc.HTLC.EXPIRATION_HEIGHT_FIELD_NUMBER: r.expirationHeight = in.readVarint32(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return r;
+    }
+
+    private static Data.Channel decodeChannel(WireReader in) throws InvalidProtocolBufferException {
+        Data.Channel r = new Data.Channel();
+        r.remotePubkey = "";
+        r.channelPoint = "";
+        r.chanStatusFlags = "";
+        r.pendingHtlcs = new ArrayList<>();
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.Channel.ACTIVE_FIELD_NUMBER: r.active = in.readBool(); break;
+                case Rpc.Channel.REMOTE_PUBKEY_FIELD_NUMBER: r.remotePubkey = in.readInternedString(); break;
+                case Rpc.Channel.CHANNEL_POINT_FIELD_NUMBER: r.channelPoint = in.readInternedString(); break;
+                case Rpc.Channel.CHAN_ID_FIELD_NUMBER: r.chanId = in.readVarint64(); break;
+                case Rpc.Channel.CAPACITY_FIELD_NUMBER: r.capacity = in.readVarint64(); break;
+                case Rpc.Channel.LOCAL_BALANCE_FIELD_NUMBER: r.localBalance = in.readVarint64(); break;
+                case Rpc.Channel.REMOTE_BALANCE_FIELD_NUMBER: r.remoteBalance = in.readVarint64(); break;
+                case Rpc.Channel.COMMIT_FEE_FIELD_NUMBER: r.commitFee = in.readVarint64(); break;
+                case Rpc.Channel.COMMIT_WEIGHT_FIELD_NUMBER: r.commitWeight = in.readVarint64(); break;
+                case Rpc.Channel.FEE_PER_KW_FIELD_NUMBER: r.feePerKw = in.readVarint64(); break;
+                case Rpc.Channel.UNSETTLED_BALANCE_FIELD_NUMBER: r.unsettledBalance = in.readVarint64(); break;
+                case Rpc.Channel.TOTAL_SATOSHIS_SENT_FIELD_NUMBER: r.totalSatoshisSent = in.readVarint64(); break;
+                case Rpc.Channel.TOTAL_SATOSHIS_RECEIVED_FIELD_NUMBER: r.totalSatoshisReceived = in.readVarint64(); break;
+                case Rpc.Channel.NUM_UPDATES_FIELD_NUMBER: r.numUpdates = in.readVarint64(); break;
+                case Rpc.Channel.PENDING_HTLCS_FIELD_NUMBER: {
+                    int limit = in.beginMessage();
+                    r.pendingHtlcs.add(decodeHTLC(in));
+                    in.endMessage(limit);
+                    break;
+                }
+                case Rpc.Channel.CSV_DELAY_FIELD_NUMBER: r.csvDelay = in.readVarint32(); break;
+                case Rpc.Channel.PRIVATE_FIELD_NUMBER: r.isPrivate = in.readBool(); break;
+                case Rpc.Channel.INITIATOR_FIELD_NUMBER: r.initiator = in.readBool(); break;
+                case Rpc.Channel.CHAN_STATUS_FLAGS_FIELD_NUMBER: r.chanStatusFlags = in.readString(); break;
+                case Rpc.Channel.LOCAL_CHAN_RESERVE_SAT_FIELD_NUMBER: r.localChanReserveSat = in.readVarint64(); break;
+                case Rpc.Channel.REMOTE_CHAN_RESERVE_SAT_FIELD_NUMBER: r.remoteChanReserveSat = in.readVarint64(); break;
+                case Rpc.Channel.STATIC_REMOTE_KEY_FIELD_NUMBER: r.staticRemoteKey = in.readBool(); break;
+                case Rpc.Channel.LIFETIME_FIELD_NUMBER: r.lifetime = in.readVarint64(); break;
+                case Rpc.Channel.UPTIME_FIELD_NUMBER: r.uptime = in.readVarint64(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return r;
+    }
+
+    public static Data.ListChannelsResponse decodeListChannelsResponse(byte[] bytes)
+            throws InvalidProtocolBufferException {
+        WireReader in = reader(bytes);
+        try {
+            Data.ListChannelsResponse r = new Data.ListChannelsResponse();
+            r.channels = new ArrayList<>();
+
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.ListChannelsResponse.CHANNELS_FIELD_NUMBER) {
+                    int limit = in.beginMessage();
+                    r.channels.add(decodeChannel(in));
+                    in.endMessage(limit);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return r;
+        } finally {
+            release(in);
+        }
+    }
+
+    private static int readText(WireReader in, ChannelSet r) throws InvalidProtocolBufferException {
+        return readText(in, r, in.readBytesLength());
+    }
+
+    private static int readText(WireReader in, ChannelSet r, int len) {
+        int offset = r.reserveText(len);
+        in.readRaw(r.text, offset, len);
+        return offset;
+    }
+
+    private static void decodeChannelSetHTLC(WireReader in, ChannelSet r) throws InvalidProtocolBufferException {
+        int h = r.addHtlc();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.HTLC.INCOMING_FIELD_NUMBER: r.htlcIncoming[h] = in.readBool(); break;
+                case Rpc.HTLC.AMOUNT_FIELD_NUMBER: r.htlcAmount[h] = in.readVarint64(); break;
+                case Rpc.HTLC.HASH_LOCK_FIELD_NUMBER: {
+                    r.htlcHashLockOffset[h] = readText(in, r);
+                    r.htlcHashLockLength[h] = r.textSize - r.htlcHashLockOffset[h];
+                    break;
+                }
+                case Rpc.HTLC.EXPIRATION_HEIGHT_FIELD_NUMBER: r.htlcExpirationHeight[h] = in.readVarint32(); break;
+                default: in.skipField(tag);
+            }
+        }
+    }
+
+    private static void decodeChannelSetChannel(WireReader in, ChannelSet r, int i)
+            throws InvalidProtocolBufferException {
+        // no pubkey is an empty raw one
+        int flags = ChannelSet.FLAG_RAW_PUBKEY;
+        r.htlcStart[i] = r.htlcCount;
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.Channel.ACTIVE_FIELD_NUMBER:
+                    flags = in.readBool() ? flags | ChannelSet.FLAG_ACTIVE : flags & ~ChannelSet.FLAG_ACTIVE;
+                    break;
+                case Rpc.Channel.REMOTE_PUBKEY_FIELD_NUMBER: {
+                    int len = in.readBytesLength();
+                    if (len == ChannelSet.PUBKEY_SIZE * 2
+                            && in.decodeHex(len, r.pubkeys, i * ChannelSet.PUBKEY_SIZE)) {
+                        flags &= ~ChannelSet.FLAG_RAW_PUBKEY;
+                        in.skipRaw(len);
+                    } else {
+                        // kept as is to be returned unchanged
+                        flags |= ChannelSet.FLAG_RAW_PUBKEY;
+                        r.setRawPubkey(i, readText(in, r, len), len);
+                    }
+                    break;
+                }
+                case Rpc.Channel.CHANNEL_POINT_FIELD_NUMBER: {
+                    r.channelPointOffset[i] = readText(in, r);
+                    r.channelPointLength[i] = r.textSize - r.channelPointOffset[i];
+                    break;
+                }
+                case Rpc.Channel.CHAN_ID_FIELD_NUMBER: r.chanId[i] = in.readVarint64(); break;
+                case Rpc.Channel.CAPACITY_FIELD_NUMBER: r.capacity[i] = in.readVarint64(); break;
+                case Rpc.Channel.LOCAL_BALANCE_FIELD_NUMBER: r.localBalance[i] = in.readVarint64(); break;
+                case Rpc.Channel.REMOTE_BALANCE_FIELD_NUMBER: r.remoteBalance[i] = in.readVarint64(); break;
+                case Rpc.Channel.COMMIT_FEE_FIELD_NUMBER: r.commitFee[i] = in.readVarint64(); break;
+                case Rpc.Channel.COMMIT_WEIGHT_FIELD_NUMBER: r.commitWeight[i] = in.readVarint64(); break;
+                case Rpc.Channel.FEE_PER_KW_FIELD_NUMBER: r.feePerKw[i] = in.readVarint64(); break;
+                case Rpc.Channel.UNSETTLED_BALANCE_FIELD_NUMBER: r.unsettledBalance[i] = in.readVarint64(); break;
+                case Rpc.Channel.TOTAL_SATOSHIS_SENT_FIELD_NUMBER: r.totalSatoshisSent[i] = in.readVarint64(); break;
+                case Rpc.Channel.TOTAL_SATOSHIS_RECEIVED_FIELD_NUMBER: r.totalSatoshisReceived[i] = in.readVarint64(); break;
+                case Rpc.Channel.NUM_UPDATES_FIELD_NUMBER: r.numUpdates[i] = in.readVarint64(); break;
+                case Rpc.Channel.PENDING_HTLCS_FIELD_NUMBER: {
+                    int limit = in.beginMessage();
+                    decodeChannelSetHTLC(in, r);
+                    in.endMessage(limit);
+                    break;
+                }
+                case Rpc.Channel.CSV_DELAY_FIELD_NUMBER: r.csvDelay[i] = in.readVarint32(); break;
+                case Rpc.Channel.PRIVATE_FIELD_NUMBER:
+                    flags = in.readBool() ? flags | ChannelSet.FLAG_PRIVATE : flags & ~ChannelSet.FLAG_PRIVATE;
+                    break;
+                case Rpc.Channel.INITIATOR_FIELD_NUMBER:
+                    flags = in.readBool() ? flags | ChannelSet.FLAG_INITIATOR : flags & ~ChannelSet.FLAG_INITIATOR;
+                    break;
+                case Rpc.Channel.CHAN_STATUS_FLAGS_FIELD_NUMBER: {
+                    r.statusFlagsOffset[i] = readText(in, r);
+                    r.statusFlagsLength[i] = r.textSize - r.statusFlagsOffset[i];
+                    break;
+                }
+                case Rpc.Channel.LOCAL_CHAN_RESERVE_SAT_FIELD_NUMBER: r.localChanReserveSat[i] = in.readVarint64(); break;
+                case Rpc.Channel.REMOTE_CHAN_RESERVE_SAT_FIELD_NUMBER: r.remoteChanReserveSat[i] = in.readVarint64(); break;
+                case Rpc.Channel.STATIC_REMOTE_KEY_FIELD_NUMBER:
+                    flags = in.readBool() ? flags | ChannelSet.FLAG_STATIC_REMOTE_KEY : flags & ~ChannelSet.FLAG_STATIC_REMOTE_KEY;
+                    break;
+                case Rpc.Channel.LIFETIME_FIELD_NUMBER: r.lifetime[i] = in.readVarint64(); break;
+                case Rpc.Channel.UPTIME_FIELD_NUMBER: r.uptime[i] = in.readVarint64(); break;
+                default: in.skipField(tag);
+            }
+        }
+        r.flags[i] = (byte)flags;
+        r.htlcStart[i + 1] = r.htlcCount;
+    }
+
+    // Columnar form of the ListChannelsResponse, channels are counted
+    // by skipping over them first so that columns are allocated once.
+    public static ChannelSet decodeChannelSet(byte[] bytes) throws InvalidProtocolBufferException {
+        WireReader in = reader(bytes);
+        try {
+            int size = 0;
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.ListChannelsResponse.CHANNELS_FIELD_NUMBER) {
+                    in.skipMessage();
+                    size++;
+                } else {
+                    in.skipField(tag);
+                }
+            }
+
+            ChannelSet r = new ChannelSet(size);
+            in.reset(bytes);
+            int i = 0;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.ListChannelsResponse.CHANNELS_FIELD_NUMBER) {
+                    int limit = in.beginMessage();
+                    decodeChannelSetChannel(in, r, i++);
+                    in.endMessage(limit);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return r;
+        } finally {
+            release(in);
+        }
+    }
+
+    private static Data.Payment decodePayment(WireReader in) throws InvalidProtocolBufferException {
+        Data.Payment r = new Data.Payment();
+        r.paymentHash = "";
+        r.paymentPreimage = "";
+        r.paymentRequest = "";
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.Payment.PAYMENT_HASH_FIELD_NUMBER: r.paymentHash = in.readString(); break;
+                case Rpc.Payment.CREATION_TIME_NS_FIELD_NUMBER: r.creationTime = in.readVarint64() / 1000; break;
+                case Rpc.Payment.PAYMENT_PREIMAGE_FIELD_NUMBER: r.paymentPreimage = in.readString(); break;
+                case Rpc.Payment.VALUE_SAT_FIELD_NUMBER: r.valueSat = in.readVarint64(); break;
+                case Rpc.Payment.VALUE_MSAT_FIELD_NUMBER: r.valueMsat = in.readVarint64(); break;
+                case Rpc.Payment.PAYMENT_REQUEST_FIELD_NUMBER: r.paymentRequest = in.readString(); break;
+                case Rpc.Payment.STATUS_FIELD_NUMBER: r.status = in.readVarint32(); break;
+                case Rpc.Payment.FEE_SAT_FIELD_NUMBER: r.feeSat = in.readVarint64(); break;
+                case Rpc.Payment.FEE_MSAT_FIELD_NUMBER: r.feeMsat = in.readVarint64(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return r;
+    }
+
+    public static Data.ListPaymentsResponse decodeListPaymentsResponse(byte[] bytes)
+            throws InvalidProtocolBufferException {
+        WireReader in = reader(bytes);
+        try {
+            Data.ListPaymentsResponse r = new Data.ListPaymentsResponse();
+            r.payments = new ArrayList<>();
+
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.ListPaymentsResponse.PAYMENTS_FIELD_NUMBER) {
+                    int limit = in.beginMessage();
+                    r.payments.add(decodePayment(in));
+                    in.endMessage(limit);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return r;
+        } finally {
+            release(in);
+        }
+    }
+
+    // Positions of payments in a serialized ListPaymentsResponse,
+    // payments are decoded on demand with decodePayment
+    public static final class PaymentsIndex {
+        private byte[] bytes_;
+        private int[] offsets_;
+        private int[] lengths_;
+        private int size_;
+
+        public int size() {
+            return size_;
+        }
+
+        private void add(int offset, int length) {
+            if (size_ == offsets_.length) {
+                int capacity = size_ * 2;
+                int[] offsets = new int[capacity];
+                int[] lengths = new int[capacity];
+                System.arraycopy(offsets_, 0, offsets, 0, size_);
+                System.arraycopy(lengths_, 0, lengths, 0, size_);
+                offsets_ = offsets;
+                lengths_ = lengths;
+            }
+            offsets_[size_] = offset;
+            lengths_[size_] = length;
+            size_++;
+        }
+    }
+
+    public static PaymentsIndex indexListPaymentsResponse(byte[] bytes)
+            throws InvalidProtocolBufferException {
+        WireReader in = reader(bytes);
+        try {
+            PaymentsIndex r = new PaymentsIndex();
+            r.bytes_ = bytes;
+            r.offsets_ = new int[16];
+            r.lengths_ = new int[16];
+
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.ListPaymentsResponse.PAYMENTS_FIELD_NUMBER) {
+                    int len = in.skipMessage();
+                    r.add(in.position() - len, len);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return r;
+        } finally {
+            release(in);
+        }
+    }
+
+    public static Data.Payment decodePayment(PaymentsIndex index, int i)
+            throws InvalidProtocolBufferException {
+        WireReader in = reader_.get().reset(index.bytes_, index.offsets_[i], index.lengths_[i]);
+        try {
+            return decodePayment(in);
+        } finally {
+            release(in);
+        }
+    }
+
+    private static Data.Transaction decodeTransaction(WireReader in) throws InvalidProtocolBufferException {
+        Data.Transaction r = new Data.Transaction();
+        r.txHash = "";
+        r.blockHash = "";
+        r.rawTxHex = "";
+        r.destAddresses = new ArrayList<>();
+
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case Rpc.Transaction.TX_HASH_FIELD_NUMBER: r.txHash = in.readString(); break;
+                case Rpc.Transaction.AMOUNT_FIELD_NUMBER: r.amount = in.readVarint64(); break;
+                case Rpc.Transaction.NUM_CONFIRMATIONS_FIELD_NUMBER: r.numConfirmations = in.readVarint32(); break;
+                case Rpc.Transaction.BLOCK_HASH_FIELD_NUMBER: r.blockHash = in.readString(); break;
+                case Rpc.Transaction.BLOCK_HEIGHT_FIELD_NUMBER: r.blockHeight = in.readVarint32(); break;
+                case Rpc.Transaction.TIME_STAMP_FIELD_NUMBER: r.timeStamp = in.readVarint64(); break;
+                case Rpc.Transaction.TOTAL_FEES_FIELD_NUMBER: r.totalFees = in.readVarint64(); break;
+                case Rpc.Transaction.DEST_ADDRESSES_FIELD_NUMBER: r.destAddresses.add(in.readString()); break;
+                case Rpc.Transaction.RAW_TX_HEX_FIELD_NUMBER: r.rawTxHex = in.readString(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return r;
+    }
+
+    public static Data.TransactionDetails decodeTransactionDetails(byte[] bytes)
+            throws InvalidProtocolBufferException {
+        WireReader in = reader(bytes);
+        try {
+            Data.TransactionDetails r = new Data.TransactionDetails();
+            r.transactions = new ArrayList<>();
+
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == Rpc.TransactionDetails.TRANSACTIONS_FIELD_NUMBER) {
+                    int limit = in.beginMessage();
+                    r.transactions.add(decodeTransaction(in));
+                    in.endMessage(limit);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return r;
+        } finally {
+            release(in);
+        }
+    }
+
+    public static final Parser<Data.ListChannelsResponse> LIST_CHANNELS_RESPONSE =
+            new Parser<Data.ListChannelsResponse>() {
+                @Override
+                public Data.ListChannelsResponse parse(byte[] bytes) throws InvalidProtocolBufferException {
+                    return decodeListChannelsResponse(bytes);
+                }
+            };
+
+    public static final Parser<ChannelSet> CHANNEL_SET =
+            new Parser<ChannelSet>() {
+                @Override
+                public ChannelSet parse(byte[] bytes) throws InvalidProtocolBufferException {
+                    return decodeChannelSet(bytes);
+                }
+            };
+
+    public static final Parser<Data.ListPaymentsResponse> LIST_PAYMENTS_RESPONSE =
+            new Parser<Data.ListPaymentsResponse>() {
+                @Override
+                public Data.ListPaymentsResponse parse(byte[] bytes) throws InvalidProtocolBufferException {
+                    return decodeListPaymentsResponse(bytes);
+                }
+            };
+
+    public static final Parser<PaymentsIndex> LIST_PAYMENTS_INDEX =
+            new Parser<PaymentsIndex>() {
+                @Override
+                public PaymentsIndex parse(byte[] bytes) throws InvalidProtocolBufferException {
+                    return indexListPaymentsResponse(bytes);
+                }
+            };
+
+    public static final Parser<Data.TransactionDetails> TRANSACTION_DETAILS =
+            new Parser<Data.TransactionDetails>() {
+                @Override
+                public Data.TransactionDetails parse(byte[] bytes) throws InvalidProtocolBufferException {
+                    return decodeTransactionDetails(bytes);
+                }
+            };
+}
@@ -0,0 +1,443 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.WireFormat;
+
+import java.util.List;
+import java.util.Map;
+
+import lnrpc.Rpc;
+
+// Encodes Data requests straight into protobuf wire format, without
+// building lnrpc messages first. Output is the same as
+// Codec.encode(r).toByteArray().
+public final class WireEncoder {
+
+    // one instance per stream, not thread-safe
+    public interface Encoder<T> {
+        byte[] encode(T r);
+    }
+
+    private static final ThreadLocal<WireWriter> writer_ = new ThreadLocal<WireWriter>() {
+        @Override
+        protected WireWriter initialValue() {
+            return new WireWriter();
+        }
+    };
+
+    private WireEncoder() {
+    }
+
+    // Unary requests of hot calls, encoded with the calling thread's
+    // writer, so the returned byte[] is the only allocation.
+
+    public static byte[] encode(Data.PayReqString r) {
+        WireWriter out = writer_.get();
+        out.beginSizes();
+        out.begin(WireWriter.stringSize(Rpc.PayReqString.PAY_REQ_FIELD_NUMBER, r.payReq));
+        out.writeString(Rpc.PayReqString.PAY_REQ_FIELD_NUMBER, r.payReq);
+        return out.end();
+    }
+
+    public static byte[] encode(Data.PaymentHash r) {
+        WireWriter out = writer_.get();
+        out.beginSizes();
+        out.begin(WireWriter.bytesSize(Rpc.PaymentHash.R_HASH_FIELD_NUMBER, r.rHash));
+        out.writeBytes(Rpc.PaymentHash.R_HASH_FIELD_NUMBER, r.rHash);
+        return out.end();
+    }
+
+    public static byte[] encode(Data.EstimateFeeRequest r) {
+        WireWriter out = writer_.get();
+        out.beginSizes();
+        out.begin(size(r));
+        write(out, r);
+        return out.end();
+    }
+
+    public static byte[] encode(Data.QueryRoutesRequest r) {
+        WireWriter out = writer_.get();
+        out.beginSizes();
+        out.begin(size(out, r));
+        write(out, r);
+        return out.end();
+    }
+
+    // each call returns a new encoder
+    public static Encoder<Data.SendRequest> sendRequest() {
+        return new Encoder<Data.SendRequest>() {
+            private WireWriter out_ = new WireWriter();
+
+            @Override
+            public byte[] encode(Data.SendRequest r) {
+                out_.beginSizes();
+                out_.begin(size(out_, r));
+                write(out_, r);
+                return out_.end();
+            }
+        };
+    }
+
+    public static Encoder<Data.SendToRouteRequest> sendToRouteRequest() {
+        return new Encoder<Data.SendToRouteRequest>() {
+            private WireWriter out_ = new WireWriter();
+
+            @Override
+            public byte[] encode(Data.SendToRouteRequest r) {
+                out_.beginSizes();
+                out_.begin(size(out_, r));
+                write(out_, r);
+                return out_.end();
+            }
+        };
+    }
+
+    // Sizes of embedded messages are recorded in pre-order: size()
+    // reserves the slot of a message before sizing its fields, and
+    // write() takes them in the same order with beginMessage.
+
+    // ==== FeeLimit
+
+    // like Codec: 'limit' is a oneof and percent is set last
+    private static int size(WireWriter out, Data.FeeLimit r) {
+        int size = WireWriter.tagSize(Rpc.FeeLimit.PERCENT_FIELD_NUMBER) + WireWriter.varintSize(r.percent);
+        out.setSize(out.reserveSize(), size);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.FeeLimit r) {
+        out.writeTag(Rpc.FeeLimit.PERCENT_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT);
+        out.writeRawVarint(r.percent);
+    }
+
+    // ==== map<uint64, bytes>
+
+    private static int entrySize(long key, byte[] value) {
+        int len = value != null ? value.length : 0;
+        // map entries always have both key and value
+        return WireWriter.tagSize(1) + WireWriter.varintSize(key)
+                + WireWriter.tagSize(2) + WireWriter.varintSize(len) + len;
+    }
+
+    private static int recordsSize(int field, Map<Long, byte[]> records) {
+        int size = 0;
+        for (Map.Entry<Long, byte[]> e : records.entrySet())
+            size += WireWriter.messageSize(field, entrySize(e.getKey(), e.getValue()));
+        return size;
+    }
+
+    private static void writeRecords(WireWriter out, int field, Map<Long, byte[]> records) {
+        for (Map.Entry<Long, byte[]> e : records.entrySet()) {
+            long key = e.getKey();
+            byte[] value = e.getValue();
+            out.beginBlock(field, entrySize(key, value));
+            out.writeTag(1, WireFormat.WIRETYPE_VARINT);
+            out.writeRawVarint(key);
+            out.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            if (value != null) {
+                out.writeRawVarint(value.length);
+                out.writeRaw(value);
+            } else {
+                out.writeRawVarint(0);
+            }
+        }
+    }
+
+    // ==== SendRequest
+
+    private static int featuresSize(List<Integer> features) {
+        int size = 0;
+        for (Integer f : features)
+            size += WireWriter.varintSize(f);
+        return size;
+    }
+
+    private static int size(WireWriter out, Data.SendRequest r) {
+        int size = 0;
+        size += WireWriter.bytesSize(Rpc.SendRequest.DEST_FIELD_NUMBER, r.dest);
+        size += WireWriter.bytesSize(Rpc.SendRequest.PAYMENT_HASH_FIELD_NUMBER, r.paymentHash);
+        size += WireWriter.stringSize(Rpc.SendRequest.PAYMENT_REQUEST_FIELD_NUMBER, r.paymentRequest);
+        size += WireWriter.int32Size(Rpc.SendRequest.FINAL_CLTV_DELTA_FIELD_NUMBER, r.finalCltvDelta);
+        if (r.feeLimit != null)
+            size += WireWriter.messageSize(Rpc.SendRequest.FEE_LIMIT_FIELD_NUMBER, size(out, r.feeLimit));
+        size += WireWriter.uint64Size(Rpc.SendRequest.OUTGOING_CHAN_ID_FIELD_NUMBER, r.outgoingChanId);
+        size += WireWriter.uint32Size(Rpc.SendRequest.CLTV_LIMIT_FIELD_NUMBER, r.cltvLimit);
+        if (r.destTlv != null)
+            size += recordsSize(Rpc.SendRequest.DEST_CUSTOM_RECORDS_FIELD_NUMBER, r.destTlv);
+        size += WireWriter.uint64Size(Rpc.SendRequest.AMT_MSAT_FIELD_NUMBER, r.amtMsat);
+        if (r.features != null && !r.features.isEmpty()) {
+            int packed = featuresSize(r.features);
+            size += WireWriter.messageSize(Rpc.SendRequest.DEST_FEATURES_FIELD_NUMBER, packed);
+        }
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.SendRequest r) {
+        out.writeBytes(Rpc.SendRequest.DEST_FIELD_NUMBER, r.dest);
+        out.writeBytes(Rpc.SendRequest.PAYMENT_HASH_FIELD_NUMBER, r.paymentHash);
+        out.writeString(Rpc.SendRequest.PAYMENT_REQUEST_FIELD_NUMBER, r.paymentRequest);
+        out.writeInt32(Rpc.SendRequest.FINAL_CLTV_DELTA_FIELD_NUMBER, r.finalCltvDelta);
+        if (r.feeLimit != null) {
+            out.beginMessage(Rpc.SendRequest.FEE_LIMIT_FIELD_NUMBER);
+            write(out, r.feeLimit);
+        }
+        out.writeUInt64(Rpc.SendRequest.OUTGOING_CHAN_ID_FIELD_NUMBER, r.outgoingChanId);
+        out.writeUInt32(Rpc.SendRequest.CLTV_LIMIT_FIELD_NUMBER, r.cltvLimit);
+        if (r.destTlv != null)
+            writeRecords(out, Rpc.SendRequest.DEST_CUSTOM_RECORDS_FIELD_NUMBER, r.destTlv);
+        out.writeUInt64(Rpc.SendRequest.AMT_MSAT_FIELD_NUMBER, r.amtMsat);
+        if (r.features != null && !r.features.isEmpty()) {
+            // repeated enums are packed in proto3
+            out.beginBlock(Rpc.SendRequest.DEST_FEATURES_FIELD_NUMBER, featuresSize(r.features));
+            for (Integer f : r.features)
+                out.writeRawVarint(f);
+        }
+    }
+
+    // ==== Route
+
+    private static int size(WireWriter out, Data.MPPRecord r) {
+        int size = 0;
+        size += WireWriter.uint64Size(Rpc.MPPRecord.TOTAL_AMT_MSAT_FIELD_NUMBER, r.totalAmtMsat);
+        size += WireWriter.bytesSize(Rpc.MPPRecord.PAYMENT_ADDR_FIELD_NUMBER, r.paymentAddr);
+        out.setSize(out.reserveSize(), size);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.MPPRecord r) {
+        out.writeUInt64(Rpc.MPPRecord.TOTAL_AMT_MSAT_FIELD_NUMBER, r.totalAmtMsat);
+        out.writeBytes(Rpc.MPPRecord.PAYMENT_ADDR_FIELD_NUMBER, r.paymentAddr);
+    }
+
+    private static int size(WireWriter out, Data.Hop r) {
+        int index = out.reserveSize();
+        int size = 0;
+        size += WireWriter.uint64Size(Rpc.Hop.CHAN_ID_FIELD_NUMBER, r.chanId);
+        size += WireWriter.uint64Size(Rpc.Hop.CHAN_CAPACITY_FIELD_NUMBER, r.chanCapacity);
+        size += WireWriter.uint64Size(Rpc.Hop.AMT_TO_FORWARD_FIELD_NUMBER, r.amtToForwardMsat / 1000);
+        size += WireWriter.uint64Size(Rpc.Hop.FEE_FIELD_NUMBER, r.feeMsat / 1000);
+        size += WireWriter.uint32Size(Rpc.Hop.EXPIRY_FIELD_NUMBER, r.expiry);
+        size += WireWriter.uint64Size(Rpc.Hop.AMT_TO_FORWARD_MSAT_FIELD_NUMBER, r.amtToForwardMsat);
+        size += WireWriter.uint64Size(Rpc.Hop.FEE_MSAT_FIELD_NUMBER, r.feeMsat);
+        size += WireWriter.stringSize(Rpc.Hop.PUB_KEY_FIELD_NUMBER, r.pubKey);
+        size += WireWriter.boolSize(Rpc.Hop.TLV_PAYLOAD_FIELD_NUMBER, tlvPayload(r));
+        if (r.mppRecord != null)
+            size += WireWriter.messageSize(Rpc.Hop.MPP_RECORD_FIELD_NUMBER, size(out, r.mppRecord));
+        if (r.tlv != null)
+            size += recordsSize(Rpc.Hop.CUSTOM_RECORDS_FIELD_NUMBER, r.tlv);
+        out.setSize(index, size);
+        return size;
+    }
+
+    private static boolean tlvPayload(Data.Hop r) {
+        return r.tlvPayload || r.mppRecord != null || r.tlv != null;
+    }
+
+    private static void write(WireWriter out, Data.Hop r) {
+        out.writeUInt64(Rpc.Hop.CHAN_ID_FIELD_NUMBER, r.chanId);
+        out.writeUInt64(Rpc.Hop.CHAN_CAPACITY_FIELD_NUMBER, r.chanCapacity);
+        out.writeUInt64(Rpc.Hop.AMT_TO_FORWARD_FIELD_NUMBER, r.amtToForwardMsat / 1000);
+        out.writeUInt64(Rpc.Hop.FEE_FIELD_NUMBER, r.feeMsat / 1000);
+        out.writeUInt32(Rpc.Hop.EXPIRY_FIELD_NUMBER, r.expiry);
+        out.writeUInt64(Rpc.Hop.AMT_TO_FORWARD_MSAT_FIELD_NUMBER, r.amtToForwardMsat);
+        out.writeUInt64(Rpc.Hop.FEE_MSAT_FIELD_NUMBER, r.feeMsat);
+        out.writeString(Rpc.Hop.PUB_KEY_FIELD_NUMBER, r.pubKey);
+        out.writeBool(Rpc.Hop.TLV_PAYLOAD_FIELD_NUMBER, tlvPayload(r));
+        if (r.mppRecord != null) {
+            out.beginMessage(Rpc.Hop.MPP_RECORD_FIELD_NUMBER);
+            write(out, r.mppRecord);
+        }
+        if (r.tlv != null)
+            writeRecords(out, Rpc.Hop.CUSTOM_RECORDS_FIELD_NUMBER, r.tlv);
+    }
+
+    private static int size(WireWriter out, Data.Route r) {
+        int index = out.reserveSize();
+        int size = 0;
+        size += WireWriter.uint32Size(Rpc.Route.TOTAL_TIME_LOCK_FIELD_NUMBER, r.totalTimeLock);
+        size += WireWriter.uint64Size(Rpc.Route.TOTAL_FEES_FIELD_NUMBER, r.totalFeesMsat / 1000);
+        size += WireWriter.uint64Size(Rpc.Route.TOTAL_AMT_FIELD_NUMBER, r.totalAmtMsat / 1000);
+        if (r.hops != null) {
+            for (Data.Hop h : r.hops)
+                size += WireWriter.messageSize(Rpc.Route.HOPS_FIELD_NUMBER, size(out, h));
+        }
+        size += WireWriter.uint64Size(Rpc.Route.TOTAL_FEES_MSAT_FIELD_NUMBER, r.totalFeesMsat);
+        size += WireWriter.uint64Size(Rpc.Route.TOTAL_AMT_MSAT_FIELD_NUMBER, r.totalAmtMsat);
+        out.setSize(index, size);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.Route r) {
+        out.writeUInt32(Rpc.Route.TOTAL_TIME_LOCK_FIELD_NUMBER, r.totalTimeLock);
+        out.writeUInt64(Rpc.Route.TOTAL_FEES_FIELD_NUMBER, r.totalFeesMsat / 1000);
+        out.writeUInt64(Rpc.Route.TOTAL_AMT_FIELD_NUMBER, r.totalAmtMsat / 1000);
+        if (r.hops != null) {
+            for (Data.Hop h : r.hops) {
+                out.beginMessage(Rpc.Route.HOPS_FIELD_NUMBER);
+                write(out, h);
+            }
+        }
+        out.writeUInt64(Rpc.Route.TOTAL_FEES_MSAT_FIELD_NUMBER, r.totalFeesMsat);
+        out.writeUInt64(Rpc.Route.TOTAL_AMT_MSAT_FIELD_NUMBER, r.totalAmtMsat);
+    }
+
+    // ==== SendToRouteRequest
+
+    private static int size(WireWriter out, Data.SendToRouteRequest r) {
+        int size = WireWriter.bytesSize(Rpc.SendToRouteRequest.PAYMENT_HASH_FIELD_NUMBER, r.paymentHash);
+        if (r.route != null)
+            size += WireWriter.messageSize(Rpc.SendToRouteRequest.ROUTE_FIELD_NUMBER, size(out, r.route));
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.SendToRouteRequest r) {
+        out.writeBytes(Rpc.SendToRouteRequest.PAYMENT_HASH_FIELD_NUMBER, r.paymentHash);
+        if (r.route != null) {
+            out.beginMessage(Rpc.SendToRouteRequest.ROUTE_FIELD_NUMBER);
+            write(out, r.route);
+        }
+    }
+
+    // ==== EstimateFeeRequest
+
+    private static int entrySize(String key, long value) {
+        int len = key != null ? WireWriter.utf8Length(key) : 0;
+        return WireWriter.tagSize(1) + WireWriter.varintSize(len) + len
+                + WireWriter.tagSize(2) + WireWriter.varintSize(value);
+    }
+
+    private static int size(Data.EstimateFeeRequest r) {
+        int size = 0;
+        if (r.addrToAmount != null) {
+            for (Map.Entry<String, Long> e : r.addrToAmount.entrySet()) {
+                int entry = entrySize(e.getKey(), e.getValue());
+                size += WireWriter.messageSize(Rpc.EstimateFeeRequest.ADDRTOAMOUNT_FIELD_NUMBER, entry);
+            }
+        }
+        size += WireWriter.int32Size(Rpc.EstimateFeeRequest.TARGET_CONF_FIELD_NUMBER, r.targetConf);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.EstimateFeeRequest r) {
+        if (r.addrToAmount != null) {
+            for (Map.Entry<String, Long> e : r.addrToAmount.entrySet()) {
+                String key = e.getKey() != null ? e.getKey() : "";
+                long value = e.getValue();
+                out.beginBlock(Rpc.EstimateFeeRequest.ADDRTOAMOUNT_FIELD_NUMBER, entrySize(key, value));
+                out.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeRawVarint(WireWriter.utf8Length(key));
+                out.writeRawUtf8(key);
+                out.writeTag(2, WireFormat.WIRETYPE_VARINT);
+                out.writeRawVarint(value);
+            }
+        }
+        out.writeInt32(Rpc.EstimateFeeRequest.TARGET_CONF_FIELD_NUMBER, r.targetConf);
+    }
+
+    // ==== QueryRoutesRequest
+
+    private static int size(WireWriter out, Data.HopHint r) {
+        int size = 0;
+        size += WireWriter.stringSize(Rpc.HopHint.NODE_ID_FIELD_NUMBER, r.nodeId);
+        size += WireWriter.uint64Size(Rpc.HopHint.CHAN_ID_FIELD_NUMBER, r.chanId);
+        size += WireWriter.uint32Size(Rpc.HopHint.FEE_BASE_MSAT_FIELD_NUMBER, r.feeBaseMsat);
+        size += WireWriter.uint32Size(Rpc.HopHint.FEE_PROPORTIONAL_MILLIONTHS_FIELD_NUMBER, r.feeProportionalMillionths);
+        size += WireWriter.uint32Size(Rpc.HopHint.CLTV_EXPIRY_DELTA_FIELD_NUMBER, r.cltvExpiryDelta);
+        out.setSize(out.reserveSize(), size);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.HopHint r) {
+        out.writeString(Rpc.HopHint.NODE_ID_FIELD_NUMBER, r.nodeId);
+        out.writeUInt64(Rpc.HopHint.CHAN_ID_FIELD_NUMBER, r.chanId);
+        out.writeUInt32(Rpc.HopHint.FEE_BASE_MSAT_FIELD_NUMBER, r.feeBaseMsat);
+        out.writeUInt32(Rpc.HopHint.FEE_PROPORTIONAL_MILLIONTHS_FIELD_NUMBER, r.feeProportionalMillionths);
+        out.writeUInt32(Rpc.HopHint.CLTV_EXPIRY_DELTA_FIELD_NUMBER, r.cltvExpiryDelta);
+    }
+
+    private static int size(WireWriter out, Data.RouteHint r) {
+        int index = out.reserveSize();
+        int size = 0;
+        if (r.hopHints != null) {
+            for (Data.HopHint hh : r.hopHints)
+                size += WireWriter.messageSize(Rpc.RouteHint.HOP_HINTS_FIELD_NUMBER, size(out, hh));
+        }
+        out.setSize(index, size);
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.RouteHint r) {
+        if (r.hopHints != null) {
+            for (Data.HopHint hh : r.hopHints) {
+                out.beginMessage(Rpc.RouteHint.HOP_HINTS_FIELD_NUMBER);
+                write(out, hh);
+            }
+        }
+    }
+
+    // amt (2) is left unset like Codec does, amt_msat is 12
+    private static int size(WireWriter out, Data.QueryRoutesRequest r) {
+        int size = 0;
+        size += WireWriter.stringSize(Rpc.QueryRoutesRequest.PUB_KEY_FIELD_NUMBER, r.pubKey);
+        size += WireWriter.int32Size(Rpc.QueryRoutesRequest.FINAL_CLTV_DELTA_FIELD_NUMBER, r.finalCltvDelta);
+        if (r.feeLimit != null)
+            size += WireWriter.messageSize(Rpc.QueryRoutesRequest.FEE_LIMIT_FIELD_NUMBER, size(out, r.feeLimit));
+        if (r.ignoredNodes != null) {
+            // repeated elements are written even if empty
+            for (byte[] node : r.ignoredNodes)
+                size += WireWriter.messageSize(Rpc.QueryRoutesRequest.IGNORED_NODES_FIELD_NUMBER,
+                        node != null ? node.length : 0);
+        }
+        size += WireWriter.stringSize(Rpc.QueryRoutesRequest.SOURCE_PUB_KEY_FIELD_NUMBER, r.sourcePubKey);
+        size += WireWriter.boolSize(Rpc.QueryRoutesRequest.USE_MISSION_CONTROL_FIELD_NUMBER, r.useMissionControl);
+        size += WireWriter.uint32Size(Rpc.QueryRoutesRequest.CLTV_LIMIT_FIELD_NUMBER, r.cltvLimit);
+        size += WireWriter.uint64Size(Rpc.QueryRoutesRequest.AMT_MSAT_FIELD_NUMBER, r.amtMsat);
+        if (r.destCustomRecords != null)
+            size += recordsSize(Rpc.QueryRoutesRequest.DEST_CUSTOM_RECORDS_FIELD_NUMBER, r.destCustomRecords);
+        size += WireWriter.uint64Size(Rpc.QueryRoutesRequest.OUTGOING_CHAN_ID_FIELD_NUMBER, r.outgoingChanId);
+        size += WireWriter.bytesSize(Rpc.QueryRoutesRequest.LAST_HOP_PUBKEY_FIELD_NUMBER, r.lastHopPubkey);
+        if (r.routeHints != null) {
+            for (Data.RouteHint rh : r.routeHints)
+                size += WireWriter.messageSize(Rpc.QueryRoutesRequest.ROUTE_HINTS_FIELD_NUMBER, size(out, rh));
+        }
+        if (r.destFeatures != null && !r.destFeatures.isEmpty()) {
+            int packed = featuresSize(r.destFeatures);
+            size += WireWriter.messageSize(Rpc.QueryRoutesRequest.DEST_FEATURES_FIELD_NUMBER, packed);
+        }
+        return size;
+    }
+
+    private static void write(WireWriter out, Data.QueryRoutesRequest r) {
+        out.writeString(Rpc.QueryRoutesRequest.PUB_KEY_FIELD_NUMBER, r.pubKey);
+        out.writeInt32(Rpc.QueryRoutesRequest.FINAL_CLTV_DELTA_FIELD_NUMBER, r.finalCltvDelta);
+        if (r.feeLimit != null) {
+            out.beginMessage(Rpc.QueryRoutesRequest.FEE_LIMIT_FIELD_NUMBER);
+            write(out, r.feeLimit);
+        }
+        if (r.ignoredNodes != null) {
+            for (byte[] node : r.ignoredNodes) {
+                out.beginBlock(Rpc.QueryRoutesRequest.IGNORED_NODES_FIELD_NUMBER, node != null ? node.length : 0);
+                if (node != null)
+                    out.writeRaw(node);
+            }
+        }
+        out.writeString(Rpc.QueryRoutesRequest.SOURCE_PUB_KEY_FIELD_NUMBER, r.sourcePubKey);
+        out.writeBool(Rpc.QueryRoutesRequest.USE_MISSION_CONTROL_FIELD_NUMBER, r.useMissionControl);
+        out.writeUInt32(Rpc.QueryRoutesRequest.CLTV_LIMIT_FIELD_NUMBER, r.cltvLimit);
+        out.writeUInt64(Rpc.QueryRoutesRequest.AMT_MSAT_FIELD_NUMBER, r.amtMsat);
+        if (r.destCustomRecords != null)
+            writeRecords(out, Rpc.QueryRoutesRequest.DEST_CUSTOM_RECORDS_FIELD_NUMBER, r.destCustomRecords);
+        out.writeUInt64(Rpc.QueryRoutesRequest.OUTGOING_CHAN_ID_FIELD_NUMBER, r.outgoingChanId);
+        out.writeBytes(Rpc.QueryRoutesRequest.LAST_HOP_PUBKEY_FIELD_NUMBER, r.lastHopPubkey);
+        if (r.routeHints != null) {
+            for (Data.RouteHint rh : r.routeHints) {
+                out.beginMessage(Rpc.QueryRoutesRequest.ROUTE_HINTS_FIELD_NUMBER);
+                write(out, rh);
+            }
+        }
+        if (r.destFeatures != null && !r.destFeatures.isEmpty()) {
+            out.beginBlock(Rpc.QueryRoutesRequest.DEST_FEATURES_FIELD_NUMBER, featuresSize(r.destFeatures));
+            for (Integer f : r.destFeatures)
+                out.writeRawVarint(f);
+        }
+    }
+}
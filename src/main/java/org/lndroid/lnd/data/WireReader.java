@@ -0,0 +1,205 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import java.nio.charset.Charset;
+
+// Minimal protobuf wire format reader over a byte[], unlike
+// CodedInputStream it can be reset to a new buffer and reused.
+// Not thread-safe.
+final class WireReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] buf_;
+    private int pos_;
+    private int limit_;
+
+    WireReader reset(byte[] buf) {
+        buf_ = buf;
+        pos_ = 0;
+        limit_ = buf != null ? buf.length : 0;
+        return this;
+    }
+
+    WireReader reset(byte[] buf, int offset, int length) {
+        buf_ = buf;
+        pos_ = offset;
+        limit_ = offset + length;
+        return this;
+    }
+
+    int position() {
+        return pos_;
+    }
+
+    // 0 if the end of the current message is reached
+    int readTag() throws InvalidProtocolBufferException {
+        if (pos_ >= limit_)
+            return 0;
+        int tag = readVarint32();
+        if (WireFormat.getTagFieldNumber(tag) == 0)
+            throw new InvalidProtocolBufferException("Invalid tag");
+        return tag;
+    }
+
+    long readVarint64() throws InvalidProtocolBufferException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos_ >= limit_)
+                throw new InvalidProtocolBufferException("Truncated message");
+            byte b = buf_[pos_++];
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new InvalidProtocolBufferException("Malformed varint");
+    }
+
+    int readVarint32() throws InvalidProtocolBufferException {
+        return (int)readVarint64();
+    }
+
+    boolean readBool() throws InvalidProtocolBufferException {
+        return readVarint64() != 0;
+    }
+
+    long readFixed64() throws InvalidProtocolBufferException {
+        if (limit_ - pos_ < 8)
+            throw new InvalidProtocolBufferException("Truncated message");
+        long r = 0;
+        for (int i = 0; i < 8; i++)
+            r |= (buf_[pos_++] & 0xFFL) << (i * 8);
+        return r;
+    }
+
+    int readFixed32() throws InvalidProtocolBufferException {
+        if (limit_ - pos_ < 4)
+            throw new InvalidProtocolBufferException("Truncated message");
+        int r = 0;
+        for (int i = 0; i < 4; i++)
+            r |= (buf_[pos_++] & 0xFF) << (i * 8);
+        return r;
+    }
+
+    double readDouble() throws InvalidProtocolBufferException {
+        return Double.longBitsToDouble(readFixed64());
+    }
+
+    private int readLength() throws InvalidProtocolBufferException {
+        int len = readVarint32();
+        if (len < 0 || len > limit_ - pos_)
+            throw new InvalidProtocolBufferException("Truncated message");
+        return len;
+    }
+
+    String readString() throws InvalidProtocolBufferException {
+        int len = readLength();
+        if (len == 0)
+            return "";
+        String s = new String(buf_, pos_, len, UTF8);
+        pos_ += len;
+        return s;
+    }
+
+    // for values that repeat across replies, see InternPool
+    String readInternedString() throws InvalidProtocolBufferException {
+        int len = readLength();
+        String s = InternPool.intern(buf_, pos_, len);
+        pos_ += len;
+        return s;
+    }
+
+    byte[] readBytes() throws InvalidProtocolBufferException {
+        int len = readLength();
+        byte[] b = new byte[len];
+        System.arraycopy(buf_, pos_, b, 0, len);
+        pos_ += len;
+        return b;
+    }
+
+    // length of the bytes field, to be followed by readRaw
+    int readBytesLength() throws InvalidProtocolBufferException {
+        return readLength();
+    }
+
+    void readRaw(byte[] dst, int offset, int len) {
+        System.arraycopy(buf_, pos_, dst, offset, len);
+        pos_ += len;
+    }
+
+    void skipRaw(int len) {
+        pos_ += len;
+    }
+
+    // decodes len bytes at the position as hex into dst,
+    // doesn't advance, false if they're not lowercase hex
+    boolean decodeHex(int len, byte[] dst, int offset) {
+        if ((len & 1) != 0)
+            return false;
+        int p = pos_;
+        for (int i = 0; i < len / 2; i++) {
+            int hi = hexDigit(buf_[p++]);
+            int lo = hexDigit(buf_[p++]);
+            if (hi < 0 || lo < 0)
+                return false;
+            dst[offset + i] = (byte)((hi << 4) | lo);
+        }
+        return true;
+    }
+
+    private static int hexDigit(byte c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'f')
+            return c - 'a' + 10;
+        return -1;
+    }
+
+    // skips the embedded message, returns its length,
+    // the message starts at position() - length
+    int skipMessage() throws InvalidProtocolBufferException {
+        int len = readLength();
+        pos_ += len;
+        return len;
+    }
+
+    // enter the embedded message, returns the limit
+    // to be passed to endMessage
+    int beginMessage() throws InvalidProtocolBufferException {
+        int len = readLength();
+        int old = limit_;
+        limit_ = pos_ + len;
+        return old;
+    }
+
+    void endMessage(int oldLimit) {
+        pos_ = limit_;
+        limit_ = oldLimit;
+    }
+
+    void skipField(int tag) throws InvalidProtocolBufferException {
+        switch (WireFormat.getTagWireType(tag)) {
+            case WireFormat.WIRETYPE_VARINT:
+                readVarint64();
+                break;
+            case WireFormat.WIRETYPE_FIXED64:
+                readFixed64();
+                break;
+            case WireFormat.WIRETYPE_LENGTH_DELIMITED: {
+                // not pos_ += readLength(), pos_ would be
+                // read before readLength advances it
+                int len = readLength();
+                pos_ += len;
+                break;
+            }
+            case WireFormat.WIRETYPE_FIXED32:
+                readFixed32();
+                break;
+            default:
+                // groups are not used by lnd
+                throw new InvalidProtocolBufferException("Unsupported wire type");
+        }
+    }
+}
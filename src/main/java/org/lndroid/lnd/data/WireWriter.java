@@ -0,0 +1,249 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.WireFormat;
+
+// Minimal protobuf wire format writer into an exact-size byte[],
+// the counterpart of WireReader. Messages are written in two passes:
+// the size pass computes the length of every embedded message and
+// records it with reserveSize/setSize, the write pass takes them
+// back in the same order with beginMessage. The size stack is reused between
+// messages. Fields are written like protobuf-java does for proto3:
+// in field number order, default scalars are skipped.
+// Not thread-safe.
+final class WireWriter {
+
+    private byte[] buf_;
+    private int pos_;
+
+    private int[] sizes_ = new int[16];
+    private int sizeCount_;
+    private int sizeNext_;
+
+    // start the size pass
+    void beginSizes() {
+        sizeCount_ = 0;
+        sizeNext_ = 0;
+    }
+
+    // records the size of an embedded message, returns its
+    // index to be passed to setSize when it's known
+    int reserveSize() {
+        if (sizeCount_ == sizes_.length) {
+            int[] s = new int[sizes_.length * 2];
+            System.arraycopy(sizes_, 0, s, 0, sizes_.length);
+            sizes_ = s;
+        }
+        return sizeCount_++;
+    }
+
+    void setSize(int index, int size) {
+        sizes_[index] = size;
+    }
+
+    int nextSize() {
+        return sizes_[sizeNext_++];
+    }
+
+    byte[] begin(int size) {
+        buf_ = new byte[size];
+        pos_ = 0;
+        sizeNext_ = 0;
+        return buf_;
+    }
+
+    // drops the reference to the written buffer
+    byte[] end() {
+        assert pos_ == buf_.length;
+        byte[] b = buf_;
+        buf_ = null;
+        return b;
+    }
+
+    // ==== sizes
+
+    static int varintSize(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    static int tagSize(int field) {
+        return varintSize(field << 3);
+    }
+
+    // Character.isSurrogate needs API 19
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    static int utf8Length(String s) {
+        int n = s.length();
+        int len = n;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800) {
+                len += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 2;
+                i++;
+            } else if (!isSurrogate(c)) {
+                len += 2;
+            }
+        }
+        return len;
+    }
+
+    // also int64, both are plain 64-bit varints
+    static int uint64Size(int field, long v) {
+        return v == 0 ? 0 : tagSize(field) + varintSize(v);
+    }
+
+    static int int32Size(int field, int v) {
+        // negative int32 is sign-extended to 10 bytes
+        return v == 0 ? 0 : tagSize(field) + varintSize(v);
+    }
+
+    static int uint32Size(int field, int v) {
+        return v == 0 ? 0 : tagSize(field) + varintSize(v & 0xFFFFFFFFL);
+    }
+
+    static int boolSize(int field, boolean v) {
+        return v ? tagSize(field) + 1 : 0;
+    }
+
+    static int stringSize(int field, String v) {
+        if (v == null || v.isEmpty())
+            return 0;
+        int len = utf8Length(v);
+        return tagSize(field) + varintSize(len) + len;
+    }
+
+    static int bytesSize(int field, byte[] v) {
+        if (v == null || v.length == 0)
+            return 0;
+        return tagSize(field) + varintSize(v.length) + v.length;
+    }
+
+    // embedded message, always written if present
+    static int messageSize(int field, int size) {
+        return tagSize(field) + varintSize(size) + size;
+    }
+
+    // ==== writes
+
+    private void writeVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf_[pos_++] = (byte)((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf_[pos_++] = (byte)v;
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeUInt64(int field, long v) {
+        if (v == 0)
+            return;
+        writeTag(field, WireFormat.WIRETYPE_VARINT);
+        writeVarint(v);
+    }
+
+    void writeInt32(int field, int v) {
+        if (v == 0)
+            return;
+        writeTag(field, WireFormat.WIRETYPE_VARINT);
+        writeVarint(v);
+    }
+
+    void writeUInt32(int field, int v) {
+        if (v == 0)
+            return;
+        writeTag(field, WireFormat.WIRETYPE_VARINT);
+        writeVarint(v & 0xFFFFFFFFL);
+    }
+
+    void writeBool(int field, boolean v) {
+        if (!v)
+            return;
+        writeTag(field, WireFormat.WIRETYPE_VARINT);
+        buf_[pos_++] = 1;
+    }
+
+    void writeString(int field, String v) {
+        if (v == null || v.isEmpty())
+            return;
+        writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(utf8Length(v));
+        writeUtf8(v);
+    }
+
+    void writeBytes(int field, byte[] v) {
+        if (v == null || v.length == 0)
+            return;
+        writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(v.length);
+        System.arraycopy(v, 0, buf_, pos_, v.length);
+        pos_ += v.length;
+    }
+
+    // tag and length of an embedded message, taken from the size pass
+    void beginMessage(int field) {
+        writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(nextSize());
+    }
+
+    // length-delimited block of known size (packed fields, map entries)
+    void beginBlock(int field, int size) {
+        writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint(size);
+    }
+
+    void writeRawVarint(long v) {
+        writeVarint(v);
+    }
+
+    // utf-8 bytes of v, without the length
+    void writeRawUtf8(String v) {
+        writeUtf8(v);
+    }
+
+    void writeRaw(byte[] v) {
+        System.arraycopy(v, 0, buf_, pos_, v.length);
+        pos_ += v.length;
+    }
+
+    private void writeUtf8(String s) {
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf_[pos_++] = (byte)c;
+            } else if (c < 0x800) {
+                buf_[pos_++] = (byte)(0xC0 | (c >>> 6));
+                buf_[pos_++] = (byte)(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf_[pos_++] = (byte)(0xF0 | (cp >>> 18));
+                buf_[pos_++] = (byte)(0x80 | ((cp >>> 12) & 0x3F));
+                buf_[pos_++] = (byte)(0x80 | ((cp >>> 6) & 0x3F));
+                buf_[pos_++] = (byte)(0x80 | (cp & 0x3F));
+            } else if (isSurrogate(c)) {
+                // unpaired, like String.getBytes
+                buf_[pos_++] = '?';
+            } else {
+                buf_[pos_++] = (byte)(0xE0 | (c >>> 12));
+                buf_[pos_++] = (byte)(0x80 | ((c >>> 6) & 0x3F));
+                buf_[pos_++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
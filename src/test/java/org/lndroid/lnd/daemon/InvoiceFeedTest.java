@@ -0,0 +1,218 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lndroid.lnd.data.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InvoiceFeedTest {
+
+    private static lnrpc.Rpc.Invoice invoice(long addIndex, long settleIndex) {
+        lnrpc.Rpc.Invoice.Builder b = lnrpc.Rpc.Invoice.newBuilder().setAddIndex(addIndex);
+        if (settleIndex > 0)
+            b.setSettleIndex(settleIndex).setState(lnrpc.Rpc.Invoice.InvoiceState.SETTLED);
+        return b.build();
+    }
+
+    // lnd with a list of invoices, subscriptions are
+    // queued for the test to push invoices and errors
+    private static class Lnd implements ILightningTransport {
+        final List<lnrpc.Rpc.Invoice> invoices = Collections.synchronizedList(new ArrayList<lnrpc.Rpc.Invoice>());
+        final BlockingQueue<lnrpc.Rpc.InvoiceSubscription> subscriptions = new LinkedBlockingQueue<>();
+        final BlockingQueue<Callback> streams = new LinkedBlockingQueue<>();
+        volatile int scans;
+
+        @Override
+        public void start(String args, Callback unlockReadyCb, Callback rpcReadyCb) {
+        }
+
+        @Override
+        public void call(String method, byte[] data, Callback cb) throws Exception {
+            if ("listInvoices".equals(method)) {
+                scans++;
+                lnrpc.Rpc.ListInvoiceRequest r = lnrpc.Rpc.ListInvoiceRequest.parseFrom(data);
+                lnrpc.Rpc.ListInvoiceResponse.Builder b = lnrpc.Rpc.ListInvoiceResponse.newBuilder();
+                synchronized (invoices) {
+                    for (lnrpc.Rpc.Invoice i : invoices) {
+                        if (i.getAddIndex() > r.getIndexOffset() && b.getInvoicesCount() < r.getNumMaxInvoices())
+                            b.addInvoices(i).setLastIndexOffset(i.getAddIndex());
+                    }
+                }
+                cb.onResponse(b.build().toByteArray());
+            } else if ("subscribeInvoices".equals(method)) {
+                subscriptions.add(lnrpc.Rpc.InvoiceSubscription.parseFrom(data));
+                streams.add(cb);
+            } else {
+                cb.onError(new LightningException(-1, "Unexpected " + method));
+            }
+        }
+
+        @Override
+        public SendStream openStream(String method, Callback cb) throws Exception {
+            throw new LightningException(-1, "Unexpected " + method);
+        }
+
+        lnrpc.Rpc.InvoiceSubscription subscription() throws InterruptedException {
+            lnrpc.Rpc.InvoiceSubscription s = subscriptions.poll(5, TimeUnit.SECONDS);
+            assertNotNull(s);
+            return s;
+        }
+
+        Callback stream() throws InterruptedException {
+            Callback cb = streams.poll(5, TimeUnit.SECONDS);
+            assertNotNull(cb);
+            return cb;
+        }
+    }
+
+    private static class Listener implements InvoiceFeed.Listener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        volatile InvoiceFeed.Checkpoint checkpoint;
+
+        @Override
+        public void onInvoice(Data.Invoice invoice) {
+            events.add(invoice.addIndex + "/" + invoice.settleIndex);
+        }
+
+        @Override
+        public void onCheckpoint(InvoiceFeed.Checkpoint cp) {
+            checkpoint = cp;
+        }
+
+        @Override
+        public void onRetry(int code, String message, long delayMs) {
+            events.add("retry");
+        }
+    }
+
+    private Lnd lnd_;
+    private Listener listener_;
+    private InvoiceFeed feed_;
+
+    @Before
+    public void setUp() throws Exception {
+        lnd_ = new Lnd();
+        listener_ = new Listener();
+        TestDaemon.start(lnd_);
+    }
+
+    @After
+    public void tearDown() {
+        if (feed_ != null)
+            feed_.stop();
+    }
+
+    private void start(InvoiceFeed.Checkpoint cp) {
+        InvoiceFeed.Options options = new InvoiceFeed.Options();
+        options.initialBackoffMs = 10;
+        feed_ = new InvoiceFeed(cp, options, listener_);
+        feed_.start();
+    }
+
+    private static void push(ILightningTransport.Callback stream, lnrpc.Rpc.Invoice... invoices) {
+        for (lnrpc.Rpc.Invoice i : invoices)
+            stream.onResponse(i.toByteArray());
+    }
+
+    @Test
+    public void accept_dropsReplayedInvoices() throws Exception {
+        start(new InvoiceFeed.Checkpoint(2, 1));
+        lnd_.subscription();
+        ILightningTransport.Callback stream = lnd_.stream();
+
+        // added backlog: 4 was settled while offline
+        push(stream, invoice(3, 0), invoice(4, 5));
+        // settled backlog: 2 is new, 5 was delivered with 4
+        push(stream, invoice(1, 2), invoice(4, 5));
+        // live events, 3 and 4 again
+        push(stream, invoice(3, 0), invoice(4, 5), invoice(3, 6));
+
+        assertEquals(0, lnd_.scans);
+        assertEquals(Arrays.asList("3/0", "4/5", "1/2", "3/6"), listener_.events);
+        InvoiceFeed.Checkpoint cp = feed_.checkpoint();
+        assertEquals(4, cp.addIndex);
+        assertEquals(6, cp.settleIndex);
+        assertNull(cp.settledAhead);
+    }
+
+    @Test
+    public void resubscribe_afterErrorFromLastIndices() throws Exception {
+        start(new InvoiceFeed.Checkpoint(2, 1));
+        lnrpc.Rpc.InvoiceSubscription s = lnd_.subscription();
+        assertEquals(2, s.getAddIndex());
+        assertEquals(1, s.getSettleIndex());
+        ILightningTransport.Callback stream = lnd_.stream();
+
+        push(stream, invoice(3, 0), invoice(1, 2));
+        stream.onError(new LightningException(-1, "EOF"));
+
+        s = lnd_.subscription();
+        assertEquals(3, s.getAddIndex());
+        assertEquals(2, s.getSettleIndex());
+
+        // the old stream is ignored, the new one replays 3 and 2
+        push(stream, invoice(5, 0));
+        stream = lnd_.stream();
+        push(stream, invoice(3, 0), invoice(1, 2), invoice(4, 0));
+        assertEquals(Arrays.asList("3/0", "1/2", "retry", "4/0"), listener_.events);
+        assertEquals(4, feed_.checkpoint().addIndex);
+    }
+
+    @Test
+    public void start_withoutCheckpointLearnsIndices() throws Exception {
+        lnd_.invoices.add(invoice(1, 1));
+        lnd_.invoices.add(invoice(2, 0));
+        start(null);
+
+        lnrpc.Rpc.InvoiceSubscription s = lnd_.subscription();
+        assertEquals(2, s.getAddIndex());
+        assertEquals(1, s.getSettleIndex());
+        assertTrue(listener_.events.isEmpty());
+    }
+
+    @Test
+    public void start_scansSettlementsMissedWithZeroSettleIndex() throws Exception {
+        // 1 and 2 were delivered, nothing settled back then
+        lnd_.invoices.add(invoice(1, 2));
+        lnd_.invoices.add(invoice(2, 1));
+        lnd_.invoices.add(invoice(3, 0));
+        start(new InvoiceFeed.Checkpoint(2, 0));
+
+        lnrpc.Rpc.InvoiceSubscription s = lnd_.subscription();
+        assertEquals(3, s.getAddIndex());
+        assertEquals(2, s.getSettleIndex());
+        assertEquals(Arrays.asList("3/0", "2/1", "1/2"), listener_.events);
+        assertEquals(3, listener_.checkpoint.addIndex);
+        assertEquals(2, listener_.checkpoint.settleIndex);
+    }
+
+    @Test
+    public void resubscribe_scansWhileNothingSettled() throws Exception {
+        start(null);
+        lnd_.subscription();
+        ILightningTransport.Callback stream = lnd_.stream();
+        assertEquals(1, lnd_.scans);
+
+        // added, then settled while the feed is disconnected
+        lnd_.invoices.add(invoice(1, 0));
+        push(stream, invoice(1, 0));
+        lnd_.invoices.set(0, invoice(1, 1));
+        stream.onError(new LightningException(-1, "EOF"));
+
+        lnrpc.Rpc.InvoiceSubscription s = lnd_.subscription();
+        assertEquals(2, lnd_.scans);
+        assertEquals(1, s.getAddIndex());
+        assertEquals(1, s.getSettleIndex());
+        assertEquals(Arrays.asList("1/0", "retry", "1/1"), listener_.events);
+    }
+}
@@ -0,0 +1,154 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.lndroid.lnd.data.Data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LightningStoreTest {
+
+    private static final String DEST = "02" + hash(1000000).substring(2) + "ab";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String hash(int i) {
+        StringBuilder s = new StringBuilder();
+        for (int k = 0; k < 8; k++)
+            s.append(String.format("%08x", i * 31 + k));
+        return s.toString();
+    }
+
+    private static Data.Payment payment(int i, int status) {
+        Data.Payment p = new Data.Payment();
+        p.paymentHash = hash(i);
+        p.creationTime = 1000000L + i;
+        p.status = status;
+        p.valueSat = i;
+        return p;
+    }
+
+    private static void putPayments(LightningStore s, int from, int to, int status) throws IOException {
+        for (int i = from; i < to; i++)
+            s.putPayment(payment(i, status), DEST);
+    }
+
+    @Test
+    public void put_replacesOlderVersion() throws IOException {
+        LightningStore s = LightningStore.open(folder.newFolder());
+        assertTrue(s.putPayment(payment(1, 1), DEST));
+        assertFalse(s.putPayment(payment(1, 1), DEST));
+        assertTrue(s.putPayment(payment(1, 2)));
+
+        assertEquals(2, s.getPayment(hash(1)).status);
+        assertEquals(DEST, s.getPaymentDestination(hash(1)));
+        assertEquals(0, s.listPaymentsByStatus(1, 0, false).size());
+        assertEquals(1, s.listPaymentsByStatus(2, 0, false).size());
+        assertEquals(1, s.listPaymentsByDestination(DEST, 0, false).size());
+        s.close();
+    }
+
+    @Test
+    public void put_keepsUnknownStatus() throws IOException {
+        LightningStore s = LightningStore.open(folder.newFolder());
+        s.putPayment(payment(1, 42));
+        assertEquals(42, s.getPayment(hash(1)).status);
+        assertEquals(1, s.listPaymentsByStatus(42, 0, false).size());
+        s.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void put_rejectsEmptyHash() throws IOException {
+        LightningStore s = LightningStore.open(folder.newFolder());
+        try {
+            Data.Payment p = payment(1, 1);
+            p.paymentHash = "";
+            s.putPayment(p);
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_rejectsBadHex() throws IOException {
+        LightningStore s = LightningStore.open(folder.newFolder());
+        try {
+            s.getPayment("zz" + hash(1).substring(2));
+        } finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void reopen_restoresIndexes() throws IOException {
+        File dir = folder.newFolder();
+        LightningStore s = LightningStore.open(dir);
+        // enough to flush the indexes to runs, the rest stays in memory
+        putPayments(s, 0, 5000, 1);
+        putPayments(s, 0, 5000, 2);
+        s.close();
+
+        s = LightningStore.open(dir);
+        assertEquals(0, s.listPaymentsByStatus(1, 0, false).size());
+        assertEquals(5000, s.listPaymentsByStatus(2, 0, false).size());
+        assertEquals(10, s.listPaymentsByTime(1000100, 1000109, 0, false).size());
+        List<Data.Payment> last = s.listPaymentsByDestination(DEST, 1, true);
+        assertEquals(4999, last.get(0).valueSat);
+        assertEquals(2, s.getPayment(hash(4321)).status);
+        s.close();
+    }
+
+    @Test
+    public void reopen_dropsTornTail() throws IOException {
+        File dir = folder.newFolder();
+        LightningStore s = LightningStore.open(dir);
+        putPayments(s, 0, 100, 1);
+        s.close();
+
+        File log = new File(dir, "store.log");
+        long size = log.length();
+        RandomAccessFile f = new RandomAccessFile(log, "rw");
+        f.seek(size);
+        // header of a record that's longer than the rest of the log
+        f.write(new byte[]{0, 0, 0, 50, 1, 2, 3, 4, 1, 32});
+        f.close();
+
+        s = LightningStore.open(dir);
+        assertEquals(size, log.length());
+        assertEquals(100, s.listPaymentsByStatus(1, 0, false).size());
+        assertTrue(s.putPayment(payment(100, 1), DEST));
+        s.close();
+
+        s = LightningStore.open(dir);
+        assertEquals(101, s.listPaymentsByStatus(1, 0, false).size());
+        s.close();
+    }
+
+    @Test
+    public void reopen_rebuildsIndexesOfLostRecords() throws IOException {
+        File dir = folder.newFolder();
+        LightningStore s = LightningStore.open(dir);
+        putPayments(s, 0, 5000, 1);
+        s.close();
+
+        // indexes on disk point past the end of the log
+        File log = new File(dir, "store.log");
+        RandomAccessFile f = new RandomAccessFile(log, "rw");
+        f.setLength(log.length() / 2);
+        f.close();
+
+        s = LightningStore.open(dir);
+        int n = s.listPaymentsByStatus(1, 0, false).size();
+        assertTrue(n > 0 && n < 5000);
+        assertNotNull(s.getPayment(hash(0)));
+        assertNull(s.getPayment(hash(4999)));
+        s.close();
+    }
+}
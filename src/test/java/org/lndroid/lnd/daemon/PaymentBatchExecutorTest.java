@@ -0,0 +1,319 @@
+package org.lndroid.lnd.daemon;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lndroid.lnd.data.Data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PaymentBatchExecutorTest {
+
+    private static final String NODE = "02" + repeat("aa", 32);
+    private static final String DEST = "03" + repeat("dd", 32);
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++)
+            sb.append(s);
+        return sb.toString();
+    }
+
+    private static String hash(String payReq) {
+        return String.format("%064x", payReq.hashCode() & 0xffffffffL);
+    }
+
+    // lnd with a single route NODE -> DEST for every payment, sendToRoute
+    // replies with the next scripted error ("" - success), and replies
+    // are held while hold is set
+    private static class Lnd implements ILightningTransport {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<lnrpc.Rpc.QueryRoutesRequest> queries =
+                Collections.synchronizedList(new ArrayList<lnrpc.Rpc.QueryRoutesRequest>());
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Runnable> held = new ConcurrentLinkedQueue<>();
+        final BlockingQueue<String> sent = new ArrayBlockingQueue<>(100);
+        volatile boolean hold;
+        volatile Callback stream;
+
+        @Override
+        public void start(String args, Callback unlockReadyCb, Callback rpcReadyCb) {
+        }
+
+        private void reply(final Callback cb, final byte[] bytes) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cb.onResponse(bytes);
+                }
+            });
+        }
+
+        @Override
+        public void call(String method, byte[] data, Callback cb) throws Exception {
+            if ("decodePayReq".equals(method)) {
+                String payReq = lnrpc.Rpc.PayReqString.parseFrom(data).getPayReq();
+                reply(cb, lnrpc.Rpc.PayReq.newBuilder()
+                        .setDestination(DEST)
+                        .setPaymentHash(hash(payReq))
+                        .setNumSatoshis(1000)
+                        .setCltvExpiry(40)
+                        .build().toByteArray());
+            } else if ("queryRoutes".equals(method)) {
+                queries.add(lnrpc.Rpc.QueryRoutesRequest.parseFrom(data));
+                reply(cb, lnrpc.Rpc.QueryRoutesResponse.newBuilder()
+                        .addRoutes(lnrpc.Rpc.Route.newBuilder()
+                                .setTotalAmtMsat(1001000)
+                                .setTotalFeesMsat(1000)
+                                .addHops(lnrpc.Rpc.Hop.newBuilder().setChanId(1).setPubKey(NODE))
+                                .addHops(lnrpc.Rpc.Hop.newBuilder().setChanId(2).setPubKey(DEST)))
+                        .build().toByteArray());
+            } else {
+                cb.onError(new LightningException(-1, "Unexpected " + method));
+            }
+        }
+
+        @Override
+        public SendStream openStream(String method, final Callback cb) {
+            stream = cb;
+            return new SendStream() {
+                @Override
+                public void send(byte[] bytes) throws Exception {
+                    lnrpc.Rpc.SendToRouteRequest r = lnrpc.Rpc.SendToRouteRequest.parseFrom(bytes);
+                    String error = errors.poll();
+                    lnrpc.Rpc.SendResponse.Builder b = lnrpc.Rpc.SendResponse.newBuilder()
+                            .setPaymentHash(r.getPaymentHash());
+                    if (error != null && !error.isEmpty())
+                        b.setPaymentError(error);
+                    else
+                        b.setPaymentPreimage(ByteString.copyFromUtf8("preimage")).setPaymentRoute(r.getRoute());
+
+                    final byte[] reply = b.build().toByteArray();
+                    Runnable run = new Runnable() {
+                        @Override
+                        public void run() {
+                            reply(cb, reply);
+                        }
+                    };
+                    if (hold)
+                        held.add(run);
+                    else
+                        run.run();
+                    sent.add(PaymentBatchExecutor.toHex(r.getPaymentHash().toByteArray()));
+                }
+
+                @Override
+                public void stop() {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            cb.onError(new LightningException(-1, "EOF"));
+                        }
+                    });
+                }
+            };
+        }
+
+        void release() {
+            hold = false;
+            Runnable r;
+            while ((r = held.poll()) != null)
+                r.run();
+        }
+    }
+
+    private static class Listener implements PaymentBatchExecutor.Listener {
+        final List<PaymentBatchExecutor.Result> results =
+                Collections.synchronizedList(new ArrayList<PaymentBatchExecutor.Result>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile PaymentBatchExecutor.Report report;
+
+        @Override
+        public void onResult(PaymentBatchExecutor.Result r) {
+            results.add(r);
+        }
+
+        @Override
+        public void onDone(PaymentBatchExecutor.Report r) {
+            report = r;
+            done.countDown();
+        }
+
+        PaymentBatchExecutor.Report await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return report;
+        }
+    }
+
+    private Lnd lnd_;
+
+    @Before
+    public void setUp() throws Exception {
+        lnd_ = new Lnd();
+        TestDaemon.start(lnd_);
+    }
+
+    @After
+    public void tearDown() {
+        lnd_.executor.shutdownNow();
+    }
+
+    private static List<PaymentBatchExecutor.Item> items(String... payReqs) {
+        List<PaymentBatchExecutor.Item> items = new ArrayList<>();
+        for (String p : payReqs)
+            items.add(new PaymentBatchExecutor.Item(p));
+        return items;
+    }
+
+    @Test
+    public void failureSource_parsesIndex() {
+        assertEquals(2, PaymentBatchExecutor.failureSource("TemporaryChannelFailure@2"));
+        assertEquals(12, PaymentBatchExecutor.failureSource("FeeInsufficient(htlc_msat=1)@12: details"));
+        assertEquals(-1, PaymentBatchExecutor.failureSource("unable to find a path"));
+        assertEquals(-1, PaymentBatchExecutor.failureSource("bad@"));
+    }
+
+    private static Data.Route route() {
+        Data.Route route = new Data.Route();
+        route.hops = new ArrayList<>();
+        for (String pubkey : Arrays.asList(NODE, DEST)) {
+            Data.Hop hop = new Data.Hop();
+            hop.pubKey = pubkey;
+            route.hops.add(hop);
+        }
+        return route;
+    }
+
+    @Test
+    public void isPermanent_destinationFailures() {
+        Data.Route route = route();
+        assertTrue(PaymentBatchExecutor.isPermanent("IncorrectOrUnknownPaymentDetails@2", 2, route));
+        assertTrue(PaymentBatchExecutor.isPermanent("some failure@2", 2, route));
+        assertTrue(PaymentBatchExecutor.isPermanent("invoice is already paid", -1, route));
+        assertFalse(PaymentBatchExecutor.isPermanent("TemporaryChannelFailure@1", 1, route));
+        assertFalse(PaymentBatchExecutor.isPermanent("unknown", -1, route));
+    }
+
+    @Test
+    public void failedNode_skipsDestination() {
+        Data.Route route = route();
+        // NODE's channel to DEST failed, DEST can't be avoided
+        assertArrayEquals(PaymentBatchExecutor.fromHex(NODE), PaymentBatchExecutor.failedNode(1, route));
+        // our channel to NODE failed
+        assertArrayEquals(PaymentBatchExecutor.fromHex(NODE), PaymentBatchExecutor.failedNode(0, route));
+        assertNull(PaymentBatchExecutor.failedNode(-1, route));
+        assertNull(PaymentBatchExecutor.failedNode(2, route));
+    }
+
+    @Test
+    public void execute_doesntRetryPermanentFailure() throws Exception {
+        lnd_.errors.add("IncorrectOrUnknownPaymentDetails@2");
+        Listener l = new Listener();
+        new PaymentBatchExecutor().execute(items("pr1"), l);
+
+        PaymentBatchExecutor.Report report = l.await();
+        assertEquals(1, report.failed);
+        PaymentBatchExecutor.Result r = report.results.get(0);
+        assertFalse(r.succeeded);
+        assertEquals(1, r.attempts);
+        assertEquals("IncorrectOrUnknownPaymentDetails@2", r.error);
+        assertEquals(1, lnd_.queries.size());
+    }
+
+    @Test
+    public void execute_retriesAvoidingFailedNode() throws Exception {
+        lnd_.errors.add("TemporaryChannelFailure@1");
+        Listener l = new Listener();
+        new PaymentBatchExecutor().execute(items("pr1"), l);
+
+        PaymentBatchExecutor.Report report = l.await();
+        assertEquals(1, report.succeeded);
+        PaymentBatchExecutor.Result r = report.results.get(0);
+        assertTrue(r.succeeded);
+        assertEquals(2, r.attempts);
+        assertEquals(hash("pr1"), PaymentBatchExecutor.toHex(r.paymentHash));
+
+        // the only route failed, so routes were queried again
+        // without the failing node
+        assertEquals(2, lnd_.queries.size());
+        assertEquals(0, lnd_.queries.get(0).getIgnoredNodesCount());
+        assertEquals(1, lnd_.queries.get(1).getIgnoredNodesCount());
+        assertArrayEquals(PaymentBatchExecutor.fromHex(NODE),
+                lnd_.queries.get(1).getIgnoredNodes(0).toByteArray());
+    }
+
+    @Test
+    public void execute_givesUpAfterMaxAttempts() throws Exception {
+        for (int i = 0; i < 3; i++)
+            lnd_.errors.add("TemporaryChannelFailure@1");
+        Listener l = new Listener();
+        new PaymentBatchExecutor().execute(items("pr1"), l);
+
+        PaymentBatchExecutor.Result r = l.await().results.get(0);
+        assertFalse(r.succeeded);
+        assertEquals(3, r.attempts);
+    }
+
+    @Test
+    public void cancel_waitsForPaymentsInFlight() throws Exception {
+        lnd_.hold = true;
+        PaymentBatchExecutor.Options options = new PaymentBatchExecutor.Options();
+        options.maxInFlight = 1;
+        Listener l = new Listener();
+        ILightningFuture<PaymentBatchExecutor.Report> f =
+                new PaymentBatchExecutor(options).execute(items("pr1", "pr2"), l);
+
+        // one payment is sent, the other waits for the slot
+        String sent = lnd_.sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(sent);
+        f.cancel(false);
+        assertTrue(f.isCancelled());
+
+        // the sent one completes with its reply, the other fails
+        lnd_.release();
+        PaymentBatchExecutor.Report report = l.await();
+        assertEquals(1, report.succeeded);
+        assertEquals(1, report.failed);
+        assertEquals(0, report.inFlight);
+        assertTrue(lnd_.sent.isEmpty());
+        for (PaymentBatchExecutor.Result r : report.results) {
+            if (r.succeeded)
+                assertEquals(sent, PaymentBatchExecutor.toHex(r.paymentHash));
+            else
+                assertEquals(-5, r.errorCode);
+        }
+    }
+
+    @Test
+    public void streamError_reportsPaymentsInFlight() throws Exception {
+        lnd_.hold = true;
+        Listener l = new Listener();
+        new PaymentBatchExecutor().execute(items("pr1"), l);
+
+        String sent = lnd_.sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(sent);
+        lnd_.stream.onError(new LightningException(-1, "broken"));
+
+        PaymentBatchExecutor.Report report = l.await();
+        assertEquals(0, report.failed);
+        assertEquals(1, report.inFlight);
+        PaymentBatchExecutor.Result r = report.results.get(0);
+        assertTrue(r.inFlight);
+        assertFalse(r.succeeded);
+        assertEquals(hash("pr1"), PaymentBatchExecutor.toHex(r.paymentHash));
+    }
+}
@@ -0,0 +1,66 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SlotRegistryTest {
+
+    @Test
+    public void add_issuesPositiveIds() {
+        SlotRegistry<String> r = new SlotRegistry<>(2);
+        int a = r.add("a");
+        int b = r.add("b");
+        int c = r.add("c");
+        assertTrue(a > 0 && b > 0 && c > 0);
+        assertEquals("a", r.get(a));
+        assertEquals("c", r.get(c));
+        assertEquals(3, r.size());
+        assertNull(r.get(0));
+        assertNull(r.get(-1));
+    }
+
+    @Test
+    public void remove_invalidatesStaleIds() {
+        SlotRegistry<String> r = new SlotRegistry<>();
+        int a = r.add("a");
+        assertEquals("a", r.remove(a));
+        assertNull(r.remove(a));
+
+        // same slot, next generation
+        int b = r.add("b");
+        assertNotEquals(a, b);
+        assertEquals(1, r.capacity());
+        assertNull(r.get(a));
+        assertNull(r.remove(a));
+        assertEquals("b", r.get(b));
+    }
+
+    @Test
+    public void remove_reusesSlotsManyTimes() {
+        SlotRegistry<Integer> r = new SlotRegistry<>();
+        int prev = 0;
+        // generations wrap around, ids stay positive and fresh
+        for (int i = 0; i < 5000; i++) {
+            int id = r.add(i);
+            assertTrue(id > 0);
+            assertNotEquals(prev, id);
+            assertEquals(Integer.valueOf(i), r.remove(id));
+            prev = id;
+        }
+        assertEquals(0, r.size());
+        assertEquals(1, r.capacity());
+    }
+
+    @Test
+    public void clear_removesAll() {
+        SlotRegistry<String> r = new SlotRegistry<>();
+        int a = r.add("a");
+        r.add("b");
+        r.clear();
+        assertEquals(0, r.size());
+        assertNull(r.get(a));
+        for (int i = 0; i < r.capacity(); i++)
+            assertNull(r.valueAt(i));
+    }
+}
@@ -0,0 +1,154 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StoreIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // FLUSH_ENTRIES entries of keys 0..9, offsets from 'offset'
+    private static long flush(StoreIndex index, long offset) throws IOException {
+        for (int i = 0; i < StoreIndex.FLUSH_ENTRIES; i++)
+            index.add(i % 10, offset++);
+        index.flush(offset);
+        return offset;
+    }
+
+    // entries with this key added by a flush()
+    private static int count(long key) {
+        int n = 0;
+        for (int i = 0; i < StoreIndex.FLUSH_ENTRIES; i++) {
+            if (i % 10 == key)
+                n++;
+        }
+        return n;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        try {
+            byte[] b = new byte[8192];
+            int n;
+            while ((n = in.read(b)) > 0)
+                out.write(b, 0, n);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void assertSorted(long[] offsets) {
+        for (int i = 1; i < offsets.length; i++)
+            assertTrue(offsets[i - 1] < offsets[i]);
+    }
+
+    @Test
+    public void range_ordersRunsAndMemory() throws IOException {
+        StoreIndex index = new StoreIndex(folder.newFolder(), "test");
+        long offset = flush(index, 0);
+        offset = flush(index, offset);
+        index.add(3, offset);
+        index.add(3, offset + 1);
+
+        long[] r = index.range(3, 3);
+        assertEquals(count(3) * 2 + 2, r.length);
+        assertSorted(r);
+        assertEquals(offset + 1, r[r.length - 1]);
+        assertTrue(index.contains(3));
+        assertFalse(index.contains(10));
+    }
+
+    @Test
+    public void flush_mergesRunsOfSimilarSize() throws IOException {
+        StoreIndex index = new StoreIndex(folder.newFolder(), "test");
+        long offset = 0;
+        for (int i = 0; i < StoreIndex.MERGE_RUNS - 1; i++)
+            offset = flush(index, offset);
+        assertEquals(StoreIndex.MERGE_RUNS - 1, index.runCount());
+
+        offset = flush(index, offset);
+        assertEquals(1, index.runCount());
+
+        // small runs don't rewrite the big one
+        for (int i = 0; i < StoreIndex.MERGE_RUNS - 1; i++)
+            offset = flush(index, offset);
+        assertEquals(StoreIndex.MERGE_RUNS, index.runCount());
+        offset = flush(index, offset);
+        assertEquals(2, index.runCount());
+
+        long[] r = index.range(0, 9);
+        assertEquals(offset, r.length);
+        assertSorted(index.range(7, 7));
+    }
+
+    @Test
+    public void load_restoresRunsAndLogEnd() throws IOException {
+        File dir = folder.newFolder();
+        StoreIndex index = new StoreIndex(dir, "test");
+        long offset = flush(index, 0);
+        // not flushed, the log restores it
+        index.add(1, offset);
+
+        index = new StoreIndex(dir, "test");
+        assertEquals(offset, index.logEnd());
+        assertEquals(0, index.memSize());
+        assertEquals(count(1), index.range(1, 1).length);
+
+        assertEquals(0, new StoreIndex(dir, "other").logEnd());
+    }
+
+    @Test
+    public void load_dropsInputsOfMergedRunAfterCrash() throws IOException {
+        File dir = folder.newFolder();
+        File saved = folder.newFolder();
+        StoreIndex index = new StoreIndex(dir, "test");
+        long offset = 0;
+        for (int i = 0; i < StoreIndex.MERGE_RUNS - 1; i++)
+            offset = flush(index, offset);
+
+        List<File> inputs = new ArrayList<>();
+        for (File f : dir.listFiles()) {
+            File s = new File(saved, f.getName());
+            copy(f, s);
+            inputs.add(s);
+        }
+        offset = flush(index, offset);
+        assertEquals(1, index.runCount());
+
+        // crash after the merged run was renamed, but before its
+        // inputs were deleted, and in the middle of the next flush
+        for (File f : inputs)
+            copy(f, new File(dir, f.getName()));
+        new FileOutputStream(new File(dir, "test.9-9.run.tmp")).close();
+
+        index = new StoreIndex(dir, "test");
+        assertEquals(1, index.runCount());
+        assertEquals(offset, index.logEnd());
+        assertEquals(offset, index.range(0, 9).length);
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void clear_deletesRuns() throws IOException {
+        File dir = folder.newFolder();
+        StoreIndex index = new StoreIndex(dir, "test");
+        flush(index, 0);
+        index.clear();
+        assertEquals(0, dir.listFiles().length);
+        assertEquals(0, index.range(0, 9).length);
+        assertEquals(0, new StoreIndex(dir, "test").logEnd());
+    }
+}
@@ -0,0 +1,125 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionHubTest {
+
+    private static class Stream implements SubscriptionHub.Upstream {
+        ILightningCallbackMT cb;
+        boolean muted;
+        boolean cancelled;
+
+        @Override
+        public void setMuted(boolean muted) {
+            this.muted = muted;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isValid() {
+            return !cancelled;
+        }
+
+        void push(Object o) {
+            if (!muted)
+                cb.onResponse(o);
+        }
+    }
+
+    private static class Opener implements SubscriptionHub.Opener {
+        final List<Stream> opened = new ArrayList<>();
+
+        @Override
+        public SubscriptionHub.Upstream open(ILightningCallbackMT cb) {
+            Stream s = new Stream();
+            s.cb = cb;
+            opened.add(s);
+            return s;
+        }
+    }
+
+    private static class Subscriber implements ILightningCallbackMT {
+        final List<Object> events = new ArrayList<>();
+        int errors;
+
+        @Override
+        public void onError(int code, String message) {
+            errors++;
+        }
+
+        @Override
+        public void onResponse(Object o) {
+            events.add(o);
+        }
+    }
+
+    private static final lnrpc.Rpc.ChannelEventSubscription REQ =
+            lnrpc.Rpc.ChannelEventSubscription.newBuilder().build();
+
+    @Test
+    public void join_sharesOneStream() {
+        SubscriptionHub hub = new SubscriptionHub();
+        Opener opener = new Opener();
+        Subscriber a = new Subscriber();
+        Subscriber b = new Subscriber();
+        hub.join("s", REQ, a, opener);
+        hub.join("s", REQ, b, opener);
+
+        assertEquals(1, opener.opened.size());
+        opener.opened.get(0).push("e");
+        assertEquals(1, a.events.size());
+        assertEquals(1, b.events.size());
+    }
+
+    @Test
+    public void rejoin_reattachesToMutedStream() {
+        SubscriptionHub hub = new SubscriptionHub();
+        Opener opener = new Opener();
+        Subscriber a = new Subscriber();
+        ILightningSubscription s = hub.join("s", REQ, a, opener);
+        Stream stream = opener.opened.get(0);
+
+        s.cancel();
+        assertFalse(s.isValid());
+        assertTrue(stream.muted);
+        assertFalse(stream.cancelled);
+        stream.push("dropped");
+
+        Subscriber b = new Subscriber();
+        s = hub.join("s", REQ, b, opener);
+        assertTrue(s.isValid());
+        assertEquals(1, opener.opened.size());
+        assertFalse(stream.muted);
+        stream.push("e");
+        assertTrue(a.events.isEmpty());
+        assertEquals(1, b.events.size());
+    }
+
+    @Test
+    public void error_endsStreamForAll() {
+        SubscriptionHub hub = new SubscriptionHub();
+        Opener opener = new Opener();
+        Subscriber a = new Subscriber();
+        Subscriber b = new Subscriber();
+        ILightningSubscription sa = hub.join("s", REQ, a, opener);
+        hub.join("s", REQ, b, opener);
+
+        opener.opened.get(0).cb.onError(-1, "EOF");
+        assertEquals(1, a.errors);
+        assertEquals(1, b.errors);
+        assertFalse(sa.isValid());
+
+        // the next subscriber gets a new stream
+        hub.join("s", REQ, new Subscriber(), opener);
+        assertEquals(2, opener.opened.size());
+    }
+}
@@ -0,0 +1,50 @@
+package org.lndroid.lnd.daemon;
+
+// LightningDaemon starts once per process, so tests share one
+// daemon and swap the transport it forwards calls to.
+final class TestDaemon {
+
+    private static volatile ILightningTransport transport_;
+
+    private TestDaemon() {
+    }
+
+    private static final ILightningTransport FORWARD = new ILightningTransport() {
+        @Override
+        public void start(String args, Callback unlockReadyCb, Callback rpcReadyCb) {
+            unlockReadyCb.onResponse(null);
+            rpcReadyCb.onResponse(null);
+        }
+
+        @Override
+        public void call(String method, byte[] data, Callback cb) throws Exception {
+            transport_.call(method, data, cb);
+        }
+
+        @Override
+        public SendStream openStream(String method, Callback cb) throws Exception {
+            return transport_.openStream(method, cb);
+        }
+    };
+
+    // calls made after this go to transport
+    static synchronized void start(ILightningTransport transport) throws LightningException {
+        transport_ = transport;
+        if (LightningDaemon.isStarted())
+            return;
+
+        ILightningCallbackMT nop = new ILightningCallbackMT() {
+            @Override
+            public void onError(int code, String message) {
+            }
+
+            @Override
+            public void onResponse(Object o) {
+            }
+        };
+
+        LightningDaemon.Init init = new LightningDaemon.Init();
+        init.transport = FORWARD;
+        LightningDaemon.start(init, nop, nop);
+    }
+}
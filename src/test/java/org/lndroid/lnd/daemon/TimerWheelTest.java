@@ -0,0 +1,63 @@
+package org.lndroid.lnd.daemon;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    @Test
+    public void timeout_firesAfterDelay() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(TICK_MS, 8);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong fired = new AtomicLong();
+        long start = System.nanoTime();
+        // longer than a turn of the wheel
+        wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                fired.set(System.nanoTime());
+                latch.countDown();
+            }
+        }, 150);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsedMs = (fired.get() - start) / 1000000;
+        // the wheel's clock has ms precision
+        assertTrue("fired after " + elapsedMs, elapsedMs >= 150 - 1);
+        assertTrue("fired after " + elapsedMs, elapsedMs < 150 + 1000);
+    }
+
+    @Test
+    public void cancel_preventsTask() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(TICK_MS, 8);
+        final AtomicBoolean cancelledRan = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(1);
+        TimerWheel.Timeout t = wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                cancelledRan.set(true);
+            }
+        }, 30);
+        t.cancel();
+        assertTrue(t.isCancelled());
+
+        // fires later than the cancelled one would have
+        wheel.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 60);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+    }
+}
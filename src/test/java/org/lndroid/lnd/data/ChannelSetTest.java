@@ -0,0 +1,63 @@
+package org.lndroid.lnd.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.lndroid.lnd.data.DataAssert.assertDataEquals;
+
+// ChannelSet of a ListChannels reply must convert to the same
+// Data as protobuf parsing plus Codec.decode of that reply
+public class ChannelSetTest {
+
+    private static final int ITERATIONS = 200;
+
+    private final Random random_ = new Random(42);
+    private final RandomMessage messages_ = new RandomMessage(random_);
+
+    private String pubkey() {
+        byte[] b = new byte[ChannelSet.PUBKEY_SIZE];
+        random_.nextBytes(b);
+        b[0] = (byte)(random_.nextBoolean() ? 2 : 3);
+        StringBuilder sb = new StringBuilder();
+        for (byte x : b)
+            sb.append(String.format("%02x", x));
+        return sb.toString();
+    }
+
+    private void assertMatchesCodec(lnrpc.Rpc.ListChannelsResponse m) throws Exception {
+        byte[] bytes = m.toByteArray();
+        ChannelSet set = WireCodec.decodeChannelSet(bytes);
+        Data.ListChannelsResponse expected = Codec.decode(lnrpc.Rpc.ListChannelsResponse.parseFrom(bytes));
+        assertEquals(expected.channels.size(), set.size());
+        assertDataEquals(expected, set.toData());
+        for (int i = 0; i < set.size(); i++)
+            assertDataEquals(expected.channels.get(i), set.toData(i));
+    }
+
+    @Test
+    public void toData_matchesCodec() throws Exception {
+        // pubkeys that aren't hex keys are kept as text
+        for (int i = 0; i < ITERATIONS; i++)
+            assertMatchesCodec(messages_.<lnrpc.Rpc.ListChannelsResponse>next(
+                    lnrpc.Rpc.ListChannelsResponse.newBuilder()));
+    }
+
+    @Test
+    public void toData_withHexPubkeysMatchesCodec() throws Exception {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            lnrpc.Rpc.ListChannelsResponse m = messages_.next(
+                    lnrpc.Rpc.ListChannelsResponse.newBuilder(), "channels", i * 3);
+            lnrpc.Rpc.ListChannelsResponse.Builder b = m.toBuilder();
+            for (int j = 0; j < b.getChannelsCount(); j++)
+                b.setChannels(j, b.getChannels(j).toBuilder().setRemotePubkey(pubkey()));
+            assertMatchesCodec(b.build());
+        }
+    }
+
+    @Test
+    public void toData_ofEmptyReply() throws Exception {
+        assertMatchesCodec(lnrpc.Rpc.ListChannelsResponse.getDefaultInstance());
+    }
+}
@@ -0,0 +1,58 @@
+package org.lndroid.lnd.data;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+// Data classes have no equals: public fields are compared
+// recursively, lists and maps by element, arrays by content.
+final class DataAssert {
+
+    private DataAssert() {
+    }
+
+    static void assertDataEquals(Object expected, Object actual) {
+        assertDataEquals("", expected, actual);
+    }
+
+    private static void assertDataEquals(String path, Object e, Object a) {
+        if (e == null || a == null) {
+            assertEquals(path, e, a);
+            return;
+        }
+
+        if (e instanceof byte[]) {
+            assertArrayEquals(path, (byte[])e, (byte[])a);
+        } else if (e instanceof List) {
+            List<?> el = (List<?>)e;
+            List<?> al = (List<?>)a;
+            assertEquals(path + ".size", el.size(), al.size());
+            for (int i = 0; i < el.size(); i++)
+                assertDataEquals(path + "[" + i + "]", el.get(i), al.get(i));
+        } else if (e instanceof Map) {
+            Map<?, ?> em = (Map<?, ?>)e;
+            Map<?, ?> am = (Map<?, ?>)a;
+            assertEquals(path + ".size", em.size(), am.size());
+            for (Map.Entry<?, ?> entry : em.entrySet()) {
+                assertTrue(path + " has " + entry.getKey(), am.containsKey(entry.getKey()));
+                assertDataEquals(path + "[" + entry.getKey() + "]", entry.getValue(), am.get(entry.getKey()));
+            }
+        } else if (e.getClass().getName().startsWith("org.lndroid.lnd.data.")) {
+            assertEquals(path, e.getClass(), a.getClass());
+            for (Field f : e.getClass().getFields()) {
+                if (Modifier.isStatic(f.getModifiers()))
+                    continue;
+                try {
+                    assertDataEquals(path + "." + f.getName(), f.get(e), f.get(a));
+                } catch (IllegalAccessException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        } else {
+            assertEquals(path, e, a);
+        }
+    }
+}
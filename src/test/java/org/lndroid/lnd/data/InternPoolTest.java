@@ -0,0 +1,67 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class InternPoolTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String PUBKEY =
+            "02a1b2c3d4e5f60718293a4b5c6d7e8f90a1b2c3d4e5f60718293a4b5c6d7e8f90";
+
+    @Test
+    public void intern_returnsPooledInstance() {
+        String a = InternPool.intern(new String(PUBKEY));
+        String b = InternPool.intern(new String(PUBKEY));
+        assertEquals(PUBKEY, a);
+        assertSame(a, b);
+    }
+
+    @Test
+    public void intern_ofBytesMatchesString() {
+        String s = InternPool.intern(new String(PUBKEY));
+        byte[] b = ("xx" + PUBKEY).getBytes(UTF8);
+        assertSame(s, InternPool.intern(b, 2, PUBKEY.length()));
+        assertSame(s, InternPool.intern(ByteString.copyFrom(PUBKEY, UTF8)));
+    }
+
+    @Test
+    public void internHex_matchesHexString() {
+        byte[] raw = new byte[PUBKEY.length() / 2 + 1];
+        for (int i = 0; i < PUBKEY.length() / 2; i++)
+            raw[i + 1] = (byte)Integer.parseInt(PUBKEY.substring(i * 2, i * 2 + 2), 16);
+
+        String s = InternPool.intern(new String(PUBKEY));
+        assertSame(s, InternPool.internHex(raw, 1, raw.length - 1));
+        assertEquals("", InternPool.internHex(raw, 0, 0));
+
+        raw[1] ^= 1;
+        String other = InternPool.internHex(raw, 1, raw.length - 1);
+        assertEquals("03" + PUBKEY.substring(2), other);
+        assertSame(other, InternPool.internHex(raw, 1, raw.length - 1));
+    }
+
+    @Test
+    public void intern_passesOtherValuesThrough() {
+        assertNull(InternPool.intern((String)null));
+        assertEquals("", InternPool.intern(new byte[0], 0, 0));
+        assertEquals("", InternPool.intern(ByteString.EMPTY));
+
+        StringBuilder s = new StringBuilder();
+        while (s.length() <= InternPool.MAX_LENGTH)
+            s.append(PUBKEY);
+        String longValue = s.toString();
+        assertEquals(longValue, InternPool.intern(longValue.getBytes(UTF8), 0, longValue.length()));
+
+        String utf8 = "é€😀";
+        byte[] b = utf8.getBytes(UTF8);
+        assertEquals(utf8, InternPool.intern(b, 0, b.length));
+        assertEquals(utf8, InternPool.intern(ByteString.copyFrom(b)));
+    }
+}
@@ -0,0 +1,92 @@
+package org.lndroid.lnd.data;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+
+import java.util.List;
+import java.util.Random;
+
+// Fills protobuf messages with random values of every field: zero,
+// small and large numbers, empty and multi-byte strings, repeated
+// fields of 0-3 elements, nested messages a few levels deep.
+final class RandomMessage {
+
+    private static final int MAX_DEPTH = 4;
+
+    private final Random random_;
+
+    RandomMessage(Random random) {
+        random_ = random;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends Message> T next(Message.Builder b) {
+        fill(b, 0);
+        return (T)b.build();
+    }
+
+    // a message with n elements of the repeated field
+    @SuppressWarnings("unchecked")
+    <T extends Message> T next(Message.Builder b, String repeated, int n) {
+        Descriptors.FieldDescriptor f = b.getDescriptorForType().findFieldByName(repeated);
+        for (int i = 0; i < n; i++) {
+            Message.Builder e = b.newBuilderForField(f);
+            fill(e, 1);
+            b.addRepeatedField(f, e.build());
+        }
+        return (T)b.build();
+    }
+
+    private void fill(Message.Builder b, int depth) {
+        if (depth > MAX_DEPTH)
+            return;
+        for (Descriptors.FieldDescriptor f : b.getDescriptorForType().getFields()) {
+            if (f.isRepeated()) {
+                for (int i = random_.nextInt(4); i > 0; i--)
+                    b.addRepeatedField(f, value(f, b, depth));
+            } else if (random_.nextInt(4) != 0) {
+                b.setField(f, value(f, b, depth));
+            }
+        }
+    }
+
+    private Object value(Descriptors.FieldDescriptor f, Message.Builder b, int depth) {
+        switch (f.getJavaType()) {
+            case INT:
+                return random_.nextBoolean() ? random_.nextInt(1000) : random_.nextInt();
+            case LONG:
+                return random_.nextBoolean() ? (long)random_.nextInt(100000) : random_.nextLong();
+            case FLOAT:
+                return random_.nextFloat();
+            case DOUBLE:
+                return random_.nextDouble();
+            case BOOLEAN:
+                return random_.nextBoolean();
+            case STRING:
+                switch (random_.nextInt(3)) {
+                    case 0:
+                        return "";
+                    case 1:
+                        return "02abcdef" + random_.nextInt(100);
+                    default:
+                        return "multi-byte é€😀";
+                }
+            case BYTE_STRING: {
+                byte[] bytes = new byte[random_.nextInt(34)];
+                random_.nextBytes(bytes);
+                return ByteString.copyFrom(bytes);
+            }
+            case ENUM: {
+                List<Descriptors.EnumValueDescriptor> values = f.getEnumType().getValues();
+                return values.get(random_.nextInt(values.size()));
+            }
+            case MESSAGE: {
+                Message.Builder nb = b.newBuilderForField(f);
+                fill(nb, depth + 1);
+                return nb.build();
+            }
+        }
+        throw new AssertionError(f.getJavaType());
+    }
+}
@@ -0,0 +1,62 @@
+package org.lndroid.lnd.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.lndroid.lnd.data.DataAssert.assertDataEquals;
+
+// WireCodec must decode the same bytes into the same Data as
+// parsing them with protobuf and converting with Codec.decode
+public class WireCodecTest {
+
+    private static final int ITERATIONS = 200;
+
+    private final RandomMessage random_ = new RandomMessage(new Random(42));
+
+    @Test
+    public void listChannels_matchesCodec() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            lnrpc.Rpc.ListChannelsResponse m = random_.next(lnrpc.Rpc.ListChannelsResponse.newBuilder());
+            byte[] bytes = m.toByteArray();
+            assertDataEquals(Codec.decode(lnrpc.Rpc.ListChannelsResponse.parseFrom(bytes)),
+                    WireCodec.decodeListChannelsResponse(bytes));
+        }
+    }
+
+    @Test
+    public void listPayments_matchesCodec() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            lnrpc.Rpc.ListPaymentsResponse m = random_.next(lnrpc.Rpc.ListPaymentsResponse.newBuilder());
+            byte[] bytes = m.toByteArray();
+            assertDataEquals(Codec.decode(lnrpc.Rpc.ListPaymentsResponse.parseFrom(bytes)),
+                    WireCodec.decodeListPaymentsResponse(bytes));
+        }
+    }
+
+    @Test
+    public void paymentsIndex_matchesCodec() throws Exception {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            // more payments than the index's initial capacity
+            lnrpc.Rpc.ListPaymentsResponse m =
+                    random_.next(lnrpc.Rpc.ListPaymentsResponse.newBuilder(), "payments", i * 3);
+            byte[] bytes = m.toByteArray();
+            lnrpc.Rpc.ListPaymentsResponse parsed = lnrpc.Rpc.ListPaymentsResponse.parseFrom(bytes);
+            WireCodec.PaymentsIndex index = WireCodec.indexListPaymentsResponse(bytes);
+            assertEquals(parsed.getPaymentsCount(), index.size());
+            for (int j = 0; j < index.size(); j++)
+                assertDataEquals(Codec.decode(parsed.getPayments(j)), WireCodec.decodePayment(index, j));
+        }
+    }
+
+    @Test
+    public void transactionDetails_matchesCodec() throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            lnrpc.Rpc.TransactionDetails m = random_.next(lnrpc.Rpc.TransactionDetails.newBuilder());
+            byte[] bytes = m.toByteArray();
+            assertDataEquals(Codec.decode(lnrpc.Rpc.TransactionDetails.parseFrom(bytes)),
+                    WireCodec.decodeTransactionDetails(bytes));
+        }
+    }
+}
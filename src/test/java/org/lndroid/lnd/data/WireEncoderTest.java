@@ -0,0 +1,205 @@
+package org.lndroid.lnd.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+// WireEncoder output must be byte for byte the same as Codec's
+public class WireEncoderTest {
+
+    private static final int ITERATIONS = 500;
+
+    private final Random random_ = new Random(42);
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random_.nextBytes(b);
+        return b;
+    }
+
+    // null, empty or not
+    private byte[] maybeBytes(int n) {
+        int c = random_.nextInt(3);
+        return c == 0 ? null : bytes(c == 1 ? 0 : n);
+    }
+
+    private String maybeString() {
+        switch (random_.nextInt(4)) {
+            case 0:
+                return null;
+            case 1:
+                return "";
+            case 2:
+                return "lnbc1" + random_.nextInt();
+            default:
+                return "multi-byte é€😀";
+        }
+    }
+
+    private long maybeLong() {
+        switch (random_.nextInt(3)) {
+            case 0:
+                return 0;
+            case 1:
+                return random_.nextInt(100000);
+            default:
+                return random_.nextLong();
+        }
+    }
+
+    private Data.FeeLimit maybeFeeLimit() {
+        if (random_.nextBoolean())
+            return null;
+        Data.FeeLimit f = new Data.FeeLimit();
+        f.fixedMsat = random_.nextBoolean() ? random_.nextInt(5000) : 0;
+        f.percent = random_.nextInt(3);
+        return f;
+    }
+
+    private LinkedHashMap<Long, byte[]> maybeRecords() {
+        if (random_.nextBoolean())
+            return null;
+        LinkedHashMap<Long, byte[]> r = new LinkedHashMap<>();
+        for (int i = random_.nextInt(3); i >= 0; i--)
+            r.put(65536L + random_.nextInt(1000), bytes(random_.nextInt(5)));
+        return r;
+    }
+
+    private ArrayList<Integer> maybeFeatures() {
+        if (random_.nextBoolean())
+            return null;
+        ArrayList<Integer> r = new ArrayList<>();
+        for (int i = random_.nextInt(4); i > 0; i--)
+            r.add(random_.nextInt(300));
+        return r;
+    }
+
+    private Data.Route route() {
+        Data.Route r = new Data.Route();
+        r.totalTimeLock = random_.nextInt();
+        r.totalFeesMsat = maybeLong();
+        r.totalAmtMsat = maybeLong();
+        r.hops = new ArrayList<>();
+        for (int i = random_.nextInt(5); i > 0; i--) {
+            Data.Hop h = new Data.Hop();
+            h.chanId = maybeLong();
+            h.chanCapacity = maybeLong();
+            h.expiry = random_.nextInt();
+            h.amtToForwardMsat = maybeLong();
+            h.feeMsat = maybeLong();
+            h.pubKey = random_.nextBoolean() ? "02abcdef" : null;
+            h.tlvPayload = random_.nextBoolean();
+            if (random_.nextBoolean()) {
+                h.mppRecord = new Data.MPPRecord();
+                h.mppRecord.paymentAddr = bytes(32);
+                h.mppRecord.totalAmtMsat = maybeLong();
+            }
+            h.tlv = maybeRecords();
+            r.hops.add(h);
+        }
+        return r;
+    }
+
+    @Test
+    public void payReqString_matchesCodec() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.PayReqString r = new Data.PayReqString();
+            r.payReq = maybeString();
+            assertArrayEquals(Codec.encode(r).toByteArray(), WireEncoder.encode(r));
+        }
+    }
+
+    @Test
+    public void paymentHash_matchesCodec() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.PaymentHash r = new Data.PaymentHash();
+            r.rHash = maybeBytes(32);
+            assertArrayEquals(Codec.encode(r).toByteArray(), WireEncoder.encode(r));
+        }
+    }
+
+    @Test
+    public void estimateFee_matchesCodec() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.EstimateFeeRequest r = new Data.EstimateFeeRequest();
+            if (random_.nextBoolean()) {
+                r.addrToAmount = new LinkedHashMap<>();
+                for (int j = random_.nextInt(3); j >= 0; j--)
+                    r.addrToAmount.put("bc1q" + random_.nextInt(), maybeLong());
+            }
+            r.targetConf = random_.nextInt(10);
+            assertArrayEquals(Codec.encode(r).toByteArray(), WireEncoder.encode(r));
+        }
+    }
+
+    @Test
+    public void queryRoutes_matchesCodec() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.QueryRoutesRequest r = new Data.QueryRoutesRequest();
+            r.pubKey = random_.nextBoolean() ? "02abcdef" : null;
+            r.amtMsat = maybeLong();
+            r.finalCltvDelta = random_.nextInt(3) - 1;
+            r.feeLimit = maybeFeeLimit();
+            if (random_.nextBoolean()) {
+                r.ignoredNodes = new ArrayList<>();
+                for (int j = random_.nextInt(3); j >= 0; j--)
+                    r.ignoredNodes.add(bytes(33));
+            }
+            r.sourcePubKey = random_.nextBoolean() ? "03abcdef" : null;
+            r.useMissionControl = random_.nextBoolean();
+            r.cltvLimit = random_.nextInt(3000);
+            r.destCustomRecords = maybeRecords();
+            r.outgoingChanId = maybeLong();
+            r.lastHopPubkey = maybeBytes(33);
+            if (random_.nextBoolean()) {
+                r.routeHints = new ArrayList<>();
+                Data.RouteHint rh = new Data.RouteHint();
+                rh.hopHints = new ArrayList<>();
+                Data.HopHint hh = new Data.HopHint();
+                hh.nodeId = "02abcdef";
+                hh.chanId = maybeLong();
+                hh.feeBaseMsat = random_.nextInt(2000);
+                hh.feeProportionalMillionths = random_.nextInt(10);
+                hh.cltvExpiryDelta = random_.nextInt(100);
+                rh.hopHints.add(hh);
+                r.routeHints.add(rh);
+            }
+            r.destFeatures = maybeFeatures();
+            assertArrayEquals(Codec.encode(r).toByteArray(), WireEncoder.encode(r));
+        }
+    }
+
+    @Test
+    public void sendRequest_matchesCodec() {
+        WireEncoder.Encoder<Data.SendRequest> encoder = WireEncoder.sendRequest();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.SendRequest r = new Data.SendRequest();
+            r.dest = maybeBytes(33);
+            r.amtMsat = maybeLong();
+            r.paymentHash = maybeBytes(32);
+            r.paymentRequest = maybeString();
+            r.finalCltvDelta = random_.nextInt(3) - 1;
+            r.feeLimit = maybeFeeLimit();
+            r.outgoingChanId = maybeLong();
+            r.cltvLimit = random_.nextInt();
+            r.destTlv = maybeRecords();
+            r.features = maybeFeatures();
+            assertArrayEquals(Codec.encode(r).toByteArray(), encoder.encode(r));
+        }
+    }
+
+    @Test
+    public void sendToRouteRequest_matchesCodec() {
+        WireEncoder.Encoder<Data.SendToRouteRequest> encoder = WireEncoder.sendToRouteRequest();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Data.SendToRouteRequest r = new Data.SendToRouteRequest();
+            r.paymentHash = bytes(32);
+            r.route = route();
+            assertArrayEquals(Codec.encode(r).toByteArray(), encoder.encode(r));
+        }
+    }
+}